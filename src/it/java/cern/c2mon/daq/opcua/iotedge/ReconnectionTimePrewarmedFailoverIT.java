@@ -0,0 +1,37 @@
+/*-
+ * #%L
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * %%
+ * Copyright (C) 2010 - 2022 CERN
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package cern.c2mon.daq.opcua.iotedge;
+
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.TestPropertySource;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+/**
+ * Repeats the scenarios of {@link ReconnectionTimeFailoverIT} with a pre-warmed secure channel to the standby server,
+ * so that the resulting MTTRs can be compared against those of a failover from scratch.
+ */
+@Testcontainers
+@TestPropertySource(locations = "classpath:failover.properties",
+        properties = {"c2mon.daq.opcua.prewarmStandby=true", "c2mon.daq.opcua.standbyRefreshInterval=500"})
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_CLASS)
+public class ReconnectionTimePrewarmedFailoverIT extends ReconnectionTimeFailoverIT {
+}
@@ -22,14 +22,13 @@
 package cern.c2mon.daq.opcua.retry;
 
 import cern.c2mon.daq.opcua.SpringTestBase;
+import cern.c2mon.daq.opcua.connection.SubscriptionPartitions;
 import cern.c2mon.daq.opcua.exceptions.CommunicationException;
 import cern.c2mon.daq.opcua.exceptions.ConfigurationException;
 import cern.c2mon.daq.opcua.exceptions.ExceptionContext;
 import cern.c2mon.daq.opcua.mapping.TagSubscriptionMapper;
 import cern.c2mon.daq.opcua.testutils.EdgeTagFactory;
 import cern.c2mon.shared.common.datatag.ISourceDataTag;
-import com.google.common.collect.BiMap;
-import com.google.common.collect.HashBiMap;
 import org.eclipse.milo.opcua.sdk.client.OpcUaClient;
 import org.eclipse.milo.opcua.sdk.client.api.subscriptions.UaSubscription;
 import org.eclipse.milo.opcua.sdk.client.api.subscriptions.UaSubscriptionManager;
@@ -75,9 +74,9 @@ public class RetrySubscriptionRecreationIT extends SpringTestBase {
         endpoint = ctx.getBean(UaSubscriptionManager.SubscriptionListener.class);
         resetToNice(clientMock, managerMock, subscriptionMock);
         ReflectionTestUtils.setField(endpoint, "client", clientMock);
-        BiMap<Integer, UaSubscription> subscriptionMap = HashBiMap.create();
-        subscriptionMap.put(0, subscriptionMock);
-        ReflectionTestUtils.setField(endpoint, "subscriptionMap", subscriptionMap);
+        SubscriptionPartitions subscriptions = new SubscriptionPartitions();
+        subscriptions.put(0, 0, subscriptionMock);
+        ReflectionTestUtils.setField(endpoint, "subscriptions", subscriptions);
         mapper.clear();
         setUpMapper();
     }
@@ -122,7 +121,7 @@ public class RetrySubscriptionRecreationIT extends SpringTestBase {
         expect(managerMock.deleteSubscription(anyObject()))
                 .andReturn(CompletableFuture.completedFuture(subscriptionMock))
                 .anyTimes();
-        expect(managerMock.createSubscription(anyDouble()))
+        expect(managerMock.createSubscription(anyDouble(), anyObject(), anyObject(), anyObject(), anyBoolean(), anyObject()))
                 .andReturn(failedFuture)
                 .times(numAttempts);
         replay(subscriptionMock, clientMock, managerMock);
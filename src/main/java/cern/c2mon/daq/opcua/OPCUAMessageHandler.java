@@ -33,6 +33,7 @@ import cern.c2mon.daq.common.EquipmentMessageHandler;
 import cern.c2mon.daq.common.ICommandRunner;
 import cern.c2mon.daq.common.conf.core.ProcessConfigurationHolder;
 import cern.c2mon.daq.common.conf.equipment.IEquipmentConfigurationChanger;
+import cern.c2mon.daq.opcua.config.AddressChange;
 import cern.c2mon.daq.opcua.config.AddressParser;
 import cern.c2mon.daq.opcua.config.AppConfig;
 import cern.c2mon.daq.opcua.config.AppConfigProperties;
@@ -95,6 +96,8 @@ public class OPCUAMessageHandler extends EquipmentMessageHandler implements IEqu
 
         log.info("Connecting to the OPC UA data source at {}... ", config.getAddress());
         Collection<String> addresses = AddressParser.parse(config.getAddress(), appConfigProperties);
+        // the session is sized to the subscriptions of the configured tags
+        dataTagHandler.registerTags(config.getSourceDataTags().values());
         try {
             controller.connect(addresses);
         } catch (OPCUAException e) {
@@ -177,35 +180,54 @@ public class OPCUAMessageHandler extends EquipmentMessageHandler implements IEqu
     }
 
     /**
-     * Apply a changed equipment configuration to the DAQ. If there is a change to the equipment address, the DAQ is
-     * restarted. If the changes are restricted to the AliveTag ID or interval, the changes are applied to the running
-     * DAQ.
+     * Apply a changed equipment configuration to the DAQ. Changes to the equipment address are applied in the least
+     * disruptive way determined by the {@link AddressChange}: Properties which are read anew on every use are applied to
+     * the running DAQ, properties read when connecting cause the DAQ to reconnect to the same servers and to resubscribe
+     * the existing ItemDefinitions, and changes to the server URIs or to the subscription layout restart the DAQ. Other
+     * changes to the DataTags, AliveTag ID or interval are then applied to the running DAQ.
      * @param newConfig    The new equipment configuration.
      * @param oldConfig    A clone of the old equipment configuration.
-     * @param changeReport A report of changes and success state. A change is only considered to have failed if a
-     *                     restart of the DAQ failed.
+     * @param changeReport A report of changes and success state. A change is only considered to have failed if the
+     *                     new address could not be applied.
      */
     @Override
     public void onUpdateEquipmentConfiguration(final IEquipmentConfiguration newConfig, final IEquipmentConfiguration oldConfig, final ChangeReport changeReport) {
         log.info("Updating the Equipment Configuration");
         changeReport.setState(CHANGE_STATE.PENDING);
-        if (!newConfig.getAddress().equals(oldConfig.getAddress())) {
+        final AddressChange addressChange = AddressChange.of(oldConfig.getAddress(), newConfig.getAddress());
+        log.info("Equipment address change requires {}, changed properties: {}.", addressChange.getReconfiguration(), addressChange.getChangedProperties());
+        if (addressChange.getReconfiguration() == AddressChange.Reconfiguration.RESTART) {
             restartDAQ(changeReport);
-        } else {
-            log.info("Resubscribing DataTags");
-            dataTagChanger.onUpdateEquipmentConfiguration(newConfig.getSourceDataTags().values(), oldConfig.getSourceDataTags().values(), changeReport);
-            if ((newConfig.getAliveTagId() != oldConfig.getAliveTagId() || newConfig.getAliveTagInterval() != oldConfig.getAliveTagInterval())
-                    && appConfigProperties.isAliveWriterEnabled()) {
-                try {
-                    startAliveWriter(newConfig);
-                    changeReport.appendInfo("Alive Writer updated.");
-                } catch (ConfigurationException e) {
-                    log.error("Updating the Alive Writer failed.", e);
-                    changeReport.appendError(e.getMessage());
-                }
+            log.info("Finished the Equipment Configuration update!");
+            return;
+        }
+        try {
+            if (addressChange.getReconfiguration() == AddressChange.Reconfiguration.RECONNECT) {
+                reconnect(newConfig);
+                changeReport.appendInfo("DAQ reconnected.");
+            } else if (addressChange.getReconfiguration() == AddressChange.Reconfiguration.LIVE) {
+                AddressParser.parse(newConfig.getAddress(), appConfigProperties);
+                changeReport.appendInfo("Applied properties " + addressChange.getChangedProperties() + " to the running DAQ.");
             }
-            changeReport.setState(CHANGE_STATE.SUCCESS);
+        } catch (OPCUAException e) {
+            log.error("Applying the new equipment address failed: ", e);
+            changeReport.appendError("Could not apply the new equipment address: " + e.getMessage());
+            changeReport.setState(CHANGE_STATE.FAIL);
+            return;
         }
+        log.info("Resubscribing DataTags");
+        dataTagChanger.onUpdateEquipmentConfiguration(newConfig.getSourceDataTags().values(), oldConfig.getSourceDataTags().values(), changeReport);
+        if ((newConfig.getAliveTagId() != oldConfig.getAliveTagId() || newConfig.getAliveTagInterval() != oldConfig.getAliveTagInterval())
+                && appConfigProperties.isAliveWriterEnabled()) {
+            try {
+                startAliveWriter(newConfig);
+                changeReport.appendInfo("Alive Writer updated.");
+            } catch (ConfigurationException e) {
+                log.error("Updating the Alive Writer failed.", e);
+                changeReport.appendError(e.getMessage());
+            }
+        }
+        changeReport.setState(CHANGE_STATE.SUCCESS);
         log.info("Finished the Equipment Configuration update!");
     }
 
@@ -255,6 +277,27 @@ public class OPCUAMessageHandler extends EquipmentMessageHandler implements IEqu
         return "";
     }
 
+    /**
+     * Disconnects from and reconnects to the servers of the new equipment address with the updated properties. The
+     * namespace indices of the same servers remain valid, so that the Tags are resubscribed with their existing
+     * ItemDefinitions rather than mapped anew.
+     */
+    private void reconnect(IEquipmentConfiguration newConfig) throws OPCUAException {
+        log.info("Reconnecting the DAQ...");
+        synchronized (this) {
+            // the endpoints release their resources with the settings they were acquired with
+            controller.stop();
+            final Collection<String> addresses = AddressParser.parse(newConfig.getAddress(), appConfigProperties);
+            try {
+                controller.connect(addresses);
+            } catch (OPCUAException e) {
+                sender.onEquipmentStateUpdate(CONNECTION_FAILED);
+                throw e;
+            }
+            dataTagHandler.resubscribeAllTags();
+        }
+    }
+
     private void restartDAQ(final ChangeReport changeReport) {
         log.info("Restarting the DAQ...");
         try {
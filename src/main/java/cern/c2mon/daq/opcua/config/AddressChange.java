@@ -0,0 +1,127 @@
+/*-
+ * #%L
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * %%
+ * Copyright (C) 2010 - 2022 CERN
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package cern.c2mon.daq.opcua.config;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+/**
+ * Classifies the change in between two equipment address Strings by the least disruptive way in which it can be
+ * applied to a running DAQ. The address Strings are parsed as by the {@link AddressParser}, and the {@link
+ * AppConfigProperties} overridden in each are compared by name.
+ */
+@Getter
+@RequiredArgsConstructor(access = AccessLevel.PRIVATE)
+public class AddressChange {
+
+    /**
+     * The ways in which a change to the equipment address can be applied, from least to most disruptive.
+     */
+    public enum Reconfiguration {
+        /**
+         * The addresses are equivalent.
+         */
+        NONE,
+        /**
+         * Only properties which are read anew on every use changed. These are set on the running DAQ.
+         */
+        LIVE,
+        /**
+         * Properties which are read when connecting changed. The DAQ reconnects to the same servers, and resubscribes
+         * the existing ItemDefinitions.
+         */
+        RECONNECT,
+        /**
+         * The server URIs or properties determining how tags are mapped to ItemDefinitions and subscriptions changed.
+         * The DAQ is restarted.
+         */
+        RESTART
+    }
+
+    // the monitoring parameters such as the queueSize are only read when creating monitored items, and are applied
+    // to the existing items on resubscription after a reconnection
+    private static final Set<String> LIVE_PROPERTIES = new HashSet<>(Arrays.asList(
+            "restartDelay", "timeRecordMode", "maxItemsPerSubscription", "resubscriptionChunkSize",
+            "deletionChunkSize", "backfillEnabled", "maxBackfillWindow", "backfillBatchSize", "backfillConcurrency",
+            "backfillValuesPerNode"));
+
+    // the namespace indices of a different server may differ, so that existing ItemDefinitions cannot be reused
+    private static final Set<String> RESTART_PROPERTIES = new HashSet<>(Arrays.asList(
+            AddressParser.URI, "publishIntervalBuckets", "aliveWriterEnabled"));
+
+    private final Reconfiguration reconfiguration;
+    private final Set<String> changedProperties;
+
+    /**
+     * Compares the server URIs and the overridden properties of two equipment address Strings.
+     * @param oldAddress the equipment address of the old configuration
+     * @param newAddress the equipment address of the new configuration
+     * @return the names of the changed properties, and how the change can be applied
+     */
+    public static AddressChange of(String oldAddress, String newAddress) {
+        final Map<String, String> oldProperties = AddressParser.parsePropertiesFromString(oldAddress);
+        final Map<String, String> newProperties = AddressParser.parsePropertiesFromString(newAddress);
+        final Set<String> changed = new TreeSet<>();
+        if (!uris(oldProperties).equals(uris(newProperties))) {
+            changed.add(AddressParser.URI);
+        }
+        oldProperties.remove(AddressParser.URI);
+        newProperties.remove(AddressParser.URI);
+        final Set<String> names = new HashSet<>(oldProperties.keySet());
+        names.addAll(newProperties.keySet());
+        names.stream()
+                .filter(n -> !Objects.equals(oldProperties.get(n), newProperties.get(n)))
+                .forEach(changed::add);
+        final Reconfiguration reconfiguration = changed.stream()
+                .map(AddressChange::classify)
+                .max(Enum::compareTo)
+                .orElse(Reconfiguration.NONE);
+        return new AddressChange(reconfiguration, Collections.unmodifiableSet(changed));
+    }
+
+    private static Reconfiguration classify(String property) {
+        if (RESTART_PROPERTIES.contains(property)) {
+            return Reconfiguration.RESTART;
+        } else if (LIVE_PROPERTIES.contains(property)) {
+            return Reconfiguration.LIVE;
+        }
+        return Reconfiguration.RECONNECT;
+    }
+
+    private static List<String> uris(Map<String, String> properties) {
+        final String uri = properties.get(AddressParser.URI);
+        return uri == null
+                ? Collections.emptyList()
+                : Arrays.stream(uri.split(",")).map(String::trim).collect(Collectors.toList());
+    }
+}
@@ -48,9 +48,9 @@ import java.util.stream.Stream;
 @NoArgsConstructor(access = AccessLevel.PRIVATE)
 public abstract class AddressParser {
 
-    private static final String URI = "URI";
-    private static final String KEYSTORE = "keystore.";
-    private static final String PKI = "pki.";
+    static final String URI = "URI";
+    static final String KEYSTORE = "keystore.";
+    static final String PKI = "pki.";
     private static final Pattern opcUriPattern = Pattern.compile("^((opc.tcp://)|(http://))+(?:.[^./]+)+(?:/.*)?");
 
     private static final ConversionService converter = new DefaultConversionService();
@@ -89,7 +89,7 @@ public abstract class AddressParser {
         return uris;
     }
 
-    private static Map<String, String> parsePropertiesFromString(final String address) {
+    static Map<String, String> parsePropertiesFromString(final String address) {
         Map<String, String> properties = new ConcurrentHashMap<>();
         String[] keyValues = address.split(";");
         for (int i = 0; i < keyValues.length; i++) {
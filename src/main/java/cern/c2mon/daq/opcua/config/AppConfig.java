@@ -76,13 +76,29 @@ public class AppConfig {
     /**
      * A retry template to repeatedly execute a call until successful termination with a delay starting at retryDelay
      * and increasing by a factor of 2 on every failed attempt up to a maximum of maxFailoverDelay.
+     * Not a bean, so that every call creates a template from the current properties of the equipment.
      * @param properties The AppConfigProperties which shall be used to create the retry template.
      * @return the retry template.
      */
-    @Bean
     public RetryTemplate simpleRetryPolicy (AppConfigProperties properties) {
+        return retryOnCommunicationException(properties, backOff(properties));
+    }
+
+    /**
+     * A retry template to retry a call up to maxRetryAttempts times if it fails with a {@link CommunicationException},
+     * with delays in between retries given by the back off policy. Used with back off policies which adapt to the
+     * round trip times observed on an endpoint.
+     * @param properties The AppConfigProperties which shall be used to create the retry template.
+     * @param backOffPolicy the policy determining the delay in between retries.
+     * @return the retry template.
+     */
+    public RetryTemplate adaptiveRetryPolicy (AppConfigProperties properties, BackOffPolicy backOffPolicy) {
+        return retryOnCommunicationException(properties, backOffPolicy);
+    }
+
+    private RetryTemplate retryOnCommunicationException (AppConfigProperties properties, BackOffPolicy backOffPolicy) {
         RetryTemplate template = new RetryTemplate();
-        template.setBackOffPolicy(backOff(properties));
+        template.setBackOffPolicy(backOffPolicy);
         Map<Class<? extends Throwable>, Boolean> retryableExceptions = new ConcurrentHashMap<>();
         retryableExceptions.put(CommunicationException.class, true);
         SimpleRetryPolicy policy = new SimpleRetryPolicy(properties.getMaxRetryAttempts(), retryableExceptions);
@@ -107,11 +123,11 @@ public class AppConfig {
     /**
      * A retry template to execute a call until successful termination with a delay starting at retryDelay and
      * increasing by a factor of 2 on every failed attempt up to a maximum of maxFailoverDelay. Calls are retried only
-     * when they fail with a {@link CommunicationException}.
+     * when they fail with a {@link CommunicationException}. Not a bean, so that every call creates a template from the
+     * current properties of the equipment.
      * @param properties The AppConfigProperties which shall be used to create the retry template.
      * @return the retry template.
      */
-    @Bean
     public RetryTemplate exceptionClassifierTemplate (AppConfigProperties properties) {
         RetryTemplate template = new RetryTemplate();
         template.setBackOffPolicy(backOff(properties));
@@ -69,6 +69,24 @@ public class AppConfigProperties {
      */
     private int connectionMonitoringRate = 3;
 
+    /**
+     * The number of most recent failover timelines to keep, listing the duration of each phase of the failover process.
+     */
+    private int failoverTimelineHistory = 10;
+
+    /**
+     * In cold failover mode, keep a secure channel to the next server in the redundant server set open, so that a
+     * failover to this server only requires activating a session and recreating the subscriptions.
+     */
+    private boolean prewarmStandby = false;
+
+    /**
+     * The interval in milliseconds in which the standby secure channel is verified and reopened if it was closed, and
+     * moved to a different server if the next server in the redundant server set changed. Only takes effect if
+     * prewarmStandby is enabled.
+     */
+    private long standbyRefreshInterval = 30000L;
+
     /**
      * The delay before restarting the DAQ after an equipment change if the equipment addresses changed.
      */
@@ -105,6 +123,50 @@ public class AppConfigProperties {
      */
     private long requestTimeout;
 
+    /**
+     * Derive the timeout of service calls and the initial delay before retrying a failed call from the round trip times
+     * observed on previous calls to the server, instead of using the static requestTimeout and retryDelay.
+     */
+    private boolean adaptiveTimeoutEnabled = false;
+
+    /**
+     * The factor applied to the 99th percentile of recent round trip times to obtain the adaptive timeout.
+     */
+    private double adaptiveTimeoutFactor = 3.0;
+
+    /**
+     * The number of most recent round trips considered for adaptive timeouts.
+     */
+    private int adaptiveTimeoutWindow = 200;
+
+    /**
+     * The lower bound in milliseconds of the adaptive timeout.
+     */
+    private long minRequestTimeout = 250L;
+
+    /**
+     * The upper bound in milliseconds of the adaptive timeout.
+     */
+    private long maxRequestTimeout = 30000L;
+
+    /**
+     * The number of consecutive failed service call attempts after which calls to the server are suspended and fail
+     * immediately. A value of 0 or less disables the circuit breaker.
+     */
+    private int circuitBreakerFailureThreshold = 0;
+
+    /**
+     * The time in milliseconds for which calls fail immediately once the circuit breaker has opened, before a single
+     * call is let through to probe the server.
+     */
+    private long circuitBreakerOpenDuration = 10000L;
+
+    /**
+     * Whether an opening circuit breaker triggers a failover to a redundant server without waiting for the
+     * failoverDelay.
+     */
+    private boolean circuitBreakerTriggersFailover = true;
+
     /**
      * The maximum number of values which can be queues in between publish intervals of the subscriptions. If more
      * updates occur during the timeframe of the DataTags' timedeadband, these values are added to the queue. If the
@@ -118,6 +180,178 @@ public class AppConfigProperties {
      */
     private boolean aliveWriterEnabled;
 
+    /**
+     * If enabled, the values which changed while the connection to the server was interrupted are read from the
+     * server's history after reconnection or failover, and are sent before live updates resume. Only applicable to
+     * servers supporting HistoryRead on the subscribed nodes.
+     */
+    private boolean backfillEnabled = false;
+
+    /**
+     * The maximum time span in milliseconds before reconnection for which the history is read on backfill.
+     */
+    private long maxBackfillWindow = 60000L;
+
+    /**
+     * The number of nodes to read per HistoryRead request on backfill.
+     */
+    private int backfillBatchSize = 100;
+
+    /**
+     * The maximum number of HistoryRead requests that are in progress at a time on backfill.
+     */
+    private int backfillConcurrency = 2;
+
+    /**
+     * The maximum number of values the server shall return per node and HistoryRead request on backfill. Further
+     * values are read through continuation points.
+     */
+    private int backfillValuesPerNode = 1000;
+
+    /**
+     * The order in which subscriptions are recreated after reconnection or failover. Each entry maps the publishing
+     * interval of a subscription in seconds to a priority. Subscriptions are recreated in decreasing order of priority.
+     * Subscriptions without an explicit priority are recreated after those with a positive priority, in increasing order
+     * of their publishing interval.
+     */
+    private Map<Integer, Integer> resubscriptionPriority;
+
+    /**
+     * The maximum number of monitored items which are created with a single request when recreating subscriptions, so
+     * that items of higher priority can report values before all items of lower priority have been created.
+     */
+    private int resubscriptionChunkSize = 500;
+
+    /**
+     * The maximum number of monitored items which are deleted with a single request when many tags are removed at once.
+     * A value of 0 or less deletes all monitored items of a subscription with a single request.
+     */
+    private int deletionChunkSize = 1000;
+
+    /**
+     * The publishing parameters of subscriptions. Each entry maps the publishing interval of a subscription in seconds
+     * to its parameters. Subscriptions without an entry, and parameters which are not set, use the defaults of the OPC
+     * UA client stack.
+     */
+    private Map<Integer, SubscriptionParameters> subscriptionParameters;
+
+    /**
+     * Adjust the maximum number of notifications per publish response of each subscription to the number of
+     * notifications and the publish latency observed, using the ModifySubscription service.
+     */
+    private boolean subscriptionTuningEnabled = false;
+
+    /**
+     * The number of publish responses of a subscription observed before its maximum number of notifications per
+     * publish response is adjusted.
+     */
+    private int subscriptionTuningWindow = 50;
+
+    /**
+     * The average delay in milliseconds in between the server sending a publish response and the client receiving it
+     * above which the maximum number of notifications per publish response is decreased. The delay is measured relative
+     * to the smallest delay recently observed on the subscription, so that it is independent of the clock offset in
+     * between server and client.
+     */
+    private long subscriptionTargetPublishLatency = 1000L;
+
+    /**
+     * The lower bound of the maximum number of notifications per publish response set by subscription tuning.
+     */
+    private int subscriptionTuningMinNotifications = 100;
+
+    /**
+     * The upper bound of the maximum number of notifications per publish response set by subscription tuning.
+     */
+    private int subscriptionTuningMaxNotifications = 10000;
+
+    /**
+     * Scale the number of PublishRequests kept outstanding on a session with the number and publishing intervals of
+     * the subscriptions and the round trip time to the server, instead of leaving it to the OPC UA client stack. The
+     * number is computed whenever a session is created.
+     */
+    private boolean adaptivePublishRequests = false;
+
+    /**
+     * The lower bound of the number of outstanding PublishRequests if adaptivePublishRequests is enabled.
+     */
+    private int minPendingPublishRequests = 2;
+
+    /**
+     * The upper bound of the number of outstanding PublishRequests if adaptivePublishRequests is enabled.
+     */
+    private int maxPendingPublishRequests = 20;
+
+    /**
+     * The sampling interval of a monitored item is its tag's time deadband, or the publishing interval of its
+     * subscription if the tag has no time deadband, multiplied by this factor. A factor of 0 requests the fastest
+     * sampling rate supported by the server.
+     */
+    private double samplingIntervalFactor = 0;
+
+    /**
+     * Sampling intervals in milliseconds for individual tags, overriding the sampling interval derived through the
+     * samplingIntervalFactor. Each entry maps the id of a tag to its sampling interval.
+     */
+    private Map<Long, Double> samplingIntervals;
+
+    /**
+     * Let the tags of a subscription which refer to the same node share a single monitored item. Tags with an absolute
+     * or no value deadband share an item with the finest deadband among them, and coarser deadbands are applied by the
+     * client. Tags with a percent deadband only share items with tags of the same percent deadband.
+     */
+    private boolean deduplicateMonitoredItems = false;
+
+    /**
+     * Publishing intervals in seconds into which the time deadbands of the tags are consolidated. Tags are subscribed
+     * with the largest publishing interval not exceeding their time deadband, and their exact time deadband is applied
+     * by the client. This bounds the number of subscriptions on the server by the number of buckets, and the latency of
+     * an update by the tag's time deadband. Tags with a time deadband below the smallest bucket are subscribed with
+     * the smallest bucket. If empty, one subscription is created per distinct time deadband.
+     */
+    private List<Integer> publishIntervalBuckets;
+
+    /**
+     * The maximum number of monitored items in a single subscription. The items of a publishing interval which exceed
+     * this number are spread over several subscriptions with the same publishing interval, which report and are
+     * recreated independently of each other. If 0, all items of a publishing interval share one subscription.
+     */
+    private int maxItemsPerSubscription = 0;
+
+    /**
+     * Share the session to a server with all other equipments of the DAQ process which connect to the same server with
+     * the same security settings and also share their sessions. Subscriptions remain separate for each equipment.
+     */
+    private boolean shareSessions = false;
+
+    /**
+     * The number of sessions to open to the server for a single equipment. The monitored items of the equipment are
+     * spread over the sessions by their client handle, so that the encryption, decoding and publish handling of the
+     * value updates is distributed over several secure channels.
+     */
+    private int sessionShards = 1;
+
+    /**
+     * The number of threads of the worker pool shared by all equipments of the DAQ process to execute scheduled tasks,
+     * such as writing to AliveTags or triggering a failover. The pool does not grow beyond this size: tasks which are
+     * due while all threads are busy are queued. Defaults to the number of available processors if not set.
+     */
+    private int schedulerParallelism;
+
+    /**
+     * The tick duration in milliseconds of the timer shared by all equipments of the DAQ process to schedule tasks. It
+     * determines the precision of all scheduled delays: a task is executed on the first tick after its delay has
+     * expired, so that it may run up to one tick duration late. Periodic tasks do not accumulate this lateness. Delays
+     * and periods shorter than the tick duration are effectively rounded up to it.
+     */
+    private long schedulerTickDuration = 10L;
+
+    /**
+     * The interval in milliseconds in between two samples of the network interfaces of the host, from which the
+     * network metrics and their rates are computed once for the whole DAQ process.
+     */
+    private long networkSamplingInterval = 5000L;
+
     /**
      * If enabled, the client will make no attempt to validate server certificates, but trust servers. If disabled,
      * incoming server certificates are verified against the certificates listed in pkiBaseDir.
@@ -131,6 +365,13 @@ public class AppConfigProperties {
      */
     private String pkiBaseDir;
 
+    /**
+     * Self-signed certificates generated by the {@link cern.c2mon.daq.opcua.security.CertificateGenerator} are stored
+     * in the "own" subdirectory of the pkiBaseDir and shared by all equipments with the same application settings. They
+     * are renewed when they expire within the given number of days.
+     */
+    private int certificateRenewalDays = 30;
+
     /**
      * Connection with a {@link cern.c2mon.daq.opcua.security.Certifier} associated with the element will be attempted
      * in decreasing order of the associated value until successful. If the value is 0 then that Certifier will not be
@@ -172,6 +413,24 @@ public class AppConfigProperties {
      */
     private TimeRecordMode timeRecordMode;
 
+    /**
+     * The granularity with which valid and invalid tag updates are counted. AGGREGATE counts the updates per
+     * subscription group, PER_TAG counts the updates of every tag individually at the cost of two time series per tag.
+     */
+    private TagMetricMode tagMetricMode = TagMetricMode.AGGREGATE;
+
+    /**
+     * The IDs of tags whose updates are counted individually in addition to their subscription group in the AGGREGATE
+     * tagMetricMode.
+     */
+    private List<Long> perTagMetricIds;
+
+    /**
+     * The number of tags with the most updates to report in the AGGREGATE tagMetricMode, estimated from a sample of
+     * the updates. Set to 0 to disable.
+     */
+    private int perTagMetricTopK;
+
     // Settings to create a certificate, and to request connection to the server
     private String applicationName;
     private String applicationUri;
@@ -219,6 +478,11 @@ public class AppConfigProperties {
      */
     public enum CertifierMode {LOAD, GENERATE, NO_SECURITY}
 
+    /**
+     * Describes the granularity of the counters of tag updates: per subscription group of an equipment, or per tag.
+     */
+    public enum TagMetricMode {AGGREGATE, PER_TAG}
+
     /**
      * The four OPC UA Redundancy types. Add a custom value to add support for a vendor-proprietary redundancy setup.
      * */
@@ -238,6 +502,20 @@ public class AppConfigProperties {
         private String alias;
     }
 
+    /**
+     * The publishing parameters of a subscription, see UA Part 4, 5.13.2. A value of 0 leaves the choice of the
+     * parameter to the OPC UA client stack, or for maxNotificationsPerPublish, sets no limit.
+     */
+    @Data
+    @AllArgsConstructor
+    @NoArgsConstructor
+    public static class SubscriptionParameters {
+        private int lifetimeCount;
+        private int maxKeepAliveCount;
+        private int maxNotificationsPerPublish;
+        private int priority;
+    }
+
     /**
      * Settings required to load an existing certificate from a PEM-encoded private key and certificate files
      */
@@ -0,0 +1,153 @@
+/*-
+ * #%L
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * %%
+ * Copyright (C) 2010 - 2022 CERN
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package cern.c2mon.daq.opcua.connection;
+
+import cern.c2mon.daq.opcua.config.AppConfigProperties;
+import lombok.RequiredArgsConstructor;
+import org.springframework.retry.RetryContext;
+import org.springframework.retry.backoff.BackOffContext;
+import org.springframework.retry.backoff.BackOffInterruptedException;
+import org.springframework.retry.backoff.BackOffPolicy;
+import org.springframework.retry.backoff.ExponentialBackOffPolicy;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Derives the timeout of service calls to a server and the initial delay before retrying a failed call from the round
+ * trip times observed on previous calls. The timeout is the 99th percentile of the recent round trip times multiplied
+ * by the configured adaptiveTimeoutFactor, bounded by minRequestTimeout and maxRequestTimeout. Until enough round trips
+ * have been observed, or if adaptive timeouts are disabled, the static requestTimeout and retryDelay are used. Recording
+ * a round trip is constant in time; the percentile is computed lazily when read, and only once a twentieth of the window
+ * has been replaced since it was last computed.
+ */
+@RequiredArgsConstructor
+public class AdaptiveTimeoutPolicy {
+
+    /**
+     * The number of round trips that must be observed before the learned timeout takes effect.
+     */
+    static final int MIN_SAMPLES = 20;
+
+    /**
+     * The percentile is recomputed once this fraction of the window has been replaced by new round trips.
+     */
+    private static final int REFRESH_FRACTION = 20;
+
+    private final AppConfigProperties properties;
+    private long[] samples;
+    private int count;
+    private int next;
+    private int recordedSinceRefresh;
+    private long p99Nanos = -1;
+
+    /**
+     * Record the round trip time of a service call. Calls which timed out should be recorded with the timeout, so
+     * that the learned timeout grows if the server has become slower.
+     * @param nanos the round trip time in nanoseconds
+     */
+    public synchronized void record(long nanos) {
+        if (samples == null) {
+            samples = new long[Math.max(MIN_SAMPLES, properties.getAdaptiveTimeoutWindow())];
+        }
+        samples[next] = nanos;
+        next = (next + 1) % samples.length;
+        count = Math.min(count + 1, samples.length);
+        recordedSinceRefresh++;
+    }
+
+    /**
+     * @return the 99th percentile of the recent round trip times in milliseconds, or -1 if not enough round trips have
+     * been observed yet.
+     */
+    public synchronized double getRoundTripP99() {
+        final long p99 = p99Nanos();
+        return p99 < 0 ? -1 : p99 / 1e6;
+    }
+
+    /**
+     * @return the time in milliseconds to wait for the response to a service call.
+     */
+    public synchronized long getTimeout() {
+        final long p99 = p99Nanos();
+        if (!properties.isAdaptiveTimeoutEnabled() || p99 < 0) {
+            return properties.getRequestTimeout();
+        }
+        final long learned = (long) Math.ceil(TimeUnit.NANOSECONDS.toMillis(p99) * properties.getAdaptiveTimeoutFactor());
+        return Math.min(properties.getMaxRequestTimeout(), Math.max(properties.getMinRequestTimeout(), learned));
+    }
+
+    /**
+     * @return the initial delay in milliseconds before retrying a failed service call. If adaptive timeouts are
+     * enabled, this is the current timeout bounded by maxRetryDelay, so that calls to fast servers are retried sooner.
+     */
+    public long getRetryDelay() {
+        if (!properties.isAdaptiveTimeoutEnabled() || getRoundTripP99() < 0) {
+            return properties.getRetryDelay();
+        }
+        return Math.min(properties.getMaxRetryDelay(), getTimeout());
+    }
+
+    /**
+     * @return an exponential back off policy starting at the retry delay which is current when a retried call begins.
+     * Each call uses its own back off, so that concurrent calls do not share a mutable initial interval.
+     */
+    public BackOffPolicy backOffPolicy() {
+        return new BackOffPolicy() {
+            @Override
+            public BackOffContext start(RetryContext context) {
+                final ExponentialBackOffPolicy backOff = new ExponentialBackOffPolicy();
+                backOff.setMaxInterval(properties.getMaxRetryDelay());
+                backOff.setInitialInterval(getRetryDelay());
+                backOff.setMultiplier(properties.getRetryMultiplier());
+                return new PerCallBackOffContext(backOff, backOff.start(context));
+            }
+
+            @Override
+            public void backOff(BackOffContext backOffContext) throws BackOffInterruptedException {
+                final PerCallBackOffContext context = (PerCallBackOffContext) backOffContext;
+                context.backOff.backOff(context.delegate);
+            }
+        };
+    }
+
+    /**
+     * Must be called while holding the lock.
+     * @return the 99th percentile of the recent round trip times in nanoseconds, or -1 if not enough round trips have
+     * been observed yet.
+     */
+    private long p99Nanos() {
+        if (count >= MIN_SAMPLES && (p99Nanos < 0 || recordedSinceRefresh >= Math.max(1, samples.length / REFRESH_FRACTION))) {
+            final long[] sorted = Arrays.copyOf(samples, count);
+            Arrays.sort(sorted);
+            p99Nanos = sorted[(int) Math.ceil(0.99 * count) - 1];
+            recordedSinceRefresh = 0;
+        }
+        return p99Nanos;
+    }
+
+    @RequiredArgsConstructor
+    private static final class PerCallBackOffContext implements BackOffContext {
+        private final ExponentialBackOffPolicy backOff;
+        private final BackOffContext delegate;
+    }
+}
@@ -0,0 +1,163 @@
+/*-
+ * #%L
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * %%
+ * Copyright (C) 2010 - 2022 CERN
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package cern.c2mon.daq.opcua.connection;
+
+import cern.c2mon.daq.opcua.config.AppConfigProperties;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Collection;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Guards the service calls of an endpoint against a degraded server. The breaker is CLOSED while calls succeed. After
+ * circuitBreakerFailureThreshold consecutive failed attempts it OPENS, and calls are rejected without contacting the
+ * server. Once circuitBreakerOpenDuration has passed, the breaker becomes HALF_OPEN and lets a single probe through:
+ * the breaker closes if the probe succeeds, and opens again otherwise. A failure threshold of 0 or less disables the
+ * breaker.
+ */
+@Slf4j
+@RequiredArgsConstructor
+public class CircuitBreaker {
+
+    /**
+     * The states of a circuit breaker.
+     */
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    /**
+     * Informed whenever the circuit breaker of an endpoint opens.
+     */
+    @FunctionalInterface
+    public interface Listener {
+
+        /**
+         * Called when calls to a server are suspended due to repeated failures.
+         * @param uri the address of the server
+         */
+        void onCircuitOpened(String uri);
+    }
+
+    private final AppConfigProperties properties;
+    private final Collection<Listener> listeners = new CopyOnWriteArrayList<>();
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAt;
+    private boolean probeInFlight;
+
+    /**
+     * Decides whether a call may be executed. In the HALF_OPEN state, only the first caller is admitted as probe.
+     * @return true if the call may be executed, false if it should fail fast.
+     */
+    public synchronized boolean allowRequest() {
+        if (!isEnabled() || state == State.CLOSED) {
+            return true;
+        }
+        if (state == State.OPEN && System.currentTimeMillis() - openedAt >= properties.getCircuitBreakerOpenDuration()) {
+            log.info("Circuit breaker half-open, letting a probe through.");
+            state = State.HALF_OPEN;
+            probeInFlight = false;
+        }
+        if (state == State.HALF_OPEN && !probeInFlight) {
+            probeInFlight = true;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Record an attempt on which the server responded. This closes the breaker.
+     */
+    public synchronized void recordSuccess() {
+        if (state != State.CLOSED) {
+            log.info("Circuit breaker closed.");
+        }
+        state = State.CLOSED;
+        consecutiveFailures = 0;
+        probeInFlight = false;
+    }
+
+    /**
+     * Record an attempt which failed to reach the server. Opens the breaker if the probe failed or if the failure
+     * threshold is reached, and informs the listeners.
+     * @param uri the address of the server, passed on to the listeners
+     */
+    public void recordFailure(String uri) {
+        synchronized (this) {
+            if (!isEnabled() || state == State.OPEN) {
+                return;
+            }
+            consecutiveFailures++;
+            if (state == State.CLOSED && consecutiveFailures < properties.getCircuitBreakerFailureThreshold()) {
+                return;
+            }
+            log.info("Circuit breaker opened after {} consecutive failures on {}.", consecutiveFailures, uri);
+            state = State.OPEN;
+            openedAt = System.currentTimeMillis();
+            probeInFlight = false;
+        }
+        listeners.forEach(l -> l.onCircuitOpened(uri));
+    }
+
+    /**
+     * Releases the probe admitted in the HALF_OPEN state if it ended without a response or failure to record, for
+     * instance since the endpoint was disconnected meanwhile. The next caller is then admitted as probe instead.
+     */
+    public synchronized void releaseProbe() {
+        if (state == State.HALF_OPEN) {
+            probeInFlight = false;
+        }
+    }
+
+    /**
+     * Closes the breaker and forgets previous failures, for instance when connecting to another server.
+     */
+    public synchronized void reset() {
+        state = State.CLOSED;
+        consecutiveFailures = 0;
+        probeInFlight = false;
+    }
+
+    /**
+     * @return the current state of the breaker
+     */
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * Adds or removes a listener informed when the breaker opens.
+     * @param add      whether to add or remove the listener
+     * @param listener the listener to add or remove
+     */
+    public void manageListener(boolean add, Listener listener) {
+        if (add && !listeners.contains(listener)) {
+            listeners.add(listener);
+        } else if (!add) {
+            listeners.remove(listener);
+        }
+    }
+
+    private boolean isEnabled() {
+        return properties.getCircuitBreakerFailureThreshold() > 0;
+    }
+}
@@ -0,0 +1,169 @@
+/*-
+ * #%L
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * %%
+ * Copyright (C) 2010 - 2022 CERN
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package cern.c2mon.daq.opcua.connection;
+
+import cern.c2mon.daq.opcua.config.AppConfigProperties;
+import cern.c2mon.daq.opcua.exceptions.OPCUAException;
+import lombok.extern.slf4j.Slf4j;
+import org.eclipse.milo.opcua.sdk.client.OpcUaClient;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A process-wide registry of {@link OpcUaClient}s which can be shared by several equipments connecting to the same
+ * server with the same security settings. A shared client is created on first use and disconnected when the last
+ * equipment releases it. The equipments share only the session: each equipment creates its own subscriptions on the
+ * client and is responsible for deleting them before releasing it.
+ */
+@Slf4j
+@Component
+public class ClientRegistry {
+
+    private final Map<List<Object>, SharedClient> clients = new HashMap<>();
+
+    /**
+     * Returns the client shared by all equipments connecting with the given settings, creating it if necessary, and
+     * increases its reference count.
+     * @param uri        the address of the server
+     * @param properties the settings of the equipment to connect with
+     * @param factory    creates a new client if no client with these settings is available
+     * @return the lease of the shared client, to be released once the equipment no longer uses the client
+     * @throws OPCUAException if no client was available and the factory failed to create one
+     */
+    public Lease acquire(String uri, AppConfigProperties properties, ClientFactory factory) throws OPCUAException {
+        final List<Object> key = keyOf(uri, properties);
+        final SharedClient shared;
+        synchronized (clients) {
+            shared = clients.computeIfAbsent(key, k -> new SharedClient());
+            shared.references++;
+        }
+        synchronized (shared) {
+            if (shared.client == null) {
+                try {
+                    log.info("Creating a new shared client for server {}.", uri);
+                    shared.client = factory.create();
+                } catch (OPCUAException | RuntimeException e) {
+                    release(key, shared);
+                    throw e;
+                }
+            } else {
+                log.info("Reusing the shared client for server {} with {} references.", uri, shared.references);
+            }
+            return new Lease(key, shared);
+        }
+    }
+
+    /**
+     * Decreases the reference count of the shared client and disconnects it if it is no longer referenced. The client
+     * is released with the settings it was acquired with, even if the properties of the equipment changed meanwhile. A
+     * lease is only released once.
+     * @param lease the lease returned when acquiring the client
+     */
+    public void release(Lease lease) {
+        if (lease.released.compareAndSet(false, true)) {
+            release(lease.key, lease.shared);
+        }
+    }
+
+    /**
+     * @param uri        the address of the server
+     * @param properties the settings the client was acquired with
+     * @return the number of equipments currently sharing the client, or 0 if there is no such client.
+     */
+    public int getReferences(String uri, AppConfigProperties properties) {
+        synchronized (clients) {
+            final SharedClient shared = clients.get(keyOf(uri, properties));
+            return shared == null ? 0 : shared.references;
+        }
+    }
+
+    private void release(List<Object> key, SharedClient shared) {
+        final OpcUaClient toDisconnect;
+        synchronized (clients) {
+            if (--shared.references > 0) {
+                return;
+            }
+            clients.remove(key);
+            toDisconnect = shared.client;
+        }
+        if (toDisconnect != null) {
+            log.info("Disconnecting the shared client for server {}, which is no longer in use.", key.get(0));
+            toDisconnect.disconnect();
+        }
+    }
+
+    /**
+     * Equipments may only share a client if all settings which affect the choice of endpoint, the security of the
+     * connection and the identity of the client are the same. Mutable settings are copied, so that the key does not
+     * change with the properties.
+     */
+    private static List<Object> keyOf(String uri, AppConfigProperties p) {
+        final AppConfigProperties.KeystoreConfig k = p.getKeystore();
+        final AppConfigProperties.PKIConfig pki = p.getPkiConfig();
+        return Arrays.asList(uri, p.isTrustAllServers(), p.getPkiBaseDir(),
+                p.getCertifierPriority() == null ? null : new HashMap<>(p.getCertifierPriority()),
+                p.getHostSubstitutionMode(), p.getPortSubstitutionMode(), p.getGlobalHostName(), p.getGlobalPort(),
+                p.getApplicationName(), p.getApplicationUri(),
+                k == null ? null : Arrays.asList(k.getType(), k.getPath(), k.getPassword(), k.getAlias()),
+                pki == null ? null : Arrays.asList(pki.getPrivateKeyPath(), pki.getCertificatePath()),
+                p.getRequestTimeout());
+    }
+
+    /**
+     * Creates a new client connected to the server.
+     */
+    @FunctionalInterface
+    public interface ClientFactory {
+        OpcUaClient create() throws OPCUAException;
+    }
+
+    /**
+     * A reference to a shared client held by an equipment.
+     */
+    public static final class Lease {
+        private final List<Object> key;
+        private final SharedClient shared;
+        private final AtomicBoolean released = new AtomicBoolean(false);
+
+        private Lease(List<Object> key, SharedClient shared) {
+            this.key = key;
+            this.shared = shared;
+        }
+
+        /**
+         * @return the shared client
+         */
+        public OpcUaClient getClient() {
+            return shared.client;
+        }
+    }
+
+    private static class SharedClient {
+        private OpcUaClient client;
+        private int references;
+    }
+}
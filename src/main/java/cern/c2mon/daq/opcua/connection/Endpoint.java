@@ -59,6 +59,14 @@ public interface Endpoint {
      */
     void manageSessionActivityListener (boolean add, SessionActivityListener listener);
 
+    /**
+     * Adds or removes {@link CircuitBreaker.Listener}s informed when calls to the server are suspended due to repeated
+     * failures.
+     * @param add      whether to add or remove a listener.
+     * @param listener the listener to add or to remove.
+     */
+    void manageCircuitBreakerListener (boolean add, CircuitBreaker.Listener listener);
+
     /**
      * If active, the {@link MessageSender} will be informed of changes to a Session's activation status.
      * @param active whether or not to inform the {@link MessageSender} of changes to a Session's activation status.
@@ -76,6 +84,21 @@ public interface Endpoint {
      */
     void disconnect ();
 
+    /**
+     * Opens a secure channel to the server at the given address without activating a session. A subsequent call to
+     * initialize(uri) with the same address reuses the secure channel and only needs to activate a session. If the
+     * endpoint already holds a standby connection to the same address, the channel is reconnected only if it has been
+     * closed in the meantime. A standby connection to a different address is closed.
+     * @param uri the address of the standby server.
+     * @throws OPCUAException if no secure channel could be opened to the server.
+     */
+    void prepareStandby (String uri) throws OPCUAException;
+
+    /**
+     * Closes the secure channel of a standby connection opened through prepareStandby(uri), if any.
+     */
+    void releaseStandby ();
+
     /**
      * Add a list of item definitions as monitored items to a subscription and apply the default callback.
      * @param group       The {@link SubscriptionGroup} to add the {@link ItemDefinition}s to
@@ -107,11 +130,31 @@ public interface Endpoint {
     /**
      * Delete a monitored item from an OPC UA subscription.
      * @param clientHandle    the identifier of the monitored item to remove.
-     * @param publishInterval the publishInterval of the subscription to remove the monitored item from.
+     * @param publishInterval the publishInterval of the subscription to remove the monitored item from, or the time
+     *                        deadband of the item's tag, which maps onto the publishInterval of its subscription.
      * @return whether the monitored item could be removed successfully
      */
     boolean deleteItemFromSubscription (int clientHandle, int publishInterval);
 
+    /**
+     * Delete several monitored items from an OPC UA subscription with as few requests as possible.
+     * @param clientHandles   the identifiers of the monitored items to remove.
+     * @param publishInterval the publishInterval of the subscription to remove the monitored items from, or the time
+     *                        deadband of the items' tags, which maps onto the publishInterval of their subscription.
+     * @return the client handles of the monitored items, and whether each could be removed successfully
+     */
+    Map<Integer, Boolean> deleteItemsFromSubscription (Collection<Integer> clientHandles, int publishInterval);
+
+    /**
+     * Apply changed deadbands to existing monitored items in place, without recreating them. The sampling interval and
+     * value deadband of each item are set anew from its definition. Items shared with other tags are not modified.
+     * @param definitions     the definitions holding the new deadbands, with the client handles of the existing items.
+     * @param publishInterval the publishInterval of the subscription holding the monitored items, or the time deadband
+     *                        of the items' tags, which maps onto the publishInterval of their subscription.
+     * @return the client handles of the monitored items, and whether each could be modified successfully
+     */
+    Map<Integer, Boolean> modifyItemsInSubscription (Collection<ItemDefinition> definitions, int publishInterval);
+
     /**
      * Read the current value from a node on the currently connected OPC UA server
      * @param nodeId the nodeId of the node whose value to read.
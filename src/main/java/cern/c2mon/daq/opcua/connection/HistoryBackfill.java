@@ -0,0 +1,166 @@
+/*-
+ * #%L
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * %%
+ * Copyright (C) 2010 - 2022 CERN
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package cern.c2mon.daq.opcua.connection;
+
+import cern.c2mon.daq.opcua.MessageSender;
+import cern.c2mon.daq.opcua.config.AppConfigProperties;
+import cern.c2mon.daq.opcua.mapping.ItemDefinition;
+import com.google.common.collect.Lists;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.eclipse.milo.opcua.sdk.client.OpcUaClient;
+import org.eclipse.milo.opcua.stack.core.types.builtin.ByteString;
+import org.eclipse.milo.opcua.stack.core.types.builtin.DataValue;
+import org.eclipse.milo.opcua.stack.core.types.builtin.DateTime;
+import org.eclipse.milo.opcua.stack.core.types.builtin.QualifiedName;
+import org.eclipse.milo.opcua.stack.core.types.enumerated.TimestampsToReturn;
+import org.eclipse.milo.opcua.stack.core.types.structured.HistoryData;
+import org.eclipse.milo.opcua.stack.core.types.structured.HistoryReadResult;
+import org.eclipse.milo.opcua.stack.core.types.structured.HistoryReadValueId;
+import org.eclipse.milo.opcua.stack.core.types.structured.ReadRawModifiedDetails;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.eclipse.milo.opcua.stack.core.types.builtin.unsigned.Unsigned.uint;
+
+/**
+ * Reads the values that changed while the connection to a server was interrupted from the server's history and passes
+ * them on to the {@link MessageSender} in the order of their timestamps. The nodes are read in batches through
+ * HistoryReadRaw requests, following continuation points, with at most the configured number of requests in progress
+ * at a time. Nodes for which the server does not keep a history are skipped.
+ */
+@Slf4j
+@RequiredArgsConstructor
+public class HistoryBackfill {
+
+    private final AppConfigProperties properties;
+    private final MessageSender messageSender;
+
+    /**
+     * Read the history of the given tags in between the two instants, and pass the values on to the {@link
+     * MessageSender} once all batches have been read. The window is restricted to the configured maxBackfillWindow
+     * before the end of the gap.
+     * @param client the client connected to the server to read the history from
+     * @param tags   the definitions of the tags to backfill by tag ID
+     * @param from   the start of the gap in milliseconds since epoch
+     * @param to     the end of the gap in milliseconds since epoch
+     * @return a future completing with the number of values passed on to the {@link MessageSender}. Failed batches are
+     * logged and skipped, so that the future does not complete exceptionally.
+     */
+    public CompletableFuture<Integer> backfill(OpcUaClient client, Map<Long, ItemDefinition> tags, long from, long to) {
+        final long start = Math.max(from, to - properties.getMaxBackfillWindow());
+        if (start > from) {
+            log.info("The connection was interrupted for {} ms, only backfilling the last {} ms.", to - from, to - start);
+        }
+        if (tags.isEmpty() || start >= to) {
+            return CompletableFuture.completedFuture(0);
+        }
+        final ReadRawModifiedDetails details = new ReadRawModifiedDetails(false,
+                new DateTime(new Date(start)), new DateTime(new Date(to)),
+                uint(properties.getBackfillValuesPerNode()), false);
+        final Queue<List<Map.Entry<Long, ItemDefinition>>> batches = new ConcurrentLinkedQueue<>(
+                Lists.partition(new ArrayList<>(tags.entrySet()), Math.max(1, properties.getBackfillBatchSize())));
+        final Queue<Map.Entry<Long, DataValue>> values = new ConcurrentLinkedQueue<>();
+        final CompletableFuture<?>[] workers = IntStream.range(0, Math.max(1, properties.getBackfillConcurrency()))
+                .mapToObj(i -> readNextBatch(client, details, batches, values))
+                .toArray(CompletableFuture[]::new);
+        return CompletableFuture.allOf(workers).thenApply(v -> deliver(values));
+    }
+
+    private CompletableFuture<Void> readNextBatch(OpcUaClient client, ReadRawModifiedDetails details,
+                                                  Queue<List<Map.Entry<Long, ItemDefinition>>> batches,
+                                                  Queue<Map.Entry<Long, DataValue>> values) {
+        final List<Map.Entry<Long, ItemDefinition>> batch = batches.poll();
+        if (batch == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        final List<Long> tagIds = batch.stream().map(Map.Entry::getKey).collect(Collectors.toList());
+        final List<HistoryReadValueId> ids = batch.stream()
+                .map(e -> new HistoryReadValueId(e.getValue().getNodeId(), null, QualifiedName.NULL_VALUE, ByteString.NULL_VALUE))
+                .collect(Collectors.toList());
+        return read(client, details, tagIds, ids, values)
+                .exceptionally(e -> {
+                    log.info("Could not read the history of tags with IDs {}, skipping.", tagIds, e);
+                    return null;
+                })
+                .thenCompose(v -> readNextBatch(client, details, batches, values));
+    }
+
+    private CompletableFuture<Void> read(OpcUaClient client, ReadRawModifiedDetails details, List<Long> tagIds,
+                                         List<HistoryReadValueId> ids, Queue<Map.Entry<Long, DataValue>> values) {
+        return client.historyRead(details, TimestampsToReturn.Both, false, ids).thenCompose(response -> {
+            final HistoryReadResult[] results = response.getResults();
+            final List<Long> nextTagIds = new ArrayList<>();
+            final List<HistoryReadValueId> nextIds = new ArrayList<>();
+            for (int i = 0; results != null && i < results.length; i++) {
+                final HistoryReadResult result = results[i];
+                if (result.getStatusCode().isBad() || result.getHistoryData() == null) {
+                    log.debug("No history for tag with ID {}: {}", tagIds.get(i), result.getStatusCode());
+                    continue;
+                }
+                final HistoryData data = (HistoryData) result.getHistoryData().decode(client.getSerializationContext());
+                if (data.getDataValues() != null) {
+                    for (DataValue value : data.getDataValues()) {
+                        values.add(new AbstractMap.SimpleEntry<>(tagIds.get(i), value));
+                    }
+                }
+                final ByteString continuationPoint = result.getContinuationPoint();
+                if (continuationPoint != null && continuationPoint.isNotNull()) {
+                    nextTagIds.add(tagIds.get(i));
+                    nextIds.add(new HistoryReadValueId(ids.get(i).getNodeId(), null, QualifiedName.NULL_VALUE, continuationPoint));
+                }
+            }
+            return nextIds.isEmpty()
+                    ? CompletableFuture.completedFuture(null)
+                    : read(client, details, nextTagIds, nextIds, values);
+        });
+    }
+
+    private int deliver(Collection<Map.Entry<Long, DataValue>> values) {
+        final List<Map.Entry<Long, DataValue>> sorted = values.stream()
+                .sorted(Comparator.comparingLong(e -> timestampOf(e.getValue())))
+                .collect(Collectors.toList());
+        for (Map.Entry<Long, DataValue> e : sorted) {
+            messageSender.onValueUpdate(e.getKey(),
+                    MiloMapper.getDataTagQuality(e.getValue().getStatusCode()),
+                    MiloMapper.toValueUpdate(e.getValue(), properties.getTimeRecordMode()));
+        }
+        log.info("Backfilled {} values.", sorted.size());
+        return sorted.size();
+    }
+
+    private static long timestampOf(DataValue value) {
+        final DateTime time = value.getSourceTime() != null ? value.getSourceTime() : value.getServerTime();
+        return time == null ? 0L : time.getJavaTime();
+    }
+}
@@ -24,6 +24,7 @@ package cern.c2mon.daq.opcua.connection;
 import static cern.c2mon.daq.opcua.MessageSender.EquipmentState.CONNECTION_LOST;
 import static cern.c2mon.daq.opcua.MessageSender.EquipmentState.OK;
 import static cern.c2mon.daq.opcua.exceptions.ExceptionContext.BROWSE;
+import static cern.c2mon.daq.opcua.exceptions.ExceptionContext.CIRCUIT_OPEN;
 import static cern.c2mon.daq.opcua.exceptions.ExceptionContext.CONNECT;
 import static cern.c2mon.daq.opcua.exceptions.ExceptionContext.CREATE_MONITORED_ITEM;
 import static cern.c2mon.daq.opcua.exceptions.ExceptionContext.CREATE_SUBSCRIPTION;
@@ -31,26 +32,40 @@ import static cern.c2mon.daq.opcua.exceptions.ExceptionContext.DELETE_MONITORED_
 import static cern.c2mon.daq.opcua.exceptions.ExceptionContext.DELETE_SUBSCRIPTION;
 import static cern.c2mon.daq.opcua.exceptions.ExceptionContext.DISCONNECT;
 import static cern.c2mon.daq.opcua.exceptions.ExceptionContext.METHOD;
+import static cern.c2mon.daq.opcua.exceptions.ExceptionContext.MODIFY_MONITORED_ITEM;
 import static cern.c2mon.daq.opcua.exceptions.ExceptionContext.OBJ_INVALID;
 import static cern.c2mon.daq.opcua.exceptions.ExceptionContext.READ;
 import static cern.c2mon.daq.opcua.exceptions.ExceptionContext.SERVER_NODE;
 import static cern.c2mon.daq.opcua.exceptions.ExceptionContext.WRITE;
+import static java.util.stream.Collectors.counting;
+import static java.util.stream.Collectors.groupingBy;
 import static java.util.stream.Collectors.toList;
 import static java.util.stream.Collectors.toMap;
+import static org.eclipse.milo.opcua.stack.core.types.builtin.unsigned.Unsigned.ubyte;
 import static org.eclipse.milo.opcua.stack.core.types.builtin.unsigned.Unsigned.uint;
 
 import java.util.AbstractMap;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
+import java.util.function.IntPredicate;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
@@ -67,6 +82,7 @@ import org.eclipse.milo.opcua.stack.core.AttributeId;
 import org.eclipse.milo.opcua.stack.core.Identifiers;
 import org.eclipse.milo.opcua.stack.core.StatusCodes;
 import org.eclipse.milo.opcua.stack.core.types.builtin.DataValue;
+import org.eclipse.milo.opcua.stack.core.types.builtin.DateTime;
 import org.eclipse.milo.opcua.stack.core.types.builtin.ExtensionObject;
 import org.eclipse.milo.opcua.stack.core.types.builtin.NodeId;
 import org.eclipse.milo.opcua.stack.core.types.builtin.QualifiedName;
@@ -87,14 +103,14 @@ import org.eclipse.milo.opcua.stack.core.types.structured.CallMethodResult;
 import org.eclipse.milo.opcua.stack.core.types.structured.DataChangeFilter;
 import org.eclipse.milo.opcua.stack.core.types.structured.EndpointDescription;
 import org.eclipse.milo.opcua.stack.core.types.structured.MonitoredItemCreateRequest;
+import org.eclipse.milo.opcua.stack.core.types.structured.MonitoredItemModifyRequest;
 import org.eclipse.milo.opcua.stack.core.types.structured.MonitoringParameters;
 import org.eclipse.milo.opcua.stack.core.types.structured.ReadValueId;
+import org.springframework.context.annotation.Primary;
 import org.springframework.context.annotation.Scope;
+import org.springframework.retry.support.RetryTemplate;
 import org.springframework.stereotype.Component;
 
-import com.google.common.collect.BiMap;
-import com.google.common.collect.HashBiMap;
-
 import cern.c2mon.daq.opcua.MessageSender;
 import cern.c2mon.daq.opcua.OPCUANameSpaceIndex;
 import cern.c2mon.daq.opcua.config.AppConfig;
@@ -108,13 +124,19 @@ import cern.c2mon.daq.opcua.exceptions.OPCUAException;
 import cern.c2mon.daq.opcua.mapping.ItemDefinition;
 import cern.c2mon.daq.opcua.mapping.SubscriptionGroup;
 import cern.c2mon.daq.opcua.mapping.TagSubscriptionReader;
+import cern.c2mon.daq.opcua.metrics.FailoverTimeline;
+import cern.c2mon.daq.opcua.metrics.MetricProxy;
+import cern.c2mon.daq.opcua.metrics.events.ServiceAttemptEvent;
+import cern.c2mon.daq.opcua.metrics.events.ServiceCallEvent;
+import cern.c2mon.daq.opcua.metrics.events.SubscriptionRecreationEvent;
+import cern.c2mon.daq.opcua.metrics.events.ValueDeliveryEvent;
+import cern.c2mon.daq.opcua.scope.EquipmentScheduler;
 import cern.c2mon.daq.tools.equipmentexceptions.EqIOException;
 import cern.c2mon.shared.common.datatag.SourceDataTagQuality;
 import cern.c2mon.shared.common.datatag.ValueUpdate;
 import cern.c2mon.shared.common.datatag.util.SourceDataTagQualityCode;
 import io.micrometer.core.annotation.Timed;
 import lombok.Getter;
-import lombok.RequiredArgsConstructor;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 
@@ -130,8 +152,8 @@ import lombok.extern.slf4j.Slf4j;
  * process of an endpoint that has been disconnected.
  */
 @Slf4j
-@RequiredArgsConstructor
 @Component
+@Primary
 @Scope("prototype")
 public class MiloEndpoint implements Endpoint, SessionActivityListener, UaSubscriptionManager.SubscriptionListener {
 
@@ -142,23 +164,111 @@ public class MiloEndpoint implements Endpoint, SessionActivityListener, UaSubscr
      * the endpoint has been stopped.
      */
     private final AtomicLong disconnectedOn = new AtomicLong(0);
+
+    /**
+     * The instant in milliseconds since epoch since which value updates may have been missed, or 0 if there is no gap
+     * to backfill. Only interruptions of the endpoint that is currently updating the equipment state are considered.
+     */
+    private final AtomicLong gapStart = new AtomicLong(0);
     private final SecurityModule securityModule;
     private final TagSubscriptionReader mapper;
     private final MessageSender messageSender;
     private final AppConfigProperties properties;
     private final AppConfig config;
+    private final MetricProxy metricProxy;
+    private final ClientRegistry clientRegistry;
+    private final EquipmentScheduler scheduler;
 
-    private final BiMap<Integer, UaSubscription> subscriptionMap = HashBiMap.create();
+    private final SubscriptionPartitions subscriptions = new SubscriptionPartitions();
     private final Collection<SessionActivityListener> sessionActivityListeners = new ArrayList<>();
+    private final MonitoredItemFanOut fanOut = new MonitoredItemFanOut();
+
+    /**
+     * A client to a standby server with an open secure channel but without session, and the address of that server.
+     */
+    private final AtomicReference<Map.Entry<String, OpcUaClient>> standby = new AtomicReference<>();
     private OpcUaClient client;
     private boolean updateEquipmentStateOnSessionChanges;
 
+    /**
+     * Whether the client is shared with other equipments through the {@link ClientRegistry}.
+     */
+    private boolean sharedClient;
+
+    /**
+     * The lease of the shared client, released with the settings the client was acquired with. Releasing is
+     * idempotent, so that disconnecting twice does not release the client of another equipment.
+     */
+    private ClientRegistry.Lease lease;
+
+    private final AdaptiveTimeoutPolicy timeoutPolicy;
+    private volatile RetryTemplate retryTemplate;
+    private final CircuitBreaker circuitBreaker;
+    private final SubscriptionTuner subscriptionTuner;
+    private final PublishPipeline publishPipeline;
+    private final SamplingPolicy samplingPolicy;
+    private final TimeDeadbandFilter deadbandFilter;
+
     @Getter
     private String uri;
 
     @Setter
     private MonitoringMode mode = MonitoringMode.Reporting;
 
+    /**
+     * Restricts the monitored items which are recreated on reconnection and backfilled to those whose client handle
+     * matches. Used when the tags of an equipment are spread over several sessions by a {@link ShardedEndpoint}.
+     */
+    @Setter
+    private IntPredicate handleFilter = h -> true;
+
+    /**
+     * Whether changes to the session state are reported to the {@link MessageSender} as equipment state. Disabled
+     * when the equipment state is aggregated over several sessions by a {@link ShardedEndpoint}.
+     */
+    @Setter
+    private boolean reportEquipmentState = true;
+
+    /**
+     * The index of the session among the sessions of the equipment, which is added as tag to the metrics of the
+     * endpoint. Set by the {@link ShardedEndpoint} so that the metrics of its sessions are recorded separately.
+     */
+    @Setter
+    private int session;
+
+    /**
+     * Creates a new endpoint. The policies guarding the service calls and tracking the subscriptions are created
+     * eagerly, so that they can be used without synchronization.
+     * 
+     * @param securityModule the module establishing a secure connection to the server
+     * @param mapper         the mapper of DataTags to subscriptions
+     * @param messageSender  the sender of value updates and equipment state changes to the DAQ core
+     * @param properties     the application properties
+     * @param config         the application configuration providing the retry templates
+     * @param metricProxy    the metric proxy of the equipment
+     * @param clientRegistry the registry of clients shared by several equipments
+     * @param scheduler      the scheduler of the equipment
+     */
+    public MiloEndpoint(SecurityModule securityModule, TagSubscriptionReader mapper, MessageSender messageSender,
+            AppConfigProperties properties, AppConfig config, MetricProxy metricProxy, ClientRegistry clientRegistry,
+            EquipmentScheduler scheduler) {
+        this.securityModule = securityModule;
+        this.mapper = mapper;
+        this.messageSender = messageSender;
+        this.properties = properties;
+        this.config = config;
+        this.metricProxy = metricProxy;
+        this.clientRegistry = clientRegistry;
+        this.scheduler = scheduler;
+        this.timeoutPolicy = new AdaptiveTimeoutPolicy(properties);
+        this.retryTemplate = createRetryTemplate();
+        this.circuitBreaker = new CircuitBreaker(properties);
+        this.subscriptionTuner = new SubscriptionTuner(properties);
+        this.publishPipeline = new PublishPipeline(properties);
+        this.samplingPolicy = new SamplingPolicy(properties);
+        this.deadbandFilter = new TimeDeadbandFilter(scheduler);
+    }
+
     /**
      * Connects to a server through the Milo OPC UA SDK. Discover available endpoints and select the most secure one in
      * line with configuration options.
@@ -175,9 +285,20 @@ public class MiloEndpoint implements Endpoint, SessionActivityListener, UaSubscr
         log.info("Initializing Endpoint at {}", uri);
         disconnectedOn.set(0);
         this.uri = uri;
-        final Collection<EndpointDescription> endpoints = processSupplier(CONNECT,
-                () -> DiscoveryClient.getEndpoints(uri));
-        client = securityModule.createClient(uri, endpoints);
+        // registering is idempotent, the session is only known once the endpoint is initialized
+        metricProxy.registerAdaptiveTimeout(timeoutPolicy, session);
+        metricProxy.registerCircuitBreaker(circuitBreaker, session);
+        metricProxy.registerPublishPipeline(publishPipeline, session);
+        metricProxy.resetTagMetricSettings();
+        circuitBreaker.reset();
+        // sessions are not shared if the equipment spreads its tags over several sessions of its own
+        sharedClient = properties.isShareSessions() && properties.getSessionShards() <= 1;
+        if (sharedClient) {
+            lease = clientRegistry.acquire(uri, properties, () -> createClient(uri));
+            client = lease.getClient();
+        } else {
+            client = createClient(uri);
+        }
         client.addSessionActivityListener(this);
         sessionActivityListeners.add(this);
         final OpcUaSubscriptionManager subscriptionManager = client.getSubscriptionManager();
@@ -201,10 +322,18 @@ public class MiloEndpoint implements Endpoint, SessionActivityListener, UaSubscr
         }
     }
 
+    @Override
+    public void manageCircuitBreakerListener(boolean add, CircuitBreaker.Listener listener) {
+        circuitBreaker.manageListener(add, listener);
+    }
+
     @Override
     public void setUpdateEquipmentStateOnSessionChanges(boolean active) {
+        if (!active && updateEquipmentStateOnSessionChanges) {
+            markGap();
+        }
         updateEquipmentStateOnSessionChanges = active;
-        if (active && disconnectedOn.get() <= 1L) {
+        if (active && reportEquipmentState && disconnectedOn.get() <= 1L) {
             messageSender.onEquipmentStateUpdate(OK);
         }
     }
@@ -212,12 +341,21 @@ public class MiloEndpoint implements Endpoint, SessionActivityListener, UaSubscr
     @Override
     public void disconnect() {
         log.info("Disconnecting endpoint at {}", uri);
-        if (client != null) {
+        if (updateEquipmentStateOnSessionChanges) {
+            markGap();
+        }
+        if (client != null && sharedClient) {
+            client.getSubscriptionManager().removeSubscriptionListener(this);
+            sessionActivityListeners.forEach(l -> client.removeSessionActivityListener(l));
+            deleteOwnSubscriptions();
+            clientRegistry.release(lease);
+        } else if (client != null) {
             try {
                 client.getSubscriptionManager().clearSubscriptions();
                 client.getSubscriptionManager().removeSubscriptionListener(this);
                 sessionActivityListeners.forEach(l -> client.removeSessionActivityListener(l));
-                retryOnConnection(DISCONNECT, client::disconnect);
+                // the session is closed even if the circuit breaker is open, which is what triggers a failover
+                processSupplier(DISCONNECT, client::disconnect);
             } catch (OPCUAException ex) {
                 log.debug("Disconnection failed with exception: ", ex);
                 log.error("Error disconnecting from endpoint with uri {}: ", uri);
@@ -226,21 +364,84 @@ public class MiloEndpoint implements Endpoint, SessionActivityListener, UaSubscr
             log.info("Client not connected, skipping disconnection attempt.");
         }
         sessionActivityListeners.clear();
-        subscriptionMap.clear();
+        subscriptions.clear();
+        fanOut.clear();
+        deadbandFilter.clear();
         disconnectedOn.set(-1);
         updateEquipmentStateOnSessionChanges = false;
+        // the retry properties are read when connecting, a reconfiguration applies them on the next connection
+        retryTemplate = createRetryTemplate();
         log.info("Completed disconnecting endpoint {}", uri);
     }
 
+    @Override
+    public void prepareStandby(String uri) throws OPCUAException {
+        final Map.Entry<String, OpcUaClient> current = standby.get();
+        if (current != null && current.getKey().equals(uri)) {
+            try {
+                // returns immediately if the secure channel is still open
+                processSupplier(CONNECT, () -> current.getValue().getStackClient().connect());
+                return;
+            } catch (OPCUAException e) {
+                releaseStandby();
+                throw e;
+            }
+        }
+        log.info("Preparing standby connection to {}.", uri);
+        final Collection<EndpointDescription> endpoints = processSupplier(CONNECT,
+                () -> DiscoveryClient.getEndpoints(uri));
+        final OpcUaClient standbyClient = securityModule.createStandbyClient(uri, endpoints, maxPendingPublishRequests());
+        final Map.Entry<String, OpcUaClient> previous = standby
+                .getAndSet(new AbstractMap.SimpleImmutableEntry<>(uri, standbyClient));
+        if (previous != null) {
+            previous.getValue().disconnect();
+        }
+    }
+
+    @Override
+    public void releaseStandby() {
+        final Map.Entry<String, OpcUaClient> previous = standby.getAndSet(null);
+        if (previous != null) {
+            log.info("Closing standby connection to {}.", previous.getKey());
+            previous.getValue().disconnect();
+        }
+    }
+
     @Override
     public Map<Integer, SourceDataTagQuality> subscribe(SubscriptionGroup group, Collection<ItemDefinition> definitions)
             throws OPCUAException {
+        return subscribe(group, definitions, this::defaultSubscriptionCallback);
+    }
+
+    private Map<Integer, SourceDataTagQuality> subscribe(SubscriptionGroup group,
+            Collection<ItemDefinition> definitions, Consumer<UaMonitoredItem> itemCreationCallback)
+            throws OPCUAException {
+        MonitoredItemFanOut.Attachment attachment = null;
+        // registered before the items are created, so that their first values are already throttled
+        definitions.forEach(d -> throttle(d, group.getPublishInterval()));
         try {
             log.info("Subscribing definitions with publishing interval {}.", group.getPublishInterval());
-            return subscribeWithCallback(group.getPublishInterval(), definitions, this::defaultSubscriptionCallback);
+            if (!properties.isDeduplicateMonitoredItems()) {
+                return subscribeWithCallback(group.getPublishInterval(), definitions, itemCreationCallback);
+            }
+            // a newly created subscription must not inherit the monitored items of its predecessor
+            pruneSubscriptions(group.getPublishInterval());
+            attachment = fanOut.attach(group.getPublishInterval(), definitions);
+            final Map<Integer, SourceDataTagQuality> qualities = new HashMap<>(attachment.getCreate().isEmpty()
+                    ? Collections.emptyMap()
+                    : subscribeWithCallback(group.getPublishInterval(), attachment.getCreate(), itemCreationCallback));
+            fanOut.drop(qualities.entrySet().stream()
+                    .filter(e -> !e.getValue().isValid())
+                    .map(Map.Entry::getKey)
+                    .collect(toList()));
+            attachment.getFollowers().forEach((handle, item) -> qualities.put(handle,
+                    qualities.getOrDefault(item, new SourceDataTagQuality(SourceDataTagQualityCode.OK))));
+            return qualities;
         } catch (ConfigurationException | EndpointDisconnectedException e) {
+            dropCreated(attachment);
             throw e;
         } catch (OPCUAException e) {
+            dropCreated(attachment);
             final String ids = definitions.stream().map(d -> mapper.getTagId(d.getClientHandle()).toString())
                     .collect(Collectors.joining(", "));
             log.error("Tags with IDs {} could not be subscribed on endpoint with uri {}. ", ids, getUri(), e);
@@ -251,91 +452,222 @@ public class MiloEndpoint implements Endpoint, SessionActivityListener, UaSubscr
         }
     }
 
+    private void dropCreated(MonitoredItemFanOut.Attachment attachment) {
+        if (attachment != null) {
+            fanOut.drop(attachment.getCreate().stream().map(ItemDefinition::getClientHandle).collect(toList()));
+        }
+    }
+
+    /**
+     * Recreates the subscriptions in the order given by the {@link ResubscriptionScheduler}, so that the values of the
+     * most critical subscriptions are received first. The time until the first value of each priority class is
+     * recorded.
+     */
     @Override
     public void recreateAllSubscriptions() throws CommunicationException {
-        final Collection<SubscriptionGroup> groups = mapper.getGroups().stream().filter(g -> g.size() > 0)
-                .collect(toList());
-        boolean anySuccess = groups.isEmpty();
-        for (SubscriptionGroup group : groups) {
+        final SubscriptionRecreationEvent event = new SubscriptionRecreationEvent();
+        event.begin();
+        final long start = System.nanoTime();
+        final long gap = takeGap();
+        final List<ResubscriptionScheduler.Chunk> chunks = new ResubscriptionScheduler(properties)
+                .schedule(mapper.getGroups(), handleFilter);
+        final int nodeCount = chunks.stream().mapToInt(c -> c.getDefinitions().size()).sum();
+        final Map<String, AtomicBoolean> awaitingFirstValue = new ConcurrentHashMap<>();
+        boolean anySuccess = chunks.isEmpty();
+        for (ResubscriptionScheduler.Chunk chunk : chunks) {
+            final String priorityClass = chunk.getPriorityClass();
+            final AtomicBoolean awaiting = awaitingFirstValue.computeIfAbsent(priorityClass,
+                    k -> new AtomicBoolean(true));
+            final Runnable onValue = () -> {
+                if (awaiting.get() && awaiting.compareAndSet(true, false)) {
+                    metricProxy.recordResubscriptionFirstValue(priorityClass, System.nanoTime() - start);
+                }
+            };
             try {
                 // if at least one group could be subscribed, the operation is considered to have been a success.
-                anySuccess = anySuccess || resubscribeGroupsAndReportSuccess(group);
+                anySuccess = resubscribeAndReportSuccess(chunk.getGroup(), chunk.getDefinitions(),
+                        item -> subscriptionCallback(item, onValue)) || anySuccess;
             } catch (EndpointDisconnectedException e) {
                 log.debug("Failed with exception: ", e);
                 log.info("Session was closed, abort subscription recreation process.");
+                restoreGap(gap);
+                event.complete(metricProxy.getEquipmentName(), 0, nodeCount, false);
                 return;
             } catch (OPCUAException e) {
-                log.info("Could not resubscribe group with time Deadband {}.", group.getPublishInterval(), e);
+                log.info("Could not resubscribe group with time Deadband {}.", chunk.getGroup().getPublishInterval(), e);
             }
         }
         if (!anySuccess) {
             log.error("Could not recreate any subscriptions. Connect to next server... ");
+            restoreGap(gap);
+            event.complete(metricProxy.getEquipmentName(), 0, nodeCount, false);
             throw new CommunicationException(ExceptionContext.NO_REDUNDANT_SERVER);
         }
+        metricProxy.recordFailoverPhase(FailoverTimeline.Phase.RESUBSCRIBE, System.nanoTime() - start);
+        event.complete(metricProxy.getEquipmentName(), 0, nodeCount, true);
         log.info("Recreated subscriptions on server {}.", uri);
+        backfill(gap);
     }
 
+    /**
+     * Creates monitored items for the definitions in the subscriptions with the publishing interval. If
+     * maxItemsPerSubscription is set, the items are spread over as many partitions as needed to stay within the limit.
+     */
+    @Override
     public Map<Integer, SourceDataTagQuality> subscribeWithCallback(int publishingInterval,
             Collection<ItemDefinition> definitions, Consumer<UaMonitoredItem> itemCreationCallback)
             throws OPCUAException {
-        UaSubscription subscription = getOrCreateSubscription(publishingInterval);
-        List<MonitoredItemCreateRequest> requests = definitions.stream().map(this::toMonitoredItemCreateRequest)
+        return recordServiceCall(CREATE_MONITORED_ITEM, definitions.size(),
+                () -> subscribeInPartitions(publishingInterval, definitions, itemCreationCallback));
+    }
+
+    private Map<Integer, SourceDataTagQuality> subscribeInPartitions(int publishingInterval,
+            Collection<ItemDefinition> definitions, Consumer<UaMonitoredItem> itemCreationCallback)
+            throws OPCUAException {
+        pruneSubscriptions(publishingInterval);
+        final Map<Integer, Integer> plan = SubscriptionPartitions.distribute(subscriptions.sizes(publishingInterval),
+                definitions.size(), properties.getMaxItemsPerSubscription());
+        final Iterator<ItemDefinition> remaining = definitions.iterator();
+        final Map<Integer, SourceDataTagQuality> qualities = new HashMap<>();
+        for (Map.Entry<Integer, Integer> e : plan.entrySet()) {
+            final List<ItemDefinition> partitionDefinitions = new ArrayList<>(e.getValue());
+            while (partitionDefinitions.size() < e.getValue()) {
+                partitionDefinitions.add(remaining.next());
+            }
+            qualities.putAll(createMonitoredItems(publishingInterval, e.getKey(), partitionDefinitions,
+                    itemCreationCallback));
+        }
+        return qualities;
+    }
+
+    private Map<Integer, SourceDataTagQuality> createMonitoredItems(int publishingInterval, int partition,
+            Collection<ItemDefinition> definitions, Consumer<UaMonitoredItem> itemCreationCallback)
+            throws OPCUAException {
+        UaSubscription subscription = getOrCreateSubscription(publishingInterval, partition);
+        List<MonitoredItemCreateRequest> requests = definitions.stream()
+                .map(d -> toMonitoredItemCreateRequest(d, publishingInterval))
                 .collect(toList());
-        return retryOnConnection(CREATE_MONITORED_ITEM,
+        final List<UaMonitoredItem> items = retryOnConnection(CREATE_MONITORED_ITEM,
                 () -> subscription.createMonitoredItems(TimestampsToReturn.Both, requests,
-                        (item, i) -> itemCreationCallback.accept(item))).stream()
-                                .collect(toMap(i -> i.getClientHandle().intValue(),
-                                        i -> MiloMapper.getDataTagQuality(i.getStatusCode())));
+                        (item, i) -> {
+                            onSamplingIntervalRevised(item, requests.get(i), publishingInterval);
+                            itemCreationCallback.accept(item);
+                        }));
+        subscriptions.index(subscription, items.stream()
+                .filter(i -> i.getStatusCode() != null && i.getStatusCode().isGood())
+                .collect(toList()));
+        return items.stream().collect(toMap(i -> i.getClientHandle().intValue(),
+                i -> MiloMapper.getDataTagQuality(i.getStatusCode())));
+    }
+
+    @Override
+    public boolean deleteItemFromSubscription(int tagHandle, int timeDeadband) {
+        return deleteItemsFromSubscription(Collections.singletonList(tagHandle), timeDeadband)
+                .getOrDefault(tagHandle, false);
     }
 
+    /**
+     * Deletes the monitored items of the tags with a single request per partition of the subscriptions with the
+     * publishing interval. A partition is deleted as a whole if none of its monitored items remain. Monitored items
+     * which are shared with other tags remain on the server.
+     */
     @Override
-    public boolean deleteItemFromSubscription(int clientHandle, int publishInterval) {
-        final UaSubscription subscription = subscriptionMap.get(publishInterval);
-        if (subscription == null) {
-            log.info("Item cannot be mapped to a subscription. Skipping deletion.");
-            return false;
+    public Map<Integer, Boolean> deleteItemsFromSubscription(Collection<Integer> tagHandles, int timeDeadband) {
+        final int publishInterval = mapper.getPublishInterval(timeDeadband);
+        final Map<Integer, UaSubscription> partitions = subscriptions.get(publishInterval);
+        final Map<Integer, Boolean> results = new HashMap<>();
+        if (partitions.isEmpty()) {
+            log.info("Items cannot be mapped to a subscription. Skipping deletion.");
+            tagHandles.forEach(h -> results.put(h, false));
+            return results;
         }
-        try {
-            if (subscription.getMonitoredItems().size() <= 1) {
-                deleteSubscription(publishInterval);
-                return true;
+        // the client handles of the monitored items to delete, mapped to the tags whose removal releases them
+        final Map<Integer, Integer> itemsToTags = new HashMap<>();
+        for (int tagHandle : tagHandles) {
+            deadbandFilter.forget(tagHandle);
+            final int itemHandle = fanOut.detach(tagHandle);
+            if (itemHandle < 0) {
+                results.put(tagHandle, true);
+            } else {
+                itemsToTags.put(itemHandle, tagHandle);
             }
-            List<UaMonitoredItem> itemsToRemove = subscription.getMonitoredItems().stream()
-                    .filter(i -> i.getClientHandle().intValue() == clientHandle).collect(toList());
-            final List<StatusCode> statusCodes = retryOnConnection(DELETE_MONITORED_ITEM,
-                    () -> subscription.deleteMonitoredItems(itemsToRemove));
-            return statusCodes.stream().allMatch(StatusCode::isGood);
-        } catch (OPCUAException ex) {
-            log.error("Tag with ID {} could not be completed successfully on endpoint {}.",
-                    mapper.getTagId(clientHandle), getUri(), ex);
-            return false;
         }
+        for (Map.Entry<Integer, List<UaMonitoredItem>> e : subscriptions.find(publishInterval, itemsToTags.keySet()).entrySet()) {
+            final List<UaMonitoredItem> items = e.getValue();
+            final List<Integer> handles = items.stream()
+                    .map(i -> itemsToTags.remove(i.getClientHandle().intValue()))
+                    .collect(toList());
+            final List<Boolean> deleted = deleteItems(publishInterval, e.getKey(), partitions.get(e.getKey()), items);
+            for (int i = 0; i < handles.size(); i++) {
+                results.put(handles.get(i), deleted.get(i));
+            }
+        }
+        // items unknown to all subscriptions don't need to be removed from the server
+        itemsToTags.values().forEach(h -> results.put(h, true));
+        return results;
     }
 
+    /**
+     * Modifies the monitored items with a single request per partition of the subscriptions with the publishing
+     * interval. Monitored items shared with other tags are left untouched, as their deadbands are not only determined
+     * by the given definitions.
+     */
     @Override
-    public Map.Entry<ValueUpdate, SourceDataTagQuality> read(NodeId nodeId) throws OPCUAException {
-        final DataValue value = retryOnConnection(READ, () -> client.readValue(0, TimestampsToReturn.Both, nodeId));
-        if (value == null) {
-            throw new ConfigurationException(READ);
+    public Map<Integer, Boolean> modifyItemsInSubscription(Collection<ItemDefinition> definitions, int timeDeadband) {
+        final int publishInterval = mapper.getPublishInterval(timeDeadband);
+        final Map<Integer, Boolean> results = new HashMap<>();
+        final Map<Integer, ItemDefinition> toModify = new HashMap<>();
+        for (ItemDefinition definition : definitions) {
+            // a tag without an item of its own follows the item of another tag
+            final int[] served = fanOut.tagHandles(definition.getClientHandle());
+            if (served != null ? served.length > 1 : fanOut.isTracked(definition.getClientHandle())) {
+                results.put(definition.getClientHandle(), false);
+            } else {
+                toModify.put(definition.getClientHandle(), definition);
+            }
+        }
+        final Map<Integer, UaSubscription> partitions = subscriptions.get(publishInterval);
+        for (Map.Entry<Integer, List<UaMonitoredItem>> e : subscriptions.find(publishInterval, toModify.keySet()).entrySet()) {
+            final List<UaMonitoredItem> items = e.getValue();
+            final List<Boolean> modified = modifyItems(publishInterval, partitions.get(e.getKey()), items, toModify);
+            for (int i = 0; i < items.size(); i++) {
+                final int handle = items.get(i).getClientHandle().intValue();
+                toModify.remove(handle);
+                results.put(handle, modified.get(i));
+            }
         }
-        return new AbstractMap.SimpleEntry<>(MiloMapper.toValueUpdate(value, properties.getTimeRecordMode()),
-                MiloMapper.getDataTagQuality(value.getStatusCode()));
+        // items unknown to all subscriptions cannot be modified
+        toModify.keySet().forEach(h -> results.put(h, false));
+        return results;
+    }
+
+    @Override
+    public Map.Entry<ValueUpdate, SourceDataTagQuality> read(NodeId nodeId) throws OPCUAException {
+        return recordServiceCall(READ, 1, () -> {
+            final DataValue value = retryOnConnection(READ, () -> client.readValue(0, TimestampsToReturn.Both, nodeId));
+            if (value == null) {
+                throw new ConfigurationException(READ);
+            }
+            return new AbstractMap.SimpleEntry<>(MiloMapper.toValueUpdate(value, properties.getTimeRecordMode()),
+                    MiloMapper.getDataTagQuality(value.getStatusCode()));
+        });
     }
 
     @Override
     public boolean write(NodeId nodeId, Object value) throws OPCUAException {
         // Many OPC UA Servers are unable to deal with StatusCode or DateTime, hence set to null
         DataValue dataValue = new DataValue(new Variant(value), null, null);
-        final StatusCode statusCode = retryOnConnection(WRITE, () -> client.writeValue(nodeId, dataValue));
+        final StatusCode statusCode = recordServiceCall(WRITE, 1,
+                () -> retryOnConnection(WRITE, () -> client.writeValue(nodeId, dataValue)));
         log.info("Writing value {} to node {} yielded status code {}.", value, nodeId, statusCode);
         return statusCode.isGood();
     }
 
     @Override
     public Map.Entry<Boolean, Object[]> callMethod(ItemDefinition definition, Object arg) throws OPCUAException {
-        return (definition.getMethodNodeId() == null)
+        return recordServiceCall(METHOD, 1, () -> (definition.getMethodNodeId() == null)
                 ? callMethod(getParentObjectNodeId(definition.getNodeId()), definition.getNodeId(), arg)
-                : callMethod(definition.getNodeId(), definition.getMethodNodeId(), arg);
+                : callMethod(definition.getNodeId(), definition.getMethodNodeId(), arg));
     }
 
     @Override
@@ -353,7 +685,10 @@ public class MiloEndpoint implements Endpoint, SessionActivityListener, UaSubscr
     public void onSessionActive(UaSession session) {
         log.info("Session activated");
         if (updateEquipmentStateOnSessionChanges) {
-            messageSender.onEquipmentStateUpdate(OK);
+            if (reportEquipmentState) {
+                messageSender.onEquipmentStateUpdate(OK);
+            }
+            backfill(takeGap());
         }
         disconnectedOn.getAndUpdate(l -> Math.min(l, 0L));
     }
@@ -367,7 +702,10 @@ public class MiloEndpoint implements Endpoint, SessionActivityListener, UaSubscr
     public void onSessionInactive(UaSession session) {
         log.info("Session deactivated");
         if (updateEquipmentStateOnSessionChanges) {
-            messageSender.onEquipmentStateUpdate(CONNECTION_LOST);
+            if (reportEquipmentState) {
+                messageSender.onEquipmentStateUpdate(CONNECTION_LOST);
+            }
+            markGap();
         }
         disconnectedOn.getAndUpdate(l -> l < 0 ? l : System.currentTimeMillis());
     }
@@ -384,12 +722,34 @@ public class MiloEndpoint implements Endpoint, SessionActivityListener, UaSubscr
      */
     @Override
     public void onStatusChanged(UaSubscription subscription, StatusCode status) {
+        if (!subscriptions.contains(subscription)) {
+            // the subscription belongs to another equipment sharing the client
+            return;
+        }
         log.info("onStatusChanged event for {} : StatusCode {}", subscription.toString(), status);
         if (status.isBad() && status.getValue() == StatusCodes.Bad_Timeout) {
             recreate(subscription);
         }
     }
 
+    /**
+     * Called when the sequence numbers of the publish responses of a subscription reveal that notifications were lost,
+     * and the server could no longer republish the missing notification messages. If backfill is enabled, the values
+     * of the tags of the subscription are read from the server's history since the last message received before the
+     * gap.
+     * 
+     * @param subscription the subscription whose notifications were lost
+     */
+    @Override
+    public void onNotificationDataLost(UaSubscription subscription) {
+        final Map.Entry<Integer, Integer> partition = subscriptions.locate(subscription);
+        if (partition != null) {
+            log.info("Notifications of the subscription with publish interval {} were lost.", partition.getKey());
+            final long lastPublishTime = publishPipeline.onSequenceGap(partition.getKey(), partition.getValue());
+            backfill(subscription, partition.getKey(), lastPublishTime);
+        }
+    }
+
     /**
      * If a Subscription is transferred to another Session, the queued Notification Messages for this subscription are
      * moved from the old to the new subscription. If this process fails, the subscription must be recreated from
@@ -401,6 +761,9 @@ public class MiloEndpoint implements Endpoint, SessionActivityListener, UaSubscr
      */
     @Override
     public void onSubscriptionTransferFailed(UaSubscription subscription, StatusCode statusCode) {
+        if (!subscriptions.contains(subscription)) {
+            return;
+        }
         log.info("onSubscriptionTransferFailed event for {} : StatusCode {}", subscription.toString(), statusCode);
         recreate(subscription);
     }
@@ -424,22 +787,278 @@ public class MiloEndpoint implements Endpoint, SessionActivityListener, UaSubscr
         throw new ConfigurationException(OBJ_INVALID);
     }
 
+    private RetryTemplate createRetryTemplate() {
+        return properties.isAdaptiveTimeoutEnabled()
+                ? config.adaptiveRetryPolicy(properties, timeoutPolicy.backOffPolicy())
+                : config.simpleRetryPolicy(properties);
+    }
+
+    private void markGap() {
+        gapStart.compareAndSet(0, System.currentTimeMillis());
+    }
+
+    /**
+     * Takes the start of the current gap for backfill. If backfill is enabled and there is a gap, the delivery of
+     * live value updates is paused until the backfill has completed. Delivery is not paused on a client shared with
+     * other equipments, as this would withhold their value updates as well.
+     * 
+     * @return the start of the gap in milliseconds since epoch, or 0 if no backfill is required.
+     */
+    private long takeGap() {
+        final long gap = gapStart.getAndSet(0);
+        if (gap <= 0 || !properties.isBackfillEnabled() || client == null) {
+            return 0;
+        }
+        if (!sharedClient) {
+            client.getSubscriptionManager().pauseDelivery();
+        }
+        return gap;
+    }
+
+    private void restoreGap(long gap) {
+        if (gap > 0) {
+            gapStart.compareAndSet(0, gap);
+            if (!sharedClient) {
+                client.getSubscriptionManager().resumeDelivery();
+            }
+        }
+    }
+
+    /**
+     * Reads the values missed since the start of the gap from the server's history, sends them and resumes the
+     * delivery of live value updates afterwards.
+     * 
+     * @param gap the start of the gap in milliseconds since epoch, or 0 if no backfill is required.
+     */
+    private void backfill(long gap) {
+        if (gap <= 0) {
+            return;
+        }
+        final OpcUaSubscriptionManager subscriptionManager = client.getSubscriptionManager();
+        final Map<Long, ItemDefinition> tags = mapper.getGroups().stream()
+                .flatMap(g -> g.getTagIds().entrySet().stream())
+                .filter(e -> handleFilter.test(e.getValue().getClientHandle()))
+                .collect(toMap(Map.Entry::getKey, Map.Entry::getValue, (d1, d2) -> d1));
+        log.info("Backfilling {} tags for the gap since {} on server {}.", tags.size(), gap, uri);
+        new HistoryBackfill(properties, messageSender).backfill(client, tags, gap, System.currentTimeMillis())
+                .whenComplete((count, e) -> {
+                    if (!sharedClient) {
+                        subscriptionManager.resumeDelivery();
+                    }
+                });
+    }
+
+    /**
+     * Reads the values of the tags of a subscription missed since a gap in its notifications from the server's history
+     * and sends them. Live value updates are not paused, as the values of the other subscriptions are unaffected.
+     * 
+     * @param subscription the subscription whose notifications were lost
+     * @param timeDeadband the publishing interval of the subscription in seconds
+     * @param gap the time of the last message received before the gap in milliseconds since epoch, or 0 if unknown
+     */
+    private void backfill(UaSubscription subscription, int timeDeadband, long gap) {
+        final SubscriptionGroup group = mapper.getGroup(timeDeadband);
+        if (gap <= 0 || !properties.isBackfillEnabled() || client == null || group == null) {
+            return;
+        }
+        final IntPredicate handles = tagHandlesOfPartition(subscription, timeDeadband);
+        final Map<Long, ItemDefinition> tags = group.getTagIds().entrySet().stream()
+                .filter(e -> handleFilter.test(e.getValue().getClientHandle())
+                        && handles.test(e.getValue().getClientHandle()))
+                .collect(toMap(Map.Entry::getKey, Map.Entry::getValue));
+        log.info("Backfilling {} tags of the subscription with publish interval {} since {}.", tags.size(),
+                timeDeadband, gap);
+        new HistoryBackfill(properties, messageSender).backfill(client, tags, gap, System.currentTimeMillis());
+    }
+
+    /**
+     * Creates a new client connected to the server, activating a session on the standby client if one is available.
+     * 
+     * @param uri the address of the server to connect to
+     * @return the connected client
+     * @throws OPCUAException if no connection could be established
+     */
+    private OpcUaClient createClient(String uri) throws OPCUAException {
+        final OpcUaClient standbyClient = activateStandby(uri);
+        if (standbyClient != null) {
+            return standbyClient;
+        }
+        final long start = System.nanoTime();
+        final Collection<EndpointDescription> endpoints = processSupplier(CONNECT,
+                () -> DiscoveryClient.getEndpoints(uri));
+        metricProxy.recordFailoverPhase(FailoverTimeline.Phase.CONNECT, System.nanoTime() - start);
+        return securityModule.createClient(uri, endpoints, maxPendingPublishRequests());
+    }
+
+    /**
+     * Deletes the subscriptions of this endpoint from a client that is shared with other equipments, leaving the
+     * subscriptions of the other equipments untouched.
+     */
+    private void deleteOwnSubscriptions() {
+        for (UaSubscription subscription : subscriptions.getAll()) {
+            try {
+                processSupplier(DELETE_SUBSCRIPTION,
+                        () -> client.getSubscriptionManager().deleteSubscription(subscription.getSubscriptionId()));
+            } catch (OPCUAException e) {
+                log.debug("Deleting subscription failed with exception: ", e);
+                log.info("Could not delete subscription {} from the shared client.", subscription.getSubscriptionId());
+            }
+        }
+    }
+
+    /**
+     * Activates a session on the standby client if it is connected to the given address.
+     * 
+     * @param uri the address of the server to connect to
+     * @return the standby client with an active session, or null if no standby client to the address is available
+     */
+    private OpcUaClient activateStandby(String uri) {
+        final Map.Entry<String, OpcUaClient> prepared = standby.getAndSet(null);
+        if (prepared == null) {
+            return null;
+        }
+        if (!prepared.getKey().equals(uri)) {
+            // keep the standby connection for a later attempt unless it was replaced in the meantime
+            if (!standby.compareAndSet(null, prepared)) {
+                prepared.getValue().disconnect();
+            }
+            return null;
+        }
+        try {
+            log.info("Activating session on standby connection to {}.", uri);
+            return securityModule.activateSession(prepared.getValue());
+        } catch (OPCUAException e) {
+            log.info("Could not activate a session on the standby connection to {}. Connecting anew.", uri, e);
+            return null;
+        }
+    }
+
     /**
      * Delete an existing subscription with a certain number of retries in case of connection error.
      * 
      * @param timeDeadband The timeDeadband of the subscription to delete along with all contained MonitoredItems.
+     * @param partition The partition of the subscription to delete.
      * @throws OPCUAException of type {@link CommunicationException} or {@link LongLostConnectionException}.
      */
-    private void deleteSubscription(int timeDeadband) throws OPCUAException {
-        final UaSubscription subscription = subscriptionMap.remove(timeDeadband);
+    private void deleteSubscription(int timeDeadband, int partition) throws OPCUAException {
+        final UaSubscription subscription = subscriptions.remove(timeDeadband, partition);
+        if (subscriptions.get(timeDeadband).isEmpty()) {
+            subscriptionTuner.forget(timeDeadband);
+            fanOut.clear(timeDeadband);
+        } else if (subscription != null) {
+            fanOut.drop(itemHandles(subscription));
+        }
         if (subscription != null) {
             retryOnConnection(DELETE_SUBSCRIPTION,
                     () -> client.getSubscriptionManager().deleteSubscription(subscription.getSubscriptionId()));
         }
     }
 
-    private boolean resubscribeGroupsAndReportSuccess(SubscriptionGroup group) throws OPCUAException {
-        final Map<Integer, SourceDataTagQuality> handleQualityMap = subscribe(group, group.getTagIds().values());
+    /**
+     * Deletes the monitored items from a partition, or the partition itself if none of its monitored items remain.
+     * Monitored items are deleted in chunks of at most deletionChunkSize items per request.
+     *
+     * @param publishInterval the publishing interval of the partition in seconds
+     * @param partition the number of the partition
+     * @param subscription the subscription of the partition
+     * @param items the monitored items of the partition to delete
+     * @return whether each of the items was deleted successfully, in the order of the items
+     */
+    private List<Boolean> deleteItems(int publishInterval, int partition, UaSubscription subscription,
+            List<UaMonitoredItem> items) {
+        items.forEach(i -> samplingPolicy.forget(i.getClientHandle().intValue()));
+        if (items.size() >= subscription.getMonitoredItems().size()) {
+            try {
+                deleteSubscription(publishInterval, partition);
+                return Collections.nCopies(items.size(), true);
+            } catch (OPCUAException ex) {
+                logDeletionFailure(items, ex);
+                return Collections.nCopies(items.size(), false);
+            }
+        }
+        final int chunkSize = properties.getDeletionChunkSize() > 0 ? properties.getDeletionChunkSize() : items.size();
+        final List<Boolean> deleted = new ArrayList<>(items.size());
+        for (int from = 0; from < items.size(); from += chunkSize) {
+            final List<UaMonitoredItem> chunk = items.subList(from, Math.min(items.size(), from + chunkSize));
+            try {
+                final List<StatusCode> statusCodes = retryOnConnection(DELETE_MONITORED_ITEM,
+                        () -> subscription.deleteMonitoredItems(chunk));
+                for (int i = 0; i < chunk.size(); i++) {
+                    final boolean good = i < statusCodes.size() && statusCodes.get(i).isGood();
+                    if (good) {
+                        subscriptions.unindex(subscription, chunk.get(i));
+                    }
+                    deleted.add(good);
+                }
+            } catch (OPCUAException ex) {
+                logDeletionFailure(chunk, ex);
+                deleted.addAll(Collections.nCopies(chunk.size(), false));
+            }
+        }
+        return deleted;
+    }
+
+    private void logDeletionFailure(List<UaMonitoredItem> items, OPCUAException ex) {
+        final String ids = items.stream().map(i -> String.valueOf(mapper.getTagId(i.getClientHandle().intValue())))
+                .collect(Collectors.joining(", "));
+        log.error("Tags with IDs {} could not be unsubscribed on endpoint {}.", ids, getUri(), ex);
+    }
+
+    /**
+     * Sets the sampling interval and value deadband of monitored items of a partition anew from their definitions.
+     *
+     * @param publishInterval the publishing interval of the partition in seconds
+     * @param subscription the subscription of the partition
+     * @param items the monitored items of the partition to modify
+     * @param definitions the definitions holding the new deadbands, mapped to their client handles
+     * @return whether each of the items was modified successfully, in the order of the items
+     */
+    private List<Boolean> modifyItems(int publishInterval, UaSubscription subscription, List<UaMonitoredItem> items,
+            Map<Integer, ItemDefinition> definitions) {
+        final List<MonitoredItemModifyRequest> requests = new ArrayList<>(items.size());
+        for (UaMonitoredItem item : items) {
+            final ItemDefinition definition = definitions.get(item.getClientHandle().intValue());
+            // the interval revised for the previous time deadband must not be requested again
+            samplingPolicy.forget(definition.getClientHandle());
+            requests.add(new MonitoredItemModifyRequest(item.getMonitoredItemId(),
+                    toMonitoringParameters(definition, publishInterval)));
+        }
+        try {
+            final List<StatusCode> statusCodes = retryOnConnection(MODIFY_MONITORED_ITEM,
+                    () -> subscription.modifyMonitoredItems(TimestampsToReturn.Both, requests));
+            final List<Boolean> modified = new ArrayList<>(items.size());
+            for (int i = 0; i < items.size(); i++) {
+                final boolean good = i < statusCodes.size() && statusCodes.get(i).isGood();
+                if (good) {
+                    final int handle = items.get(i).getClientHandle().intValue();
+                    final double revised = items.get(i).getRevisedSamplingInterval();
+                    samplingPolicy.onRevised(handle, revised);
+                    metricProxy.recordRevisedSamplingInterval(publishInterval, revised);
+                    fanOut.update(publishInterval, definitions.get(handle));
+                    throttle(definitions.get(handle), publishInterval);
+                }
+                modified.add(good);
+            }
+            return modified;
+        } catch (OPCUAException ex) {
+            final String ids = items.stream().map(i -> String.valueOf(mapper.getTagId(i.getClientHandle().intValue())))
+                    .collect(Collectors.joining(", "));
+            log.error("Tags with IDs {} could not be modified on endpoint {}.", ids, getUri(), ex);
+            return Collections.nCopies(items.size(), false);
+        }
+    }
+
+    private boolean resubscribeGroupsAndReportSuccess(SubscriptionGroup group, IntPredicate handles)
+            throws OPCUAException {
+        final List<ItemDefinition> definitions = group.getTagIds().values().stream()
+                .filter(d -> handleFilter.test(d.getClientHandle()) && handles.test(d.getClientHandle()))
+                .collect(toList());
+        return resubscribeAndReportSuccess(group, definitions, this::defaultSubscriptionCallback);
+    }
+
+    private boolean resubscribeAndReportSuccess(SubscriptionGroup group, Collection<ItemDefinition> definitions,
+            Consumer<UaMonitoredItem> itemCreationCallback) throws OPCUAException {
+        final Map<Integer, SourceDataTagQuality> handleQualityMap = subscribe(group, definitions, itemCreationCallback);
         return handleQualityMap != null && handleQualityMap.values().stream().anyMatch(SourceDataTagQuality::isValid);
     }
 
@@ -456,48 +1075,208 @@ public class MiloEndpoint implements Endpoint, SessionActivityListener, UaSubscr
     /**
      * Attempt to recreate the subscription periodically unless the subscription's monitored items cannot be mapped to
      * DataTags due to a configuration mismatch. Recreation attempts are discontinued when the thread is interrupted or
-     * recreation finishes successfully.
+     * recreation finishes successfully. If the group of the subscription is split into several partitions, only the
+     * tags of the affected partition are resubscribed.
      * 
      * @param subscription the subscription to recreate on the client.
      */
     private void recreate(UaSubscription subscription) {
         log.info("Attempt to recreate the subscription.");
-        final Integer publishInterval = subscriptionMap.inverse().getOrDefault(subscription, -1);
-        final SubscriptionGroup group = mapper.getGroup(publishInterval);
+        final Map.Entry<Integer, Integer> partition = subscriptions.locate(subscription);
+        final SubscriptionGroup group = partition == null ? null : mapper.getGroup(partition.getKey());
         if (group != null && group.size() != 0) {
+            final SubscriptionRecreationEvent event = new SubscriptionRecreationEvent();
+            event.begin();
+            final int nodeCount = subscription.getMonitoredItems().size();
+            boolean succeeded = false;
+            final IntPredicate handles = tagHandlesOfPartition(subscription, partition.getKey());
             try {
-                deleteSubscription(publishInterval);
+                deleteSubscription(partition.getKey(), partition.getValue());
             } catch (OPCUAException e) {
                 log.error("Could not delete subscription. Proceed with recreation.", e);
             }
             try {
                 config.exceptionClassifierTemplate(properties).execute(retryContext -> {
-                    if (!resubscribeGroupsAndReportSuccess(group)) {
+                    if (!resubscribeGroupsAndReportSuccess(group, handles)) {
                         throw new CommunicationException(CREATE_SUBSCRIPTION);
                     }
                     return null;
                 });
+                succeeded = true;
             } catch (OPCUAException e) {
                 log.error("Subscription recreation aborted: ", e);
             }
+            event.complete(metricProxy.getEquipmentName(), partition.getKey(), nodeCount, succeeded);
         } else {
             log.info("The subscription cannot be recreated, since it cannot be associated with any DataTags.");
         }
     }
 
-    private UaSubscription getOrCreateSubscription(int timeDeadband) throws OPCUAException {
-        UaSubscription subscription = subscriptionMap.get(timeDeadband);
+    /**
+     * Forgets the subscriptions with the publishing interval which are no longer known to the client, for instance
+     * because they could not be transferred to a new session, together with their monitored items.
+     *
+     * @param timeDeadband the publishing interval of the subscriptions in seconds
+     */
+    private void pruneSubscriptions(int timeDeadband) {
+        final Map<Integer, UaSubscription> partitions = subscriptions.get(timeDeadband);
+        if (!partitions.isEmpty()) {
+            final Collection<UaSubscription> live = client.getSubscriptionManager().getSubscriptions();
+            partitions.forEach((partition, subscription) -> {
+                if (!live.contains(subscription)) {
+                    subscriptions.remove(timeDeadband, partition);
+                    fanOut.drop(itemHandles(subscription));
+                }
+            });
+        }
+        if (subscriptions.get(timeDeadband).isEmpty()) {
+            fanOut.clear(timeDeadband);
+        }
+    }
+
+    private UaSubscription getOrCreateSubscription(int timeDeadband, int partition) throws OPCUAException {
+        UaSubscription subscription = subscriptions.get(timeDeadband, partition);
         if (subscription == null || !client.getSubscriptionManager().getSubscriptions().contains(subscription)) {
+            final AppConfigProperties.SubscriptionParameters p = subscriptionTuner.parameters(timeDeadband);
+            if (subscription != null) {
+                fanOut.drop(itemHandles(subscription));
+            }
             subscription = retryOnConnection(CREATE_SUBSCRIPTION,
-                    () -> client.getSubscriptionManager().createSubscription(timeDeadband * 1000));
+                    () -> client.getSubscriptionManager().createSubscription(timeDeadband * 1000,
+                            uint(p.getLifetimeCount()), uint(p.getMaxKeepAliveCount()),
+                            uint(p.getMaxNotificationsPerPublish()), true, ubyte(p.getPriority())));
             // OPC UA publishing interval is given in milliseconds, see
             // https://reference.opcfoundation.org/v104/Core/docs/Part4/5.13.2/
-            subscriptionMap.put(timeDeadband, subscription);
+            subscriptions.put(timeDeadband, partition, subscription);
+            metricProxy.registerSubscriptionPartition(subscriptions, timeDeadband, partition, session);
+            subscription.addNotificationListener(new UaSubscription.NotificationListener() {
+                @Override
+                public void onDataChangeNotification(UaSubscription s, List<UaMonitoredItem> items,
+                        List<DataValue> values, DateTime publishTime) {
+                    int overflows = 0;
+                    for (DataValue value : values) {
+                        if (MiloMapper.isOverflow(value.getStatusCode())) {
+                            overflows++;
+                        }
+                    }
+                    publishPipeline.onNotifications(timeDeadband, partition, values.size(), overflows);
+                    onPublish(timeDeadband, partition, publishTime, false);
+                    if (properties.isSubscriptionTuningEnabled()) {
+                        tune(timeDeadband, s, values.size(), publishTime);
+                    }
+                }
+
+                @Override
+                public void onKeepAliveNotification(UaSubscription s, DateTime publishTime) {
+                    onPublish(timeDeadband, partition, publishTime, true);
+                }
+            });
         }
         return subscription;
     }
 
+    private void onPublish(int timeDeadband, int partition, DateTime publishTime, boolean keepAlive) {
+        final long time = publishTime.getJavaTime();
+        final boolean first = keepAlive
+                ? publishPipeline.onKeepAlive(timeDeadband, partition, time)
+                : publishPipeline.onPublish(timeDeadband, partition, time);
+        if (first) {
+            metricProxy.registerSubscriptionHealth(publishPipeline, timeDeadband, partition, session);
+        }
+    }
+
+    /**
+     * @param subscription a subscription
+     * @return the client handles of the monitored items of the subscription
+     */
+    private List<Integer> itemHandles(UaSubscription subscription) {
+        return subscription.getMonitoredItems().stream()
+                .map(i -> i.getClientHandle().intValue())
+                .collect(toList());
+    }
+
+    /**
+     * @param subscription a partition of the subscriptions with the publishing interval
+     * @param timeDeadband the publishing interval of the subscription in seconds
+     * @return a predicate matching the client handles of the tags served by the subscription, or all client handles if
+     *         the subscription is the only partition with the publishing interval.
+     */
+    private IntPredicate tagHandlesOfPartition(UaSubscription subscription, int timeDeadband) {
+        if (subscriptions.get(timeDeadband).size() <= 1) {
+            return h -> true;
+        }
+        final Set<Integer> handles = new HashSet<>();
+        for (int itemHandle : itemHandles(subscription)) {
+            final int[] tagHandles = fanOut.tagHandles(itemHandle);
+            if (tagHandles == null) {
+                handles.add(itemHandle);
+            } else {
+                Arrays.stream(tagHandles).forEach(handles::add);
+            }
+        }
+        return handles::contains;
+    }
+
+    /**
+     * @return the number of PublishRequests to keep outstanding on a new session, scaled with the subscriptions of
+     *         this endpoint and the round trip time observed on previous calls to the server. The subscriptions are
+     *         derived from all known tags, so that they are accounted for already before they are first subscribed.
+     */
+    private int maxPendingPublishRequests() {
+        final Map<Integer, Long> tagsPerPublishInterval = mapper.getTagIdDefinitionMap().values().stream()
+                .filter(d -> handleFilter.test(d.getClientHandle()))
+                .collect(groupingBy(d -> mapper.getPublishInterval(d.getTimeDeadband()), counting()));
+        final List<Integer> publishIntervals = tagsPerPublishInterval.entrySet().stream()
+                .flatMap(e -> Collections.nCopies(SubscriptionPartitions.partitionCount(e.getValue().intValue(),
+                        properties.getMaxItemsPerSubscription()), e.getKey()).stream())
+                .collect(toList());
+        return publishPipeline.computeMaxPendingPublishRequests(publishIntervals, timeoutPolicy.getRoundTripP99());
+    }
+
+    /**
+     * Records a publish response with the {@link SubscriptionTuner} and modifies the subscription if the tuner adjusts
+     * its maximum number of notifications per publish. The modification is sent asynchronously, so that the delivery
+     * of notifications is not held up.
+     *
+     * @param timeDeadband the publishing interval of the subscription in seconds
+     * @param subscription the subscription which received the publish response
+     * @param notifications the number of notifications in the publish response
+     * @param publishTime the time at which the server sent the publish response
+     */
+    private void tune(int timeDeadband, UaSubscription subscription, int notifications, DateTime publishTime) {
+        // includes the clock offset to the server, which the tuner cancels out
+        final long delay = System.currentTimeMillis() - publishTime.getJavaTime();
+        final int limit = subscriptionTuner.record(timeDeadband, notifications, delay);
+        if (limit >= 0 && subscriptions.get(timeDeadband).containsValue(subscription)) {
+            final AppConfigProperties.SubscriptionParameters p = subscriptionTuner.parameters(timeDeadband);
+            // the limit is tuned per publishing interval and applies to all of its partitions
+            subscriptions.get(timeDeadband).values().forEach(s -> modifySubscription(s, p, limit));
+        }
+    }
+
+    private void modifySubscription(UaSubscription subscription, AppConfigProperties.SubscriptionParameters p,
+            int limit) {
+        client.getSubscriptionManager().modifySubscription(subscription.getSubscriptionId(),
+                subscription.getRevisedPublishingInterval(), uint(p.getLifetimeCount()),
+                uint(p.getMaxKeepAliveCount()), uint(limit), ubyte(p.getPriority()))
+                .whenComplete((s, e) -> {
+                    if (e != null) {
+                        log.info("Could not modify the subscription {}.", subscription.getSubscriptionId(), e);
+                    }
+                });
+    }
+
     private void defaultSubscriptionCallback(UaMonitoredItem item) {
+        subscriptionCallback(item, null);
+    }
+
+    /**
+     * Sets a value consumer on the item which forwards value updates to the {@link MessageSender}.
+     * 
+     * @param item the newly created monitored item
+     * @param onValue an action to run on every value update before it is forwarded, or null
+     */
+    private void subscriptionCallback(UaMonitoredItem item, Runnable onValue) {
         final Long tagId = mapper.getTagId(item.getClientHandle().intValue());
         if (tagId == null) {
             log.info("Receives a value update that could not be associated with a DataTag.");
@@ -506,17 +1285,95 @@ public class MiloEndpoint implements Endpoint, SessionActivityListener, UaSubscr
                 if (value == null) {
                     log.info("Received a null update.");
                 } else {
+                    if (onValue != null) {
+                        onValue.run();
+                    }
+                    metricProxy.onValueReceived();
+                    final ValueDeliveryEvent event = ValueDeliveryEvent.sample();
+                    final long receivedAt = System.currentTimeMillis();
+                    final long receivedNanos = System.nanoTime();
                     final SourceDataTagQuality quality = MiloMapper.getDataTagQuality(value.getStatusCode());
-                    final ValueUpdate valueUpdate = MiloMapper.toValueUpdate(value, properties.getTimeRecordMode());
-                    messageSender.onValueUpdate(tagId, quality, valueUpdate);
+                    final int[] tagHandles = fanOut.tagHandles(item.getClientHandle().intValue());
+                    if (tagHandles == null) {
+                        forward(item.getClientHandle().intValue(), tagId, value, quality, receivedAt, receivedNanos);
+                    } else {
+                        fanOut(tagHandles, value, quality, receivedAt, receivedNanos);
+                    }
+                    if (event != null) {
+                        event.complete(metricProxy.getEquipmentName(), tagId,
+                                tagHandles == null ? 1 : tagHandles.length);
+                    }
                 }
             });
         }
     }
 
-    private MonitoredItemCreateRequest toMonitoredItemCreateRequest(ItemDefinition definition) {
+    /**
+     * Forwards a value received for a monitored item shared by several tags to each of these tags, applying the value
+     * deadband of the tag if it exceeds the one of the monitored item.
+     * 
+     * @param tagHandles the client handles of the tags served by the monitored item
+     * @param value the value received
+     * @param quality the quality of the value
+     * @param receivedAt the time at which the value was received in milliseconds since epoch
+     * @param receivedNanos the value of the nanosecond clock when the value was received
+     */
+    private void fanOut(int[] tagHandles, DataValue value, SourceDataTagQuality quality, long receivedAt,
+            long receivedNanos) {
+        for (int handle : tagHandles) {
+            final Long id = mapper.getTagId(handle);
+            if (id != null && fanOut.accept(handle, value)) {
+                forward(handle, id, value, quality, receivedAt, receivedNanos);
+            }
+        }
+    }
+
+    private void forward(int handle, long tagId, DataValue value, SourceDataTagQuality quality, long receivedAt,
+            long receivedNanos) {
+        // the update is only captured if it may be held back
+        if (deadbandFilter.isThrottled(handle)) {
+            deadbandFilter.offer(handle, () -> deliver(tagId, value, quality, receivedAt, receivedNanos));
+        } else {
+            deliver(tagId, value, quality, receivedAt, receivedNanos);
+        }
+    }
+
+    /**
+     * Hands a value update to the DAQ core and records its latencies. Timestamps which the server did not set are
+     * recorded as 0.
+     */
+    private void deliver(long tagId, DataValue value, SourceDataTagQuality quality, long receivedAt, long receivedNanos) {
+        messageSender.onValueUpdate(tagId, quality, MiloMapper.toValueUpdate(value, properties.getTimeRecordMode()));
+        metricProxy.recordUpdateLatencies(tagId, javaTime(value.getSourceTime()), javaTime(value.getServerTime()),
+                receivedAt, System.nanoTime() - receivedNanos);
+    }
+
+    private static long javaTime(DateTime time) {
+        return time == null || time.getUtcTime() <= 0 ? 0 : time.getJavaTime();
+    }
+
+    /**
+     * The subscription of a tag publishes faster than its time deadband if it was consolidated into a shorter bucket.
+     * In this case, the time deadband is applied by the client.
+     */
+    private void throttle(ItemDefinition definition, int publishInterval) {
+        if (definition.getTimeDeadband() > publishInterval) {
+            deadbandFilter.throttle(definition.getClientHandle(), definition.getTimeDeadband() * 1000L);
+        } else {
+            deadbandFilter.forget(definition.getClientHandle());
+        }
+    }
+
+    private MonitoredItemCreateRequest toMonitoredItemCreateRequest(ItemDefinition definition, int publishingInterval) {
+        ReadValueId id = new ReadValueId(definition.getNodeId(), AttributeId.Value.uid(), null,
+                QualifiedName.NULL_VALUE);
+        return new MonitoredItemCreateRequest(id, mode, toMonitoringParameters(definition, publishingInterval));
+    }
+
+    private MonitoringParameters toMonitoringParameters(ItemDefinition definition, int publishingInterval) {
         // If the samplingInterval is set to 0, the source will provide updates at the fastest possible rate.
-        double samplingInterval = 0;
+        final double samplingInterval = samplingPolicy.samplingInterval(definition,
+                mapper.getTagId(definition.getClientHandle()), publishingInterval);
 
         DataChangeFilter filter = DataChangeFilter.builder().trigger(DataChangeTrigger.StatusValue) // Trigger if the
                                                                                                     // value's status
@@ -524,34 +1381,105 @@ public class MiloEndpoint implements Endpoint, SessionActivityListener, UaSubscr
                                                                                                     // itself changes
                 .deadbandType(uint(definition.getValueDeadbandType().getValue()))
                 .deadbandValue((double) definition.getValueDeadband()).build();
-        MonitoringParameters mp = new MonitoringParameters(UInteger.valueOf(definition.getClientHandle()),
+        return new MonitoringParameters(UInteger.valueOf(definition.getClientHandle()),
                 samplingInterval, ExtensionObject.encode(client.getSerializationContext(), filter),
                 uint(properties.getQueueSize()), true);
-        ReadValueId id = new ReadValueId(definition.getNodeId(), AttributeId.Value.uid(), null,
-                QualifiedName.NULL_VALUE);
-        return new MonitoredItemCreateRequest(id, mode, mp);
     }
 
     private <T> T retryOnConnection(ExceptionContext context, Supplier<CompletableFuture<T>> futureSupplier)
             throws OPCUAException {
-        return config.simpleRetryPolicy(properties).execute(retryContext -> {
-            if (disconnectedOn.get() < 0) {
-                log.info("Endpoint was stopped, cease retries.");
-                throw new EndpointDisconnectedException(context);
+        if (!circuitBreaker.allowRequest()) {
+            log.debug("Circuit breaker is {}, {} fails fast.", circuitBreaker.getState(), context.name());
+            throw new CommunicationException(CIRCUIT_OPEN);
+        }
+        return retryTemplate.execute(retryContext -> {
+            // the first attempt was admitted by the breaker before entering the retry template. An attempt admitted as
+            // probe of a half-open breaker must release the probe if it ends without recording an outcome.
+            boolean admitted = retryContext.getRetryCount() == 0;
+            boolean outcomeRecorded = false;
+            try {
+                if (disconnectedOn.get() < 0) {
+                    log.info("Endpoint was stopped, cease retries.");
+                    throw new EndpointDisconnectedException(context);
+                }
+                // the breaker may have been opened by concurrent callers while waiting for the retry
+                if (!admitted && !circuitBreaker.allowRequest()) {
+                    retryContext.setExhaustedOnly();
+                    throw new CommunicationException(CIRCUIT_OPEN);
+                }
+                admitted = true;
+                final ServiceAttemptEvent event = new ServiceAttemptEvent();
+                event.begin();
+                try {
+                    final T result = processSupplier(context, futureSupplier);
+                    circuitBreaker.recordSuccess();
+                    outcomeRecorded = true;
+                    event.complete(metricProxy.getEquipmentName(), context, retryContext.getRetryCount(), null);
+                    return result;
+                } catch (ConfigurationException e) {
+                    // the server responded
+                    circuitBreaker.recordSuccess();
+                    outcomeRecorded = true;
+                    event.complete(metricProxy.getEquipmentName(), context, retryContext.getRetryCount(), e);
+                    throw e;
+                } catch (CommunicationException | LongLostConnectionException e) {
+                    circuitBreaker.recordFailure(uri);
+                    outcomeRecorded = true;
+                    event.complete(metricProxy.getEquipmentName(), context, retryContext.getRetryCount(), e);
+                    throw e;
+                } catch (EndpointDisconnectedException e) {
+                    event.complete(metricProxy.getEquipmentName(), context, retryContext.getRetryCount(), e);
+                    throw e;
+                }
+            } finally {
+                if (admitted && !outcomeRecorded) {
+                    circuitBreaker.releaseProbe();
+                }
             }
-            return processSupplier(context, futureSupplier);
         });
     }
 
+    /**
+     * Executes the service call, recording its duration including all retry attempts as a {@link ServiceCallEvent}.
+     * 
+     * @param context the service called
+     * @param nodeCount the number of nodes the call concerns
+     * @param call the service call to execute
+     * @param <T> the type of the result of the call
+     * @return the result of the call
+     * @throws OPCUAException if the call failed
+     */
+    private <T> T recordServiceCall(ExceptionContext context, int nodeCount, ServiceCall<T> call)
+            throws OPCUAException {
+        final ServiceCallEvent event = new ServiceCallEvent();
+        event.begin();
+        boolean succeeded = false;
+        try {
+            final T result = call.execute();
+            succeeded = true;
+            return result;
+        } finally {
+            event.complete(metricProxy.getEquipmentName(), context, nodeCount, succeeded);
+        }
+    }
+
     private <T> T processSupplier(ExceptionContext context, Supplier<CompletableFuture<T>> futureSupplier)
             throws OPCUAException {
+        final long timeout = timeoutPolicy.getTimeout();
+        final long start = System.nanoTime();
         try {
-            return futureSupplier.get().get(properties.getRequestTimeout(), TimeUnit.MILLISECONDS);
+            final T result = futureSupplier.get().get(timeout, TimeUnit.MILLISECONDS);
+            timeoutPolicy.record(System.nanoTime() - start);
+            return result;
+        } catch (TimeoutException e) {
+            timeoutPolicy.record(TimeUnit.MILLISECONDS.toNanos(timeout));
+            log.debug("Execution {} timed out after {} ms; ", context.name(), timeout, e);
+            throw OPCUAException.of(context, e.getCause(), false);
         } catch (InterruptedException e) {
             log.debug("Execution {} failed with interrupted exception; ", context.name(), e);
             Thread.currentThread().interrupt();
             throw new EndpointDisconnectedException(context, e.getCause());
-        } catch (ExecutionException | TimeoutException e) {
+        } catch (ExecutionException e) {
             log.debug("Execution {} failed with exception; ", context.name(), e);
             throw OPCUAException.of(context, e.getCause(), false);
         } catch (Exception e) {
@@ -560,6 +1488,29 @@ public class MiloEndpoint implements Endpoint, SessionActivityListener, UaSubscr
         }
     }
 
+    /**
+     * Stores the sampling interval with which the server samples a newly created monitored item, so that it is
+     * requested when the item is created anew.
+     * 
+     * @param item the newly created monitored item
+     * @param request the request with which the item was created
+     * @param publishingInterval the publishing interval of the item's subscription in seconds
+     */
+    private void onSamplingIntervalRevised(UaMonitoredItem item, MonitoredItemCreateRequest request,
+            int publishingInterval) {
+        if (item.getStatusCode() != null && item.getStatusCode().isBad()) {
+            return;
+        }
+        final double requested = request.getRequestedParameters().getSamplingInterval();
+        final double revised = item.getRevisedSamplingInterval();
+        if (revised != requested) {
+            log.debug("Server revised the sampling interval of item {} from {} ms to {} ms.",
+                    item.getClientHandle(), requested, revised);
+        }
+        samplingPolicy.onRevised(item.getClientHandle().intValue(), revised);
+        metricProxy.recordRevisedSamplingInterval(publishingInterval, revised);
+    }
+
     /**
      * Asks the OPC UA server to provide index of namespaces, so that we can use the id instead of the name later on
      * 
@@ -594,4 +1545,14 @@ public class MiloEndpoint implements Endpoint, SessionActivityListener, UaSubscr
         log.info("Successfully connected.");
     }
 
+
+    /**
+     * A service call to the server which may fail with an {@link OPCUAException}.
+     * 
+     * @param <T> the type of the result of the call
+     */
+    @FunctionalInterface
+    private interface ServiceCall<T> {
+        T execute() throws OPCUAException;
+    }
 }
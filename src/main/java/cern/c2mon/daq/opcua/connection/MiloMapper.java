@@ -92,6 +92,11 @@ public abstract class MiloMapper {
             Uncertain_SensorNotAccurate,
             Uncertain_EngineeringUnitsExceeded).build();
 
+    /** The bits of a status code identifying the code itself rather than its info bits, see OPC UA Part 4, 7.34.1 */
+    private static final long CODE_MASK = 0xFFFF0000L;
+
+    /** The info type DataValue together with the overflow bit, set if a monitored item queue discarded values */
+    private static final long OVERFLOW_BITS = 0x480L;
 
     /**
      * Represents a {@link StatusCode} as a {@link SourceDataTagQualityCode}
@@ -102,22 +107,38 @@ public abstract class MiloMapper {
         SourceDataTagQualityCode tagCode = SourceDataTagQualityCode.UNKNOWN;
         if (statusCode == null) {
             return new SourceDataTagQuality(tagCode, "No status code was passed with the value update");
-        } else if (statusCode.isGood()) {
+        }
+        final long code = statusCode.getValue() & CODE_MASK;
+        if (statusCode.isGood()) {
             tagCode = SourceDataTagQualityCode.OK;
-        } else if (OUT_OF_BOUNDS.contains(statusCode.getValue())) {
+        } else if (OUT_OF_BOUNDS.contains(code)) {
             tagCode = SourceDataTagQualityCode.OUT_OF_BOUNDS;
-        } else if (DATA_UNAVAILABLE.contains(statusCode.getValue())) {
+        } else if (DATA_UNAVAILABLE.contains(code)) {
             tagCode = SourceDataTagQualityCode.DATA_UNAVAILABLE;
-        } else if (INCORRECT_NATIVE_ADDRESS.contains(statusCode.getValue())) {
+        } else if (INCORRECT_NATIVE_ADDRESS.contains(code)) {
             tagCode = SourceDataTagQualityCode.INCORRECT_NATIVE_ADDRESS;
-        } else if (VALUE_CORRUPTED.contains(statusCode.getValue())) {
+        } else if (VALUE_CORRUPTED.contains(code)) {
             tagCode = SourceDataTagQualityCode.VALUE_CORRUPTED;
-        } else if (UNSUPPORTED_TYPE.contains(statusCode.getValue())) {
+        } else if (UNSUPPORTED_TYPE.contains(code)) {
             tagCode = SourceDataTagQualityCode.UNSUPPORTED_TYPE;
         }
+        if (isOverflow(statusCode)) {
+            return new SourceDataTagQuality(tagCode, "The monitored item queue overflowed and discarded values preceding this update: " + statusCode);
+        }
         return new SourceDataTagQuality(tagCode, statusCode.toString());
     }
 
+    /**
+     * Checks whether the overflow info bit of a status code is set. The server sets it on a value update when the queue
+     * of its monitored item was full, so that older or newer values were discarded depending on the discard policy.
+     * See OPC UA Part 4, 5.12.1.5.
+     * @param statusCode the status code of a value update
+     * @return whether values of the monitored item were discarded before this update
+     */
+    public static boolean isOverflow (StatusCode statusCode) {
+        return statusCode != null && (statusCode.getValue() & OVERFLOW_BITS) == OVERFLOW_BITS;
+    }
+
     /**
      * Extracts the actual object from the list of {@link Variant}s that are returned by the Milo client.
      * @param variants the variants wrap objects returned by the Milo client. They can be output arguments returned by a
@@ -0,0 +1,269 @@
+/*-
+ * #%L
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * %%
+ * Copyright (C) 2010 - 2022 CERN
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package cern.c2mon.daq.opcua.connection;
+
+import cern.c2mon.daq.opcua.mapping.ItemDefinition;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import org.eclipse.milo.opcua.stack.core.types.builtin.DataValue;
+import org.eclipse.milo.opcua.stack.core.types.enumerated.DeadbandType;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Lets the tags of a subscription which refer to the same node share a single monitored item. Tags with an absolute or
+ * no value deadband share an item whose server-side deadband is at most their own; the difference is filtered on the
+ * client for each tag. Tags with a percent deadband only share an item with tags of the same percent deadband, as the
+ * engineering units range needed to filter them is only known to the server. Each monitored item carries the client
+ * handle of the tag for which it was created, and the index maps it to the client handles of all tags it serves. An
+ * item is deleted from the server only once none of its tags remain.
+ */
+public class MonitoredItemFanOut {
+
+    private final Map<List<Object>, List<SharedItem>> itemsByKey = new HashMap<>();
+    private final Map<Integer, SharedItem> itemsByHandle = new HashMap<>();
+    private final Map<Integer, SharedItem> itemsByTagHandle = new HashMap<>();
+    private final Map<Integer, int[]> tagHandles = new ConcurrentHashMap<>();
+    private final Map<Integer, Double> clientDeadbands = new ConcurrentHashMap<>();
+    private final Map<Integer, DataValue> lastForwarded = new ConcurrentHashMap<>();
+
+    /**
+     * Attaches the definitions to the monitored items of the subscription with the given publishing interval.
+     * Definitions which cannot share an existing item are returned to be created as monitored items.
+     * @param publishInterval the publishing interval of the subscription in seconds
+     * @param definitions     the definitions to subscribe
+     * @return the definitions to create monitored items for, and the definitions attached to existing items
+     */
+    public synchronized Attachment attach(int publishInterval, Collection<ItemDefinition> definitions) {
+        final Attachment attachment = new Attachment();
+        final List<ItemDefinition> sorted = new ArrayList<>(definitions);
+        // items are created for the finest deadband first, so that coarser ones can share them
+        sorted.sort(Comparator.comparingDouble(MonitoredItemFanOut::deadbandOf));
+        for (ItemDefinition definition : sorted) {
+            final int handle = definition.getClientHandle();
+            final SharedItem attached = itemsByTagHandle.get(handle);
+            if (attached != null) {
+                attachment.followers.put(handle, attached.handle);
+                continue;
+            }
+            final double deadband = deadbandOf(definition);
+            final List<SharedItem> candidates = itemsByKey.computeIfAbsent(keyOf(publishInterval, definition), k -> new ArrayList<>());
+            final SharedItem item = candidates.stream()
+                    .filter(c -> c.deadband <= deadband)
+                    .max(Comparator.comparingDouble(c -> c.deadband))
+                    .orElse(null);
+            if (item == null) {
+                final SharedItem created = new SharedItem(handle, publishInterval, keyOf(publishInterval, definition), deadband);
+                candidates.add(created);
+                itemsByHandle.put(handle, created);
+                add(created, handle);
+                attachment.create.add(definition);
+            } else {
+                if (deadband > item.deadband) {
+                    clientDeadbands.put(handle, deadband);
+                }
+                add(item, handle);
+                attachment.followers.put(handle, item.handle);
+            }
+        }
+        return attachment;
+    }
+
+    /**
+     * Detaches a tag from its monitored item.
+     * @param handle the client handle of the tag's definition
+     * @return the client handle of the monitored item if no other tag uses it and it must be deleted from the server,
+     * -1 if the item is still in use, or the given handle if it is not attached to a shared item.
+     */
+    public synchronized int detach(int handle) {
+        final SharedItem item = itemsByTagHandle.remove(handle);
+        clientDeadbands.remove(handle);
+        lastForwarded.remove(handle);
+        if (item == null) {
+            return handle;
+        }
+        final int[] remaining = Arrays.stream(tagHandles.get(item.handle)).filter(h -> h != handle).toArray();
+        if (remaining.length > 0) {
+            tagHandles.put(item.handle, remaining);
+            return -1;
+        }
+        remove(item);
+        return item.handle;
+    }
+
+    /**
+     * Records the new deadband of a monitored item which was modified in place on the server, so that tags attached
+     * later share the item only if their deadband is at least as coarse as the modified one.
+     * @param publishInterval the publishing interval of the subscription in seconds
+     * @param definition      the definition for which the monitored item was created, holding the new deadband
+     */
+    public synchronized void update(int publishInterval, ItemDefinition definition) {
+        final SharedItem item = itemsByHandle.get(definition.getClientHandle());
+        if (item == null) {
+            return;
+        }
+        final SharedItem modified = new SharedItem(item.handle, publishInterval, keyOf(publishInterval, definition), deadbandOf(definition));
+        final List<SharedItem> candidates = itemsByKey.get(item.key);
+        if (candidates != null) {
+            candidates.remove(item);
+            if (candidates.isEmpty()) {
+                itemsByKey.remove(item.key);
+            }
+        }
+        itemsByKey.computeIfAbsent(modified.key, k -> new ArrayList<>()).add(modified);
+        itemsByHandle.put(modified.handle, modified);
+        for (int handle : tagHandles.getOrDefault(modified.handle, new int[0])) {
+            itemsByTagHandle.put(handle, modified);
+        }
+    }
+
+    /**
+     * Removes monitored items which could not be created on the server together with all tags attached to them.
+     * @param itemHandles the client handles of the monitored items
+     */
+    public synchronized void drop(Collection<Integer> itemHandles) {
+        itemHandles.stream().map(itemsByHandle::get).filter(Objects::nonNull).forEach(this::remove);
+    }
+
+    /**
+     * Forgets all monitored items of the subscription with the given publishing interval, for instance because the
+     * subscription was deleted or recreated.
+     * @param publishInterval the publishing interval of the subscription in seconds
+     */
+    public synchronized void clear(int publishInterval) {
+        new ArrayList<>(itemsByHandle.values()).stream()
+                .filter(i -> i.publishInterval == publishInterval)
+                .forEach(this::remove);
+    }
+
+    /**
+     * Forgets all monitored items.
+     */
+    public synchronized void clear() {
+        new ArrayList<>(itemsByHandle.values()).forEach(this::remove);
+    }
+
+    /**
+     * @param handle a client handle
+     * @return whether the handle belongs to a tag attached to a monitored item
+     */
+    public synchronized boolean isTracked(int handle) {
+        return itemsByTagHandle.containsKey(handle);
+    }
+
+    /**
+     * @param itemHandle the client handle of a monitored item
+     * @return the client handles of all tags served by the monitored item, or null if the item is not tracked
+     */
+    public int[] tagHandles(int itemHandle) {
+        return tagHandles.get(itemHandle);
+    }
+
+    /**
+     * Applies the value deadband of a tag which exceeds the server-side deadband of its monitored item. Changes of the
+     * status code are always forwarded.
+     * @param handle the client handle of the tag
+     * @param value  the value received for the monitored item
+     * @return whether the value should be forwarded to the tag
+     */
+    public boolean accept(int handle, DataValue value) {
+        final Double deadband = clientDeadbands.get(handle);
+        if (deadband == null) {
+            return true;
+        }
+        final DataValue last = lastForwarded.get(handle);
+        if (last == null || !Objects.equals(last.getStatusCode(), value.getStatusCode())
+                || exceeds(last.getValue().getValue(), value.getValue().getValue(), deadband)) {
+            lastForwarded.put(handle, value);
+            return true;
+        }
+        return false;
+    }
+
+    private static boolean exceeds(Object last, Object current, double deadband) {
+        if (last instanceof Number && current instanceof Number) {
+            return Math.abs(((Number) current).doubleValue() - ((Number) last).doubleValue()) > deadband;
+        }
+        return !Objects.equals(last, current);
+    }
+
+    private void add(SharedItem item, int handle) {
+        itemsByTagHandle.put(handle, item);
+        final int[] handles = tagHandles.getOrDefault(item.handle, new int[0]);
+        final int[] extended = Arrays.copyOf(handles, handles.length + 1);
+        extended[handles.length] = handle;
+        tagHandles.put(item.handle, extended);
+    }
+
+    private void remove(SharedItem item) {
+        final int[] handles = tagHandles.remove(item.handle);
+        if (handles != null) {
+            for (int handle : handles) {
+                itemsByTagHandle.remove(handle);
+                clientDeadbands.remove(handle);
+                lastForwarded.remove(handle);
+            }
+        }
+        itemsByHandle.remove(item.handle);
+        final List<SharedItem> candidates = itemsByKey.get(item.key);
+        if (candidates != null) {
+            candidates.remove(item);
+            if (candidates.isEmpty()) {
+                itemsByKey.remove(item.key);
+            }
+        }
+    }
+
+    private static double deadbandOf(ItemDefinition definition) {
+        return definition.getValueDeadbandType() == DeadbandType.None ? 0 : definition.getValueDeadband();
+    }
+
+    private static List<Object> keyOf(int publishInterval, ItemDefinition definition) {
+        final boolean percent = definition.getValueDeadbandType() == DeadbandType.Percent;
+        return Arrays.asList(publishInterval, definition.getNodeId(), percent ? definition.getValueDeadband() : null);
+    }
+
+    /**
+     * The outcome of attaching definitions to the monitored items of a subscription.
+     */
+    @Getter
+    public static class Attachment {
+        private final List<ItemDefinition> create = new ArrayList<>();
+        private final Map<Integer, Integer> followers = new HashMap<>();
+    }
+
+    @RequiredArgsConstructor
+    private static class SharedItem {
+        private final int handle;
+        private final int publishInterval;
+        private final List<Object> key;
+        private final double deadband;
+    }
+}
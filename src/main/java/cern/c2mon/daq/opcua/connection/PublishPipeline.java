@@ -0,0 +1,232 @@
+/*-
+ * #%L
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * %%
+ * Copyright (C) 2010 - 2022 CERN
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package cern.c2mon.daq.opcua.connection;
+
+import cern.c2mon.daq.opcua.config.AppConfigProperties;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Determines the number of PublishRequests kept outstanding on a session, and keeps track of how far the delivery of
+ * notifications lags behind the server. A subscription can only report once per round trip for every outstanding
+ * PublishRequest, so a subscription whose publishing interval is shorter than the round trip time needs several
+ * requests in flight. The number of requests is the sum over all subscriptions of the round trip time divided by the
+ * publishing interval, plus one, bounded by minPendingPublishRequests and maxPendingPublishRequests.
+ * <p>
+ * Per subscription, the pipeline further counts the publish responses, keep alive messages and the notifications they
+ * carry, the notifications whose monitored item queue overflowed and the gaps in the sequence numbers. These are the
+ * figures to size the queueSize and the publishing intervals by.
+ */
+@RequiredArgsConstructor
+public class PublishPipeline {
+
+    private final AppConfigProperties properties;
+    private final Map<Long, Statistics> statistics = new ConcurrentHashMap<>();
+
+    /**
+     * The number of outstanding PublishRequests last computed, or 0 if it is left to the OPC UA client stack.
+     */
+    @Getter
+    private volatile int maxPendingPublishRequests;
+
+    /**
+     * Compute the number of PublishRequests to keep outstanding on a new session.
+     * @param publishIntervals the publishing intervals of the subscriptions in seconds, once for every partition
+     * @param roundTripMillis  the round trip time to the server in milliseconds, or a negative value if unknown
+     * @return the number of outstanding PublishRequests, or 0 if adaptivePublishRequests is disabled.
+     */
+    public int computeMaxPendingPublishRequests(Collection<Integer> publishIntervals, double roundTripMillis) {
+        if (!properties.isAdaptivePublishRequests()) {
+            maxPendingPublishRequests = 0;
+            return 0;
+        }
+        int pending = 1;
+        for (int interval : publishIntervals) {
+            // two requests per subscription as long as the round trip time is unknown
+            pending += roundTripMillis < 0 ? 2 : (int) Math.ceil(roundTripMillis / Math.max(1, interval * 1000));
+        }
+        final int min = Math.max(1, properties.getMinPendingPublishRequests());
+        maxPendingPublishRequests = Math.max(min, Math.min(properties.getMaxPendingPublishRequests(), pending));
+        return maxPendingPublishRequests;
+    }
+
+    /**
+     * Record the receipt of a publish response or keep alive message of the subscription with the given publishing
+     * interval and partition.
+     * @param publishInterval   the publishing interval of the subscription in seconds
+     * @param partition         the partition of the subscription
+     * @param publishTimeMillis the time at which the server sent the message in milliseconds since epoch
+     * @return true if this is the first message of a subscription with this publishing interval and partition.
+     */
+    public boolean onPublish(int publishInterval, int partition, long publishTimeMillis) {
+        final Statistics s = statistics(publishInterval, partition);
+        s.lag.set(Math.max(0, System.currentTimeMillis() - publishTimeMillis));
+        s.lastPublishTime.set(publishTimeMillis);
+        return !s.published.getAndSet(true);
+    }
+
+    /**
+     * Record the notifications carried by a publish response of the subscription with the given publishing interval
+     * and partition.
+     * @param publishInterval the publishing interval of the subscription in seconds
+     * @param partition       the partition of the subscription
+     * @param notifications   the number of notifications in the publish response
+     * @param overflows       the number of notifications flagged with the overflow bit, meaning that the queue of
+     *                        their monitored item overflowed and older values were discarded by the server
+     */
+    public void onNotifications(int publishInterval, int partition, int notifications, int overflows) {
+        final Statistics s = statistics(publishInterval, partition);
+        s.publishResponses.incrementAndGet();
+        s.notifications.addAndGet(notifications);
+        s.overflows.addAndGet(overflows);
+    }
+
+    /**
+     * Record the receipt of a keep alive message of the subscription with the given publishing interval and
+     * partition. The server sends keep alive messages only when there were no notifications to report for
+     * maxKeepAliveCount publishing intervals.
+     * @param publishInterval   the publishing interval of the subscription in seconds
+     * @param partition         the partition of the subscription
+     * @param publishTimeMillis the time at which the server sent the message in milliseconds since epoch
+     * @return true if this is the first message of a subscription with this publishing interval and partition.
+     */
+    public boolean onKeepAlive(int publishInterval, int partition, long publishTimeMillis) {
+        final Statistics s = statistics(publishInterval, partition);
+        s.keepAlives.incrementAndGet();
+        final long previous = s.lastPublishTime.get();
+        if (previous > 0) {
+            s.keepAliveInterval.set(Math.max(0, publishTimeMillis - previous));
+        }
+        return onPublish(publishInterval, partition, publishTimeMillis);
+    }
+
+    /**
+     * Record that notifications of the subscription with the given publishing interval and partition were lost, as
+     * indicated by a gap in the sequence numbers of the publish responses.
+     * @param publishInterval the publishing interval of the subscription in seconds
+     * @param partition       the partition of the subscription
+     * @return the time at which the server sent the last message received before the gap in milliseconds since epoch,
+     * or 0 if no message was received yet.
+     */
+    public long onSequenceGap(int publishInterval, int partition) {
+        final Statistics s = statistics(publishInterval, partition);
+        s.sequenceGaps.incrementAndGet();
+        return s.lastPublishTime.get();
+    }
+
+    /**
+     * @param publishInterval the publishing interval of a subscription in seconds
+     * @param partition       the partition of the subscription
+     * @return the delay in milliseconds in between the server sending the most recent publish response of the
+     * subscription and its receipt, including any clock offset in between server and client.
+     */
+    public double getLag(int publishInterval, int partition) {
+        return get(publishInterval, partition, s -> s.lag);
+    }
+
+    /**
+     * @param publishInterval the publishing interval of a subscription in seconds
+     * @param partition       the partition of the subscription
+     * @return the number of gaps in the sequence numbers of the publish responses of the subscription
+     */
+    public double getSequenceGaps(int publishInterval, int partition) {
+        return get(publishInterval, partition, s -> s.sequenceGaps);
+    }
+
+    /**
+     * @param publishInterval the publishing interval of a subscription in seconds
+     * @param partition       the partition of the subscription
+     * @return the number of publish responses carrying notifications received for the subscription
+     */
+    public double getPublishResponses(int publishInterval, int partition) {
+        return get(publishInterval, partition, s -> s.publishResponses);
+    }
+
+    /**
+     * @param publishInterval the publishing interval of a subscription in seconds
+     * @param partition       the partition of the subscription
+     * @return the number of notifications received for the subscription
+     */
+    public double getNotifications(int publishInterval, int partition) {
+        return get(publishInterval, partition, s -> s.notifications);
+    }
+
+    /**
+     * @param publishInterval the publishing interval of a subscription in seconds
+     * @param partition       the partition of the subscription
+     * @return the number of notifications of the subscription whose monitored item queue overflowed
+     */
+    public double getOverflows(int publishInterval, int partition) {
+        return get(publishInterval, partition, s -> s.overflows);
+    }
+
+    /**
+     * @param publishInterval the publishing interval of a subscription in seconds
+     * @param partition       the partition of the subscription
+     * @return the number of keep alive messages received for the subscription
+     */
+    public double getKeepAlives(int publishInterval, int partition) {
+        return get(publishInterval, partition, s -> s.keepAlives);
+    }
+
+    /**
+     * @param publishInterval the publishing interval of a subscription in seconds
+     * @param partition       the partition of the subscription
+     * @return the time in milliseconds in between the most recent keep alive message of the subscription and the
+     * message preceding it, as sent by the server.
+     */
+    public double getKeepAliveInterval(int publishInterval, int partition) {
+        return get(publishInterval, partition, s -> s.keepAliveInterval);
+    }
+
+    private Statistics statistics(int publishInterval, int partition) {
+        return statistics.computeIfAbsent(key(publishInterval, partition), k -> new Statistics());
+    }
+
+    private double get(int publishInterval, int partition, Function<Statistics, AtomicLong> field) {
+        final Statistics s = statistics.get(key(publishInterval, partition));
+        return s == null ? 0 : field.apply(s).get();
+    }
+
+    private static long key(int publishInterval, int partition) {
+        return ((long) publishInterval << 32) | (partition & 0xFFFFFFFFL);
+    }
+
+    private static final class Statistics {
+        private final AtomicBoolean published = new AtomicBoolean();
+        private final AtomicLong lag = new AtomicLong();
+        private final AtomicLong lastPublishTime = new AtomicLong();
+        private final AtomicLong sequenceGaps = new AtomicLong();
+        private final AtomicLong publishResponses = new AtomicLong();
+        private final AtomicLong notifications = new AtomicLong();
+        private final AtomicLong overflows = new AtomicLong();
+        private final AtomicLong keepAlives = new AtomicLong();
+        private final AtomicLong keepAliveInterval = new AtomicLong();
+    }
+}
@@ -0,0 +1,119 @@
+/*-
+ * #%L
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * %%
+ * Copyright (C) 2010 - 2022 CERN
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package cern.c2mon.daq.opcua.connection;
+
+import cern.c2mon.daq.opcua.config.AppConfigProperties;
+import cern.c2mon.daq.opcua.mapping.ItemDefinition;
+import cern.c2mon.daq.opcua.mapping.SubscriptionGroup;
+import com.google.common.collect.Lists;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntPredicate;
+import java.util.stream.Collectors;
+
+/**
+ * Determines the order in which the monitored items of the {@link SubscriptionGroup}s are recreated after a
+ * reconnection or failover. Groups are ordered by the configured resubscriptionPriority, or by increasing publishing
+ * interval if no explicit priority is configured, since the smallest time deadbands usually concern the most critical
+ * values. Each group is split into chunks of the configured resubscriptionChunkSize, so that the first values of a
+ * group with high priority are received before all lower priority items are created.
+ */
+@RequiredArgsConstructor
+public class ResubscriptionScheduler {
+
+    private final AppConfigProperties properties;
+
+    /**
+     * Orders and chunks the definitions of all non-empty groups.
+     * @param groups the {@link SubscriptionGroup}s to recreate
+     * @return the chunks to subscribe, in the order in which they shall be subscribed
+     */
+    public List<Chunk> schedule(Collection<SubscriptionGroup> groups) {
+        return schedule(groups, h -> true);
+    }
+
+    /**
+     * Orders and chunks the definitions of all groups whose client handles match the filter.
+     * @param groups       the {@link SubscriptionGroup}s to recreate
+     * @param handleFilter the definitions to include, identified by their client handles
+     * @return the chunks to subscribe, in the order in which they shall be subscribed
+     */
+    public List<Chunk> schedule(Collection<SubscriptionGroup> groups, IntPredicate handleFilter) {
+        final int chunkSize = properties.getResubscriptionChunkSize() > 0 ? properties.getResubscriptionChunkSize() : Integer.MAX_VALUE;
+        final List<Chunk> chunks = new ArrayList<>();
+        groups.stream()
+                .filter(g -> g.size() > 0)
+                .sorted(Comparator.<SubscriptionGroup>comparingInt(this::priorityOf).reversed()
+                        .thenComparingInt(SubscriptionGroup::getPublishInterval))
+                .forEach(g -> {
+                    final String priorityClass = priorityClassOf(g);
+                    final List<ItemDefinition> definitions = g.getTagIds().values().stream()
+                            .filter(d -> handleFilter.test(d.getClientHandle()))
+                            .collect(Collectors.toList());
+                    for (List<ItemDefinition> part : Lists.partition(definitions, chunkSize)) {
+                        chunks.add(new Chunk(g, part, priorityClass));
+                    }
+                });
+        return chunks;
+    }
+
+    /**
+     * @param group the group whose priority to determine
+     * @return the configured priority of the group, or 0 if no priority is configured.
+     */
+    public int priorityOf(SubscriptionGroup group) {
+        return explicitPriorities().getOrDefault(group.getPublishInterval(), 0);
+    }
+
+    /**
+     * Groups are classified by their configured priority, or by their publishing interval if no priority is configured.
+     * @param group the group whose class to determine
+     * @return a label for the priority class of the group.
+     */
+    public String priorityClassOf(SubscriptionGroup group) {
+        final Integer priority = explicitPriorities().get(group.getPublishInterval());
+        return priority == null ? "interval_" + group.getPublishInterval() : "priority_" + priority;
+    }
+
+    private Map<Integer, Integer> explicitPriorities() {
+        final Map<Integer, Integer> priorities = properties.getResubscriptionPriority();
+        return priorities == null ? Collections.emptyMap() : priorities;
+    }
+
+    /**
+     * A part of a {@link SubscriptionGroup} that is subscribed in a single request.
+     */
+    @Getter
+    @RequiredArgsConstructor
+    public static class Chunk {
+        private final SubscriptionGroup group;
+        private final List<ItemDefinition> definitions;
+        private final String priorityClass;
+    }
+}
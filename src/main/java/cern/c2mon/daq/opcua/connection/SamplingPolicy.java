@@ -0,0 +1,84 @@
+/*-
+ * #%L
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * %%
+ * Copyright (C) 2010 - 2022 CERN
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package cern.c2mon.daq.opcua.connection;
+
+import cern.c2mon.daq.opcua.config.AppConfigProperties;
+import cern.c2mon.daq.opcua.mapping.ItemDefinition;
+import lombok.RequiredArgsConstructor;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Determines the sampling interval requested for a monitored item. A sampling interval configured for the tag in
+ * samplingIntervals takes precedence. Otherwise, the sampling interval is the tag's time deadband, or the publishing
+ * interval of its subscription if the tag has no time deadband, multiplied by the samplingIntervalFactor. A factor of
+ * 0 requests the fastest rate supported by the server. Otherwise, once the server has revised the sampling interval
+ * of an item, the revised value is requested when the item is created anew, for instance after a reconnection.
+ */
+@RequiredArgsConstructor
+public class SamplingPolicy {
+
+    private final AppConfigProperties properties;
+    private final Map<Integer, Double> revisedIntervals = new ConcurrentHashMap<>();
+
+    /**
+     * Returns the sampling interval to request for a monitored item.
+     * @param definition      the definition of the monitored item
+     * @param tagId           the id of the tag associated with the definition, or null if there is none
+     * @param publishInterval the publishing interval of the subscription in seconds
+     * @return the sampling interval in milliseconds
+     */
+    public double samplingInterval(ItemDefinition definition, Long tagId, int publishInterval) {
+        final Map<Long, Double> overrides = properties.getSamplingIntervals();
+        if (tagId != null && overrides != null && overrides.containsKey(tagId)) {
+            return overrides.get(tagId);
+        }
+        final double factor = properties.getSamplingIntervalFactor();
+        if (factor <= 0) {
+            return 0;
+        }
+        final Double revised = revisedIntervals.get(definition.getClientHandle());
+        if (revised != null) {
+            return revised;
+        }
+        final int base = definition.getTimeDeadband() > 0 ? definition.getTimeDeadband() : publishInterval;
+        return factor * base * 1000;
+    }
+
+    /**
+     * Store the sampling interval revised by the server for a monitored item.
+     * @param clientHandle    the client handle of the monitored item
+     * @param revisedInterval the sampling interval in milliseconds with which the server samples the item
+     */
+    public void onRevised(int clientHandle, double revisedInterval) {
+        revisedIntervals.put(clientHandle, revisedInterval);
+    }
+
+    /**
+     * Forget the revised sampling interval of a monitored item which was deleted.
+     * @param clientHandle the client handle of the monitored item
+     */
+    public void forget(int clientHandle) {
+        revisedIntervals.remove(clientHandle);
+    }
+}
@@ -27,6 +27,8 @@ import cern.c2mon.daq.opcua.exceptions.CommunicationException;
 import cern.c2mon.daq.opcua.exceptions.ConfigurationException;
 import cern.c2mon.daq.opcua.exceptions.ExceptionContext;
 import cern.c2mon.daq.opcua.exceptions.OPCUAException;
+import cern.c2mon.daq.opcua.metrics.FailoverTimeline;
+import cern.c2mon.daq.opcua.metrics.MetricProxy;
 import cern.c2mon.daq.opcua.scope.EquipmentScoped;
 import cern.c2mon.daq.opcua.security.CertificateGenerator;
 import cern.c2mon.daq.opcua.security.CertificateLoader;
@@ -50,6 +52,9 @@ import java.io.IOException;
 import java.net.UnknownHostException;
 import java.util.*;
 import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.stream.Collectors;
 
 import static org.eclipse.milo.opcua.stack.core.types.builtin.unsigned.Unsigned.uint;
@@ -67,8 +72,8 @@ public class SecurityModule {
     private final CertificateLoader loader;
     private final CertificateGenerator generator;
     private final NoSecurityCertifier noSecurity;
+    private final MetricProxy metricProxy;
     private final List<AppConfigProperties.CertifierMode> certifiers = new ArrayList<>();
-    private OpcUaClientConfigBuilder builder;
 
     /**
      * Creates an {@link OpcUaClient} according to the configuration specified in {@link AppConfigProperties} and
@@ -79,18 +84,67 @@ public class SecurityModule {
      * is not possible either and the option is allowed in the configuration.
      * @param discoveryUri the URI used for discovering the server
      * @param endpointDescriptions A list of endpointDescriptions of which to connect to one.
+     * @param maxPendingPublishRequests the number of PublishRequests to keep outstanding on the session, or 0 to leave
+     *                                  the choice to the OPC UA client stack.
      * @return The {@link OpcUaClient} object that is connected to one of the
      * @throws OPCUAException if a failure occurred when establishing a secure channel. That exception may be type
      * {@link ConfigurationException} if the connection failed due to a configuration issue, or of type {@link
      * CommunicationException} if the connection attempt failed for reasons unrelated to configuration where a retry
      * may be fruitful.
      */
-    public OpcUaClient createClient(String discoveryUri, Collection<EndpointDescription> endpointDescriptions) throws OPCUAException {
-        builder = OpcUaClientConfig.builder()
+    public OpcUaClient createClient(String discoveryUri, Collection<EndpointDescription> endpointDescriptions, int maxPendingPublishRequests) throws OPCUAException {
+        return createClient(discoveryUri, endpointDescriptions, maxPendingPublishRequests, true);
+    }
+
+    /**
+     * Creates an {@link OpcUaClient} in the same way as createClient(discoveryUri, endpointDescriptions), but only
+     * opens the secure channel to the server without creating and activating a session. The session of such a
+     * standby client can be activated at a later point through activateSession(client), skipping the TCP connection
+     * and the asymmetric cryptography involved in opening the secure channel.
+     * @param discoveryUri         the URI used for discovering the server
+     * @param endpointDescriptions A list of endpointDescriptions of which to connect to one.
+     * @param maxPendingPublishRequests the number of PublishRequests to keep outstanding once the session is activated,
+     *                                  or 0 to leave the choice to the OPC UA client stack.
+     * @return The {@link OpcUaClient} object with an open secure channel to one of the endpoints
+     * @throws OPCUAException if a failure occurred when establishing a secure channel.
+     */
+    public OpcUaClient createStandbyClient(String discoveryUri, Collection<EndpointDescription> endpointDescriptions, int maxPendingPublishRequests) throws OPCUAException {
+        return createClient(discoveryUri, endpointDescriptions, maxPendingPublishRequests, false);
+    }
+
+    /**
+     * Creates and activates a session on a client created through createStandbyClient(discoveryUri,
+     * endpointDescriptions). The secure channel is reopened if it was closed in the meantime.
+     * @param client the standby client whose session to activate
+     * @return the client with an active session
+     * @throws OPCUAException of type {@link CommunicationException} if the session could not be activated within the
+     *                        request timeout. The client is disconnected in that case.
+     */
+    public OpcUaClient activateSession(OpcUaClient client) throws OPCUAException {
+        final long start = System.nanoTime();
+        try {
+            client.connect().get(config.getRequestTimeout(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            client.disconnect();
+            throw new CommunicationException(ExceptionContext.CONNECT, e);
+        } catch (ExecutionException | TimeoutException e) {
+            client.disconnect();
+            throw OPCUAException.of(ExceptionContext.CONNECT, e.getCause() == null ? e : e.getCause(), false);
+        }
+        metricProxy.recordFailoverPhase(FailoverTimeline.Phase.SESSION_ACTIVATE, System.nanoTime() - start);
+        return client;
+    }
+
+    private OpcUaClient createClient(String discoveryUri, Collection<EndpointDescription> endpointDescriptions, int maxPendingPublishRequests, boolean activateSession) throws OPCUAException {
+        final OpcUaClientConfigBuilder builder = OpcUaClientConfig.builder()
                 .setApplicationName(LocalizedText.english(config.getApplicationName()))
                 .setApplicationUri(config.getApplicationUri())
                 .setRequestTimeout(uint(config.getRequestTimeout()))
                 .setCertificateValidator(getValidator());
+        if (maxPendingPublishRequests > 0) {
+            builder.setMaxPendingPublishRequests(uint(maxPendingPublishRequests));
+        }
 
         // assure that endpointDescriptions are in a mutable list
         List<EndpointDescription> endpoints = endpointDescriptions.stream()
@@ -106,7 +160,7 @@ public class SecurityModule {
                 .sorted(Comparator.comparing(EndpointDescription::getSecurityLevel).reversed())
                 .collect(Collectors.toList());
         sortCertifiers();
-        return attemptConnection(endpoints);
+        return attemptConnection(builder, endpoints, activateSession);
     }
 
     private ClientCertificateValidator getValidator() throws ConfigurationException {
@@ -125,7 +179,7 @@ public class SecurityModule {
         throw new ConfigurationException(ExceptionContext.PKI_ERROR);
     }
 
-    private void sortCertifiers() {
+    private synchronized void sortCertifiers() {
         if (certifiers.isEmpty() && config.getCertifierPriority() != null) {
             certifiers.addAll(config.getCertifierPriority().entrySet().stream()
                     .filter(e -> e.getValue() != 0)
@@ -139,13 +193,13 @@ public class SecurityModule {
         }
     }
 
-    private OpcUaClient attemptConnection(List<EndpointDescription> mutableEndpoints) throws OPCUAException {
+    private OpcUaClient attemptConnection(OpcUaClientConfigBuilder builder, List<EndpointDescription> mutableEndpoints, boolean activateSession) throws OPCUAException {
         OpcUaClient client = null;
         for (int i = 0; i < certifiers.size(); i++) {
             final Certifier certifier = getCertifierForMode(certifiers.get(i));
                 log.info("Attempt connection with Certifier '{}'! ", certifier.getClass().getName());
                 try {
-                    client = attemptConnectionWithCertifier(mutableEndpoints, certifier);
+                    client = attemptConnectionWithCertifier(builder, mutableEndpoints, certifier, activateSession);
                     break;
                 } catch (OPCUAException e) {
                     log.info("Unable to connect with Certifier {}. Last encountered exception: ", certifier.getClass().getName(), e);
@@ -168,7 +222,7 @@ public class SecurityModule {
         }
     }
 
-    private OpcUaClient attemptConnectionWithCertifier(List<EndpointDescription> endpoints, Certifier certifier) throws OPCUAException {
+    private OpcUaClient attemptConnectionWithCertifier(OpcUaClientConfigBuilder builder, List<EndpointDescription> endpoints, Certifier certifier, boolean activateSession) throws OPCUAException {
         Exception lastException = null;
         final List<EndpointDescription> matchingEndpoints = endpoints.stream().filter(certifier::supportsAlgorithm).collect(Collectors.toList());
         for (EndpointDescription e : matchingEndpoints) {
@@ -177,7 +231,7 @@ public class SecurityModule {
                 certifier.certify(builder, e);
                 try {
                     OpcUaClient client = OpcUaClient.create(builder.build());
-                    return (OpcUaClient) client.connect().join();
+                    return connect(client, activateSession);
                 } catch (UaException ex) {
                     lastException = ex;
                     log.debug("Unsupported transport in endpoint URI. Attempting less secure endpoint", ex);
@@ -198,6 +252,24 @@ public class SecurityModule {
         }
     }
 
+    /**
+     * Connects the client in two steps, so that the time needed to open the secure channel and to activate the session
+     * can be recorded separately. Connecting the client reuses the secure channel opened in the first step. The
+     * secure channel of standby clients is not recorded, since it is not opened as part of a connection or failover.
+     */
+    private OpcUaClient connect(OpcUaClient client, boolean activateSession) {
+        long start = System.nanoTime();
+        client.getStackClient().connect().join();
+        if (!activateSession) {
+            return client;
+        }
+        metricProxy.recordFailoverPhase(FailoverTimeline.Phase.SECURE_CHANNEL, System.nanoTime() - start);
+        start = System.nanoTime();
+        client.connect().join();
+        metricProxy.recordFailoverPhase(FailoverTimeline.Phase.SESSION_ACTIVATE, System.nanoTime() - start);
+        return client;
+    }
+
     private boolean handleAndShouldContinue(Certifier certifier, CompletionException ex) {
         final Throwable cause = ex.getCause();
         log.debug("Authentication error: ", cause);
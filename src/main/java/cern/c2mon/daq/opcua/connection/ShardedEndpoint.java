@@ -0,0 +1,324 @@
+/*-
+ * #%L
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * %%
+ * Copyright (C) 2010 - 2022 CERN
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package cern.c2mon.daq.opcua.connection;
+
+import cern.c2mon.daq.opcua.MessageSender;
+import cern.c2mon.daq.opcua.config.AppConfigProperties;
+import cern.c2mon.daq.opcua.exceptions.CommunicationException;
+import cern.c2mon.daq.opcua.exceptions.OPCUAException;
+import cern.c2mon.daq.opcua.mapping.ItemDefinition;
+import cern.c2mon.daq.opcua.mapping.SubscriptionGroup;
+import cern.c2mon.daq.tools.equipmentexceptions.EqIOException;
+import cern.c2mon.shared.common.datatag.SourceDataTagQuality;
+import cern.c2mon.shared.common.datatag.ValueUpdate;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.eclipse.milo.opcua.sdk.client.SessionActivityListener;
+import org.eclipse.milo.opcua.sdk.client.api.UaSession;
+import org.eclipse.milo.opcua.sdk.client.api.subscriptions.UaMonitoredItem;
+import org.eclipse.milo.opcua.sdk.client.model.nodes.objects.ServerRedundancyTypeNode;
+import org.eclipse.milo.opcua.stack.core.types.builtin.NodeId;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.context.annotation.Scope;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+import static cern.c2mon.daq.opcua.MessageSender.EquipmentState.CONNECTION_LOST;
+import static cern.c2mon.daq.opcua.MessageSender.EquipmentState.OK;
+
+/**
+ * An {@link Endpoint} which spreads the monitored items of an equipment over several sessions to the same server, each
+ * held by a {@link MiloEndpoint}. Since every session has its own secure channel, the encryption, decoding and publish
+ * handling of the value updates is distributed over several threads. Monitored items are assigned to a session by
+ * their client handle. Connection monitoring, reads, writes and method calls are executed on the first session. The
+ * state of the sessions is aggregated: the logical endpoint is considered active only if all of its sessions are
+ * active, so that the {@link cern.c2mon.daq.opcua.control.ConcreteController}s can treat it like a single endpoint.
+ */
+@Slf4j
+@RequiredArgsConstructor
+@Component
+@Scope("prototype")
+public class ShardedEndpoint implements Endpoint {
+
+    private final ObjectProvider<MiloEndpoint> shardProvider;
+    private final AppConfigProperties properties;
+    private final MessageSender messageSender;
+
+    private final List<MiloEndpoint> shards = new ArrayList<>();
+    private final List<SessionActivityListener> shardListeners = new ArrayList<>();
+    private final Collection<SessionActivityListener> sessionActivityListeners = new CopyOnWriteArrayList<>();
+    private final Set<Integer> inactiveShards = new HashSet<>();
+    private boolean connected;
+    private boolean updateEquipmentStateOnSessionChanges;
+
+    /**
+     * Opens the configured number of sessions to the server.
+     * @param uri the server address to connect to.
+     * @throws OPCUAException if any of the sessions could not be established. In this case, all sessions are closed.
+     */
+    @Override
+    public void initialize(String uri) throws OPCUAException {
+        final List<MiloEndpoint> endpoints = shards();
+        log.info("Initializing {} sessions to {}.", endpoints.size(), uri);
+        synchronized (this) {
+            inactiveShards.clear();
+            connected = false;
+        }
+        for (int i = 0; i < endpoints.size(); i++) {
+            try {
+                endpoints.get(i).initialize(uri);
+            } catch (OPCUAException e) {
+                log.info("Could not initialize session {} of {} to {}.", i + 1, endpoints.size(), uri);
+                endpoints.subList(0, i).forEach(MiloEndpoint::disconnect);
+                throw e;
+            }
+        }
+        synchronized (this) {
+            connected = true;
+        }
+        for (int i = 0; i < endpoints.size(); i++) {
+            endpoints.get(i).manageSessionActivityListener(true, shardListeners.get(i));
+        }
+    }
+
+    @Override
+    public void manageSessionActivityListener(boolean add, SessionActivityListener listener) {
+        if (add && !sessionActivityListeners.contains(listener)) {
+            sessionActivityListeners.add(listener);
+            if (isActive()) {
+                listener.onSessionActive(null);
+            }
+        } else if (!add) {
+            sessionActivityListeners.remove(listener);
+        }
+    }
+
+    @Override
+    public void manageCircuitBreakerListener(boolean add, CircuitBreaker.Listener listener) {
+        shards().forEach(s -> s.manageCircuitBreakerListener(add, listener));
+    }
+
+    @Override
+    public void setUpdateEquipmentStateOnSessionChanges(boolean active) {
+        shards().forEach(s -> s.setUpdateEquipmentStateOnSessionChanges(active));
+        synchronized (this) {
+            updateEquipmentStateOnSessionChanges = active;
+        }
+        if (active && isActive()) {
+            messageSender.onEquipmentStateUpdate(OK);
+        }
+    }
+
+    @Override
+    public String getUri() {
+        return primary().getUri();
+    }
+
+    @Override
+    public void disconnect() {
+        synchronized (this) {
+            connected = false;
+            updateEquipmentStateOnSessionChanges = false;
+        }
+        shards().forEach(MiloEndpoint::disconnect);
+        sessionActivityListeners.clear();
+    }
+
+    @Override
+    public void prepareStandby(String uri) throws OPCUAException {
+        for (MiloEndpoint shard : shards()) {
+            shard.prepareStandby(uri);
+        }
+    }
+
+    @Override
+    public void releaseStandby() {
+        shards().forEach(MiloEndpoint::releaseStandby);
+    }
+
+    @Override
+    public Map<Integer, SourceDataTagQuality> subscribe(SubscriptionGroup group, Collection<ItemDefinition> definitions) throws OPCUAException {
+        final Map<Integer, List<ItemDefinition>> definitionsPerShard = definitions.stream()
+                .collect(Collectors.groupingBy(d -> shardIndex(d.getClientHandle())));
+        final Map<Integer, SourceDataTagQuality> qualities = new HashMap<>();
+        for (Map.Entry<Integer, List<ItemDefinition>> e : definitionsPerShard.entrySet()) {
+            qualities.putAll(shards().get(e.getKey()).subscribe(group, e.getValue()));
+        }
+        return qualities;
+    }
+
+    /**
+     * Recreates the subscriptions on every session. Since each session holds a distinct share of the monitored items,
+     * the operation is only considered successful if the subscriptions could be recreated on all sessions.
+     * @throws CommunicationException if the subscriptions could not be recreated on any of the sessions.
+     */
+    @Override
+    public void recreateAllSubscriptions() throws CommunicationException {
+        CommunicationException lastException = null;
+        final List<MiloEndpoint> endpoints = shards();
+        for (int i = 0; i < endpoints.size(); i++) {
+            try {
+                endpoints.get(i).recreateAllSubscriptions();
+            } catch (CommunicationException e) {
+                log.info("Could not recreate the subscriptions of session {} of {}.", i + 1, endpoints.size());
+                lastException = e;
+            }
+        }
+        if (lastException != null) {
+            throw lastException;
+        }
+    }
+
+    @Override
+    public Map<Integer, SourceDataTagQuality> subscribeWithCallback(int publishingInterval, Collection<ItemDefinition> definitions, Consumer<UaMonitoredItem> itemCreationCallback) throws OPCUAException {
+        return primary().subscribeWithCallback(publishingInterval, definitions, itemCreationCallback);
+    }
+
+    @Override
+    public boolean deleteItemFromSubscription(int clientHandle, int publishInterval) {
+        return shards().get(shardIndex(clientHandle)).deleteItemFromSubscription(clientHandle, publishInterval);
+    }
+
+    @Override
+    public Map<Integer, Boolean> deleteItemsFromSubscription(Collection<Integer> clientHandles, int publishInterval) {
+        final Map<Integer, List<Integer>> handlesPerShard = clientHandles.stream()
+                .collect(Collectors.groupingBy(this::shardIndex));
+        final Map<Integer, Boolean> results = new HashMap<>();
+        handlesPerShard.forEach((shard, handles) ->
+                results.putAll(shards().get(shard).deleteItemsFromSubscription(handles, publishInterval)));
+        return results;
+    }
+
+    @Override
+    public Map<Integer, Boolean> modifyItemsInSubscription(Collection<ItemDefinition> definitions, int publishInterval) {
+        final Map<Integer, List<ItemDefinition>> definitionsPerShard = definitions.stream()
+                .collect(Collectors.groupingBy(d -> shardIndex(d.getClientHandle())));
+        final Map<Integer, Boolean> results = new HashMap<>();
+        definitionsPerShard.forEach((shard, shardDefinitions) ->
+                results.putAll(shards().get(shard).modifyItemsInSubscription(shardDefinitions, publishInterval)));
+        return results;
+    }
+
+    @Override
+    public Map.Entry<ValueUpdate, SourceDataTagQuality> read(NodeId nodeId) throws OPCUAException {
+        return primary().read(nodeId);
+    }
+
+    @Override
+    public boolean write(NodeId nodeId, Object value) throws OPCUAException {
+        return primary().write(nodeId, value);
+    }
+
+    @Override
+    public Map.Entry<Boolean, Object[]> callMethod(ItemDefinition definition, Object arg) throws OPCUAException {
+        return primary().callMethod(definition, arg);
+    }
+
+    @Override
+    public ServerRedundancyTypeNode getServerRedundancyNode() throws OPCUAException {
+        return primary().getServerRedundancyNode();
+    }
+
+    @Override
+    public void fillNameSpaceIndex() throws EqIOException {
+        primary().fillNameSpaceIndex();
+    }
+
+    private MiloEndpoint primary() {
+        return shards().get(0);
+    }
+
+    private int shardIndex(int clientHandle) {
+        return Math.floorMod(clientHandle, shards().size());
+    }
+
+    private synchronized List<MiloEndpoint> shards() {
+        if (shards.isEmpty()) {
+            final int count = Math.max(1, properties.getSessionShards());
+            for (int i = 0; i < count; i++) {
+                final int index = i;
+                final MiloEndpoint shard = shardProvider.getObject();
+                shard.setHandleFilter(h -> Math.floorMod(h, count) == index);
+                shard.setReportEquipmentState(false);
+                shard.setSession(index);
+                shards.add(shard);
+                shardListeners.add(new ShardListener(index));
+            }
+        }
+        return shards;
+    }
+
+    private synchronized boolean isActive() {
+        return connected && inactiveShards.isEmpty();
+    }
+
+    private void onShardActive(int index, UaSession session) {
+        synchronized (this) {
+            if (!inactiveShards.remove(index) || !inactiveShards.isEmpty()) {
+                return;
+            }
+            log.info("All {} sessions are active.", shards.size());
+            if (updateEquipmentStateOnSessionChanges) {
+                messageSender.onEquipmentStateUpdate(OK);
+            }
+        }
+        sessionActivityListeners.forEach(l -> l.onSessionActive(session));
+    }
+
+    private void onShardInactive(int index, UaSession session) {
+        synchronized (this) {
+            if (!inactiveShards.add(index) || inactiveShards.size() > 1) {
+                return;
+            }
+            log.info("Session {} of {} deactivated.", index + 1, shards.size());
+            if (updateEquipmentStateOnSessionChanges) {
+                messageSender.onEquipmentStateUpdate(CONNECTION_LOST);
+            }
+        }
+        sessionActivityListeners.forEach(l -> l.onSessionInactive(session));
+    }
+
+    @RequiredArgsConstructor
+    private class ShardListener implements SessionActivityListener {
+        private final int index;
+
+        @Override
+        public void onSessionActive(UaSession session) {
+            onShardActive(index, session);
+        }
+
+        @Override
+        public void onSessionInactive(UaSession session) {
+            onShardInactive(index, session);
+        }
+    }
+}
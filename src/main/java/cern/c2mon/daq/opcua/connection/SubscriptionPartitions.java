@@ -0,0 +1,249 @@
+/*-
+ * #%L
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * %%
+ * Copyright (C) 2010 - 2022 CERN
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package cern.c2mon.daq.opcua.connection;
+
+import org.eclipse.milo.opcua.sdk.client.api.subscriptions.UaMonitoredItem;
+import org.eclipse.milo.opcua.sdk.client.api.subscriptions.UaSubscription;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Keeps track of the server subscriptions of an endpoint. The monitored items of a {@link
+ * cern.c2mon.daq.opcua.mapping.SubscriptionGroup} are spread over several subscriptions with the group's publishing
+ * interval, the partitions, once they exceed maxItemsPerSubscription. This keeps publish responses small, and limits the
+ * impact of a subscription that times out to part of the group. Partitions are numbered for each publishing interval. A
+ * partition that is deleted leaves a gap, which is filled by the next partition to be created. The monitored items of
+ * each subscription are indexed by their client handles, so that they can be found without scanning the subscription.
+ */
+public class SubscriptionPartitions {
+
+    private final Map<Integer, Map<Integer, UaSubscription>> partitions = new ConcurrentHashMap<>();
+    private final Map<UaSubscription, Map<Integer, UaMonitoredItem>> items = new ConcurrentHashMap<>();
+
+    /**
+     * Plans how to distribute new monitored items over the partitions of a publishing interval. Existing partitions
+     * are filled up first in the order of their number, before new partitions are planned at the lowest free numbers.
+     * @param sizes                   the number of monitored items in each existing partition
+     * @param items                   the number of monitored items to distribute
+     * @param maxItemsPerSubscription the maximum number of monitored items per partition, or a value of 0 or less to
+     *                                keep all items in a single partition
+     * @return the number of items to create in each partition, ordered by partition number
+     */
+    public static Map<Integer, Integer> distribute(Map<Integer, Integer> sizes, int items, int maxItemsPerSubscription) {
+        final Map<Integer, Integer> plan = new LinkedHashMap<>();
+        if (items <= 0) {
+            return plan;
+        }
+        if (maxItemsPerSubscription <= 0) {
+            plan.put(sizes.isEmpty() ? 0 : Collections.min(sizes.keySet()), items);
+            return plan;
+        }
+        int remaining = items;
+        final Map<Integer, Integer> sorted = new TreeMap<>(sizes);
+        for (Map.Entry<Integer, Integer> e : sorted.entrySet()) {
+            final int free = Math.min(remaining, maxItemsPerSubscription - e.getValue());
+            if (free > 0) {
+                plan.put(e.getKey(), free);
+                remaining -= free;
+            }
+        }
+        for (int partition = 0; remaining > 0; partition++) {
+            if (!sorted.containsKey(partition)) {
+                final int count = Math.min(remaining, maxItemsPerSubscription);
+                plan.put(partition, count);
+                remaining -= count;
+            }
+        }
+        return plan;
+    }
+
+    /**
+     * @param items                   the number of monitored items with a publishing interval
+     * @param maxItemsPerSubscription the maximum number of monitored items per partition, or a value of 0 or less if
+     *                                unlimited
+     * @return the number of partitions needed to hold the monitored items
+     */
+    public static int partitionCount(int items, int maxItemsPerSubscription) {
+        return maxItemsPerSubscription <= 0 ? 1 : Math.max(1, (items + maxItemsPerSubscription - 1) / maxItemsPerSubscription);
+    }
+
+    /**
+     * @param publishInterval the publishing interval in seconds
+     * @param partition       the number of the partition
+     * @return the subscription of the partition, or null if there is none
+     */
+    public UaSubscription get(int publishInterval, int partition) {
+        return partitionsOf(publishInterval).get(partition);
+    }
+
+    /**
+     * @param publishInterval the publishing interval in seconds
+     * @return a copy of the subscriptions with the publishing interval, ordered by partition number
+     */
+    public Map<Integer, UaSubscription> get(int publishInterval) {
+        return new TreeMap<>(partitionsOf(publishInterval));
+    }
+
+    /**
+     * @param publishInterval the publishing interval in seconds
+     * @param partition       the number of the partition
+     * @return the number of monitored items in the partition, or 0 if there is no such partition
+     */
+    public int size(int publishInterval, int partition) {
+        final UaSubscription subscription = get(publishInterval, partition);
+        return subscription == null ? 0 : subscription.getMonitoredItems().size();
+    }
+
+    /**
+     * @param publishInterval the publishing interval in seconds
+     * @return the number of monitored items in each partition with the publishing interval
+     */
+    public Map<Integer, Integer> sizes(int publishInterval) {
+        final Map<Integer, Integer> sizes = new TreeMap<>();
+        partitionsOf(publishInterval).forEach((p, s) -> sizes.put(p, s.getMonitoredItems().size()));
+        return sizes;
+    }
+
+    /**
+     * Stores the subscription as the partition of the publishing interval, replacing any previous subscription.
+     * @param publishInterval the publishing interval in seconds
+     * @param partition       the number of the partition
+     * @param subscription    the subscription
+     */
+    public void put(int publishInterval, int partition, UaSubscription subscription) {
+        partitions.computeIfAbsent(publishInterval, k -> new ConcurrentSkipListMap<>()).put(partition, subscription);
+    }
+
+    /**
+     * @param publishInterval the publishing interval in seconds
+     * @param partition       the number of the partition
+     * @return the removed subscription, or null if there was none
+     */
+    public UaSubscription remove(int publishInterval, int partition) {
+        final Map<Integer, UaSubscription> forInterval = partitions.get(publishInterval);
+        if (forInterval == null) {
+            return null;
+        }
+        final UaSubscription removed = forInterval.remove(partition);
+        partitions.computeIfPresent(publishInterval, (k, v) -> v.isEmpty() ? null : v);
+        if (removed != null) {
+            items.remove(removed);
+        }
+        return removed;
+    }
+
+    /**
+     * Indexes monitored items created in a subscription by their client handles.
+     * @param subscription the subscription holding the monitored items
+     * @param created      the monitored items which were created successfully
+     */
+    public void index(UaSubscription subscription, Collection<UaMonitoredItem> created) {
+        final Map<Integer, UaMonitoredItem> index = items.computeIfAbsent(subscription, s -> new ConcurrentHashMap<>());
+        created.forEach(i -> index.put(i.getClientHandle().intValue(), i));
+    }
+
+    /**
+     * Removes a deleted monitored item from the index of its subscription.
+     * @param subscription the subscription which held the monitored item
+     * @param item         the deleted monitored item
+     */
+    public void unindex(UaSubscription subscription, UaMonitoredItem item) {
+        final Map<Integer, UaMonitoredItem> index = items.get(subscription);
+        if (index != null) {
+            index.remove(item.getClientHandle().intValue());
+        }
+    }
+
+    /**
+     * Finds the monitored items with the client handles among the partitions of a publishing interval.
+     * @param publishInterval the publishing interval in seconds
+     * @param clientHandles   the client handles of the monitored items
+     * @return the monitored items found, grouped by their partition number. Client handles which are not indexed for
+     * any of the partitions are omitted.
+     */
+    public Map<Integer, List<UaMonitoredItem>> find(int publishInterval, Collection<Integer> clientHandles) {
+        final Map<Integer, List<UaMonitoredItem>> found = new TreeMap<>();
+        for (Map.Entry<Integer, UaSubscription> partition : partitionsOf(publishInterval).entrySet()) {
+            final Map<Integer, UaMonitoredItem> index = items.getOrDefault(partition.getValue(), Collections.emptyMap());
+            for (Integer handle : clientHandles) {
+                final UaMonitoredItem item = index.get(handle);
+                if (item != null) {
+                    found.computeIfAbsent(partition.getKey(), p -> new ArrayList<>()).add(item);
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * @param subscription a subscription
+     * @return the publishing interval and partition number of the subscription, or null if it is not tracked
+     */
+    public Map.Entry<Integer, Integer> locate(UaSubscription subscription) {
+        for (Map.Entry<Integer, Map<Integer, UaSubscription>> interval : partitions.entrySet()) {
+            for (Map.Entry<Integer, UaSubscription> partition : interval.getValue().entrySet()) {
+                if (partition.getValue() == subscription) {
+                    return new AbstractMap.SimpleImmutableEntry<>(interval.getKey(), partition.getKey());
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param subscription a subscription
+     * @return whether the subscription is a partition of any publishing interval
+     */
+    public boolean contains(UaSubscription subscription) {
+        return locate(subscription) != null;
+    }
+
+    /**
+     * @return all tracked subscriptions
+     */
+    public Collection<UaSubscription> getAll() {
+        final Collection<UaSubscription> all = new ArrayList<>();
+        partitions.values().forEach(p -> all.addAll(p.values()));
+        return all;
+    }
+
+    /**
+     * Forgets all subscriptions.
+     */
+    public void clear() {
+        partitions.clear();
+        items.clear();
+    }
+
+    private Map<Integer, UaSubscription> partitionsOf(int publishInterval) {
+        return partitions.getOrDefault(publishInterval, Collections.emptyMap());
+    }
+}
@@ -0,0 +1,157 @@
+/*-
+ * #%L
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * %%
+ * Copyright (C) 2010 - 2022 CERN
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package cern.c2mon.daq.opcua.connection;
+
+import cern.c2mon.daq.opcua.config.AppConfigProperties;
+import cern.c2mon.daq.opcua.config.AppConfigProperties.SubscriptionParameters;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Determines the publishing parameters of the subscriptions of an endpoint from the configured subscriptionParameters,
+ * and adjusts the maximum number of notifications per publish response of each subscription to the publish responses
+ * observed. The latency of a publish response is the delay in between its publish time and its receipt, measured
+ * relative to the smallest such delay observed in the current and the previous window. The clock offset in between
+ * server and client is contained in every delay and cancels out, so that the latency reflects how much later than
+ * usual a response arrives. If the publish responses of a subscription arrive later than the
+ * subscriptionTargetPublishLatency on average, the limit is halved so that the server splits the notifications into
+ * smaller responses. If most responses are limited while arriving in time, the limit is doubled to reduce the number of
+ * responses. The limit remains within subscriptionTuningMinNotifications and subscriptionTuningMaxNotifications.
+ */
+@Slf4j
+@RequiredArgsConstructor
+public class SubscriptionTuner {
+
+    /**
+     * The keep-alive period in milliseconds aimed for if no maxKeepAliveCount is configured.
+     */
+    private static final double DEFAULT_KEEP_ALIVE_PERIOD = 10000.0;
+
+    private final AppConfigProperties properties;
+    private final Map<Integer, Integer> tunedLimits = new ConcurrentHashMap<>();
+    private final Map<Integer, Window> windows = new ConcurrentHashMap<>();
+
+    /**
+     * Returns the parameters with which to create or modify the subscription of the given publishing interval. Values
+     * which are not configured are completed such that keep-alive messages are sent around every 10 seconds and the
+     * lifetime count is at least three times the keep-alive count, as required by UA Part 4, 5.13.2.
+     * @param publishInterval the publishing interval of the subscription in seconds
+     * @return the parameters of the subscription
+     */
+    public SubscriptionParameters parameters(int publishInterval) {
+        final Map<Integer, SubscriptionParameters> configured = properties.getSubscriptionParameters();
+        final SubscriptionParameters p = configured == null ? null : configured.get(publishInterval);
+        final int keepAlive = p != null && p.getMaxKeepAliveCount() > 0
+                ? p.getMaxKeepAliveCount()
+                : (int) Math.max(1, Math.ceil(DEFAULT_KEEP_ALIVE_PERIOD / Math.max(1, publishInterval * 1000)));
+        final int lifetime = p != null && p.getLifetimeCount() > 0 ? Math.max(p.getLifetimeCount(), 3 * keepAlive) : 6 * keepAlive;
+        final int maxNotifications = tunedLimits.getOrDefault(publishInterval, p == null ? 0 : p.getMaxNotificationsPerPublish());
+        return new SubscriptionParameters(lifetime, keepAlive, maxNotifications, p == null ? 0 : p.getPriority());
+    }
+
+    /**
+     * Record a publish response received for the subscription of the given publishing interval. Once
+     * subscriptionTuningWindow responses have been recorded, the maximum number of notifications per publish is
+     * adjusted if necessary.
+     * @param publishInterval the publishing interval of the subscription in seconds
+     * @param notifications   the number of notifications in the publish response
+     * @param delayMillis     the delay in between the publish time of the response and its receipt, including the
+     *                        clock offset in between server and client
+     * @return the new maximum number of notifications per publish response, or -1 if it remains unchanged.
+     */
+    public int record(int publishInterval, int notifications, long delayMillis) {
+        if (!properties.isSubscriptionTuningEnabled()) {
+            return -1;
+        }
+        final int limit = parameters(publishInterval).getMaxNotificationsPerPublish();
+        final Window window = windows.computeIfAbsent(publishInterval, k -> new Window());
+        synchronized (window) {
+            window.add(notifications, delayMillis, limit > 0 && notifications >= limit);
+            if (window.responses < Math.max(1, properties.getSubscriptionTuningWindow())) {
+                return -1;
+            }
+            final int next = nextLimit(limit, window);
+            window.clear();
+            if (next == limit) {
+                return -1;
+            }
+            log.info("Adjusting the maximum notifications per publish of the subscription with publish interval {} from {} to {}.", publishInterval, limit, next);
+            tunedLimits.put(publishInterval, next);
+            return next;
+        }
+    }
+
+    /**
+     * Forget the observations and the tuned limit for a subscription, for instance when it is deleted.
+     * @param publishInterval the publishing interval of the subscription in seconds
+     */
+    public void forget(int publishInterval) {
+        windows.remove(publishInterval);
+        tunedLimits.remove(publishInterval);
+    }
+
+    private int nextLimit(int limit, Window window) {
+        final int min = properties.getSubscriptionTuningMinNotifications();
+        final int max = Math.max(min, properties.getSubscriptionTuningMaxNotifications());
+        final double latency = (double) window.delaySum / window.responses - Math.min(window.minDelay, window.previousMinDelay);
+        final long target = properties.getSubscriptionTargetPublishLatency();
+        if (latency > target) {
+            // an unlimited subscription is limited relative to the largest response observed
+            final int current = limit > 0 ? limit : window.maxNotifications;
+            return Math.min(max, Math.max(min, current / 2));
+        } else if (limit > 0 && latency < target / 2.0 && window.limitedResponses * 2 >= window.responses) {
+            return Math.min(max, Math.max(min, limit * 2));
+        }
+        return limit;
+    }
+
+    private static class Window {
+        private int responses;
+        private int limitedResponses;
+        private int maxNotifications;
+        private long delaySum;
+        private long minDelay = Long.MAX_VALUE;
+        private long previousMinDelay = Long.MAX_VALUE;
+
+        private void add(int notifications, long delayMillis, boolean limited) {
+            responses++;
+            delaySum += delayMillis;
+            minDelay = Math.min(minDelay, delayMillis);
+            maxNotifications = Math.max(maxNotifications, notifications);
+            if (limited) {
+                limitedResponses++;
+            }
+        }
+
+        private void clear() {
+            responses = 0;
+            limitedResponses = 0;
+            maxNotifications = 0;
+            delaySum = 0;
+            previousMinDelay = minDelay;
+            minDelay = Long.MAX_VALUE;
+        }
+    }
+}
@@ -0,0 +1,165 @@
+/*-
+ * #%L
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * %%
+ * Copyright (C) 2010 - 2022 CERN
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package cern.c2mon.daq.opcua.connection;
+
+import cern.c2mon.daq.opcua.scope.EquipmentScheduler;
+import cern.c2mon.daq.opcua.scope.ScheduledTask;
+import lombok.RequiredArgsConstructor;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Applies the time deadband of tags on the client which are subscribed with a shorter publishing interval than their
+ * time deadband. Such tags are registered with their time deadband when they are subscribed, so that updates of other
+ * tags pass without any lookup. At most one update per time deadband is forwarded for each registered tag. An update received within the time
+ * deadband of the previous one is held back and forwarded once the time deadband has passed, unless it is superseded by
+ * a newer update in the meantime. This matches the behavior of a subscription whose publishing interval equals the time
+ * deadband, while the latency added by the client is bounded by the time deadband itself.
+ */
+@RequiredArgsConstructor
+public class TimeDeadbandFilter {
+
+    private final EquipmentScheduler scheduler;
+    private final Map<Integer, Window> windows = new ConcurrentHashMap<>();
+
+    /**
+     * Applies the time deadband to the updates of a tag. The state kept for the tag is retained if its time deadband
+     * did not change.
+     * @param handle         the client handle of the tag
+     * @param deadbandMillis the time deadband of the tag in milliseconds
+     */
+    public void throttle(int handle, long deadbandMillis) {
+        windows.compute(handle, (h, current) -> {
+            if (current != null && current.deadbandMillis == deadbandMillis) {
+                return current;
+            } else if (current != null) {
+                current.cancel();
+            }
+            return new Window(deadbandMillis);
+        });
+    }
+
+    /**
+     * @param handle the client handle of the tag
+     * @return whether a time deadband is applied to the updates of the tag
+     */
+    public boolean isThrottled(int handle) {
+        return windows.containsKey(handle);
+    }
+
+    /**
+     * Forwards the update immediately if the time deadband of the tag has passed since the last forwarded update, or
+     * holds it back until it has. Updates of tags without time deadband are forwarded immediately.
+     * @param handle the client handle of the tag
+     * @param update forwards the update when run
+     */
+    public void offer(int handle, Runnable update) {
+        final Window window = windows.get(handle);
+        if (window == null) {
+            update.run();
+        } else {
+            window.offer(update);
+        }
+    }
+
+    /**
+     * Discards the state kept for a tag, including any update held back.
+     * @param handle the client handle of the tag
+     */
+    public void forget(int handle) {
+        final Window window = windows.remove(handle);
+        if (window != null) {
+            window.cancel();
+        }
+    }
+
+    /**
+     * Discards the state kept for all tags, including any updates held back.
+     */
+    public void clear() {
+        windows.values().forEach(Window::cancel);
+        windows.clear();
+    }
+
+    /**
+     * @return the number of tags with an update currently held back
+     */
+    public int getPendingUpdates() {
+        return (int) windows.values().stream().filter(Window::isPending).count();
+    }
+
+    @RequiredArgsConstructor
+    private class Window {
+        private final long deadbandMillis;
+        private long lastForwarded = Long.MIN_VALUE;
+        private Runnable pending;
+        private ScheduledTask flush;
+
+        private void offer(Runnable update) {
+            final Runnable toForward;
+            synchronized (this) {
+                final long now = System.currentTimeMillis();
+                final long due = lastForwarded == Long.MIN_VALUE ? now : lastForwarded + deadbandMillis;
+                if (pending == null && due <= now) {
+                    lastForwarded = now;
+                    toForward = update;
+                } else {
+                    toForward = null;
+                    pending = update;
+                    if (flush == null) {
+                        flush = scheduler.schedule(this::flush, Math.max(0, due - now), TimeUnit.MILLISECONDS);
+                    }
+                }
+            }
+            if (toForward != null) {
+                toForward.run();
+            }
+        }
+
+        private void flush() {
+            final Runnable toForward;
+            synchronized (this) {
+                toForward = pending;
+                pending = null;
+                flush = null;
+                lastForwarded = System.currentTimeMillis();
+            }
+            if (toForward != null) {
+                toForward.run();
+            }
+        }
+
+        private synchronized boolean isPending() {
+            return pending != null;
+        }
+
+        private synchronized void cancel() {
+            if (flush != null) {
+                flush.cancel();
+                flush = null;
+            }
+            pending = null;
+        }
+    }
+}
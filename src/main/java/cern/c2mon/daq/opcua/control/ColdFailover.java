@@ -26,17 +26,20 @@ import cern.c2mon.daq.opcua.connection.Endpoint;
 import cern.c2mon.daq.opcua.exceptions.CommunicationException;
 import cern.c2mon.daq.opcua.exceptions.ExceptionContext;
 import cern.c2mon.daq.opcua.exceptions.OPCUAException;
+import cern.c2mon.daq.opcua.metrics.MetricProxy;
+import cern.c2mon.daq.opcua.scope.EquipmentScheduler;
+import cern.c2mon.daq.opcua.scope.ScheduledTask;
 import lombok.extern.slf4j.Slf4j;
 import org.eclipse.milo.opcua.stack.core.types.builtin.unsigned.UByte;
 import org.springframework.jmx.export.annotation.ManagedOperation;
 import org.springframework.jmx.export.annotation.ManagedResource;
-import org.springframework.retry.support.RetryTemplate;
 
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Queue;
 import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.TimeUnit;
 
 /**
  * In Cold Failover mode a client can only connect to one server at a time. When the client loses connectivity with the
@@ -50,15 +53,16 @@ public class ColdFailover extends FailoverBase {
     private final Queue<String> redundantServers = new ConcurrentLinkedDeque<>();
     private String currentUri;
     private Endpoint activeEndpoint;
-
+    private ScheduledTask standbyRefresh;
 
     /**
      * Creates a new instance of ColdFailover
      * @param configProperties the application properties
-     * @param alwaysRetryTemplate a retry template to continuously execute a method call until successful termination.
+     * @param metricProxy the metric proxy recording the duration of the failover phases
+     * @param scheduler the scheduler used to trigger and retry failovers and to refresh the standby connection
      */
-    public ColdFailover(AppConfigProperties configProperties, RetryTemplate alwaysRetryTemplate) {
-        super(configProperties, alwaysRetryTemplate);
+    public ColdFailover(AppConfigProperties configProperties, MetricProxy metricProxy, EquipmentScheduler scheduler) {
+        super(configProperties, metricProxy, scheduler);
     }
 
     /**
@@ -93,12 +97,21 @@ public class ColdFailover extends FailoverBase {
             log.info("Connected to healthy server in cold redundancy mode.");
         }
         monitorConnection();
+        if (configProperties.isPrewarmStandby() && redundantServers.size() > 1) {
+            standbyRefresh = scheduler.scheduleWithFixedDelay(this::refreshStandby, 0, configProperties.getStandbyRefreshInterval(), TimeUnit.MILLISECONDS);
+        }
     }
 
     @Override
     public void stop() {
         super.stop();
         log.info("Stopping ColdFailover");
+        if (standbyRefresh != null) {
+            standbyRefresh.cancel();
+        }
+        if (activeEndpoint != null) {
+            activeEndpoint.releaseStandby();
+        }
         redundantServers.clear();
     }
 
@@ -134,6 +147,15 @@ public class ColdFailover extends FailoverBase {
         }
     }
 
+    /**
+     * Lists the phase durations of the most recent failover procedures.
+     * @return a description of the most recent failover timelines, the most recent one first.
+     */
+    @ManagedOperation(description = "Lists the durations of the individual phases of the most recent failover procedures, the most recent one first.")
+    public List<String> recentFailoverTimelines() {
+        return getRecentTimelines();
+    }
+
     @Override
     protected Endpoint currentEndpoint() {
         return activeEndpoint;
@@ -180,6 +202,24 @@ public class ColdFailover extends FailoverBase {
         }
     }
 
+    /**
+     * Keeps a secure channel open to the server which is tried first on the next failover. Service level cannot be read
+     * without a session, so the standby server is chosen by the order of the redundant server set.
+     */
+    private void refreshStandby() {
+        if (stopped.get() || !listening.get()) {
+            return;
+        }
+        final String current = currentUri;
+        redundantServers.stream().filter(uri -> !uri.equals(current)).findFirst().ifPresent(uri -> {
+            try {
+                activeEndpoint.prepareStandby(uri);
+            } catch (OPCUAException e) {
+                log.info("Could not prepare a standby connection to server at {}.", uri, e);
+            }
+        });
+    }
+
     @Override
     protected void monitorConnection() throws OPCUAException {
         if (!stopped.get()) {
@@ -76,6 +76,27 @@ public interface Controller {
      */
     boolean unsubscribe (ItemDefinition definition);
 
+    /**
+     * Unsubscribe from the {@link NodeId}s in the {@link ItemDefinition}s on the OPC UA server or on all servers in a
+     * redundant server set, removing the {@link ItemDefinition}s of each {@link SubscriptionGroup} in a batch.
+     * @param groupsWithDefinitions a Map of {@link SubscriptionGroup}s and the {@link ItemDefinition}s to remove from
+     *                              the groups.
+     * @return the client handles of the {@link ItemDefinition}s and whether their removal from subscription was
+     * completed successfully at the currently active server.
+     */
+    Map<Integer, Boolean> unsubscribe (Map<SubscriptionGroup, List<ItemDefinition>> groupsWithDefinitions);
+
+    /**
+     * Apply changed deadbands to the monitored items of the {@link ItemDefinition}s in place on the OPC UA server or
+     * on all servers in a redundant server set. The {@link ItemDefinition}s of each {@link SubscriptionGroup} are
+     * modified in a batch.
+     * @param groupsWithDefinitions a Map of {@link SubscriptionGroup}s and the {@link ItemDefinition}s holding the new
+     *                              deadbands of the groups' monitored items.
+     * @return the client handles of the {@link ItemDefinition}s and whether their monitored items were modified
+     * successfully at the currently active server.
+     */
+    Map<Integer, Boolean> modify (Map<SubscriptionGroup, List<ItemDefinition>> groupsWithDefinitions);
+
     /**
      * Read the current value from a node on the currently connected OPC UA server
      * @param nodeId the nodeId of the node whose value to read.
@@ -32,6 +32,7 @@ import lombok.extern.slf4j.Slf4j;
 import org.eclipse.milo.opcua.stack.core.types.builtin.NodeId;
 
 import java.util.AbstractMap;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
@@ -92,6 +93,27 @@ public abstract class ControllerBase implements ConcreteController {
         return currentEndpoint().deleteItemFromSubscription(definition.getClientHandle(), definition.getTimeDeadband());
     }
 
+    @Override
+    public Map<Integer, Boolean> unsubscribe (Map<SubscriptionGroup, List<ItemDefinition>> groupsWithDefinitions) {
+        final Map<Integer, Boolean> results = new HashMap<>();
+        groupsWithDefinitions.forEach((group, definitions) -> {
+            final List<Integer> handles = definitions.stream().map(ItemDefinition::getClientHandle).collect(Collectors.toList());
+            passiveEndpoints().forEach(e -> e.deleteItemsFromSubscription(handles, group.getPublishInterval()));
+            results.putAll(currentEndpoint().deleteItemsFromSubscription(handles, group.getPublishInterval()));
+        });
+        return results;
+    }
+
+    @Override
+    public Map<Integer, Boolean> modify (Map<SubscriptionGroup, List<ItemDefinition>> groupsWithDefinitions) {
+        final Map<Integer, Boolean> results = new HashMap<>();
+        groupsWithDefinitions.forEach((group, definitions) -> {
+            passiveEndpoints().forEach(e -> e.modifyItemsInSubscription(definitions, group.getPublishInterval()));
+            results.putAll(currentEndpoint().modifyItemsInSubscription(definitions, group.getPublishInterval()));
+        });
+        return results;
+    }
+
     @Override
     public Map.Entry<ValueUpdate, SourceDataTagQuality> read (NodeId nodeId) throws OPCUAException {
         return currentEndpoint().read(nodeId);
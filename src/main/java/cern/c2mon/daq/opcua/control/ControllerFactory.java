@@ -22,11 +22,12 @@
 package cern.c2mon.daq.opcua.control;
 
 import cern.c2mon.daq.opcua.config.AppConfigProperties;
+import cern.c2mon.daq.opcua.metrics.MetricProxy;
+import cern.c2mon.daq.opcua.scope.EquipmentScheduler;
 import cern.c2mon.daq.opcua.scope.EquipmentScoped;
 import lombok.RequiredArgsConstructor;
 import org.eclipse.milo.opcua.stack.core.types.enumerated.RedundancySupport;
 import org.springframework.beans.factory.FactoryBean;
-import org.springframework.retry.support.RetryTemplate;
 
 /**
  * A Spring-managed factory to create ConcreteControllers depending on the configured {@link
@@ -37,7 +38,8 @@ import org.springframework.retry.support.RetryTemplate;
 public class ControllerFactory implements FactoryBean<ConcreteController> {
 
     private final AppConfigProperties configProperties;
-    private final RetryTemplate alwaysRetryTemplate;
+    private final MetricProxy metricProxy;
+    private final EquipmentScheduler scheduler;
 
     /**
      * Creates and returns a new ConcreteController for the FailoverMode.  Every FailoverMode in OPC UA can fall back to
@@ -46,7 +48,7 @@ public class ControllerFactory implements FactoryBean<ConcreteController> {
      * @return the ConcreteController for the FailoverMode
      */
     public ConcreteController getObject (AppConfigProperties.FailoverMode mode) {
-        return mode.equals(AppConfigProperties.FailoverMode.NONE) ? new NoFailover() : new ColdFailover(configProperties, alwaysRetryTemplate);
+        return mode.equals(AppConfigProperties.FailoverMode.NONE) ? new NoFailover() : new ColdFailover(configProperties, metricProxy, scheduler);
     }
 
     /**
@@ -23,6 +23,7 @@ package cern.c2mon.daq.opcua.control;
 
 import cern.c2mon.daq.opcua.config.AppConfigProperties;
 import cern.c2mon.daq.opcua.connection.Endpoint;
+import cern.c2mon.daq.opcua.connection.ShardedEndpoint;
 import cern.c2mon.daq.opcua.exceptions.*;
 import cern.c2mon.daq.opcua.mapping.ItemDefinition;
 import cern.c2mon.daq.opcua.mapping.SubscriptionGroup;
@@ -37,6 +38,7 @@ import org.eclipse.milo.opcua.sdk.client.model.nodes.objects.NonTransparentRedun
 import org.eclipse.milo.opcua.sdk.client.model.nodes.objects.ServerRedundancyTypeNode;
 import org.eclipse.milo.opcua.stack.core.types.builtin.NodeId;
 import org.eclipse.milo.opcua.stack.core.types.enumerated.RedundancySupport;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.jmx.export.annotation.ManagedOperation;
 import org.springframework.jmx.export.annotation.ManagedResource;
 
@@ -58,7 +60,10 @@ public class ControllerProxy implements Controller {
     protected final ControllerFactory controllerFactory;
     protected final AppConfigProperties config;
     protected final Endpoint endpoint;
+    protected final ObjectProvider<ShardedEndpoint> shardedEndpointProvider;
     protected ConcreteController controller;
+    private Endpoint shardedEndpoint;
+    private int shardedEndpointSessions;
 
     /**
      * Returns the simple name of the controller for the failover mode currently in use. To be invoked as an actuator
@@ -87,6 +92,7 @@ public class ControllerProxy implements Controller {
     @Override
     public void connect (Collection<String> serverAddresses) throws OPCUAException {
         log.error("Attempting Connection to URIs {}.", StringUtils.join(serverAddresses, ","));
+        final Endpoint endpoint = logicalEndpoint();
         String currentUri = establishInitialConnection(serverAddresses);
         log.info("Connection established to server at URI {}.", currentUri);
         String[] redundantUris = serverAddresses.stream()
@@ -142,6 +148,33 @@ public class ControllerProxy implements Controller {
         return controller.unsubscribe(definition);
     }
 
+    /**
+     * Unsubscribe from the {@link NodeId}s in the {@link ItemDefinition}s on the OPC UA server or on all servers in a
+     * redundant server set, removing the {@link ItemDefinition}s of each {@link SubscriptionGroup} in a batch.
+     * @param groupsWithDefinitions a Map of {@link SubscriptionGroup}s and the {@link ItemDefinition}s to remove from
+     *                              the groups.
+     * @return the client handles of the {@link ItemDefinition}s and whether their removal from subscription was
+     * completed successfully at the currently active server.
+     */
+    @Override
+    public Map<Integer, Boolean> unsubscribe (Map<SubscriptionGroup, List<ItemDefinition>> groupsWithDefinitions) {
+        return controller.unsubscribe(groupsWithDefinitions);
+    }
+
+    /**
+     * Apply changed deadbands to the monitored items of the {@link ItemDefinition}s in place on the OPC UA server or
+     * on all servers in a redundant server set. The {@link ItemDefinition}s of each {@link SubscriptionGroup} are
+     * modified in a batch.
+     * @param groupsWithDefinitions a Map of {@link SubscriptionGroup}s and the {@link ItemDefinition}s holding the new
+     *                              deadbands of the groups' monitored items.
+     * @return the client handles of the {@link ItemDefinition}s and whether their monitored items were modified
+     * successfully at the currently active server.
+     */
+    @Override
+    public Map<Integer, Boolean> modify (Map<SubscriptionGroup, List<ItemDefinition>> groupsWithDefinitions) {
+        return controller.modify(groupsWithDefinitions);
+    }
+
     /**
      * Read the current value from a node on the currently connected OPC UA server
      * @param nodeId the nodeId of the node whose value to read.
@@ -180,7 +213,26 @@ public class ControllerProxy implements Controller {
         return controller.write(nodeId, value);
     }
 
+    /**
+     * If more than one session shall be opened to the server, the equipment's tags are spread over the sessions of a
+     * {@link ShardedEndpoint}. Otherwise, the {@link Endpoint} is used directly. A {@link ShardedEndpoint} assigns the
+     * tags to its sessions once, and is therefore replaced if the number of sessions was reconfigured since.
+     * @return the endpoint to connect through
+     */
+    private Endpoint logicalEndpoint () {
+        if (config.getSessionShards() <= 1 || shardedEndpointProvider == null) {
+            return endpoint;
+        }
+        if (shardedEndpoint == null || shardedEndpointSessions != config.getSessionShards()) {
+            log.info("Spreading the tags over {} sessions.", config.getSessionShards());
+            shardedEndpoint = shardedEndpointProvider.getObject();
+            shardedEndpointSessions = config.getSessionShards();
+        }
+        return shardedEndpoint;
+    }
+
     private String establishInitialConnection (Collection<String> serverAddresses) throws OPCUAException {
+        final Endpoint endpoint = logicalEndpoint();
         String currentUri;
         for (Iterator<String> iterator = serverAddresses.iterator(); iterator.hasNext(); ) {
             currentUri = iterator.next();
@@ -200,6 +252,7 @@ public class ControllerProxy implements Controller {
     }
 
     private String[] loadControllerAndUrisFromAddressSpace (String currentUri, String... redundantUris) throws OPCUAException {
+        final Endpoint endpoint = logicalEndpoint();
         RedundancySupport redundancyMode = RedundancySupport.None;
         String[] redundantUriArray = new String[]{};
         try {
@@ -223,7 +276,7 @@ public class ControllerProxy implements Controller {
         if (redundantUriArray.length > 0) {
             return redundantUriArray;
         } else if (redundancyNode == null) {
-            redundancyNode = endpoint.getServerRedundancyNode();
+            redundancyNode = logicalEndpoint().getServerRedundancyNode();
         }
         return loadRedundantUrisFromAddressSpace(currentUri, redundancyNode);
     }
@@ -22,9 +22,14 @@
 package cern.c2mon.daq.opcua.control;
 
 import cern.c2mon.daq.opcua.config.AppConfigProperties;
+import cern.c2mon.daq.opcua.connection.CircuitBreaker;
 import cern.c2mon.daq.opcua.connection.Endpoint;
 import cern.c2mon.daq.opcua.exceptions.OPCUAException;
 import cern.c2mon.daq.opcua.mapping.ItemDefinition;
+import cern.c2mon.daq.opcua.metrics.FailoverTimeline;
+import cern.c2mon.daq.opcua.metrics.MetricProxy;
+import cern.c2mon.daq.opcua.scope.EquipmentScheduler;
+import cern.c2mon.daq.opcua.scope.ScheduledTask;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.eclipse.milo.opcua.sdk.client.SessionActivityListener;
@@ -35,15 +40,15 @@ import org.eclipse.milo.opcua.stack.core.types.builtin.DataValue;
 import org.eclipse.milo.opcua.stack.core.types.builtin.NodeId;
 import org.eclipse.milo.opcua.stack.core.types.builtin.unsigned.UByte;
 import org.eclipse.milo.opcua.stack.core.types.enumerated.ServerState;
-import org.springframework.retry.support.RetryTemplate;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Deque;
 import java.util.List;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ConcurrentLinkedDeque;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Consumer;
 import java.util.function.Predicate;
 
@@ -56,7 +61,7 @@ import java.util.function.Predicate;
  */
 @Slf4j
 @RequiredArgsConstructor
-public abstract class FailoverBase extends ControllerBase implements FailoverController, SessionActivityListener {
+public abstract class FailoverBase extends ControllerBase implements FailoverController, SessionActivityListener, CircuitBreaker.Listener {
 
     protected static final UByte serviceLevelHealthLimit = UByte.valueOf(200);
     protected static final List<ItemDefinition> connectionMonitoringNodes = Arrays.asList(
@@ -72,9 +77,17 @@ public abstract class FailoverBase extends ControllerBase implements FailoverCon
      */
     protected final AtomicBoolean listening = new AtomicBoolean(true);
     protected final AppConfigProperties configProperties;
-    private final RetryTemplate alwaysRetryTemplate;
-    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
-    private ScheduledFuture<?> triggerFailoverFuture;
+    protected final MetricProxy metricProxy;
+    protected final EquipmentScheduler scheduler;
+    private final Deque<FailoverTimeline> recentTimelines = new ConcurrentLinkedDeque<>();
+    /**
+     * The instant in nanoseconds at which an unhealthy server state was first detected, or 0 if the server is
+     * considered healthy.
+     */
+    private final AtomicLong unhealthySince = new AtomicLong(0);
+    private volatile String unhealthyCause;
+    private ScheduledTask triggerFailoverFuture;
+    private ScheduledTask retryFailoverFuture;
 
     /**
      * Initialize supervision and connection monitoring to the active server.
@@ -96,7 +109,12 @@ public abstract class FailoverBase extends ControllerBase implements FailoverCon
         log.info("Disconnecting... ");
         stopped.set(true);
         listening.set(false);
-        executor.shutdown();
+        if (triggerFailoverFuture != null) {
+            triggerFailoverFuture.cancel();
+        }
+        if (retryFailoverFuture != null && retryFailoverFuture.cancel()) {
+            completeTimeline(false);
+        }
         super.stop();
     }
 
@@ -108,8 +126,9 @@ public abstract class FailoverBase extends ControllerBase implements FailoverCon
      */
     @Override
     public void onSessionActive(UaSession session) {
+        unhealthySince.set(0);
         if (triggerFailoverFuture != null && !triggerFailoverFuture.isCancelled()) {
-            triggerFailoverFuture.cancel(false);
+            triggerFailoverFuture.cancel();
         }
     }
 
@@ -124,33 +143,73 @@ public abstract class FailoverBase extends ControllerBase implements FailoverCon
         boolean readyForFailover = !listening.get() || triggerFailoverFuture == null || triggerFailoverFuture.isCancelled();
         if (readyForFailover && !stopped.get()) {
             log.info("Starting timeout on inactive session.");
-            triggerFailoverFuture = executor.schedule(() -> {
+            markUnhealthy("session inactive");
+            triggerFailoverFuture = scheduler.schedule(() -> {
                 log.info("Trigger server switch due to long disconnection");
                 triggerServerSwitch();
             }, configProperties.getFailoverDelay(), TimeUnit.MILLISECONDS);
         }
     }
 
+    /**
+     * Calls to the active server are suspended after repeated failures. The server is deemed degraded and a failover
+     * is triggered without waiting for the session to deactivate.
+     * @param uri the address of the server whose calls are suspended
+     */
+    @Override
+    public void onCircuitOpened(String uri) {
+        if (listening.get() && !stopped.get()) {
+            log.info("Trigger server switch due to repeated failures on {}.", uri);
+            markUnhealthy("circuit breaker open");
+            // the breaker opens on the thread of a failed service call, which must not be blocked by the failover
+            scheduler.schedule(this::triggerServerSwitch, 0, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Initiates a failover procedure unless one is already in progress. The first attempt to switch servers is executed
+     * on the calling thread. Failed attempts are retried on the scheduler with a delay starting at retryDelay and
+     * increasing by retryMultiplier up to maxRetryDelay, so that no thread is blocked in between attempts.
+     */
     protected void triggerServerSwitch() {
         synchronized (listening) {
             if (listening.getAndSet(false) && !stopped.get()) {
+                final FailoverTimeline timeline = startTimeline();
                 currentEndpoint().setUpdateEquipmentStateOnSessionChanges(false);
-                try {
-                    alwaysRetryTemplate.execute(retryContext -> {
-                        log.info("Server switch attempt nr {}.", retryContext.getRetryCount());
-                        switchServers();
-                        return null;
-                    });
-                } catch (OPCUAException e) {
-                    log.error("Retry logic is not correctly configured! Retries ceased.", e);
-                }
-                listening.set(true);
+                attemptServerSwitch(timeline, 0);
             } else if (!stopped.get()) {
                 log.info("Failover is already in process.");
             }
         }
     }
 
+    private void attemptServerSwitch(FailoverTimeline timeline, int attempt) {
+        synchronized (listening) {
+            if (stopped.get()) {
+                completeTimeline(false);
+                listening.set(true);
+                return;
+            }
+            log.info("Server switch attempt nr {}.", attempt);
+            timeline.incrementAttempts();
+            try {
+                switchServers();
+                completeTimeline(!stopped.get());
+                listening.set(true);
+            } catch (OPCUAException | RuntimeException e) {
+                // any failure is retried, a failover chain which ends without completing would stop all later ones
+                final long delay = retryDelay(attempt);
+                log.info("Server switch attempt nr {} failed with {}, retrying in {} ms.", attempt, e.getMessage(), delay);
+                retryFailoverFuture = scheduler.schedule(() -> attemptServerSwitch(timeline, attempt + 1), delay, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    private long retryDelay(int attempt) {
+        final double delay = configProperties.getRetryDelay() * Math.pow(Math.max(1.0, configProperties.getRetryMultiplier()), attempt);
+        return (long) Math.min(delay, Math.max(configProperties.getRetryDelay(), configProperties.getMaxRetryDelay()));
+    }
+
     protected void monitoringCallback(UaMonitoredItem item) {
         if (!stopped.get()) {
             final NodeId nodeId = item.getReadValueId().getNodeId();
@@ -170,6 +229,7 @@ public abstract class FailoverBase extends ControllerBase implements FailoverCon
             final T update = type.cast(o);
             if (predicate.test(update)) {
                 log.info("Update {} triggered a server switch...", update.toString());
+                markUnhealthy(type.getSimpleName() + " " + update);
                 triggerServerSwitch();
             }
         } else {
@@ -183,12 +243,52 @@ public abstract class FailoverBase extends ControllerBase implements FailoverCon
      * @return the endpoint's service level, or a service level of 0 if unavailable.
      */
     protected UByte readServiceLevel(Endpoint endpoint) {
+        final long start = System.nanoTime();
         try {
             final Object value = endpoint.read(Identifiers.Server_ServiceLevel).getKey().getValue();
             return UByte.class.isAssignableFrom(value.getClass()) ? (UByte) value : UByte.valueOf(0);
         } catch (OPCUAException e) {
             log.debug("Error reading service level from endpoint {}. ", endpoint.getUri(), e);
             return UByte.valueOf(0);
+        } finally {
+            metricProxy.recordFailoverPhase(FailoverTimeline.Phase.PROBE, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Returns a textual representation of the most recent failover procedures, the most recent one first. The number
+     * of timelines which are kept is given by the configured failoverTimelineHistory.
+     * @return the most recent failover timelines
+     */
+    protected List<String> getRecentTimelines() {
+        final List<String> timelines = new ArrayList<>();
+        recentTimelines.descendingIterator().forEachRemaining(t -> timelines.add(t.toString()));
+        return timelines;
+    }
+
+    private void markUnhealthy(String cause) {
+        if (unhealthySince.compareAndSet(0, System.nanoTime())) {
+            unhealthyCause = cause;
+        }
+    }
+
+    private FailoverTimeline startTimeline() {
+        final long detectedAt = unhealthySince.getAndSet(0);
+        final FailoverTimeline timeline = metricProxy.startFailoverTimeline(detectedAt == 0 ? "direct" : unhealthyCause);
+        if (detectedAt != 0) {
+            metricProxy.recordFailoverPhase(FailoverTimeline.Phase.DETECTION, System.nanoTime() - detectedAt);
+        }
+        return timeline;
+    }
+
+    private void completeTimeline(boolean success) {
+        final FailoverTimeline timeline = metricProxy.completeFailoverTimeline(success);
+        if (timeline != null) {
+            log.info("Failover completed: {}", timeline);
+            recentTimelines.addLast(timeline);
+            while (recentTimelines.size() > Math.max(0, configProperties.getFailoverTimelineHistory())) {
+                recentTimelines.pollFirst();
+            }
         }
     }
 
@@ -206,6 +306,9 @@ public abstract class FailoverBase extends ControllerBase implements FailoverCon
             if (configProperties.getFailoverDelay() >= 0) {
                 currentEndpoint().manageSessionActivityListener(true, this);
             }
+            if (configProperties.isCircuitBreakerTriggersFailover()) {
+                currentEndpoint().manageCircuitBreakerListener(true, this);
+            }
             currentEndpoint().subscribeWithCallback(configProperties.getConnectionMonitoringRate(), connectionMonitoringNodes, this::monitoringCallback);
         }
     }
@@ -32,6 +32,7 @@ public enum ExceptionContext {
     BAD_ALIVE_TAG_INTERVAL("Cannot start the Alive Writer with an interval of 0."),
     BAD_ALIVE_TAG("The AliveTag is not defined in the SourceDataTags, cannot start the Alive Writer."),
     BROWSE("Browsing node failed."),
+    CIRCUIT_OPEN("Calls to the server are suspended after repeated failures."),
     COMMAND_TYPE_UNKNOWN("The provided command type is unknown."),
     COMMAND_VALUE_ERROR("Provided command value could not be processed. Check data type and value."),
     CONNECT("Could not connect to the OPC UA Server."),
@@ -40,6 +41,7 @@ public enum ExceptionContext {
     DISCONNECT("Could not disconnect from the OPC UA Server."),
     DELETE_SUBSCRIPTION("Could not delete the subscription."),
     DELETE_MONITORED_ITEM("Could not disconnect delete monitored items from the subscription."),
+    MODIFY_MONITORED_ITEM("Could not modify the monitored items of the subscription."),
     READ("Could not read node values."),
     WRITE("Could not write to nodes."),
     METHOD("Could not execute method."),
@@ -82,12 +82,18 @@ public class ItemDefinition {
 
     private ItemDefinition(NodeId nodeId, NodeId methodNodeId, int timeDeadband, float valueDeadband,
             int valueDeadbandType) {
+        this(nodeId, methodNodeId, timeDeadband, valueDeadband, MiloMapper.toDeadbandType(valueDeadbandType),
+                clientHandles.getAndIncrement());
+    }
+
+    private ItemDefinition(NodeId nodeId, NodeId methodNodeId, int timeDeadband, float valueDeadband,
+            DeadbandType valueDeadbandType, int clientHandle) {
         this.nodeId = nodeId;
         this.methodNodeId = methodNodeId;
-        this.clientHandle = clientHandles.getAndIncrement();
+        this.clientHandle = clientHandle;
         this.timeDeadband = timeDeadband;
         this.valueDeadband = valueDeadband;
-        this.valueDeadbandType = MiloMapper.toDeadbandType(valueDeadbandType);
+        this.valueDeadbandType = valueDeadbandType;
     }
 
     /**
@@ -126,6 +132,18 @@ public class ItemDefinition {
         return new ItemDefinition(tag, fromAddress(opcAddress, false), fromAddress(opcAddress, true));
     }
 
+    /**
+     * Creates a copy of this {@link ItemDefinition} with the deadbands of the tag. The copy keeps the {@link NodeId}s
+     * and the clientHandle of this {@link ItemDefinition}, and so refers to the same monitored item.
+     * 
+     * @param tag the {@link ISourceDataTag} holding the new deadband values
+     * @return the copy with the tag's deadbands
+     */
+    public ItemDefinition withDeadbandsOf(final ISourceDataTag tag) {
+        return new ItemDefinition(nodeId, methodNodeId, tag.getTimeDeadband(), tag.getValueDeadband(),
+                MiloMapper.toDeadbandType(tag.getValueDeadbandType()), clientHandle);
+    }
+
     /**
      * Stores the relevant information contained in an {@link ISourceCommandTag} into a corresponding
      * {@link ItemDefinition} including primary and method {@link NodeId}s.
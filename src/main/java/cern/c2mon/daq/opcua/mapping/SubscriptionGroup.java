@@ -24,6 +24,7 @@ package cern.c2mon.daq.opcua.mapping;
 import cern.c2mon.daq.opcua.control.ConcreteController;
 import cern.c2mon.daq.opcua.metrics.MetricProxy;
 import cern.c2mon.shared.common.datatag.ISourceDataTag;
+import lombok.AccessLevel;
 import lombok.Getter;
 
 import java.util.Map;
@@ -41,15 +42,19 @@ public class SubscriptionGroup {
 
     private final Map<Long, ItemDefinition> tagIds = new ConcurrentHashMap<>();
     private final int publishInterval;
+    @Getter(AccessLevel.NONE)
+    private final MetricProxy metricProxy;
 
     /**
      * Create a new SubscriptionGroup with a given publishInterval.
      * @param publishInterval the publishInterval for the subscription
-     * @param metricProxy Used to gauge the number of tags belonging to this SubscriptionGroup.
+     * @param metricProxy Used to gauge the number of tags belonging to this SubscriptionGroup, and to count their
+     *                    updates.
      */
     public SubscriptionGroup(int publishInterval, MetricProxy metricProxy) {
         metricProxy.initializeTagsPerSubscriptionGauge(tagIds, publishInterval);
         this.publishInterval = publishInterval;
+        this.metricProxy = metricProxy;
     }
 
     /**
@@ -67,6 +72,7 @@ public class SubscriptionGroup {
      */
     public void add (final long tagId, final ItemDefinition itemDefinition) {
         this.tagIds.putIfAbsent(tagId, itemDefinition);
+        metricProxy.addTagToSubscriptionGroup(tagId, publishInterval);
     }
 
     /**
@@ -75,7 +81,11 @@ public class SubscriptionGroup {
      * @return true if the tagId was previously subscribed.
      */
     public boolean remove (long tagId) {
-        return this.tagIds.remove(tagId) != null;
+        if (this.tagIds.remove(tagId) != null) {
+            metricProxy.removeTagFromSubscriptionGroup(tagId, publishInterval);
+            return true;
+        }
+        return false;
     }
 
     /**
@@ -45,6 +45,15 @@ public interface TagSubscriptionManager extends TagSubscriptionReader {
      */
     boolean removeTag(long tagId);
 
+    /**
+     * Associates the tagId with a new {@link ItemDefinition}, for instance one with changed deadbands. If the tag was
+     * part of a {@link SubscriptionGroup}, it is moved to the group matching the new {@link ItemDefinition}'s time
+     * deadband.
+     * @param tagId      the tagId whose associated {@link ItemDefinition} to replace
+     * @param definition the new {@link ItemDefinition} to associate with the tagId
+     */
+    void replaceDefinition(long tagId, ItemDefinition definition);
+
     /**
      * Removes all managed {@link ItemDefinition}s and {@link SubscriptionGroup}s from the internal state.
      */
@@ -21,6 +21,7 @@
  */
 package cern.c2mon.daq.opcua.mapping;
 
+import cern.c2mon.daq.opcua.config.AppConfigProperties;
 import cern.c2mon.daq.opcua.exceptions.ConfigurationException;
 import cern.c2mon.daq.opcua.metrics.MetricProxy;
 import cern.c2mon.daq.opcua.scope.EquipmentScoped;
@@ -31,13 +32,17 @@ import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 
 import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * The mapper maintains an internal state of the tags that are subscribed on the server(s) in {@link
  * SubscriptionGroup}s, and maps in between the {@link ItemDefinition} containing the Milo-compatible {@link
- * org.eclipse.milo.opcua.stack.core.types.builtin.NodeId}s, and {@link ISourceDataTag}s.
+ * org.eclipse.milo.opcua.stack.core.types.builtin.NodeId}s, and {@link ISourceDataTag}s. If publish interval buckets
+ * are configured, tags are grouped by the largest bucket not exceeding their time deadband rather than by the time
+ * deadband itself.
  */
 @Getter
 @EquipmentScoped
@@ -45,21 +50,37 @@ import java.util.concurrent.ConcurrentHashMap;
 public class TagSubscriptionMapper implements TagSubscriptionManager {
 
     private final MetricProxy metricProxy;
+    private final AppConfigProperties properties;
 
     private final Map<Integer, SubscriptionGroup> subscriptionGroups = new ConcurrentHashMap<>();
     private final BiMap<Long, ItemDefinition> tagIdDefinitionMap = HashBiMap.create();
+    private final Map<Integer, Long> clientHandleTagIdMap = new ConcurrentHashMap<>();
 
     @Override
     public SubscriptionGroup getGroup(int timeDeadband) {
-        if (groupExists(timeDeadband)) {
-            return subscriptionGroups.get(timeDeadband);
+        final int publishInterval = getPublishInterval(timeDeadband);
+        if (groupExists(publishInterval)) {
+            return subscriptionGroups.get(publishInterval);
         } else {
-            SubscriptionGroup group = new SubscriptionGroup(timeDeadband, metricProxy);
-            subscriptionGroups.put(timeDeadband, group);
+            SubscriptionGroup group = new SubscriptionGroup(publishInterval, metricProxy);
+            subscriptionGroups.put(publishInterval, group);
             return group;
         }
     }
 
+    @Override
+    public int getPublishInterval(int timeDeadband) {
+        final List<Integer> buckets = properties.getPublishIntervalBuckets();
+        if (buckets == null || buckets.isEmpty()) {
+            return timeDeadband;
+        }
+        // a time deadband below the smallest bucket is consolidated into it rather than adding a subscription
+        return buckets.stream()
+                .filter(b -> b <= timeDeadband)
+                .max(Integer::compare)
+                .orElseGet(() -> Collections.min(buckets));
+    }
+
     @Override
     public Collection<SubscriptionGroup> getGroups() {
         return subscriptionGroups.values();
@@ -72,11 +93,7 @@ public class TagSubscriptionMapper implements TagSubscriptionManager {
 
     @Override
     public Long getTagId(int clientHandle) {
-        return tagIdDefinitionMap.entrySet().stream()
-                .filter(e -> e.getValue().getClientHandle() == clientHandle)
-                .map(Map.Entry::getKey)
-                .findFirst()
-                .orElse(null);
+        return clientHandleTagIdMap.get(clientHandle);
     }
 
     @Override
@@ -86,6 +103,7 @@ public class TagSubscriptionMapper implements TagSubscriptionManager {
         } else {
             final ItemDefinition definition = ItemDefinition.of(tag);
             tagIdDefinitionMap.put(tag.getId(), definition);
+            clientHandleTagIdMap.put(definition.getClientHandle(), tag.getId());
             return definition;
         }
     }
@@ -104,17 +122,35 @@ public class TagSubscriptionMapper implements TagSubscriptionManager {
         if (definition == null) {
             return false;
         }
-        SubscriptionGroup group = subscriptionGroups.get(definition.getTimeDeadband());
+        clientHandleTagIdMap.remove(definition.getClientHandle());
+        final int publishInterval = getPublishInterval(definition.getTimeDeadband());
+        SubscriptionGroup group = subscriptionGroups.get(publishInterval);
         if (group != null && group.remove(tagId) && group.size() == 0) {
-            subscriptionGroups.remove(definition.getTimeDeadband());
+            subscriptionGroups.remove(publishInterval);
             return true;
         }
         return false;
     }
 
+    @Override
+    public void replaceDefinition(long tagId, ItemDefinition definition) {
+        final ItemDefinition previous = tagIdDefinitionMap.get(tagId);
+        final SubscriptionGroup group = previous == null
+                ? null
+                : subscriptionGroups.get(getPublishInterval(previous.getTimeDeadband()));
+        final boolean wasSubscribed = group != null && group.contains(tagId);
+        removeTag(tagId);
+        tagIdDefinitionMap.put(tagId, definition);
+        clientHandleTagIdMap.put(definition.getClientHandle(), tagId);
+        if (wasSubscribed) {
+            addTagToGroup(tagId);
+        }
+    }
+
     @Override
     public void clear() {
         tagIdDefinitionMap.clear();
+        clientHandleTagIdMap.clear();
         subscriptionGroups.clear();
     }
 
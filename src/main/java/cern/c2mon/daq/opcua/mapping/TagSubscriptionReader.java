@@ -41,13 +41,22 @@ public interface TagSubscriptionReader {
     Map<Long, ItemDefinition> getTagIdDefinitionMap();
 
     /**
-     * Gets a {@link SubscriptionGroup} with a publish interval equal to the timeDeadband, or creates a new one if none
+     * Gets the {@link SubscriptionGroup} with the publish interval for the timeDeadband, or creates a new one if none
      * yet exists.
-     * @param timeDeadband to equal the publish interval of the group
+     * @param timeDeadband the time deadband of the tags in the group
      * @return the existing or newly created {@link SubscriptionGroup}
      */
     SubscriptionGroup getGroup(int timeDeadband);
 
+    /**
+     * Returns the publish interval of the {@link SubscriptionGroup} holding tags with the timeDeadband. This is the
+     * timeDeadband itself, unless publish interval buckets are configured. In this case it is the largest bucket not
+     * exceeding the timeDeadband. The publish interval of a group maps onto itself.
+     * @param timeDeadband the time deadband of a tag in seconds
+     * @return the publish interval in seconds of the group holding tags with the timeDeadband
+     */
+    int getPublishInterval(int timeDeadband);
+
     /**
      * Returns all currently known {@link SubscriptionGroup}s. Usually called by the {@link
      * cern.c2mon.daq.opcua.connection.Endpoint} to recreate the state on the previously active server after a
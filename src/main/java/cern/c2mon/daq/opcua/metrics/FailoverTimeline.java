@@ -0,0 +1,142 @@
+/*-
+ * #%L
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * %%
+ * Copyright (C) 2010 - 2022 CERN
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package cern.c2mon.daq.opcua.metrics;
+
+import lombok.Getter;
+
+import java.time.Instant;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Records the duration of the individual phases of a single failover procedure, from the detection of an unhealthy
+ * server up to the receipt of the first value update from the server which was switched to.
+ */
+public class FailoverTimeline {
+
+    /**
+     * The phases of a failover procedure in the order in which they usually occur.
+     */
+    public enum Phase {
+        /** The time in between a session becoming inactive or the service level dropping and the start of failover */
+        DETECTION,
+        /** Reading the service level of candidate servers */
+        PROBE,
+        /** Endpoint discovery and the establishment of the TCP connection */
+        CONNECT,
+        /** Opening the secure channel, including the asymmetric handshake */
+        SECURE_CHANNEL,
+        /** Creating and activating the session */
+        SESSION_ACTIVATE,
+        /** Recreating all subscriptions on the new server */
+        RESUBSCRIBE,
+        /** The time in between the end of the failover procedure and the first value update */
+        FIRST_VALUE
+    }
+
+    @Getter
+    private final String trigger;
+    @Getter
+    private final Instant startedAt = Instant.now();
+    private final long startNanos = System.nanoTime();
+    private final Map<Phase, Long> durations = new EnumMap<>(Phase.class);
+    private final AtomicBoolean awaitingFirstValue = new AtomicBoolean(false);
+    private volatile long completedNanos;
+    private volatile boolean successful;
+    private int attempts;
+
+    /**
+     * Creates a new timeline for a failover procedure.
+     * @param trigger a short description of the reason the failover procedure was started
+     */
+    public FailoverTimeline(String trigger) {
+        this.trigger = trigger;
+    }
+
+    /**
+     * Adds the duration to the given phase. If a phase occurs several times during a failover procedure, as is the
+     * case when probing several servers, the durations are summed up.
+     * @param phase         the phase that has completed
+     * @param durationNanos the duration of the phase in nanoseconds
+     */
+    public synchronized void record(Phase phase, long durationNanos) {
+        durations.merge(phase, durationNanos, Long::sum);
+    }
+
+    /**
+     * Registers that a new attempt to switch servers is started.
+     */
+    public synchronized void incrementAttempts() {
+        attempts++;
+    }
+
+    /**
+     * Marks the end of the failover procedure.
+     * @param success whether the failover procedure ended with a connection to a server
+     */
+    public void complete(boolean success) {
+        successful = success;
+        completedNanos = System.nanoTime();
+        awaitingFirstValue.set(success);
+    }
+
+    /**
+     * Records the {@link Phase#FIRST_VALUE} phase if this is the first value update received since the failover
+     * procedure completed.
+     * @return the duration of the phase in nanoseconds if it was recorded through this call, or -1 otherwise
+     */
+    public long firstValueReceived() {
+        if (awaitingFirstValue.compareAndSet(true, false)) {
+            final long duration = System.nanoTime() - completedNanos;
+            record(Phase.FIRST_VALUE, duration);
+            return duration;
+        }
+        return -1;
+    }
+
+    /**
+     * @return the duration from the start of the procedure until its completion in nanoseconds, or until now if the
+     * failover procedure is still in progress.
+     */
+    public long getTotalNanos() {
+        final long end = completedNanos;
+        return (end == 0 ? System.nanoTime() : end) - startNanos;
+    }
+
+    @Override
+    public synchronized String toString() {
+        final StringBuilder sb = new StringBuilder()
+                .append(startedAt)
+                .append(" trigger='").append(trigger).append('\'')
+                .append(", attempts=").append(attempts)
+                .append(", ").append(completedNanos == 0 ? "in progress" : (successful ? "succeeded" : "failed"))
+                .append(", total=").append(TimeUnit.NANOSECONDS.toMillis(getTotalNanos())).append("ms");
+        durations.forEach((phase, nanos) -> sb.append(", ")
+                .append(phase.name().toLowerCase())
+                .append('=')
+                .append(TimeUnit.NANOSECONDS.toMillis(nanos))
+                .append("ms"));
+        return sb.toString();
+    }
+}
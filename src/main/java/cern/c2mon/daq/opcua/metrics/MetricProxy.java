@@ -21,25 +21,39 @@
  */
 package cern.c2mon.daq.opcua.metrics;
 
+import cern.c2mon.daq.opcua.config.AppConfigProperties;
+import cern.c2mon.daq.opcua.connection.AdaptiveTimeoutPolicy;
+import cern.c2mon.daq.opcua.connection.CircuitBreaker;
+import cern.c2mon.daq.opcua.connection.PublishPipeline;
+import cern.c2mon.daq.opcua.connection.SubscriptionPartitions;
 import cern.c2mon.daq.opcua.mapping.ItemDefinition;
 import cern.c2mon.daq.opcua.scope.EquipmentScoped;
 import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
 import io.micrometer.core.instrument.MeterRegistry;
 import io.micrometer.core.instrument.Tag;
 import io.micrometer.core.instrument.Tags;
-import lombok.NonNull;
-import lombok.RequiredArgsConstructor;
+import io.micrometer.core.instrument.Timer;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
 
 /**
  * An abstraction for Micrometer {@link io.micrometer.core.instrument.Meter}s
  */
 @Component(value = "metricmanager")
-@RequiredArgsConstructor
 @EquipmentScoped
 @Slf4j
 public class MetricProxy {
@@ -47,13 +61,67 @@ public class MetricProxy {
     private static final String PREFIX = "c2mon_daq_opcua";
     private static final String VALID_TAG_COUNTER = "tag_updates_valid";
     private static final String INVALID_TAG_COUNTER = "tag_updates_invalid";
+    private static final String VALID_SUBSCRIPTION_COUNTER = "subscription_updates_valid";
+    private static final String INVALID_SUBSCRIPTION_COUNTER = "subscription_updates_invalid";
+    private static final String TOP_TAG_UPDATES_GAUGE = "tag_updates_top";
+    private static final String TOP_TAG_ID_GAUGE = "tag_updates_top_id";
+    private static final String SOURCE_TO_SERVER_TIMER = "latency_source_to_server";
+    private static final String SERVER_TO_RECEIPT_TIMER = "latency_server_to_receipt";
+    private static final String RECEIPT_TO_HANDOFF_TIMER = "latency_receipt_to_handoff";
     private static final String TAGS_PER_SUBSCRIPTION_GAUGE = "tags_per_subscription";
+    private static final String FAILOVER_PHASE_TIMER = "failover_phase";
+    private static final String RESUBSCRIPTION_FIRST_VALUE_TIMER = "resubscription_first_value";
+    private static final String REQUEST_TIMEOUT_GAUGE = "request_timeout";
+    private static final String REQUEST_RTT_P99_GAUGE = "request_rtt_p99";
+    private static final String CIRCUIT_BREAKER_STATE_GAUGE = "circuit_breaker_state";
+    private static final String PENDING_PUBLISH_REQUESTS_GAUGE = "publish_requests_pending_max";
+    private static final String PUBLISH_LAG_GAUGE = "publish_lag";
+    private static final String PUBLISH_SEQUENCE_GAP_COUNTER = "publish_sequence_gaps";
+    private static final String PUBLISH_RESPONSE_COUNTER = "publish_responses";
+    private static final String PUBLISH_NOTIFICATION_COUNTER = "publish_notifications";
+    private static final String PUBLISH_OVERFLOW_COUNTER = "publish_queue_overflows";
+    private static final String PUBLISH_KEEP_ALIVE_COUNTER = "publish_keep_alives";
+    private static final String PUBLISH_KEEP_ALIVE_INTERVAL_GAUGE = "publish_keep_alive_interval";
+    private static final String REVISED_SAMPLING_INTERVAL_SUMMARY = "sampling_interval_revised";
+    private static final String ITEMS_PER_SUBSCRIPTION_GAUGE = "monitored_items_per_subscription";
 
     private final MeterRegistry registry;
-    private TagCounter validTagCounter;
-    private TagCounter invalidTagCounter;
+    private final AppConfigProperties properties;
+    private volatile TagMetricSettings settings;
+    private final List<Meter> topTagGauges = new ArrayList<>();
+
+    private final TagIndex subscriptionGroupIndex = new TagIndex();
+    private final Map<Integer, Integer> subscriptionGroupSlots = new HashMap<>();
+    private volatile SubscriptionGroupMeters[] subscriptionGroupMeters = new SubscriptionGroupMeters[0];
+    private final TagIndex perTagIndex = new TagIndex();
+    private volatile UpdateCounter[] perTagCounters = new UpdateCounter[16];
+    private int perTagCount;
+    private volatile SubscriptionGroupMeters unassignedMeters;
+    private volatile UpdateCounter commfaultCounter;
 
     private Tags defaultTags = Tags.empty();
+    private volatile String equipmentName;
+    private volatile FailoverTimeline activeTimeline;
+    private volatile FailoverTimeline awaitingFirstValue;
+
+    /**
+     * Creates a new MetricProxy which counts tag updates as configured in the application properties.
+     * @param registry   the registry to add the meters to
+     * @param properties the application properties containing the tagMetricMode
+     */
+    @Autowired
+    public MetricProxy(MeterRegistry registry, AppConfigProperties properties) {
+        this.registry = registry;
+        this.properties = properties;
+    }
+
+    /**
+     * Creates a new MetricProxy which counts tag updates per subscription group.
+     * @param registry the registry to add the meters to
+     */
+    public MetricProxy(MeterRegistry registry) {
+        this(registry, AppConfigProperties.builder().build());
+    }
 
     /**
      * Registers the number or Tags per subscription to be gauged.
@@ -66,12 +134,25 @@ public class MetricProxy {
     }
 
     /**
-     * Register an update sent by a DataTag
+     * Register an update sent by a DataTag. In the AGGREGATE tagMetricMode, the update is counted for the subscription
+     * group of the DataTag, and additionally for the DataTag itself if it is in the perTagMetricIds. In the PER_TAG
+     * tagMetricMode, it is counted for the DataTag only.
      * @param valid was the update read successfully?
      * @param tagId the id of the respective DataTag
      */
     public void incrementTagCounter(boolean valid, long tagId) {
-        incrementCounter(valid, String.valueOf(tagId));
+        final TagMetricSettings s = settings();
+        if (s.mode == AppConfigProperties.TagMetricMode.PER_TAG) {
+            perTagCounter(tagId).increment(valid);
+            return;
+        }
+        subscriptionGroupMeters(tagId).updates.increment(valid);
+        if (s.allowList.length > 0 && Arrays.binarySearch(s.allowList, tagId) >= 0) {
+            perTagCounter(tagId).increment(valid);
+        }
+        if (s.topTags != null) {
+            s.topTags.offer(tagId);
+        }
     }
 
     /**
@@ -79,7 +160,228 @@ public class MetricProxy {
      * @param valid false if the Commfault message indicates an error, true otherwise
      */
     public void incrementCommfault(boolean valid) {
-        incrementCounter(valid, "commfault");
+        UpdateCounter counter = commfaultCounter;
+        if (counter == null) {
+            counter = new UpdateCounter(VALID_TAG_COUNTER, INVALID_TAG_COUNTER, "tag_id", "commfault");
+            commfaultCounter = counter;
+        }
+        counter.increment(valid);
+    }
+
+    /**
+     * Record the latencies of a value update on its way from the source to the DAQ core in the histograms of the
+     * subscription group of the DataTag. Latencies which cannot be determined since a timestamp is missing, or which are
+     * negative due to a clock skew between server and client, are not recorded.
+     * @param tagId         the id of the updated DataTag
+     * @param sourceTime    the source timestamp of the value in milliseconds since epoch, or 0 if unknown
+     * @param serverTime    the server timestamp of the value in milliseconds since epoch, or 0 if unknown
+     * @param receivedAt    the time at which the client received the value in milliseconds since epoch
+     * @param handoffNanos  the time in nanoseconds from the receipt of the value until the DAQ core accepted it
+     */
+    public void recordUpdateLatencies(long tagId, long sourceTime, long serverTime, long receivedAt, long handoffNanos) {
+        final SubscriptionGroupMeters meters = subscriptionGroupMeters(tagId);
+        if (sourceTime > 0 && serverTime >= sourceTime) {
+            meters.sourceToServer.record(serverTime - sourceTime, TimeUnit.MILLISECONDS);
+        }
+        if (serverTime > 0 && receivedAt >= serverTime) {
+            meters.serverToReceipt.record(receivedAt - serverTime, TimeUnit.MILLISECONDS);
+        }
+        meters.receiptToHandoff.record(handoffNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Associates a DataTag with the subscription group its updates are counted for.
+     * @param tagId           the id of the DataTag
+     * @param publishInterval the publishing interval of the subscription group in seconds
+     */
+    public void addTagToSubscriptionGroup(long tagId, int publishInterval) {
+        subscriptionGroupIndex.put(tagId, subscriptionGroupSlot(publishInterval));
+    }
+
+    /**
+     * Removes the association of a DataTag with a subscription group, unless it has since been associated with another
+     * one.
+     * @param tagId           the id of the DataTag
+     * @param publishInterval the publishing interval of the subscription group in seconds
+     */
+    public void removeTagFromSubscriptionGroup(long tagId, int publishInterval) {
+        final Integer slot;
+        synchronized (subscriptionGroupSlots) {
+            slot = subscriptionGroupSlots.get(publishInterval);
+        }
+        if (slot != null) {
+            subscriptionGroupIndex.remove(tagId, slot);
+        }
+    }
+
+    /**
+     * Starts a new {@link FailoverTimeline}. All failover phases recorded until the timeline is completed are added to
+     * it.
+     * @param trigger a short description of the reason for the failover
+     * @return the new timeline
+     */
+    public FailoverTimeline startFailoverTimeline(String trigger) {
+        final FailoverTimeline timeline = new FailoverTimeline(trigger);
+        activeTimeline = timeline;
+        awaitingFirstValue = null;
+        return timeline;
+    }
+
+    /**
+     * Completes the currently active {@link FailoverTimeline}. If the failover was successful, the time until the
+     * first value update is received is recorded as the final phase of the timeline.
+     * @param success whether the failover procedure ended with a connection to a server
+     * @return the completed timeline, or null if no timeline was active
+     */
+    public FailoverTimeline completeFailoverTimeline(boolean success) {
+        final FailoverTimeline timeline = activeTimeline;
+        activeTimeline = null;
+        if (timeline != null) {
+            timeline.complete(success);
+            awaitingFirstValue = success ? timeline : null;
+        }
+        return timeline;
+    }
+
+    /**
+     * Record the duration of a phase of the connection or failover process. The duration is added to the active
+     * {@link FailoverTimeline}, if any.
+     * @param phase         the phase to record
+     * @param durationNanos the duration of the phase in nanoseconds
+     */
+    public void recordFailoverPhase(FailoverTimeline.Phase phase, long durationNanos) {
+        phaseTimer(phase).record(durationNanos, TimeUnit.NANOSECONDS);
+        final FailoverTimeline timeline = activeTimeline;
+        if (timeline != null) {
+            timeline.record(phase, durationNanos);
+        }
+    }
+
+    /**
+     * Register the receipt of a value update. The first update received after a successful failover completes the
+     * {@link FailoverTimeline.Phase#FIRST_VALUE} phase.
+     */
+    public void onValueReceived() {
+        final FailoverTimeline timeline = awaitingFirstValue;
+        if (timeline != null) {
+            awaitingFirstValue = null;
+            final long duration = timeline.firstValueReceived();
+            if (duration >= 0) {
+                phaseTimer(FailoverTimeline.Phase.FIRST_VALUE).record(duration, TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+
+    /**
+     * Record the time from the start of recreating subscriptions until the first value update of a priority class.
+     * @param priorityClass the priority class of the subscription that received the first value
+     * @param durationNanos the duration in nanoseconds
+     */
+    public void recordResubscriptionFirstValue(String priorityClass, long durationNanos) {
+        Timer.builder(PREFIX + "_" + RESUBSCRIPTION_FIRST_VALUE_TIMER)
+                .tags(getTags("priority_class", priorityClass))
+                .publishPercentileHistogram()
+                .register(registry)
+                .record(durationNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Registers the timeout and the round trip time percentile learned by an {@link AdaptiveTimeoutPolicy} to be
+     * gauged, both in milliseconds.
+     * @param policy  the policy of an endpoint
+     * @param session the index of the endpoint's session among the sessions of the equipment
+     */
+    public void registerAdaptiveTimeout(AdaptiveTimeoutPolicy policy, int session) {
+        Gauge.builder(PREFIX + "_" + REQUEST_TIMEOUT_GAUGE, policy, AdaptiveTimeoutPolicy::getTimeout)
+                .tags(getTags("session", String.valueOf(session)))
+                .register(registry);
+        Gauge.builder(PREFIX + "_" + REQUEST_RTT_P99_GAUGE, policy, AdaptiveTimeoutPolicy::getRoundTripP99)
+                .tags(getTags("session", String.valueOf(session)))
+                .register(registry);
+    }
+
+    /**
+     * Registers the state of a {@link CircuitBreaker} to be gauged as 0 if closed, 1 if open and 2 if half-open.
+     * @param breaker the circuit breaker of an endpoint
+     * @param session the index of the endpoint's session among the sessions of the equipment
+     */
+    public void registerCircuitBreaker(CircuitBreaker breaker, int session) {
+        Gauge.builder(PREFIX + "_" + CIRCUIT_BREAKER_STATE_GAUGE, breaker, b -> b.getState().ordinal())
+                .tags(getTags("session", String.valueOf(session)))
+                .register(registry);
+    }
+
+    /**
+     * Record the sampling interval with which the server samples a newly created monitored item.
+     * @param publishInterval the publishing interval of the item's subscription in seconds
+     * @param samplingInterval the sampling interval revised by the server in milliseconds
+     */
+    public void recordRevisedSamplingInterval(int publishInterval, double samplingInterval) {
+        DistributionSummary.builder(PREFIX + "_" + REVISED_SAMPLING_INTERVAL_SUMMARY)
+                .baseUnit("milliseconds")
+                .tags(getTags("time_deadband", String.valueOf(publishInterval)))
+                .register(registry)
+                .record(samplingInterval);
+    }
+
+    /**
+     * Registers the number of outstanding PublishRequests computed by a {@link PublishPipeline} to be gauged.
+     * @param pipeline the publish pipeline of an endpoint
+     * @param session  the index of the endpoint's session among the sessions of the equipment
+     */
+    public void registerPublishPipeline(PublishPipeline pipeline, int session) {
+        Gauge.builder(PREFIX + "_" + PENDING_PUBLISH_REQUESTS_GAUGE, pipeline, PublishPipeline::getMaxPendingPublishRequests)
+                .tags(getTags("session", String.valueOf(session)))
+                .register(registry);
+    }
+
+    /**
+     * Registers the health statistics of the subscription with the given publishing interval and partition: the
+     * publish lag in milliseconds, the number of sequence number gaps, the publish responses and keep alive messages
+     * received, the notifications and queue overflows they carried, and the interval in between keep alive messages.
+     * The notifications per publish response are given by the rate of notifications over the rate of responses.
+     * @param pipeline        the publish pipeline of an endpoint
+     * @param publishInterval the publishing interval of the subscription in seconds
+     * @param partition       the partition of the subscription
+     * @param session         the index of the endpoint's session among the sessions of the equipment
+     */
+    public void registerSubscriptionHealth(PublishPipeline pipeline, int publishInterval, int partition, int session) {
+        final Iterable<Tag> tags = getTags("time_deadband", String.valueOf(publishInterval), "partition", String.valueOf(partition), "session", String.valueOf(session));
+        Gauge.builder(PREFIX + "_" + PUBLISH_LAG_GAUGE, pipeline, p -> p.getLag(publishInterval, partition))
+                .tags(tags)
+                .register(registry);
+        Gauge.builder(PREFIX + "_" + PUBLISH_KEEP_ALIVE_INTERVAL_GAUGE, pipeline, p -> p.getKeepAliveInterval(publishInterval, partition))
+                .tags(tags)
+                .register(registry);
+        FunctionCounter.builder(PREFIX + "_" + PUBLISH_SEQUENCE_GAP_COUNTER, pipeline, p -> p.getSequenceGaps(publishInterval, partition))
+                .tags(tags)
+                .register(registry);
+        FunctionCounter.builder(PREFIX + "_" + PUBLISH_RESPONSE_COUNTER, pipeline, p -> p.getPublishResponses(publishInterval, partition))
+                .tags(tags)
+                .register(registry);
+        FunctionCounter.builder(PREFIX + "_" + PUBLISH_NOTIFICATION_COUNTER, pipeline, p -> p.getNotifications(publishInterval, partition))
+                .tags(tags)
+                .register(registry);
+        FunctionCounter.builder(PREFIX + "_" + PUBLISH_OVERFLOW_COUNTER, pipeline, p -> p.getOverflows(publishInterval, partition))
+                .tags(tags)
+                .register(registry);
+        FunctionCounter.builder(PREFIX + "_" + PUBLISH_KEEP_ALIVE_COUNTER, pipeline, p -> p.getKeepAlives(publishInterval, partition))
+                .tags(tags)
+                .register(registry);
+    }
+
+    /**
+     * Registers the number of monitored items in the subscription with the given publishing interval and partition to
+     * be gauged.
+     * @param partitions      the subscriptions of an endpoint
+     * @param publishInterval the publishing interval of the subscription in seconds
+     * @param partition       the partition of the subscription
+     * @param session         the index of the endpoint's session among the sessions of the equipment
+     */
+    public void registerSubscriptionPartition(SubscriptionPartitions partitions, int publishInterval, int partition, int session) {
+        Gauge.builder(PREFIX + "_" + ITEMS_PER_SUBSCRIPTION_GAUGE, partitions, p -> p.size(publishInterval, partition))
+                .tags(getTags("time_deadband", String.valueOf(publishInterval), "partition", String.valueOf(partition), "session", String.valueOf(session)))
+                .register(registry);
     }
 
     /**
@@ -88,48 +390,197 @@ public class MetricProxy {
      */
     public void addDefaultTags(String... keyValues) {
         defaultTags = defaultTags.and(keyValues);
+        // cached, since the name is attached to events recorded on every value update
+        equipmentName = defaultTags.stream()
+                .filter(t -> t.getKey().equals("equipment_name"))
+                .map(Tag::getValue)
+                .findFirst()
+                .orElse(null);
+    }
 
-        // Initialize OSHI metrics after the necessary default Tags have been added to the MetricProxy
-        new NetworkMetrics(defaultTags).bindTo(registry);
+    /**
+     * @return the name of the equipment whose metrics are recorded, or null if the scope of the equipment has not been
+     * initialized yet.
+     */
+    public String getEquipmentName() {
+        return equipmentName;
     }
 
-    private void incrementCounter(boolean valid, String id) {
-        if (validTagCounter == null) {
-            validTagCounter = new TagCounter(registry, PREFIX + "_" + VALID_TAG_COUNTER);
+    /**
+     * Reads the tagMetricMode settings anew on the next update if they changed, so that a reconfigured equipment
+     * address is applied when the endpoint connects. The gauges of the previous top tags are removed.
+     */
+    public synchronized void resetTagMetricSettings() {
+        final TagMetricSettings s = settings;
+        if (s != null && !s.equals(new TagMetricSettings(properties))) {
+            topTagGauges.forEach(registry::remove);
+            topTagGauges.clear();
+            settings = null;
         }
-        if (invalidTagCounter == null) {
-            invalidTagCounter = new TagCounter(registry, PREFIX + "_" + INVALID_TAG_COUNTER);
+    }
+
+    private TagMetricSettings settings() {
+        TagMetricSettings s = settings;
+        if (s == null) {
+            synchronized (this) {
+                s = settings;
+                if (s == null) {
+                    s = new TagMetricSettings(properties);
+                    registerTopTags(s);
+                    settings = s;
+                }
+            }
         }
-        if (valid) {
-            validTagCounter.increment(id);
-        } else {
-            invalidTagCounter.increment(id);
+        return s;
+    }
+
+    private void registerTopTags(TagMetricSettings settings) {
+        final TopTags topTags = settings.topTags;
+        for (int rank = 0; rank < settings.topK; rank++) {
+            final int r = rank;
+            topTagGauges.add(Gauge.builder(PREFIX + "_" + TOP_TAG_UPDATES_GAUGE, topTags, t -> t.count(r))
+                    .tags(getTags("rank", String.valueOf(r)))
+                    .register(registry));
+            topTagGauges.add(Gauge.builder(PREFIX + "_" + TOP_TAG_ID_GAUGE, topTags, t -> t.id(r))
+                    .tags(getTags("rank", String.valueOf(r)))
+                    .register(registry));
         }
     }
 
+    private int subscriptionGroupSlot(int publishInterval) {
+        synchronized (subscriptionGroupSlots) {
+            Integer slot = subscriptionGroupSlots.get(publishInterval);
+            if (slot == null) {
+                slot = subscriptionGroupMeters.length;
+                final SubscriptionGroupMeters[] meters = Arrays.copyOf(subscriptionGroupMeters, slot + 1);
+                meters[slot] = new SubscriptionGroupMeters(String.valueOf(publishInterval));
+                subscriptionGroupMeters = meters;
+                subscriptionGroupSlots.put(publishInterval, slot);
+            }
+            return slot;
+        }
+    }
+
+    private SubscriptionGroupMeters subscriptionGroupMeters(long tagId) {
+        final int slot = subscriptionGroupIndex.get(tagId);
+        if (slot != TagIndex.ABSENT) {
+            return subscriptionGroupMeters[slot];
+        }
+        SubscriptionGroupMeters meters = unassignedMeters;
+        if (meters == null) {
+            meters = new SubscriptionGroupMeters("none");
+            unassignedMeters = meters;
+        }
+        return meters;
+    }
+
+    private UpdateCounter perTagCounter(long tagId) {
+        final int slot = perTagIndex.get(tagId);
+        if (slot != TagIndex.ABSENT) {
+            return perTagCounters[slot];
+        }
+        synchronized (perTagIndex) {
+            final int existing = perTagIndex.get(tagId);
+            if (existing != TagIndex.ABSENT) {
+                return perTagCounters[existing];
+            }
+            if (perTagCount == perTagCounters.length) {
+                perTagCounters = Arrays.copyOf(perTagCounters, perTagCount * 2);
+            }
+            final UpdateCounter counter = new UpdateCounter(VALID_TAG_COUNTER, INVALID_TAG_COUNTER, "tag_id", String.valueOf(tagId));
+            perTagCounters[perTagCount] = counter;
+            perTagIndex.put(tagId, perTagCount++);
+            return counter;
+        }
+    }
+
+    private Timer phaseTimer(FailoverTimeline.Phase phase) {
+        return Timer.builder(PREFIX + "_" + FAILOVER_PHASE_TIMER)
+                .tags(getTags("phase", phase.name().toLowerCase()))
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+
     private Iterable<Tag> getTags(String... additional) {
         return defaultTags.and(additional);
     }
 
     /**
-     * The TagCounter keeps track of the total number of updates for each Tag by ID.
+     * Counts the valid and invalid updates of a DataTag or of a subscription group. Micrometer's counters accumulate
+     * in striped adders, so that concurrent updates do not contend.
      */
-    @RequiredArgsConstructor
-    private class TagCounter {
+    private final class UpdateCounter {
+        private final Counter valid;
+        private final Counter invalid;
 
-        @NonNull
-        private final MeterRegistry meterRegistry;
-        private final String name;
-        private final Map<String, Counter> validCounter = new ConcurrentHashMap<>();
+        private UpdateCounter(String validName, String invalidName, String... tags) {
+            valid = registry.counter(PREFIX + "_" + validName, getTags(tags));
+            invalid = registry.counter(PREFIX + "_" + invalidName, getTags(tags));
+        }
 
-        private void increment(String tagId) {
-            Counter counter = validCounter.get(tagId);
-            if (counter == null) {
-                counter = meterRegistry.counter(name, getTags("tag_id", tagId));
-                validCounter.put(tagId, counter);
-            }
-            counter.increment();
+        private void increment(boolean isValid) {
+            (isValid ? valid : invalid).increment();
+        }
+    }
+
+    /**
+     * The meters of a subscription group: the update counter, and the latency histograms of the updates. The
+     * histograms have fixed bucket boundaries, so that recording a latency is a bucket lookup and an increment of
+     * striped adders. They can be aggregated across equipments on the monitoring server.
+     */
+    private final class SubscriptionGroupMeters {
+        private final UpdateCounter updates;
+        private final Timer sourceToServer;
+        private final Timer serverToReceipt;
+        private final Timer receiptToHandoff;
+
+        private SubscriptionGroupMeters(String timeDeadband) {
+            updates = new UpdateCounter(VALID_SUBSCRIPTION_COUNTER, INVALID_SUBSCRIPTION_COUNTER, "time_deadband", timeDeadband);
+            sourceToServer = latencyTimer(SOURCE_TO_SERVER_TIMER, timeDeadband);
+            serverToReceipt = latencyTimer(SERVER_TO_RECEIPT_TIMER, timeDeadband);
+            receiptToHandoff = latencyTimer(RECEIPT_TO_HANDOFF_TIMER, timeDeadband);
+        }
+
+        private Timer latencyTimer(String name, String timeDeadband) {
+            return Timer.builder(PREFIX + "_" + name)
+                    .tags(getTags("time_deadband", timeDeadband))
+                    .publishPercentileHistogram()
+                    .minimumExpectedValue(Duration.ofNanos(100_000))
+                    .maximumExpectedValue(Duration.ofMinutes(5))
+                    .register(registry);
         }
     }
 
+    /**
+     * The tagMetricMode settings, read on the first update after the endpoint connected. Settings are equal if they
+     * were read from equal properties.
+     */
+    private static final class TagMetricSettings {
+        private final AppConfigProperties.TagMetricMode mode;
+        private final long[] allowList;
+        private final int topK;
+        private final TopTags topTags;
+
+        private TagMetricSettings(AppConfigProperties properties) {
+            mode = properties.getTagMetricMode() == null ? AppConfigProperties.TagMetricMode.AGGREGATE : properties.getTagMetricMode();
+            final List<Long> ids = properties.getPerTagMetricIds();
+            allowList = ids == null ? new long[0] : ids.stream().mapToLong(Long::longValue).sorted().toArray();
+            topK = mode == AppConfigProperties.TagMetricMode.AGGREGATE ? Math.max(0, properties.getPerTagMetricTopK()) : 0;
+            topTags = topK > 0 ? new TopTags(topK) : null;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof TagMetricSettings)) {
+                return false;
+            }
+            final TagMetricSettings other = (TagMetricSettings) o;
+            return mode == other.mode && topK == other.topK && Arrays.equals(allowList, other.allowList);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(mode, topK, Arrays.hashCode(allowList));
+        }
+    }
 }
@@ -21,29 +21,39 @@
  */
 package cern.c2mon.daq.opcua.metrics;
 
+import cern.c2mon.daq.opcua.config.AppConfigProperties;
+import cern.c2mon.daq.opcua.scope.ScheduledTask;
+import cern.c2mon.daq.opcua.scope.SharedScheduler;
 import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
 import io.micrometer.core.instrument.MeterRegistry;
-import io.micrometer.core.instrument.Tag;
 import io.micrometer.core.instrument.binder.MeterBinder;
 import lombok.AllArgsConstructor;
-import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
 import oshi.SystemInfo;
 import oshi.hardware.NetworkIF;
 
 import java.util.List;
-import java.util.concurrent.atomic.AtomicLong;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
 /**
- * Gathers network metrics through Oshi. Specified Class from @{link https://github.com/jrask/micrometer-oshi-binder}
+ * Gathers network metrics through Oshi. Originally specified from @{link https://github.com/jrask/micrometer-oshi-binder}
  * with some changes to go with Micrometer 1.1.0. Open issue for Micrometer integration: @{link
  * https://github.com/micrometer-metrics/micrometer/issues/1274}
+ * <p>
+ * The network interfaces of the host are sampled once for the whole DAQ process on the {@link SharedScheduler}, rather
+ * than by every equipment when the metrics are scraped. Besides the totals, the rates per second in between the two
+ * most recent samples are gauged.
  */
-@RequiredArgsConstructor
-public class NetworkMetrics implements MeterBinder {
+@Slf4j
+@Component
+public class NetworkMetrics implements MeterBinder, DisposableBean {
 
-    private static final int MAX_REFRESH_TIME = 5_000;
+    private static final long DEFAULT_SAMPLING_INTERVAL = 5_000L;
 
     @AllArgsConstructor
     enum NetworkMetric {
@@ -54,86 +64,112 @@ public class NetworkMetrics implements MeterBinder {
         String name;
     }
 
-    private final CachedNetworkStats networkStats = new CachedNetworkStats(new SystemInfo().getHardware().getNetworkIFs());
-    private final Iterable<Tag> tags;
+    private final SharedScheduler scheduler;
+    private final long samplingInterval;
+    private final Supplier<long[]> reader;
+    private volatile long[] totals = new long[NetworkMetric.values().length];
+    private volatile double[] rates = new double[NetworkMetric.values().length];
+    private long lastSample = -1L;
+    private ScheduledTask sampler;
 
     /**
-     * Binds relevant network tags to the Micrometer meterRegisty
+     * Creates a new sampler of the network interfaces of the host.
+     * @param properties the application properties containing the networkSamplingInterval
+     * @param scheduler  the scheduler to sample the network interfaces on
+     */
+    @Autowired
+    public NetworkMetrics(AppConfigProperties properties, SharedScheduler scheduler) {
+        this(scheduler, properties.getNetworkSamplingInterval(), new InterfaceReader());
+    }
+
+    NetworkMetrics(SharedScheduler scheduler, long samplingInterval, Supplier<long[]> reader) {
+        this.scheduler = scheduler;
+        this.samplingInterval = samplingInterval > 0 ? samplingInterval : DEFAULT_SAMPLING_INTERVAL;
+        this.reader = reader;
+    }
+
+    /**
+     * Binds relevant network tags to the Micrometer meterRegisty and starts sampling the network interfaces.
      * @param meterRegistry the meterRegistry to bind to
      */
     @Override
     public void bindTo(MeterRegistry meterRegistry) {
         for (NetworkMetric networkMetric : NetworkMetric.values()) {
-            FunctionCounter.builder(networkMetric.name, networkMetric, this::getNetworkMetricAsLong)
-                    .tags(tags)
+            FunctionCounter.builder(networkMetric.name, this, m -> m.getTotal(networkMetric))
+                    .register(meterRegistry);
+            Gauge.builder(networkMetric.name + ".rate", this, m -> m.getRate(networkMetric))
+                    .description(networkMetric.name + " per second")
                     .register(meterRegistry);
         }
+        synchronized (this) {
+            if (sampler == null) {
+                sampler = scheduler.scheduleWithFixedDelay(() -> sample(System.nanoTime()), 0, samplingInterval, TimeUnit.MILLISECONDS);
+            }
+        }
     }
 
-    private long getNetworkMetricAsLong(cern.c2mon.daq.opcua.metrics.NetworkMetrics.NetworkMetric type) {
-        networkStats.refresh();
-
-        switch (type) {
-            case BYTES_SENT:
-                return networkStats.bytesSent.get();
-            case PACKETS_SENT:
-                return networkStats.packetsSent.get();
-            case BYTES_RECEIVED:
-                return networkStats.bytesReceived.get();
-            case PACKETS_RECEIVED:
-                return networkStats.packetsReceived.get();
-            default:
-                throw new IllegalStateException("Unknown NetworkMetrics: " + type.name());
+    @Override
+    public synchronized void destroy() {
+        if (sampler != null) {
+            sampler.cancel();
+            sampler = null;
         }
     }
 
-    @RequiredArgsConstructor
-    private static class CachedNetworkStats {
-
-        private final Lock lock = new ReentrantLock();
-        private final List<NetworkIF> networks;
-        private long lastRefresh;
-
-        private AtomicLong bytesReceived = new AtomicLong();
-        private AtomicLong bytesSent = new AtomicLong();
-        private AtomicLong packetsReceived = new AtomicLong();
-        private AtomicLong packetsSent = new AtomicLong();
-
-
-        private void refresh() {
-            if (lock.tryLock()) {
-                try {
-                    doRefresh();
-                } finally {
-                    lock.unlock();
-                }
+    /**
+     * Read the current totals of the network interfaces and compute the rates per second since the previous sample.
+     * Totals which decreased, for instance since an interface was reset, yield a rate of 0.
+     * @param nanos the time of the sample in nanoseconds, as given by {@link System#nanoTime()}
+     */
+    synchronized void sample(long nanos) {
+        final long[] current;
+        try {
+            current = reader.get();
+        } catch (RuntimeException e) {
+            log.info("Could not sample the network interfaces.", e);
+            return;
+        }
+        final double[] currentRates = new double[current.length];
+        if (lastSample >= 0 && nanos > lastSample) {
+            final double seconds = (nanos - lastSample) / 1e9;
+            for (int i = 0; i < current.length; i++) {
+                currentRates[i] = Math.max(0, current[i] - totals[i]) / seconds;
             }
         }
+        totals = current;
+        rates = currentRates;
+        lastSample = nanos;
+    }
 
-        private void doRefresh() {
+    long getTotal(NetworkMetric metric) {
+        return totals[metric.ordinal()];
+    }
 
-            if (System.currentTimeMillis() - lastRefresh < MAX_REFRESH_TIME) {
-                return;
-            }
+    double getRate(NetworkMetric metric) {
+        return rates[metric.ordinal()];
+    }
 
-            long currentBytesReceived = 0;
-            long currentBytesSent = 0;
-            long currentPacketsReceived = 0;
-            long currentPacketsSent = 0;
+    /**
+     * Reads the totals of all network interfaces of the host in the order of {@link NetworkMetric}. The interfaces are
+     * only discovered on the first sample, as this is costly.
+     */
+    private static class InterfaceReader implements Supplier<long[]> {
+        private List<NetworkIF> networks;
 
+        @Override
+        public long[] get() {
+            if (networks == null) {
+                networks = new SystemInfo().getHardware().getNetworkIFs();
+            }
+            final long[] current = new long[NetworkMetric.values().length];
             for (NetworkIF nif : networks) {
                 nif.updateAttributes();
-                currentBytesReceived += nif.getBytesRecv();
-                currentBytesSent += nif.getBytesSent();
-                currentPacketsReceived += nif.getPacketsRecv();
-                currentPacketsSent += nif.getPacketsSent();
+                current[NetworkMetric.BYTES_RECEIVED.ordinal()] += nif.getBytesRecv();
+                current[NetworkMetric.BYTES_SENT.ordinal()] += nif.getBytesSent();
+                current[NetworkMetric.PACKETS_RECEIVED.ordinal()] += nif.getPacketsRecv();
+                current[NetworkMetric.PACKETS_SENT.ordinal()] += nif.getPacketsSent();
             }
-
-            this.bytesReceived.set(currentBytesReceived);
-            this.bytesSent.set(currentBytesSent);
-            this.packetsReceived.set(currentPacketsReceived);
-            this.packetsSent.set(currentPacketsSent);
-            this.lastRefresh = System.currentTimeMillis();
+            return current;
         }
     }
 }
@@ -0,0 +1,167 @@
+/*-
+ * #%L
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * %%
+ * Copyright (C) 2010 - 2022 CERN
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package cern.c2mon.daq.opcua.metrics;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * An open-addressing hash map from primitive tag IDs to primitive int slots. Lookups are lock-free and do not allocate,
+ * so that they can be performed on every value update. Modifications are rare in comparison, and synchronized.
+ */
+final class TagIndex {
+
+    static final int ABSENT = -1;
+    private static final long EMPTY = Long.MIN_VALUE;
+    private static final long REMOVED = Long.MIN_VALUE + 1;
+    private static final int INITIAL_CAPACITY = 64;
+
+    private volatile Table table = new Table(INITIAL_CAPACITY);
+    private int size;
+
+    /**
+     * @param tagId the ID of the tag to look up
+     * @return the slot associated with the tag, or {@link #ABSENT} if there is none.
+     */
+    int get(long tagId) {
+        final Table t = table;
+        for (int i = t.indexOf(tagId); ; i = t.next(i)) {
+            final long key = t.keys.get(i);
+            if (key == tagId) {
+                return t.values.get(i);
+            } else if (key == EMPTY) {
+                return ABSENT;
+            }
+        }
+    }
+
+    /**
+     * Associates the tag with the slot, replacing any previous association.
+     * @param tagId the ID of the tag
+     * @param slot  the non-negative slot to associate with the tag
+     */
+    synchronized void put(long tagId, int slot) {
+        if (tagId == EMPTY || tagId == REMOVED) {
+            throw new IllegalArgumentException("The tag ID " + tagId + " is reserved.");
+        }
+        Table t = table;
+        final int existing = t.find(tagId);
+        if (existing >= 0) {
+            t.values.set(existing, slot);
+            return;
+        }
+        if ((t.used + 1) * 2 > t.capacity()) {
+            t = rehash(t, (size + 1) * 4 > t.capacity() ? t.capacity() * 2 : t.capacity());
+            table = t;
+        }
+        t.insert(tagId, slot);
+        size++;
+    }
+
+    /**
+     * Removes the association of the tag, if it is associated with the given slot.
+     * @param tagId the ID of the tag
+     * @param slot  the slot the tag must be associated with to be removed
+     */
+    synchronized void remove(long tagId, int slot) {
+        final Table t = table;
+        final int i = t.find(tagId);
+        if (i >= 0 && t.values.get(i) == slot) {
+            t.keys.set(i, REMOVED);
+            size--;
+        }
+    }
+
+    /**
+     * @return the number of tags with an associated slot.
+     */
+    synchronized int size() {
+        return size;
+    }
+
+    private static Table rehash(Table old, int capacity) {
+        final Table t = new Table(capacity);
+        for (int i = 0; i < old.capacity(); i++) {
+            final long key = old.keys.get(i);
+            if (key != EMPTY && key != REMOVED) {
+                t.insert(key, old.values.get(i));
+            }
+        }
+        return t;
+    }
+
+    /**
+     * The value of a slot is written before its key, so that a reader observing the key also observes the value.
+     * Tables are replaced as a whole on rehashing, and never modified once replaced.
+     */
+    private static final class Table {
+        private final AtomicLongArray keys;
+        private final AtomicIntegerArray values;
+        private final int mask;
+        private int used;
+
+        private Table(int capacity) {
+            keys = new AtomicLongArray(capacity);
+            values = new AtomicIntegerArray(capacity);
+            mask = capacity - 1;
+            for (int i = 0; i < capacity; i++) {
+                keys.lazySet(i, EMPTY);
+            }
+        }
+
+        private int capacity() {
+            return mask + 1;
+        }
+
+        private int indexOf(long key) {
+            final long h = key * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32)) & mask;
+        }
+
+        private int next(int i) {
+            return (i + 1) & mask;
+        }
+
+        private int find(long key) {
+            for (int i = indexOf(key); ; i = next(i)) {
+                final long k = keys.get(i);
+                if (k == key) {
+                    return i;
+                } else if (k == EMPTY) {
+                    return -1;
+                }
+            }
+        }
+
+        private void insert(long key, int value) {
+            int i = indexOf(key);
+            while (keys.get(i) != EMPTY && keys.get(i) != REMOVED) {
+                i = next(i);
+            }
+            if (keys.get(i) == EMPTY) {
+                used++;
+            }
+            values.set(i, value);
+            keys.set(i, key);
+        }
+    }
+}
@@ -0,0 +1,111 @@
+/*-
+ * #%L
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * %%
+ * Copyright (C) 2010 - 2022 CERN
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package cern.c2mon.daq.opcua.metrics;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Estimates the tags with the most updates using the Space-Saving algorithm over a fixed number of slots. Only a sample
+ * of one in {@link #SAMPLING_RATE} updates is recorded, weighted accordingly, so that the sketch is locked only for a
+ * fraction of all updates. The counts are therefore estimates, which may exceed the true number of updates of a tag by
+ * at most the count of the least frequent tag in the sketch.
+ */
+final class TopTags {
+
+    static final int SAMPLING_RATE = 16;
+
+    private final long[] ids;
+    private final long[] counts;
+    private int size;
+
+    /**
+     * @param k the number of tags to track
+     */
+    TopTags(int k) {
+        ids = new long[k];
+        counts = new long[k];
+    }
+
+    /**
+     * Records an update of the tag with a probability of 1 / {@link #SAMPLING_RATE}.
+     * @param tagId the ID of the updated tag
+     */
+    void offer(long tagId) {
+        if (ThreadLocalRandom.current().nextInt(SAMPLING_RATE) == 0) {
+            add(tagId, SAMPLING_RATE);
+        }
+    }
+
+    /**
+     * Records updates of a tag. If the tag is not yet tracked and all slots are occupied, it replaces the tag with the
+     * lowest count and inherits that count.
+     * @param tagId the ID of the updated tag
+     * @param count the number of updates to record
+     */
+    synchronized void add(long tagId, long count) {
+        int min = 0;
+        for (int i = 0; i < size; i++) {
+            if (ids[i] == tagId) {
+                counts[i] += count;
+                return;
+            } else if (counts[i] < counts[min]) {
+                min = i;
+            }
+        }
+        if (size < ids.length) {
+            ids[size] = tagId;
+            counts[size++] = count;
+        } else {
+            ids[min] = tagId;
+            counts[min] += count;
+        }
+    }
+
+    /**
+     * @param rank the rank of the tag, starting at 0 for the tag with the most updates
+     * @return the ID of the tag with the given rank, or NaN if fewer tags were updated.
+     */
+    synchronized double id(int rank) {
+        final int i = indexOfRank(rank);
+        return i < 0 ? Double.NaN : ids[i];
+    }
+
+    /**
+     * @param rank the rank of the tag, starting at 0 for the tag with the most updates
+     * @return the estimated number of updates of the tag with the given rank, or 0 if fewer tags were updated.
+     */
+    synchronized long count(int rank) {
+        final int i = indexOfRank(rank);
+        return i < 0 ? 0 : counts[i];
+    }
+
+    private int indexOfRank(int rank) {
+        if (rank >= size) {
+            return -1;
+        }
+        final Integer[] order = new Integer[size];
+        Arrays.setAll(order, i -> i);
+        Arrays.sort(order, (a, b) -> Long.compare(counts[b], counts[a]));
+        return order[rank];
+    }
+}
@@ -0,0 +1,72 @@
+/*-
+ * #%L
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * %%
+ * Copyright (C) 2010 - 2022 CERN
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package cern.c2mon.daq.opcua.metrics.events;
+
+import cern.c2mon.daq.opcua.exceptions.ExceptionContext;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A Flight Recorder event spanning a service call to the server on behalf of an equipment, such as a read, a write, a
+ * method call or the creation of monitored items, including all of its retry attempts.
+ */
+@Name("cern.c2mon.daq.opcua.ServiceCall")
+@Label("OPC UA Service Call")
+@Category({"C2MON", "OPC UA"})
+@Description("A service call to the server including all retry attempts")
+@StackTrace(false)
+public class ServiceCallEvent extends Event {
+
+    @Label("Equipment")
+    String equipment;
+
+    @Label("Context")
+    String context;
+
+    @Label("Node Count")
+    int nodeCount;
+
+    @Label("Succeeded")
+    boolean succeeded;
+
+    /**
+     * End the event, and commit it if it is enabled and lasted longer than its threshold.
+     * @param equipment the name of the equipment on whose behalf the call was made
+     * @param context   the service called
+     * @param nodeCount the number of nodes the call concerned
+     * @param succeeded whether the call returned a result
+     */
+    public void complete(String equipment, ExceptionContext context, int nodeCount, boolean succeeded) {
+        end();
+        if (shouldCommit()) {
+            this.equipment = equipment;
+            this.context = context.name();
+            this.nodeCount = nodeCount;
+            this.succeeded = succeeded;
+            commit();
+        }
+    }
+}
@@ -0,0 +1,77 @@
+/*-
+ * #%L
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * %%
+ * Copyright (C) 2010 - 2022 CERN
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package cern.c2mon.daq.opcua.metrics.events;
+
+import cern.c2mon.daq.opcua.exceptions.ExceptionContext;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A Flight Recorder event spanning the recreation of a subscription which timed out or could not be transferred, or of
+ * all subscriptions of an equipment after a reconnection or failover.
+ */
+@Name("cern.c2mon.daq.opcua.SubscriptionRecreation")
+@Label("OPC UA Subscription Recreation")
+@Category({"C2MON", "OPC UA"})
+@Description("The recreation of a subscription, or of all subscriptions after a reconnection")
+@StackTrace(false)
+public class SubscriptionRecreationEvent extends Event {
+
+    @Label("Equipment")
+    String equipment;
+
+    @Label("Context")
+    String context;
+
+    @Label("Publish Interval")
+    @Description("The publishing interval of the subscription in seconds, or 0 if all subscriptions were recreated")
+    int publishInterval;
+
+    @Label("Node Count")
+    int nodeCount;
+
+    @Label("Succeeded")
+    boolean succeeded;
+
+    /**
+     * End the event, and commit it if it is enabled and lasted longer than its threshold.
+     * @param equipment       the name of the equipment owning the subscriptions
+     * @param publishInterval the publishing interval of the subscription in seconds, or 0 for all subscriptions
+     * @param nodeCount       the number of tags to resubscribe
+     * @param succeeded       whether the subscription could be recreated
+     */
+    public void complete(String equipment, int publishInterval, int nodeCount, boolean succeeded) {
+        end();
+        if (shouldCommit()) {
+            this.equipment = equipment;
+            this.context = ExceptionContext.CREATE_SUBSCRIPTION.name();
+            this.publishInterval = publishInterval;
+            this.nodeCount = nodeCount;
+            this.succeeded = succeeded;
+            commit();
+        }
+    }
+}
@@ -0,0 +1,90 @@
+/*-
+ * #%L
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * %%
+ * Copyright (C) 2010 - 2022 CERN
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package cern.c2mon.daq.opcua.metrics.events;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * A Flight Recorder event spanning the delivery of a value update from its receipt by the client to its handoff to the
+ * DAQ core. Since value updates are frequent, only one in {@link #SAMPLING_RATE} deliveries is timed, and only those
+ * exceeding the threshold are recorded.
+ */
+@Name("cern.c2mon.daq.opcua.ValueDelivery")
+@Label("OPC UA Value Delivery")
+@Category({"C2MON", "OPC UA"})
+@Description("The delivery of a sampled value update from its receipt to its handoff to the DAQ core")
+@Threshold("1 ms")
+@StackTrace(false)
+public class ValueDeliveryEvent extends Event {
+
+    static final int SAMPLING_RATE = 16;
+
+    @Label("Equipment")
+    String equipment;
+
+    @Label("Tag ID")
+    long tagId;
+
+    @Label("Node Count")
+    @Description("The number of tags the value update was delivered to")
+    int nodeCount;
+
+    /**
+     * Begin timing a value delivery if it is sampled and the event is enabled.
+     * @return the begun event, or null if the delivery is not timed.
+     */
+    public static ValueDeliveryEvent sample() {
+        if (ThreadLocalRandom.current().nextInt(SAMPLING_RATE) != 0) {
+            return null;
+        }
+        final ValueDeliveryEvent event = new ValueDeliveryEvent();
+        if (!event.isEnabled()) {
+            return null;
+        }
+        event.begin();
+        return event;
+    }
+
+    /**
+     * End the event, and commit it if it lasted longer than its threshold.
+     * @param equipment the name of the equipment the value update was received for
+     * @param tagId     the ID of the tag of the monitored item
+     * @param nodeCount the number of tags the value update was delivered to
+     */
+    public void complete(String equipment, long tagId, int nodeCount) {
+        end();
+        if (shouldCommit()) {
+            this.equipment = equipment;
+            this.tagId = tagId;
+            this.nodeCount = nodeCount;
+            commit();
+        }
+    }
+}
@@ -0,0 +1,92 @@
+/*-
+ * #%L
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * %%
+ * Copyright (C) 2010 - 2022 CERN
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package cern.c2mon.daq.opcua.scope;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The view of an equipment onto the {@link SharedScheduler}. It keeps track of the tasks scheduled on behalf of the
+ * equipment, exposing how many of the tasks on the shared scheduler belong to the equipment.
+ */
+@EquipmentScoped
+@RequiredArgsConstructor
+@ManagedResource(objectName = "EquipmentScheduler", description = "Schedules the tasks of an equipment on the scheduler shared by all equipments.")
+public class EquipmentScheduler {
+
+    private final SharedScheduler scheduler;
+    private final Set<ScheduledTask> tasks = ConcurrentHashMap.newKeySet();
+
+    /**
+     * See {@link SharedScheduler#schedule(Runnable, long, TimeUnit)}.
+     * @param task  the task to execute
+     * @param delay the delay after which to execute the task
+     * @param unit  the time unit of the delay
+     * @return a handle to cancel the task
+     */
+    public ScheduledTask schedule(Runnable task, long delay, TimeUnit unit) {
+        return track(scheduler.schedule(task, delay, unit));
+    }
+
+    /**
+     * See {@link SharedScheduler#scheduleAtFixedRate(Runnable, long, long, TimeUnit)}.
+     * @param task         the task to execute
+     * @param initialDelay the delay after which to execute the task for the first time
+     * @param period       the period in between the start of two successive executions
+     * @param unit         the time unit of the delay and period
+     * @return a handle to cancel the task
+     */
+    public ScheduledTask scheduleAtFixedRate(Runnable task, long initialDelay, long period, TimeUnit unit) {
+        return track(scheduler.scheduleAtFixedRate(task, initialDelay, period, unit));
+    }
+
+    /**
+     * See {@link SharedScheduler#scheduleWithFixedDelay(Runnable, long, long, TimeUnit)}.
+     * @param task         the task to execute
+     * @param initialDelay the delay after which to execute the task for the first time
+     * @param delay        the delay in between the end of an execution and the start of the next
+     * @param unit         the time unit of the delays
+     * @return a handle to cancel the task
+     */
+    public ScheduledTask scheduleWithFixedDelay(Runnable task, long initialDelay, long delay, TimeUnit unit) {
+        return track(scheduler.scheduleWithFixedDelay(task, initialDelay, delay, unit));
+    }
+
+    /**
+     * @return the number of tasks of this equipment which are scheduled for execution.
+     */
+    @ManagedAttribute(description = "The number of tasks of this equipment which are scheduled for execution on the shared scheduler.")
+    public int getPendingTasks() {
+        return tasks.size();
+    }
+
+    private ScheduledTask track(ScheduledTask task) {
+        tasks.add(task);
+        task.onDone(tasks::remove);
+        return task;
+    }
+}
@@ -0,0 +1,141 @@
+/*-
+ * #%L
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * %%
+ * Copyright (C) 2010 - 2022 CERN
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package cern.c2mon.daq.opcua.scope;
+
+import io.netty.util.Timeout;
+import io.netty.util.TimerTask;
+
+import java.util.function.Consumer;
+
+/**
+ * A handle to a task scheduled on the {@link SharedScheduler}. When its delay has expired, the task is handed from the
+ * timer thread to the worker pool for execution. Periodic tasks are rescheduled after each execution.
+ */
+public class ScheduledTask implements TimerTask {
+
+    private final SharedScheduler scheduler;
+    private final Runnable command;
+    /**
+     * The period in nanoseconds. A positive value stands for a fixed rate, a negative value for a fixed delay, and 0
+     * for a task which is only executed once.
+     */
+    private final long period;
+    private Consumer<ScheduledTask> onDone;
+    private Timeout timeout;
+    private long nextRun;
+    private volatile boolean cancelled;
+    private volatile boolean done;
+
+    ScheduledTask(SharedScheduler scheduler, Runnable command, long period) {
+        this.scheduler = scheduler;
+        this.command = command;
+        this.period = period;
+    }
+
+    /**
+     * Cancel all future executions of the task. An execution which is already in progress is not interrupted.
+     * @return true if the task was cancelled by this call, false if it had already completed or been cancelled.
+     */
+    public synchronized boolean cancel() {
+        if (done) {
+            return false;
+        }
+        cancelled = true;
+        if (timeout != null) {
+            timeout.cancel();
+        }
+        complete();
+        return true;
+    }
+
+    /**
+     * @return true if the task was cancelled before it completed normally.
+     */
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * @return true if the task will not be executed anymore, either due to cancellation or since it was executed.
+     */
+    public boolean isDone() {
+        return done;
+    }
+
+    @Override
+    public void run(Timeout timeout) {
+        if (!cancelled) {
+            scheduler.execute(this::runTask);
+        }
+    }
+
+    synchronized void onDone(Consumer<ScheduledTask> callback) {
+        this.onDone = callback;
+        if (done) {
+            callback.accept(this);
+        }
+    }
+
+    synchronized void start(long delay) {
+        nextRun = System.nanoTime() + delay;
+        arm(delay);
+    }
+
+    private void runTask() {
+        if (cancelled) {
+            return;
+        }
+        try {
+            command.run();
+        } finally {
+            reschedule();
+        }
+    }
+
+    private synchronized void reschedule() {
+        if (period > 0) {
+            final long now = System.nanoTime();
+            // skip executions that were missed if the task overran its period
+            nextRun = Math.max(nextRun + period, now);
+            arm(nextRun - now);
+        } else if (period < 0) {
+            arm(-period);
+        } else {
+            complete();
+        }
+    }
+
+    private void arm(long delay) {
+        if (!cancelled) {
+            timeout = scheduler.newTimeout(this, delay);
+        }
+    }
+
+    private void complete() {
+        if (!done) {
+            done = true;
+            if (onDone != null) {
+                onDone.accept(this);
+            }
+        }
+    }
+}
@@ -0,0 +1,162 @@
+/*-
+ * #%L
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * %%
+ * Copyright (C) 2010 - 2022 CERN
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package cern.c2mon.daq.opcua.scope;
+
+import cern.c2mon.daq.opcua.config.AppConfigProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timeout;
+import io.netty.util.TimerTask;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A process-wide scheduling service shared by all equipments. Delays and periods are tracked by a single hashed wheel
+ * timer thread, and the scheduled tasks are executed on a fixed-size worker pool. Tasks which are ready while all
+ * workers are busy are queued rather than spawning additional threads, so the number of threads is independent of the
+ * number of equipments. Tasks should therefore perform a bounded amount of work per execution: long-lasting retry loops
+ * such as a failover reschedule each attempt instead of blocking a worker in between attempts. Equipment-scoped beans
+ * should use the scheduler through the {@link EquipmentScheduler}.
+ */
+@Slf4j
+@Component
+public class SharedScheduler implements MeterBinder, DisposableBean {
+
+    private static final String PREFIX = "c2mon_daq_opcua_scheduler";
+    private static final long DEFAULT_TICK_DURATION = 10L;
+
+    private final HashedWheelTimer timer;
+    private final ThreadPoolExecutor pool;
+    private Counter executedCounter;
+    private Counter failedCounter;
+
+    /**
+     * Creates a new shared scheduler.
+     * @param properties the application properties containing the tick duration of the timer and the parallelism of
+     *                   the pool
+     */
+    public SharedScheduler(AppConfigProperties properties) {
+        final long tickDuration = properties.getSchedulerTickDuration() > 0 ? properties.getSchedulerTickDuration() : DEFAULT_TICK_DURATION;
+        final int parallelism = properties.getSchedulerParallelism() > 0 ? properties.getSchedulerParallelism() : Runtime.getRuntime().availableProcessors();
+        timer = new HashedWheelTimer(r -> {
+            final Thread t = new Thread(r, "c2mon-opcua-timer");
+            t.setDaemon(true);
+            return t;
+        }, tickDuration, TimeUnit.MILLISECONDS);
+        final AtomicInteger threadCount = new AtomicInteger();
+        pool = new ThreadPoolExecutor(parallelism, parallelism, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), r -> {
+            final Thread t = new Thread(r, "c2mon-opcua-worker-" + threadCount.incrementAndGet());
+            t.setDaemon(true);
+            t.setUncaughtExceptionHandler((thread, e) -> log.error("Uncaught exception in thread {}.", thread.getName(), e));
+            return t;
+        });
+        log.info("Started shared scheduler with a tick duration of {} ms and a parallelism of {}.", tickDuration, parallelism);
+    }
+
+    /**
+     * Execute the task once after the given delay.
+     * @param task  the task to execute
+     * @param delay the delay after which to execute the task
+     * @param unit  the time unit of the delay
+     * @return a handle to cancel the task
+     */
+    public ScheduledTask schedule(Runnable task, long delay, TimeUnit unit) {
+        return start(new ScheduledTask(this, task, 0L), delay, unit);
+    }
+
+    /**
+     * Execute the task periodically after the initial delay. If an execution takes longer than the period, the next
+     * execution starts right after the previous one has completed.
+     * @param task         the task to execute
+     * @param initialDelay the delay after which to execute the task for the first time
+     * @param period       the period in between the start of two successive executions
+     * @param unit         the time unit of the delay and period
+     * @return a handle to cancel the task
+     */
+    public ScheduledTask scheduleAtFixedRate(Runnable task, long initialDelay, long period, TimeUnit unit) {
+        return start(new ScheduledTask(this, task, unit.toNanos(Math.max(1L, period))), initialDelay, unit);
+    }
+
+    /**
+     * Execute the task periodically after the initial delay with the given delay in between the end of an execution
+     * and the start of the next.
+     * @param task         the task to execute
+     * @param initialDelay the delay after which to execute the task for the first time
+     * @param delay        the delay in between the end of an execution and the start of the next
+     * @param unit         the time unit of the delays
+     * @return a handle to cancel the task
+     */
+    public ScheduledTask scheduleWithFixedDelay(Runnable task, long initialDelay, long delay, TimeUnit unit) {
+        return start(new ScheduledTask(this, task, -unit.toNanos(Math.max(1L, delay))), initialDelay, unit);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder(PREFIX + "_pending_timeouts", timer, HashedWheelTimer::pendingTimeouts).register(registry);
+        Gauge.builder(PREFIX + "_pool_threads", pool, ThreadPoolExecutor::getPoolSize).register(registry);
+        Gauge.builder(PREFIX + "_pool_active_threads", pool, ThreadPoolExecutor::getActiveCount).register(registry);
+        Gauge.builder(PREFIX + "_pool_queued_tasks", pool, p -> p.getQueue().size()).register(registry);
+        executedCounter = registry.counter(PREFIX + "_tasks_executed");
+        failedCounter = registry.counter(PREFIX + "_tasks_failed");
+    }
+
+    @Override
+    public void destroy() {
+        log.info("Stopping shared scheduler.");
+        timer.stop();
+        pool.shutdownNow();
+    }
+
+    Timeout newTimeout(TimerTask task, long delayNanos) {
+        return timer.newTimeout(task, delayNanos, TimeUnit.NANOSECONDS);
+    }
+
+    void execute(Runnable task) {
+        pool.execute(() -> {
+            try {
+                task.run();
+                if (executedCounter != null) {
+                    executedCounter.increment();
+                }
+            } catch (Exception e) {
+                log.error("Scheduled task failed with an unexpected exception.", e);
+                if (failedCounter != null) {
+                    failedCounter.increment();
+                }
+            }
+        });
+    }
+
+    private ScheduledTask start(ScheduledTask task, long delay, TimeUnit unit) {
+        task.start(unit.toNanos(Math.max(0L, delay)));
+        return task;
+    }
+}
@@ -23,31 +23,46 @@ package cern.c2mon.daq.opcua.security;
 
 import cern.c2mon.daq.opcua.config.AppConfigProperties;
 import cern.c2mon.daq.opcua.scope.EquipmentScoped;
-import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.eclipse.milo.opcua.stack.core.security.SecurityAlgorithm;
 import org.eclipse.milo.opcua.stack.core.security.SecurityPolicy;
 import org.eclipse.milo.opcua.stack.core.types.structured.EndpointDescription;
-import org.eclipse.milo.opcua.stack.core.util.SelfSignedCertificateBuilder;
-import org.eclipse.milo.opcua.stack.core.util.SelfSignedCertificateGenerator;
 
 import java.security.KeyPair;
-import java.security.NoSuchAlgorithmException;
 import java.security.cert.X509Certificate;
 import java.util.Arrays;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ExecutionException;
 
 /**
- * For those endpoints with a supported security policy, the CertificateGenerator generates a new self-signed
- * certificate and keypair with a matching signature algorithm. Currently, only @RsaSha256
- * (http://www.w3.org/2001/04/xmldsig-more#rsa-sha256) is supported.
+ * For those endpoints with a supported security policy, the CertificateGenerator provides a self-signed certificate and
+ * keypair with a matching signature algorithm. Currently, only @RsaSha256
+ * (http://www.w3.org/2001/04/xmldsig-more#rsa-sha256) is supported. The certificate and keypair are obtained from the
+ * process-wide {@link CertificateStore}, so that they are generated only once for all equipments with the same
+ * application settings and reused after a restart.
  */
 @Slf4j
-@RequiredArgsConstructor
 @EquipmentScoped
 public class CertificateGenerator extends CertifierBase {
     private static final String[] SUPPORTED_SIG_ALGS = {SecurityAlgorithm.RsaSha256.getTransformation()};
     private final AppConfigProperties config;
+    private final CertificateStore store;
+
+    /**
+     * Creates a new CertificateGenerator. If certificate generation is enabled, the store starts to load or generate
+     * the certificate in the background right away, while the endpoints of the server are being discovered.
+     * @param config the application properties containing the settings of the certificate
+     * @param store  the process-wide store of generated certificates
+     */
+    public CertificateGenerator(AppConfigProperties config, CertificateStore store) {
+        this.config = config;
+        this.store = store;
+        final Map<AppConfigProperties.CertifierMode, Integer> priority = config.getCertifierPriority();
+        if (priority != null && priority.getOrDefault(AppConfigProperties.CertifierMode.GENERATE, 0) > 0) {
+            store.get(config);
+        }
+    }
 
 
     /**
@@ -69,8 +84,8 @@ public class CertificateGenerator extends CertifierBase {
     }
 
     /**
-     * Generates a matching certificate and keypair if not yet present and returns whether the endpoint can therewith be
-     * certified.
+     * Obtains a matching certificate and keypair from the {@link CertificateStore} if not yet present and returns
+     * whether the endpoint can therewith be certified.
      * @param endpoint the endpoint for which certificate and keypair are generated
      * @return whether the endpoint can be certified
      */
@@ -83,31 +98,20 @@ public class CertificateGenerator extends CertifierBase {
     private boolean generateCertificateIfMissing(SecurityPolicy securityPolicy) {
         return (existingCertificateMatchesSecurityPolicy(securityPolicy)) ||
                 (securityPolicy.getAsymmetricSignatureAlgorithm().equals(SecurityAlgorithm.RsaSha256)
-                        && generateRSASHA256());
+                        && loadRSASHA256());
     }
 
-    private boolean generateRSASHA256() {
-        log.info("Generating self-signed certificate and keypair.");
+    private boolean loadRSASHA256() {
         try {
-            final KeyPair tmpKp = SelfSignedCertificateGenerator.generateRsaKeyPair(2048);
-            SelfSignedCertificateBuilder builder = new SelfSignedCertificateBuilder(tmpKp)
-                    .setCommonName(config.getApplicationName())
-                    .setOrganization(config.getOrganization())
-                    .setOrganizationalUnit(config.getOrganizationalUnit())
-                    .setLocalityName(config.getLocalityName())
-                    .setStateName(config.getStateName())
-                    .setCountryCode(config.getCountryCode())
-                    .setApplicationUri(config.getApplicationUri());
-            X509Certificate tmpCert = builder.build();
-            if (tmpCert != null) {
-                keyPair = tmpKp;
-                certificate = tmpCert;
-                return true;
-            }
-        } catch (NoSuchAlgorithmException e) {
-            log.error("Could not generate RSA keypair.", e);
-        } catch (Exception e) {
-            log.error("Could not generate certificate.", e);
+            final Map.Entry<X509Certificate, KeyPair> entry = store.get(config).get();
+            certificate = entry.getKey();
+            keyPair = entry.getValue();
+            return true;
+        } catch (InterruptedException e) {
+            log.error("Interrupted while waiting for the certificate to be generated.", e);
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            log.error("Could not generate certificate.", e.getCause());
         }
         return false;
     }
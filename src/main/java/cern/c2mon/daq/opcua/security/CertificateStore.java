@@ -0,0 +1,269 @@
+/*-
+ * #%L
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * %%
+ * Copyright (C) 2010 - 2022 CERN
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package cern.c2mon.daq.opcua.security;
+
+import cern.c2mon.daq.opcua.config.AppConfigProperties;
+import cern.c2mon.daq.opcua.exceptions.ConfigurationException;
+import cern.c2mon.daq.opcua.exceptions.ExceptionContext;
+import io.netty.util.internal.StringUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.eclipse.milo.opcua.stack.core.util.SelfSignedCertificateBuilder;
+import org.eclipse.milo.opcua.stack.core.util.SelfSignedCertificateGenerator;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.KeyPair;
+import java.security.KeyStore;
+import java.security.cert.X509Certificate;
+import java.util.AbstractMap;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A process-wide store of self-signed certificates and keypairs, shared by all equipments with the same application
+ * settings. A certificate is generated only once in the background, and persisted as a PKCS12 keystore in the "own"
+ * subdirectory of the pkiBaseDir, if configured. Persisted certificates are reused after a restart of the DAQ process,
+ * so that servers do not need to trust a new certificate. The keystore is protected with the configured keystore
+ * password, and certificates are not persisted if no password is configured. Certificates which expire within the
+ * certificateRenewalDays are renewed in the background, and the previous certificate is returned until the renewal
+ * completes.
+ */
+@Slf4j
+@Component
+public class CertificateStore implements DisposableBean {
+
+    static final String STORE_DIRECTORY = "own";
+    static final String ALIAS = "c2mon-opcua-daq";
+    private static final String STORE_TYPE = "PKCS12";
+
+    private final ExecutorService executor;
+    private final Map<List<Object>, CompletableFuture<Map.Entry<X509Certificate, KeyPair>>> certificates = new ConcurrentHashMap<>();
+    private final Map<List<Object>, CompletableFuture<Map.Entry<X509Certificate, KeyPair>>> renewals = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a new certificate store. Certificates are loaded and generated on a thread of their own rather than by
+     * the {@link cern.c2mon.daq.opcua.scope.SharedScheduler}, since connections and failovers executed by the shared
+     * workers wait for the certificates. With all workers waiting, a certificate queued behind them would never be
+     * generated.
+     */
+    public CertificateStore() {
+        executor = Executors.newSingleThreadExecutor(r -> {
+            final Thread t = new Thread(r, "c2mon-opcua-certificates");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Returns the certificate and keypair for the application settings, loading them from the pkiBaseDir or
+     * generating them in the background if they are not yet present. A renewal is started if the certificate expires
+     * within the certificateRenewalDays.
+     * @param config the application properties containing the settings of the certificate
+     * @return a future completing with the certificate and keypair, or exceptionally with a {@link
+     * ConfigurationException} if they could neither be loaded nor generated.
+     */
+    public CompletableFuture<Map.Entry<X509Certificate, KeyPair>> get(AppConfigProperties config) {
+        final List<Object> key = keyOf(config);
+        final CompletableFuture<Map.Entry<X509Certificate, KeyPair>> current = certificates.computeIfAbsent(key,
+                k -> inBackground(k, () -> loadOrGenerate(config)));
+        if (current.isDone() && !current.isCompletedExceptionally()
+                && expiresWithinRenewalPeriod(current.join().getKey(), config)) {
+            return renew(key, current, config);
+        }
+        return current;
+    }
+
+    private CompletableFuture<Map.Entry<X509Certificate, KeyPair>> renew(List<Object> key,
+                                                                        CompletableFuture<Map.Entry<X509Certificate, KeyPair>> current,
+                                                                        AppConfigProperties config) {
+        final X509Certificate certificate = current.join().getKey();
+        final CompletableFuture<Map.Entry<X509Certificate, KeyPair>> renewal = renewals.computeIfAbsent(key, k -> {
+            log.info("Renewing the self-signed certificate {} expiring at {}.", certificate.getSubjectDN(), certificate.getNotAfter());
+            final CompletableFuture<Map.Entry<X509Certificate, KeyPair>> future = new CompletableFuture<>();
+            future.whenComplete((entry, t) -> {
+                if (t == null) {
+                    certificates.replace(key, current, future);
+                } else {
+                    log.error("Could not renew the self-signed certificate.", t);
+                }
+                renewals.remove(key);
+            });
+            submit(future, () -> generateAndStore(config));
+            return future;
+        });
+        // a certificate which has already expired cannot be used until it is renewed
+        return certificate.getNotAfter().getTime() > System.currentTimeMillis() ? current : renewal;
+    }
+
+    private CompletableFuture<Map.Entry<X509Certificate, KeyPair>> inBackground(List<Object> key, Callable<Map.Entry<X509Certificate, KeyPair>> task) {
+        final CompletableFuture<Map.Entry<X509Certificate, KeyPair>> future = new CompletableFuture<>();
+        // failures are not cached, so that the next equipment attempts to generate the certificate again
+        future.whenComplete((entry, t) -> {
+            if (t != null) {
+                certificates.remove(key, future);
+            }
+        });
+        submit(future, task);
+        return future;
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdownNow();
+    }
+
+    private void submit(CompletableFuture<Map.Entry<X509Certificate, KeyPair>> future, Callable<Map.Entry<X509Certificate, KeyPair>> task) {
+        executor.execute(() -> {
+            try {
+                future.complete(task.call());
+            } catch (Exception e) {
+                future.completeExceptionally(e);
+            }
+        });
+    }
+
+    private Map.Entry<X509Certificate, KeyPair> loadOrGenerate(AppConfigProperties config) throws ConfigurationException {
+        final Path path = storePath(config);
+        final String password = passwordOf(config);
+        if (path != null && password != null && path.toFile().exists()) {
+            try {
+                final Map.Entry<X509Certificate, KeyPair> entry = PkiUtil.loadFromPfx(new AppConfigProperties.KeystoreConfig(STORE_TYPE, path.toString(), password, ALIAS));
+                if (!expiresWithinRenewalPeriod(entry.getKey(), config)) {
+                    log.info("Loaded the self-signed certificate from {}.", path);
+                    return entry;
+                }
+                log.info("The self-signed certificate at {} expires at {} and is renewed.", path, entry.getKey().getNotAfter());
+            } catch (ConfigurationException e) {
+                log.error("Could not load the self-signed certificate from {}, generating a new one.", path, e);
+            }
+        }
+        return generateAndStore(config);
+    }
+
+    private Map.Entry<X509Certificate, KeyPair> generateAndStore(AppConfigProperties config) throws ConfigurationException {
+        final Map.Entry<X509Certificate, KeyPair> entry = generateRsaSha256(config);
+        final Path path = storePath(config);
+        final String password = passwordOf(config);
+        if (path != null && password == null) {
+            log.warn("No keystore password is configured, the self-signed certificate is not stored at {}. It will be generated again on restart.", path);
+        } else if (path != null) {
+            try {
+                store(entry, path, password.toCharArray());
+                log.info("Stored the self-signed certificate at {}.", path);
+            } catch (Exception e) {
+                log.error("Could not store the self-signed certificate at {}. It will be generated again on restart.", path, e);
+            }
+        }
+        return entry;
+    }
+
+    private static Map.Entry<X509Certificate, KeyPair> generateRsaSha256(AppConfigProperties config) throws ConfigurationException {
+        log.info("Generating self-signed certificate and keypair.");
+        try {
+            final KeyPair keyPair = SelfSignedCertificateGenerator.generateRsaKeyPair(2048);
+            final X509Certificate certificate = new SelfSignedCertificateBuilder(keyPair)
+                    .setCommonName(config.getApplicationName())
+                    .setOrganization(config.getOrganization())
+                    .setOrganizationalUnit(config.getOrganizationalUnit())
+                    .setLocalityName(config.getLocalityName())
+                    .setStateName(config.getStateName())
+                    .setCountryCode(config.getCountryCode())
+                    .setApplicationUri(config.getApplicationUri())
+                    .build();
+            if (certificate == null) {
+                throw new ConfigurationException(ExceptionContext.SECURITY);
+            }
+            return new AbstractMap.SimpleEntry<>(certificate, keyPair);
+        } catch (ConfigurationException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new ConfigurationException(ExceptionContext.SECURITY, e);
+        }
+    }
+
+    /**
+     * The keystore is protected with the keystore password and readable only by the owner. It is written to a
+     * temporary file first and then moved, so that other DAQ processes sharing the pkiBaseDir never read a partially
+     * written keystore. The private key is not written at all if the file system cannot restrict its permissions.
+     */
+    private static void store(Map.Entry<X509Certificate, KeyPair> entry, Path path, char[] password) throws Exception {
+        final KeyStore keyStore = KeyStore.getInstance(STORE_TYPE);
+        keyStore.load(null, null);
+        keyStore.setKeyEntry(ALIAS, entry.getValue().getPrivate(), password, new X509Certificate[]{entry.getKey()});
+        Files.createDirectories(path.getParent());
+        final Path tmp;
+        try {
+            tmp = Files.createTempFile(path.getParent(), path.getFileName().toString(), ".tmp",
+                    PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+        } catch (UnsupportedOperationException e) {
+            throw new IOException("The file system does not support restricting the permissions of the keystore.", e);
+        }
+        try {
+            try (OutputStream out = Files.newOutputStream(tmp)) {
+                keyStore.store(out, password);
+            }
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    private static String passwordOf(AppConfigProperties config) {
+        final AppConfigProperties.KeystoreConfig keystore = config.getKeystore();
+        return keystore == null || StringUtil.isNullOrEmpty(keystore.getPassword()) ? null : keystore.getPassword();
+    }
+
+    private static boolean expiresWithinRenewalPeriod(X509Certificate certificate, AppConfigProperties config) {
+        return certificate.getNotAfter().getTime() - System.currentTimeMillis() < TimeUnit.DAYS.toMillis(config.getCertificateRenewalDays());
+    }
+
+    /**
+     * The keystore is named after the application name and the hash of all settings written into the certificate, so
+     * that equipments with different settings do not overwrite each other's certificates.
+     */
+    static Path storePath(AppConfigProperties config) {
+        if (StringUtil.isNullOrEmpty(config.getPkiBaseDir())) {
+            return null;
+        }
+        final String name = config.getApplicationName() == null ? "client" : config.getApplicationName().replaceAll("[^A-Za-z0-9._-]", "_");
+        return Paths.get(config.getPkiBaseDir(), STORE_DIRECTORY, String.format("%s-%08x.pfx", name, keyOf(config).hashCode()));
+    }
+
+    private static List<Object> keyOf(AppConfigProperties p) {
+        return Arrays.asList(p.getPkiBaseDir(), p.getApplicationName(), p.getApplicationUri(), p.getOrganization(),
+                p.getOrganizationalUnit(), p.getLocalityName(), p.getStateName(), p.getCountryCode());
+    }
+}
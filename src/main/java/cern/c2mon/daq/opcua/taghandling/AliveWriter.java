@@ -27,7 +27,9 @@ import cern.c2mon.daq.opcua.exceptions.ConfigurationException;
 import cern.c2mon.daq.opcua.exceptions.ExceptionContext;
 import cern.c2mon.daq.opcua.exceptions.OPCUAException;
 import cern.c2mon.daq.opcua.mapping.ItemDefinition;
+import cern.c2mon.daq.opcua.scope.EquipmentScheduler;
 import cern.c2mon.daq.opcua.scope.EquipmentScoped;
+import cern.c2mon.daq.opcua.scope.ScheduledTask;
 import cern.c2mon.shared.common.datatag.ISourceDataTag;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -36,7 +38,8 @@ import org.springframework.jmx.export.annotation.ManagedOperation;
 import org.springframework.jmx.export.annotation.ManagedResource;
 
 import java.util.Map;
-import java.util.concurrent.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 /**
  * The AliveWriter ensures that the SubEquipments connected to the OPC UA server are still running by writing to them.
@@ -52,8 +55,8 @@ public class AliveWriter {
 
     private final Controller controller;
     private final MessageSender messageSender;
+    private final EquipmentScheduler scheduler;
     private final Map<Long, WriteAliveTask> tasks = new ConcurrentHashMap<>();
-    private ScheduledExecutorService executor = Executors.newScheduledThreadPool(1);
 
     /**
      * Start the AliveWriter on the given aliveTag.
@@ -87,10 +90,6 @@ public class AliveWriter {
             return;
         }
         log.info("Start writing to AliveTag with ID {}.", tagId);
-        // the AliveWriter may have been shutdown terminally. In this case the executor was stopped and must be recreated.
-        if (executor.isShutdown()) {
-            executor = Executors.newScheduledThreadPool(1);
-        }
         aliveTask.cancel();
         aliveTask.startTask(aliveTagInterval);
     }
@@ -100,7 +99,6 @@ public class AliveWriter {
      */
     public void stopAliveWriter() {
         tasks.keySet().forEach(this::stopAliveWriter);
-        executor.shutdownNow();
     }
 
     /**
@@ -121,12 +119,12 @@ public class AliveWriter {
     @RequiredArgsConstructor
     private class WriteAliveTask {
         private final NodeId aliveTagAddress;
-        private ScheduledFuture<?> aliveTask;
+        private ScheduledTask aliveTask;
         private short writeCounter;
 
         private void startTask(long aliveTagInterval) {
             if (aliveTagInterval > 0L) {
-                this.aliveTask = executor.scheduleAtFixedRate(this::aliveTagMonitoring, aliveTagInterval, aliveTagInterval, TimeUnit.MILLISECONDS);
+                this.aliveTask = scheduler.scheduleAtFixedRate(this::aliveTagMonitoring, aliveTagInterval, aliveTagInterval, TimeUnit.MILLISECONDS);
             } else {
                 log.error(ExceptionContext.BAD_ALIVE_TAG_INTERVAL.getMessage());
             }
@@ -135,7 +133,7 @@ public class AliveWriter {
         private void cancel() {
             if (aliveTask != null && !aliveTask.isCancelled()) {
                 log.info("Stopping WriteAliveTask...");
-                aliveTask.cancel(true);
+                aliveTask.cancel();
             }
         }
 
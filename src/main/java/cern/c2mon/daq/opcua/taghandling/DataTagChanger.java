@@ -29,6 +29,7 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.function.Function;
@@ -78,16 +79,28 @@ public class DataTagChanger implements IDataTagChanger {
 
     /**
      * Add and remove the changes tags in a batch operation such the server goes from the state described in oldTags to
-     * the one in newTag
+     * the one in newTag. Tags are matched by their IDs. Tags whose hardware address changed are replaced, and tags
+     * whose deadbands changed are updated in place. All removals, additions and updates are each passed to the {@link
+     * IDataTagHandler} in a single call.
      * @param newTags      all {@link ISourceDataTag}s in the new configuration
      * @param oldTags      all {@link ISourceDataTag}s in the old configuration
      * @param changeReport a report of the performed operations and their successes.
      */
     public void onUpdateEquipmentConfiguration(Collection<ISourceDataTag> newTags, Collection<ISourceDataTag> oldTags, final ChangeReport changeReport) {
-        final Stream<ISourceDataTag> toAdd = newTags.stream().filter(t -> !oldTags.contains(t));
-        final Stream<ISourceDataTag> toRemove = oldTags.stream().filter(t -> !newTags.contains(t));
-        gatherIds(toRemove, tagHandler::removeTag, "Removed Tags ", "Could not remove Tags with Ids ", changeReport);
-        gatherIds(toAdd, tagHandler::subscribeTag, "Subscribed to Tags ", "Could not subscribe to Tags with Ids ", changeReport);
+        final TagConfigurationDiff diff = TagConfigurationDiff.of(newTags, oldTags);
+        log.info("Updating equipment configuration: removing {} tags, adding {} tags, updating {} tags, {} tags unchanged.", diff.getToRemove().size(), diff.getToAdd().size(), diff.getToUpdate().size(), diff.getUnchanged());
+        if (!diff.getToRemove().isEmpty()) {
+            final Map<Long, Boolean> removed = tagHandler.removeTags(diff.getToRemove());
+            gatherIds(diff.getToRemove().stream(), t -> removed.getOrDefault(t.getId(), false), "Removed Tags ", "Could not remove Tags with Ids ", changeReport);
+        }
+        if (!diff.getToAdd().isEmpty()) {
+            final Map<Long, Boolean> subscribed = tagHandler.subscribeTags(diff.getToAdd());
+            gatherIds(diff.getToAdd().stream(), t -> subscribed.getOrDefault(t.getId(), false), "Subscribed to Tags ", "Could not subscribe to Tags with Ids ", changeReport);
+        }
+        if (!diff.getToUpdate().isEmpty()) {
+            final Map<Long, Boolean> updated = tagHandler.updateDeadbands(diff.getToUpdate());
+            gatherIds(diff.getToUpdate().stream(), t -> updated.getOrDefault(t.getId(), false), "Updated deadbands of Tags ", "Could not update deadbands of Tags with Ids ", changeReport);
+        }
     }
 
     /**
@@ -117,7 +130,7 @@ public class DataTagChanger implements IDataTagChanger {
     /**
      * Removes the old SourceDataTag subscription and replaced it with the new one. If the old tag cannot be removed
      * e.g. because it is missing, but the new tag can still be added, the changeReport will still report a successful
-     * operation.
+     * operation. If only the deadbands changed, these are applied to the existing subscription instead.
      * @param sourceDataTag    the Tag to add
      * @param oldSourceDataTag the Tag to remove
      * @param changeReport     a report of the taken actions and the outcome of the operation.
@@ -125,11 +138,15 @@ public class DataTagChanger implements IDataTagChanger {
     @Override
     public void onUpdateDataTag(final ISourceDataTag sourceDataTag, final ISourceDataTag oldSourceDataTag, final ChangeReport changeReport) {
         log.info("Updating data tag {}  with ID {}.", oldSourceDataTag.getName(), oldSourceDataTag.getId());
-        if (sourceDataTag.getHardwareAddress().equals(oldSourceDataTag.getHardwareAddress())) {
-            applyToReport.apply(true, "The new and old sourceDataTags have the same hardware address, no update was required.", changeReport);
-        } else {
+        if (!sourceDataTag.getHardwareAddress().equals(oldSourceDataTag.getHardwareAddress())) {
             removeAndReport(oldSourceDataTag, changeReport);
             addAndReport(sourceDataTag, changeReport);
+        } else if (TagConfigurationDiff.hasNewDeadbands(oldSourceDataTag, sourceDataTag)) {
+            final boolean success = tagHandler.updateDeadbands(Collections.singletonList(sourceDataTag)).getOrDefault(sourceDataTag.getId(), false);
+            applyToReport.apply(success, "Tag " + sourceDataTag.getName() + " with ID " + sourceDataTag.getId()
+                    + (success ? " was updated with new deadbands." : " could not be updated with new deadbands."), changeReport);
+        } else {
+            applyToReport.apply(true, "The new and old sourceDataTags have the same hardware address, no update was required.", changeReport);
         }
     }
 
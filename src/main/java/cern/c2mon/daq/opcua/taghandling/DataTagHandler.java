@@ -60,7 +60,19 @@ public class DataTagHandler implements IDataTagHandler {
     private final Controller controller;
 
     @Override
-    public void subscribeTags(final Collection<ISourceDataTag> dataTags) {
+    public void registerTags(final Collection<ISourceDataTag> dataTags) {
+        for (ISourceDataTag dataTag : dataTags) {
+            try {
+                manager.getOrCreateDefinition(dataTag);
+            } catch (ConfigurationException e) {
+                // reported when subscribing the tag
+                log.debug("The Tag with ID {} has an incorrect hardware address.", dataTag.getId(), e);
+            }
+        }
+    }
+
+    @Override
+    public Map<Long, Boolean> subscribeTags(final Collection<ISourceDataTag> dataTags) {
         final Function<List<ISourceDataTag>, List<ItemDefinition>> definitionsToTags = e -> e.stream()
                 .map(t -> {
                     try {
@@ -72,11 +84,18 @@ public class DataTagHandler implements IDataTagHandler {
                 }).filter(Objects::nonNull)
                 .collect(toList());
         final Map<SubscriptionGroup, List<ItemDefinition>> definitionsByGroups = dataTags.stream()
-                .collect(groupingBy(ISourceDataTag::getTimeDeadband))
+                .collect(groupingBy(t -> manager.getPublishInterval(t.getTimeDeadband())))
                 .entrySet().stream()
                 .collect(toMap(e -> manager.getGroup(e.getKey()), e -> definitionsToTags.apply(e.getValue())));
         final Map<Integer, SourceDataTagQuality> handleQualityMap = controller.subscribe(definitionsByGroups);
         handleQualityMap.forEach(this::completeSubscriptionAndReportSuccess);
+        final Map<Long, Boolean> results = new HashMap<>();
+        for (ISourceDataTag dataTag : dataTags) {
+            final ItemDefinition definition = manager.getDefinition(dataTag.getId());
+            final SourceDataTagQuality quality = definition == null ? null : handleQualityMap.get(definition.getClientHandle());
+            results.put(dataTag.getId(), quality != null && quality.isValid());
+        }
+        return results;
     }
 
     @Override
@@ -111,6 +130,96 @@ public class DataTagHandler implements IDataTagHandler {
         return wasSubscribed;
     }
 
+    @Override
+    public Map<Long, Boolean> removeTags(final Collection<ISourceDataTag> dataTags) {
+        final Map<Long, Boolean> results = new HashMap<>();
+        final Map<SubscriptionGroup, List<ItemDefinition>> definitionsByGroups = new HashMap<>();
+        final Map<Integer, Long> handlesToTagIds = new HashMap<>();
+        for (ISourceDataTag dataTag : dataTags) {
+            final SubscriptionGroup group = manager.getGroup(dataTag.getTimeDeadband());
+            if (group.contains(dataTag.getId())) {
+                final ItemDefinition definition = manager.getDefinition(dataTag.getId());
+                definitionsByGroups.computeIfAbsent(group, g -> new ArrayList<>()).add(definition);
+                handlesToTagIds.put(definition.getClientHandle(), dataTag.getId());
+            } else {
+                manager.removeTag(dataTag.getId());
+                results.put(dataTag.getId(), false);
+            }
+        }
+        if (!definitionsByGroups.isEmpty()) {
+            log.info("Unsubscribing {} tags from server.", handlesToTagIds.size());
+            final Map<Integer, Boolean> unsubscribed = controller.unsubscribe(definitionsByGroups);
+            handlesToTagIds.forEach((handle, tagId) -> {
+                final boolean success = unsubscribed.getOrDefault(handle, false);
+                if (success) {
+                    manager.removeTag(tagId);
+                }
+                results.put(tagId, success);
+            });
+        }
+        return results;
+    }
+
+    @Override
+    public Map<Long, Boolean> updateDeadbands(final Collection<ISourceDataTag> dataTags) {
+        final Map<Long, Boolean> results = new HashMap<>();
+        final Map<SubscriptionGroup, List<ItemDefinition>> definitionsByGroups = new HashMap<>();
+        final Map<Integer, ISourceDataTag> handlesToTags = new HashMap<>();
+        final List<ISourceDataTag> toMove = new ArrayList<>();
+        final List<ISourceDataTag> toSubscribe = new ArrayList<>();
+        for (ISourceDataTag dataTag : dataTags) {
+            final ItemDefinition definition = manager.getDefinition(dataTag.getId());
+            final SubscriptionGroup group = definition == null ? null : manager.getGroup(definition.getTimeDeadband());
+            if (group == null || !group.contains(dataTag.getId())) {
+                manager.removeTag(dataTag.getId());
+                toSubscribe.add(dataTag);
+            } else if (manager.getPublishInterval(dataTag.getTimeDeadband()) == group.getPublishInterval()) {
+                definitionsByGroups.computeIfAbsent(group, g -> new ArrayList<>()).add(definition.withDeadbandsOf(dataTag));
+                handlesToTags.put(definition.getClientHandle(), dataTag);
+            } else {
+                toMove.add(dataTag);
+            }
+        }
+        if (!definitionsByGroups.isEmpty()) {
+            log.info("Modifying the deadbands of {} tags in place.", handlesToTags.size());
+            final Map<Integer, Boolean> modified = controller.modify(definitionsByGroups);
+            definitionsByGroups.values().stream().flatMap(Collection::stream).forEach(d -> {
+                final ISourceDataTag dataTag = handlesToTags.get(d.getClientHandle());
+                if (modified.getOrDefault(d.getClientHandle(), false)) {
+                    manager.replaceDefinition(dataTag.getId(), d);
+                    results.put(dataTag.getId(), true);
+                } else {
+                    // monitored items shared with other tags or rejected by the server are replaced instead
+                    toMove.add(dataTag);
+                }
+            });
+        }
+        if (!toMove.isEmpty()) {
+            results.putAll(move(toMove));
+        }
+        if (!toSubscribe.isEmpty()) {
+            results.putAll(subscribeTags(toSubscribe));
+        }
+        return results;
+    }
+
+    @Override
+    public Map<Long, Boolean> resubscribeAllTags() {
+        final Map<Long, ItemDefinition> definitions = new HashMap<>(manager.getTagIdDefinitionMap());
+        final Map<SubscriptionGroup, List<ItemDefinition>> definitionsByGroups = new HashMap<>();
+        definitions.forEach((tagId, definition) -> {
+            final SubscriptionGroup group = manager.getGroup(definition.getTimeDeadband());
+            group.remove(tagId);
+            definitionsByGroups.computeIfAbsent(group, g -> new ArrayList<>()).add(definition);
+        });
+        final Map<Integer, SourceDataTagQuality> handleQualityMap = controller.subscribe(definitionsByGroups);
+        handleQualityMap.forEach(this::completeSubscriptionAndReportSuccess);
+        return definitions.entrySet().stream().collect(toMap(Map.Entry::getKey, e -> {
+            final SourceDataTagQuality quality = handleQualityMap.get(e.getValue().getClientHandle());
+            return quality != null && quality.isValid();
+        }));
+    }
+
     @Override
     public void refreshAllDataTags() {
         refresh(manager.getTagIdDefinitionMap());
@@ -170,6 +279,57 @@ public class DataTagHandler implements IDataTagHandler {
         }
     }
 
+    /**
+     * Subscribes the tags with new monitored items in the subscriptions of their new time deadbands before deleting
+     * the previous monitored items, so that no value changes are missed in between. If a new monitored item cannot be
+     * created, the tag keeps its previous one.
+     */
+    private Map<Long, Boolean> move(Collection<ISourceDataTag> dataTags) {
+        final Map<Long, Boolean> results = new HashMap<>();
+        final Map<Long, ItemDefinition> previousDefinitions = new HashMap<>();
+        final Map<Long, SubscriptionGroup> previousGroups = new HashMap<>();
+        final Map<SubscriptionGroup, List<ItemDefinition>> definitionsByGroups = new HashMap<>();
+        for (ISourceDataTag dataTag : dataTags) {
+            final ItemDefinition previous = manager.getDefinition(dataTag.getId());
+            try {
+                final ItemDefinition definition = ItemDefinition.of(dataTag);
+                previousGroups.put(dataTag.getId(), manager.getGroup(previous.getTimeDeadband()));
+                previousDefinitions.put(dataTag.getId(), previous);
+                manager.removeTag(dataTag.getId());
+                manager.replaceDefinition(dataTag.getId(), definition);
+                definitionsByGroups.computeIfAbsent(manager.getGroup(dataTag.getTimeDeadband()), g -> new ArrayList<>()).add(definition);
+            } catch (ConfigurationException e) {
+                log.error("The Tag with ID {} has an incorrect hardware address and cannot be updated.", dataTag.getId(), e);
+                results.put(dataTag.getId(), false);
+            }
+        }
+        if (definitionsByGroups.isEmpty()) {
+            return results;
+        }
+        log.info("Moving {} tags to the subscriptions of their new time deadbands.", previousDefinitions.size());
+        final Map<Integer, SourceDataTagQuality> handleQualityMap = controller.subscribe(definitionsByGroups);
+        final Map<SubscriptionGroup, List<ItemDefinition>> toRemove = new HashMap<>();
+        final Map<Integer, Long> handlesToTagIds = new HashMap<>();
+        previousDefinitions.forEach((tagId, previous) -> {
+            final SourceDataTagQuality quality = handleQualityMap.get(manager.getDefinition(tagId).getClientHandle());
+            if (quality == null || !quality.isValid()) {
+                log.error("Tag with ID {} could not be moved and keeps its previous deadbands.", tagId);
+                manager.replaceDefinition(tagId, previous);
+                manager.addTagToGroup(tagId);
+                results.put(tagId, false);
+            } else {
+                manager.addTagToGroup(tagId);
+                toRemove.computeIfAbsent(previousGroups.get(tagId), g -> new ArrayList<>()).add(previous);
+                handlesToTagIds.put(previous.getClientHandle(), tagId);
+            }
+        });
+        if (!toRemove.isEmpty()) {
+            final Map<Integer, Boolean> removed = controller.unsubscribe(toRemove);
+            handlesToTagIds.forEach((handle, tagId) -> results.put(tagId, removed.getOrDefault(handle, false)));
+        }
+        return results;
+    }
+
     private void refresh(Map<Long, ItemDefinition> entries) {
         for (Map.Entry<Long, ItemDefinition> e : entries.entrySet()) {
             if (Thread.currentThread().isInterrupted()) {
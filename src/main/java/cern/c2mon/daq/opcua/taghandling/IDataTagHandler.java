@@ -24,6 +24,7 @@ package cern.c2mon.daq.opcua.taghandling;
 import cern.c2mon.shared.common.datatag.ISourceDataTag;
 
 import java.util.Collection;
+import java.util.Map;
 
 /**
  * The {@link DataTagHandler} is responsible for managing the state of subscribed {@link ISourceDataTag}s and triggers
@@ -31,11 +32,19 @@ import java.util.Collection;
  */
 public interface IDataTagHandler {
 
+    /**
+     * Makes the data tags known without subscribing to them, so that the subscriptions which will be created are
+     * known when the session to the server is established.
+     * @param dataTags the collection of ISourceDataTags which are going to be subscribed.
+     */
+    void registerTags(Collection<ISourceDataTag> dataTags);
+
     /**
      * Subscribes to the OPC UA nodes corresponding to the data tags on the server.
      * @param dataTags the collection of ISourceDataTags to subscribe to.
+     * @return the IDs of the data tags and whether each could be subscribed successfully.
      */
-    void subscribeTags(Collection<ISourceDataTag> dataTags);
+    Map<Long, Boolean> subscribeTags(Collection<ISourceDataTag> dataTags);
 
     /**
      * Subscribes to the OPC UA node corresponding to one data tag on the server.
@@ -52,6 +61,31 @@ public interface IDataTagHandler {
      */
     boolean removeTag(ISourceDataTag dataTag);
 
+    /**
+     * Removes Tags from the internal configuration and if already subscribed from the OPC UA subscriptions. The
+     * subscribed Tags are removed from the server with one batch operation per subscription.
+     * @param dataTags the tags to remove.
+     * @return the IDs of the tags and whether each was previously subscribed and could be removed.
+     */
+    Map<Long, Boolean> removeTags(Collection<ISourceDataTag> dataTags);
+
+    /**
+     * Applies changed deadbands of Tags with unchanged hardware addresses. Monitored items which remain in the same
+     * subscription are modified in place. Tags whose new time deadband belongs to another subscription receive a new
+     * monitored item, and the previous one is deleted only once the new one was created.
+     * @param dataTags the tags with their new deadbands.
+     * @return the IDs of the tags and whether the new deadbands could be applied to each.
+     */
+    Map<Long, Boolean> updateDeadbands(Collection<ISourceDataTag> dataTags);
+
+    /**
+     * Subscribes all Tags known to the handler anew with their existing {@link
+     * cern.c2mon.daq.opcua.mapping.ItemDefinition}s, including those whose previous subscription failed. To be called
+     * after reconnecting to the same server.
+     * @return the IDs of the tags and whether each could be subscribed successfully.
+     */
+    Map<Long, Boolean> resubscribeAllTags();
+
     /**
      * Reads the current values from the server for all subscribed data tags.
      */
@@ -0,0 +1,98 @@
+/*-
+ * #%L
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * %%
+ * Copyright (C) 2010 - 2022 CERN
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package cern.c2mon.daq.opcua.taghandling;
+
+import cern.c2mon.shared.common.datatag.ISourceDataTag;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * The difference in between two configurations of {@link ISourceDataTag}s. Tags are matched by their ID in a single
+ * pass over each configuration. A tag which is only present in the old configuration is removed, and one only present
+ * in the new configuration is added. A tag present in both configurations is replaced if its hardware address changed,
+ * updated if only its deadbands changed, and left untouched otherwise.
+ */
+@Getter
+@RequiredArgsConstructor(access = AccessLevel.PRIVATE)
+public class TagConfigurationDiff {
+
+    private final List<ISourceDataTag> toRemove;
+    private final List<ISourceDataTag> toAdd;
+    private final List<ISourceDataTag> toUpdate;
+    private final int unchanged;
+
+    /**
+     * Computes the changes needed to go from the old to the new configuration.
+     * @param newTags all {@link ISourceDataTag}s in the new configuration
+     * @param oldTags all {@link ISourceDataTag}s in the old configuration
+     * @return the tags to remove, to add, and to update with new deadbands
+     */
+    public static TagConfigurationDiff of(Collection<ISourceDataTag> newTags, Collection<ISourceDataTag> oldTags) {
+        final Map<Long, ISourceDataTag> oldById = new LinkedHashMap<>();
+        oldTags.forEach(t -> oldById.put(t.getId(), t));
+        final List<ISourceDataTag> toRemove = new ArrayList<>();
+        final List<ISourceDataTag> toAdd = new ArrayList<>();
+        final List<ISourceDataTag> toUpdate = new ArrayList<>();
+        int unchanged = 0;
+        for (ISourceDataTag newTag : newTags) {
+            final ISourceDataTag oldTag = oldById.remove(newTag.getId());
+            if (oldTag == null) {
+                toAdd.add(newTag);
+            } else if (!Objects.equals(oldTag.getHardwareAddress(), newTag.getHardwareAddress())) {
+                toRemove.add(oldTag);
+                toAdd.add(newTag);
+            } else if (hasNewDeadbands(oldTag, newTag)) {
+                toUpdate.add(newTag);
+            } else {
+                unchanged++;
+            }
+        }
+        toRemove.addAll(oldById.values());
+        return new TagConfigurationDiff(toRemove, toAdd, toUpdate, unchanged);
+    }
+
+    /**
+     * @return true if no tags need to be removed, added or updated.
+     */
+    public boolean isEmpty() {
+        return toRemove.isEmpty() && toAdd.isEmpty() && toUpdate.isEmpty();
+    }
+
+    /**
+     * @param oldTag the tag in the old configuration
+     * @param newTag the tag in the new configuration
+     * @return true if the time deadband, value deadband or value deadband type differ in between the tags
+     */
+    public static boolean hasNewDeadbands(ISourceDataTag oldTag, ISourceDataTag newTag) {
+        return oldTag.getTimeDeadband() != newTag.getTimeDeadband()
+                || Float.compare(oldTag.getValueDeadband(), newTag.getValueDeadband()) != 0
+                || oldTag.getValueDeadbandType() != newTag.getValueDeadbandType();
+    }
+}
@@ -0,0 +1,99 @@
+/*-
+ * #%L
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * %%
+ * Copyright (C) 2010 - 2022 CERN
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package cern.c2mon.daq.opcua.config;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+
+import static cern.c2mon.daq.opcua.config.AddressChange.Reconfiguration.*;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class AddressChangeTest {
+
+    private static final String ADDRESS = "URI=opc.tcp://test,opc.tcp://test2;queueSize=1";
+
+    @Test
+    public void equivalentAddressesShouldRequireNoReconfiguration() {
+        final AddressChange change = AddressChange.of(ADDRESS, " URI=opc.tcp://test, opc.tcp://test2 ; queueSize=1");
+        assertEquals(NONE, change.getReconfiguration());
+        assertEquals(Collections.emptySet(), change.getChangedProperties());
+    }
+
+    @Test
+    public void leadingUriWithoutKeyShouldEqualUriProperty() {
+        assertEquals(NONE, AddressChange.of("URI=opc.tcp://test", "opc.tcp://test").getReconfiguration());
+    }
+
+    @Test
+    public void changedUriShouldRequireRestart() {
+        final AddressChange change = AddressChange.of(ADDRESS, "URI=opc.tcp://test3;queueSize=1");
+        assertEquals(RESTART, change.getReconfiguration());
+        assertEquals(Collections.singleton("URI"), change.getChangedProperties());
+    }
+
+    @Test
+    public void changedPublishIntervalBucketsShouldRequireRestart() {
+        assertEquals(RESTART, AddressChange.of(ADDRESS, ADDRESS + ";publishIntervalBuckets=100").getReconfiguration());
+    }
+
+    @Test
+    public void changedQueueSizeShouldRequireReconnect() {
+        final AddressChange change = AddressChange.of(ADDRESS, "URI=opc.tcp://test,opc.tcp://test2;queueSize=2");
+        assertEquals(RECONNECT, change.getReconfiguration());
+        assertEquals(Collections.singleton("queueSize"), change.getChangedProperties());
+    }
+
+    @Test
+    public void changedSamplingIntervalFactorShouldRequireReconnect() {
+        assertEquals(RECONNECT, AddressChange.of(ADDRESS, ADDRESS + ";samplingIntervalFactor=0.5").getReconfiguration());
+    }
+
+    @Test
+    public void changedSessionShardsShouldRequireReconnect() {
+        assertEquals(RECONNECT, AddressChange.of(ADDRESS, ADDRESS + ";sessionShards=2").getReconfiguration());
+    }
+
+    @Test
+    public void changedDeletionChunkSizeShouldBeAppliedLive() {
+        final AddressChange change = AddressChange.of(ADDRESS, ADDRESS + ";deletionChunkSize=10");
+        assertEquals(LIVE, change.getReconfiguration());
+        assertEquals(Collections.singleton("deletionChunkSize"), change.getChangedProperties());
+    }
+
+    @Test
+    public void changedRequestTimeoutShouldRequireReconnect() {
+        assertEquals(RECONNECT, AddressChange.of(ADDRESS, ADDRESS + ";requestTimeout=1000").getReconfiguration());
+    }
+
+    @Test
+    public void changedKeystorePropertyShouldRequireReconnect() {
+        assertEquals(RECONNECT, AddressChange.of(ADDRESS, ADDRESS + ";keystore.password=pwd").getReconfiguration());
+    }
+
+    @Test
+    public void mostDisruptiveChangeShouldDetermineReconfiguration() {
+        final AddressChange change = AddressChange.of(ADDRESS, "URI=opc.tcp://test,opc.tcp://test2;queueSize=2;retryDelay=10");
+        assertEquals(RECONNECT, change.getReconfiguration());
+        assertEquals(2, change.getChangedProperties().size());
+    }
+}
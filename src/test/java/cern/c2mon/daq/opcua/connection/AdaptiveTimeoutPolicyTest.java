@@ -0,0 +1,112 @@
+/*-
+ * #%L
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * %%
+ * Copyright (C) 2010 - 2022 CERN
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package cern.c2mon.daq.opcua.connection;
+
+import cern.c2mon.daq.opcua.config.AppConfigProperties;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class AdaptiveTimeoutPolicyTest {
+
+    AppConfigProperties properties;
+    AdaptiveTimeoutPolicy policy;
+
+    @BeforeEach
+    public void setUp() {
+        properties = AppConfigProperties.builder()
+                .requestTimeout(5000L)
+                .retryDelay(5000L)
+                .maxRetryDelay(10000L)
+                .adaptiveTimeoutEnabled(true)
+                .adaptiveTimeoutFactor(3.0)
+                .adaptiveTimeoutWindow(100)
+                .minRequestTimeout(250L)
+                .maxRequestTimeout(30000L)
+                .build();
+        policy = new AdaptiveTimeoutPolicy(properties);
+    }
+
+    @Test
+    public void staticTimeoutShouldBeUsedUntilEnoughSamples() {
+        recordMillis(100, AdaptiveTimeoutPolicy.MIN_SAMPLES - 1);
+        assertEquals(5000L, policy.getTimeout());
+        assertEquals(5000L, policy.getRetryDelay());
+    }
+
+    @Test
+    public void slowServerShouldIncreaseTimeout() {
+        recordMillis(2000, AdaptiveTimeoutPolicy.MIN_SAMPLES);
+        assertEquals(6000L, policy.getTimeout());
+        assertEquals(6000L, policy.getRetryDelay());
+    }
+
+    @Test
+    public void fastServerShouldFailFastWithinLowerBound() {
+        recordMillis(10, AdaptiveTimeoutPolicy.MIN_SAMPLES);
+        assertEquals(250L, policy.getTimeout());
+        assertEquals(250L, policy.getRetryDelay());
+    }
+
+    @Test
+    public void timeoutShouldBeBoundedByMaximum() {
+        recordMillis(20000, AdaptiveTimeoutPolicy.MIN_SAMPLES);
+        assertEquals(30000L, policy.getTimeout());
+        assertEquals(10000L, policy.getRetryDelay());
+    }
+
+    @Test
+    public void timeoutShouldFollowNinetyNinthPercentileOfRecentRoundTrips() {
+        recordMillis(100, 98);
+        recordMillis(1000, 2);
+        assertEquals(1000.0, policy.getRoundTripP99());
+        recordMillis(100, 100);
+        assertEquals(100.0, policy.getRoundTripP99());
+    }
+
+    @Test
+    public void percentileShouldBeRefreshedOnceATwentiethOfTheWindowWasReplaced() {
+        recordMillis(100, 100);
+        assertEquals(100.0, policy.getRoundTripP99());
+        recordMillis(10000, 4);
+        assertEquals(100.0, policy.getRoundTripP99());
+        recordMillis(10000, 1);
+        assertEquals(10000.0, policy.getRoundTripP99());
+    }
+
+    @Test
+    public void disabledPolicyShouldUseStaticValues() {
+        properties.setAdaptiveTimeoutEnabled(false);
+        recordMillis(10, AdaptiveTimeoutPolicy.MIN_SAMPLES);
+        assertEquals(5000L, policy.getTimeout());
+        assertEquals(5000L, policy.getRetryDelay());
+    }
+
+    private void recordMillis(long millis, int times) {
+        for (int i = 0; i < times; i++) {
+            policy.record(TimeUnit.MILLISECONDS.toNanos(millis));
+        }
+    }
+}
@@ -0,0 +1,139 @@
+/*-
+ * #%L
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * %%
+ * Copyright (C) 2010 - 2022 CERN
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package cern.c2mon.daq.opcua.connection;
+
+import cern.c2mon.daq.opcua.config.AppConfigProperties;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class CircuitBreakerTest {
+
+    AppConfigProperties properties;
+    CircuitBreaker breaker;
+    List<String> opened;
+
+    @BeforeEach
+    public void setUp() {
+        properties = AppConfigProperties.builder()
+                .circuitBreakerFailureThreshold(3)
+                .circuitBreakerOpenDuration(50L)
+                .build();
+        breaker = new CircuitBreaker(properties);
+        opened = new ArrayList<>();
+        breaker.manageListener(true, opened::add);
+    }
+
+    @Test
+    public void breakerShouldOpenAfterThresholdIsReached() {
+        fail(2);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertTrue(breaker.allowRequest());
+        fail(1);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.allowRequest());
+    }
+
+    @Test
+    public void successShouldResetConsecutiveFailures() {
+        fail(2);
+        breaker.recordSuccess();
+        fail(2);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void listenersShouldBeInformedOnceWhenBreakerOpens() {
+        fail(5);
+        assertEquals(1, opened.size());
+        assertEquals("uri", opened.get(0));
+    }
+
+    @Test
+    public void onlySingleProbeShouldPassWhenHalfOpen() throws InterruptedException {
+        fail(3);
+        TimeUnit.MILLISECONDS.sleep(60);
+        assertTrue(breaker.allowRequest());
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertFalse(breaker.allowRequest());
+    }
+
+    @Test
+    public void successfulProbeShouldCloseBreaker() throws InterruptedException {
+        fail(3);
+        TimeUnit.MILLISECONDS.sleep(60);
+        breaker.allowRequest();
+        breaker.recordSuccess();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertTrue(breaker.allowRequest());
+    }
+
+    @Test
+    public void failedProbeShouldReopenBreaker() throws InterruptedException {
+        fail(3);
+        TimeUnit.MILLISECONDS.sleep(60);
+        breaker.allowRequest();
+        fail(1);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.allowRequest());
+        assertEquals(2, opened.size());
+    }
+
+    @Test
+    public void releasedProbeShouldAdmitNextProbe() throws InterruptedException {
+        fail(3);
+        TimeUnit.MILLISECONDS.sleep(60);
+        assertTrue(breaker.allowRequest());
+        breaker.releaseProbe();
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertTrue(breaker.allowRequest());
+        assertFalse(breaker.allowRequest());
+    }
+
+    @Test
+    public void breakerShouldBeDisabledWithoutThreshold() {
+        properties.setCircuitBreakerFailureThreshold(0);
+        fail(10);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertTrue(breaker.allowRequest());
+    }
+
+    @Test
+    public void resetShouldCloseBreaker() {
+        fail(3);
+        breaker.reset();
+        assertTrue(breaker.allowRequest());
+    }
+
+    private void fail(int times) {
+        for (int i = 0; i < times; i++) {
+            breaker.recordFailure("uri");
+        }
+    }
+}
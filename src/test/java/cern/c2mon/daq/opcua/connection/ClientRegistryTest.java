@@ -0,0 +1,112 @@
+/*-
+ * #%L
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * %%
+ * Copyright (C) 2010 - 2022 CERN
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package cern.c2mon.daq.opcua.connection;
+
+import cern.c2mon.daq.opcua.config.AppConfigProperties;
+import cern.c2mon.daq.opcua.exceptions.CommunicationException;
+import cern.c2mon.daq.opcua.exceptions.ExceptionContext;
+import cern.c2mon.daq.opcua.exceptions.OPCUAException;
+import cern.c2mon.daq.opcua.testutils.TestUtils;
+import org.eclipse.milo.opcua.sdk.client.OpcUaClient;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.easymock.EasyMock.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ClientRegistryTest {
+
+    private static final String URI = "opc.tcp://test:4840";
+
+    ClientRegistry registry;
+    AppConfigProperties properties;
+    OpcUaClient client;
+    AtomicInteger created;
+
+    @BeforeEach
+    public void setUp() {
+        registry = new ClientRegistry();
+        properties = TestUtils.createDefaultConfig();
+        client = niceMock(OpcUaClient.class);
+        created = new AtomicInteger();
+    }
+
+    @Test
+    public void equipmentsWithSameSettingsShouldShareClient() throws OPCUAException {
+        replay(client);
+        final OpcUaClient first = registry.acquire(URI, properties, this::create).getClient();
+        final OpcUaClient second = registry.acquire(URI, TestUtils.createDefaultConfig(), this::create).getClient();
+        assertSame(first, second);
+        assertEquals(1, created.get());
+        assertEquals(2, registry.getReferences(URI, properties));
+    }
+
+    @Test
+    public void differentSecuritySettingsShouldNotShareClient() throws OPCUAException {
+        final AppConfigProperties other = TestUtils.createDefaultConfig();
+        other.setTrustAllServers(false);
+        replay(client);
+        registry.acquire(URI, properties, this::create);
+        registry.acquire(URI, other, this::create);
+        assertEquals(2, created.get());
+    }
+
+    @Test
+    public void clientShouldOnlyBeDisconnectedWhenLastReferenceIsReleased() throws OPCUAException {
+        expect(client.disconnect()).andReturn(null).once();
+        replay(client);
+        final ClientRegistry.Lease first = registry.acquire(URI, properties, this::create);
+        final ClientRegistry.Lease second = registry.acquire(URI, properties, this::create);
+        registry.release(first);
+        registry.release(first);
+        assertEquals(1, registry.getReferences(URI, properties));
+        registry.release(second);
+        assertEquals(0, registry.getReferences(URI, properties));
+        verify(client);
+    }
+
+    @Test
+    public void clientShouldBeReleasedWithSettingsItWasAcquiredWith() throws OPCUAException {
+        expect(client.disconnect()).andReturn(null).once();
+        replay(client);
+        final ClientRegistry.Lease lease = registry.acquire(URI, properties, this::create);
+        properties.setRequestTimeout(1000);
+        properties.getKeystore().setPassword("changed");
+        registry.release(lease);
+        verify(client);
+    }
+
+    @Test
+    public void failedCreationShouldNotLeaveReference() {
+        assertThrows(CommunicationException.class, () -> registry.acquire(URI, properties, () -> {
+            throw new CommunicationException(ExceptionContext.CONNECT);
+        }));
+        assertEquals(0, registry.getReferences(URI, properties));
+    }
+
+    private OpcUaClient create() {
+        created.incrementAndGet();
+        return client;
+    }
+}
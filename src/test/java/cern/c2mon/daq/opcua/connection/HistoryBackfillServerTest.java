@@ -0,0 +1,266 @@
+/*-
+ * #%L
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * %%
+ * Copyright (C) 2010 - 2022 CERN
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package cern.c2mon.daq.opcua.connection;
+
+import cern.c2mon.daq.opcua.MessageSender;
+import cern.c2mon.daq.opcua.config.AppConfigProperties;
+import cern.c2mon.daq.opcua.mapping.ItemDefinition;
+import cern.c2mon.daq.opcua.testutils.TestUtils;
+import cern.c2mon.shared.common.datatag.ValueUpdate;
+import org.easymock.LogicalOperator;
+import org.eclipse.milo.opcua.sdk.client.OpcUaClient;
+import org.eclipse.milo.opcua.sdk.server.OpcUaServer;
+import org.eclipse.milo.opcua.sdk.server.api.DataItem;
+import org.eclipse.milo.opcua.sdk.server.api.ManagedNamespace;
+import org.eclipse.milo.opcua.sdk.server.api.MonitoredItem;
+import org.eclipse.milo.opcua.sdk.server.api.config.OpcUaServerConfig;
+import org.eclipse.milo.opcua.sdk.server.identity.AnonymousIdentityValidator;
+import org.eclipse.milo.opcua.stack.core.StatusCodes;
+import org.eclipse.milo.opcua.stack.core.security.DefaultCertificateManager;
+import org.eclipse.milo.opcua.stack.core.security.DefaultTrustListManager;
+import org.eclipse.milo.opcua.stack.core.security.SecurityPolicy;
+import org.eclipse.milo.opcua.stack.core.transport.TransportProfile;
+import org.eclipse.milo.opcua.stack.core.types.builtin.ByteString;
+import org.eclipse.milo.opcua.stack.core.types.builtin.DataValue;
+import org.eclipse.milo.opcua.stack.core.types.builtin.DateTime;
+import org.eclipse.milo.opcua.stack.core.types.builtin.ExtensionObject;
+import org.eclipse.milo.opcua.stack.core.types.builtin.LocalizedText;
+import org.eclipse.milo.opcua.stack.core.types.builtin.NodeId;
+import org.eclipse.milo.opcua.stack.core.types.builtin.StatusCode;
+import org.eclipse.milo.opcua.stack.core.types.builtin.Variant;
+import org.eclipse.milo.opcua.stack.core.types.enumerated.MessageSecurityMode;
+import org.eclipse.milo.opcua.stack.core.types.enumerated.TimestampsToReturn;
+import org.eclipse.milo.opcua.stack.core.types.structured.BuildInfo;
+import org.eclipse.milo.opcua.stack.core.types.structured.HistoryData;
+import org.eclipse.milo.opcua.stack.core.types.structured.HistoryReadDetails;
+import org.eclipse.milo.opcua.stack.core.types.structured.HistoryReadResult;
+import org.eclipse.milo.opcua.stack.core.types.structured.HistoryReadValueId;
+import org.eclipse.milo.opcua.stack.core.types.structured.ReadRawModifiedDetails;
+import org.eclipse.milo.opcua.stack.server.EndpointConfiguration;
+import org.eclipse.milo.opcua.stack.server.security.DefaultServerCertificateValidator;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.easymock.EasyMock.*;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Backfills from an in-process server, so that the HistoryRead requests and responses make a full round trip through
+ * the encoding of the OPC UA stack.
+ */
+public class HistoryBackfillServerTest {
+
+    private static final String NAMESPACE_URI = "urn:c2mon:opcua:test:history";
+
+    @TempDir
+    Path pkiDir;
+
+    private final Map<String, DataValue[]> history = new HashMap<>();
+    private OpcUaServer server;
+    private OpcUaClient client;
+    private MessageSender sender;
+    private HistoryBackfill backfill;
+    private int namespaceIndex;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        final int port = freePort();
+        final EndpointConfiguration endpoint = EndpointConfiguration.newBuilder()
+                .setBindAddress("localhost")
+                .setHostname("localhost")
+                .setPath("/history")
+                .setBindPort(port)
+                .setTransportProfile(TransportProfile.TCP_UASC_UABINARY)
+                .setSecurityPolicy(SecurityPolicy.None)
+                .setSecurityMode(MessageSecurityMode.None)
+                .addTokenPolicy(OpcUaServerConfig.USER_TOKEN_POLICY_ANONYMOUS)
+                .build();
+        final DefaultTrustListManager trustListManager = new DefaultTrustListManager(pkiDir.toFile());
+        final OpcUaServerConfig config = OpcUaServerConfig.builder()
+                .setApplicationUri("urn:c2mon:opcua:test:server")
+                .setApplicationName(LocalizedText.english("C2MON history test server"))
+                .setProductUri("urn:c2mon:opcua:test")
+                .setBuildInfo(new BuildInfo("urn:c2mon:opcua:test", "CERN", "C2MON history test server", "0.4.3", "", DateTime.now()))
+                .setEndpoints(Collections.singleton(endpoint))
+                .setCertificateManager(new DefaultCertificateManager())
+                .setTrustListManager(trustListManager)
+                .setCertificateValidator(new DefaultServerCertificateValidator(trustListManager))
+                .setIdentityValidator(AnonymousIdentityValidator.INSTANCE)
+                .build();
+        server = new OpcUaServer(config);
+        final HistoryNamespace namespace = new HistoryNamespace(server);
+        namespace.startup();
+        namespaceIndex = namespace.getNamespaceIndex().intValue();
+        server.startup().get(TestUtils.TIMEOUT, TimeUnit.MILLISECONDS);
+
+        client = OpcUaClient.create("opc.tcp://localhost:" + port + "/history");
+        client.connect().get(TestUtils.TIMEOUT, TimeUnit.MILLISECONDS);
+
+        final AppConfigProperties properties = TestUtils.createDefaultConfig();
+        properties.setMaxBackfillWindow(60000L);
+        properties.setBackfillBatchSize(1);
+        properties.setBackfillConcurrency(2);
+        properties.setBackfillValuesPerNode(10);
+        sender = createStrictMock(MessageSender.class);
+        backfill = new HistoryBackfill(properties, sender);
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        if (client != null) {
+            client.disconnect().get(TestUtils.TIMEOUT, TimeUnit.MILLISECONDS);
+        }
+        if (server != null) {
+            server.shutdown().get(TestUtils.TIMEOUT, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @Test
+    public void historyReadShouldDeliverValuesInTimestampOrder() throws Exception {
+        final long now = System.currentTimeMillis();
+        history.put("node1", new DataValue[]{valueAt(1, now - 3000), valueAt(3, now - 1000)});
+        history.put("node2", new DataValue[]{valueAt(2, now - 2000)});
+        expectValues(1L, now - 3000, 2L, now - 2000, 1L, now - 1000);
+        replay(sender);
+
+        final int count = backfill.backfill(client, tags("node1", "node2"), now - 5000, now)
+                .get(TestUtils.TIMEOUT, TimeUnit.MILLISECONDS);
+
+        assertEquals(3, count);
+        verify(sender);
+    }
+
+    @Test
+    public void valuesOutsideOfGapShouldNotBeDelivered() throws Exception {
+        final long now = System.currentTimeMillis();
+        history.put("node1", new DataValue[]{valueAt(1, now - 10000), valueAt(2, now - 1000)});
+        expectValues(1L, now - 1000);
+        replay(sender);
+
+        final int count = backfill.backfill(client, tags("node1"), now - 5000, now)
+                .get(TestUtils.TIMEOUT, TimeUnit.MILLISECONDS);
+
+        assertEquals(1, count);
+        verify(sender);
+    }
+
+    @Test
+    public void nodesWithoutHistoryShouldBeSkipped() throws Exception {
+        final long now = System.currentTimeMillis();
+        history.put("node2", new DataValue[]{valueAt(2, now - 2000)});
+        expectValues(2L, now - 2000);
+        replay(sender);
+
+        final int count = backfill.backfill(client, tags("node1", "node2"), now - 5000, now)
+                .get(TestUtils.TIMEOUT, TimeUnit.MILLISECONDS);
+
+        assertEquals(1, count);
+        verify(sender);
+    }
+
+    private Map<Long, ItemDefinition> tags(String... identifiers) {
+        final Map<Long, ItemDefinition> tags = new HashMap<>();
+        for (String identifier : identifiers) {
+            tags.put(Long.parseLong(identifier.substring(4)), ItemDefinition.of(new NodeId(namespaceIndex, identifier)));
+        }
+        return tags;
+    }
+
+    private void expectValues(long... tagIdsAndTimestamps) {
+        for (int i = 0; i < tagIdsAndTimestamps.length; i += 2) {
+            final long timestamp = tagIdsAndTimestamps[i + 1];
+            sender.onValueUpdate(eq(tagIdsAndTimestamps[i]), anyObject(), cmp(new ValueUpdate(0), (a, b) -> a.getSourceTimestamp() == timestamp ? 0 : 1, LogicalOperator.EQUAL));
+            expectLastCall().once();
+        }
+    }
+
+    private static DataValue valueAt(Object value, long time) {
+        final DateTime dateTime = new DateTime(new Date(time));
+        return new DataValue(new Variant(value), StatusCode.GOOD, dateTime, dateTime);
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    /**
+     * A namespace without nodes which answers raw HistoryRead requests from the history of the test.
+     */
+    private class HistoryNamespace extends ManagedNamespace {
+
+        HistoryNamespace(OpcUaServer server) {
+            super(server, NAMESPACE_URI);
+        }
+
+        @Override
+        public void historyRead(HistoryReadContext context, HistoryReadDetails readDetails,
+                                TimestampsToReturn timestamps, List<HistoryReadValueId> readValueIds) {
+            final ReadRawModifiedDetails details = (ReadRawModifiedDetails) readDetails;
+            final long start = details.getStartTime().getJavaTime();
+            final long end = details.getEndTime().getJavaTime();
+            final List<HistoryReadResult> results = readValueIds.stream().map(id -> {
+                final DataValue[] values = history.get(String.valueOf(id.getNodeId().getIdentifier()));
+                if (values == null) {
+                    return new HistoryReadResult(new StatusCode(StatusCodes.Bad_HistoryOperationUnsupported), ByteString.NULL_VALUE, null);
+                }
+                final DataValue[] inWindow = Arrays.stream(values)
+                        .filter(v -> v.getSourceTime().getJavaTime() >= start && v.getSourceTime().getJavaTime() <= end)
+                        .toArray(DataValue[]::new);
+                return new HistoryReadResult(StatusCode.GOOD, ByteString.NULL_VALUE,
+                        ExtensionObject.encode(HistoryBackfillServerTest.this.server.getSerializationContext(), new HistoryData(inWindow)));
+            }).collect(Collectors.toList());
+            context.success(results);
+        }
+
+        @Override
+        public void onDataItemsCreated(List<DataItem> dataItems) {
+        }
+
+        @Override
+        public void onDataItemsModified(List<DataItem> dataItems) {
+        }
+
+        @Override
+        public void onDataItemsDeleted(List<DataItem> dataItems) {
+        }
+
+        @Override
+        public void onMonitoringModeChanged(List<MonitoredItem> monitoredItems) {
+        }
+    }
+}
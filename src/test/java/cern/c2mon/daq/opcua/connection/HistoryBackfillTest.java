@@ -0,0 +1,197 @@
+/*-
+ * #%L
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * %%
+ * Copyright (C) 2010 - 2022 CERN
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package cern.c2mon.daq.opcua.connection;
+
+import cern.c2mon.daq.opcua.MessageSender;
+import cern.c2mon.daq.opcua.config.AppConfigProperties;
+import cern.c2mon.daq.opcua.mapping.ItemDefinition;
+import cern.c2mon.daq.opcua.testutils.TestUtils;
+import cern.c2mon.shared.common.datatag.ValueUpdate;
+import org.easymock.Capture;
+import org.easymock.CaptureType;
+import org.easymock.LogicalOperator;
+import org.eclipse.milo.opcua.sdk.client.OpcUaClient;
+import org.eclipse.milo.opcua.stack.core.NamespaceTable;
+import org.eclipse.milo.opcua.stack.core.StatusCodes;
+import org.eclipse.milo.opcua.stack.core.serialization.EncodingLimits;
+import org.eclipse.milo.opcua.stack.core.serialization.SerializationContext;
+import org.eclipse.milo.opcua.stack.core.types.DataTypeManager;
+import org.eclipse.milo.opcua.stack.core.types.OpcUaDataTypeManager;
+import org.eclipse.milo.opcua.stack.core.types.builtin.ByteString;
+import org.eclipse.milo.opcua.stack.core.types.builtin.DataValue;
+import org.eclipse.milo.opcua.stack.core.types.builtin.DateTime;
+import org.eclipse.milo.opcua.stack.core.types.builtin.ExtensionObject;
+import org.eclipse.milo.opcua.stack.core.types.builtin.NodeId;
+import org.eclipse.milo.opcua.stack.core.types.builtin.StatusCode;
+import org.eclipse.milo.opcua.stack.core.types.builtin.Variant;
+import org.eclipse.milo.opcua.stack.core.types.enumerated.TimestampsToReturn;
+import org.eclipse.milo.opcua.stack.core.types.structured.HistoryData;
+import org.eclipse.milo.opcua.stack.core.types.structured.HistoryReadDetails;
+import org.eclipse.milo.opcua.stack.core.types.structured.HistoryReadResponse;
+import org.eclipse.milo.opcua.stack.core.types.structured.HistoryReadResult;
+import org.eclipse.milo.opcua.stack.core.types.structured.HistoryReadValueId;
+import org.eclipse.milo.opcua.stack.core.types.structured.ReadRawModifiedDetails;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Collectors;
+
+import static org.easymock.EasyMock.*;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class HistoryBackfillTest {
+
+    private static final SerializationContext context = new SerializationContext() {
+        private final NamespaceTable namespaceTable = new NamespaceTable();
+
+        @Override
+        public EncodingLimits getEncodingLimits() {
+            return EncodingLimits.DEFAULT;
+        }
+
+        @Override
+        public NamespaceTable getNamespaceTable() {
+            return namespaceTable;
+        }
+
+        @Override
+        public DataTypeManager getTypeManager() {
+            return OpcUaDataTypeManager.getInstance();
+        }
+    };
+
+    private final NodeId node1 = new NodeId(2, "node1");
+    private final NodeId node2 = new NodeId(2, "node2");
+    private final Map<NodeId, DataValue[]> history = new HashMap<>();
+    private final Map<NodeId, DataValue[]> continuedHistory = new HashMap<>();
+    private final Capture<HistoryReadDetails> details = newCapture(CaptureType.ALL);
+    private AppConfigProperties properties;
+    private OpcUaClient client;
+    private MessageSender sender;
+    private HistoryBackfill backfill;
+    private Map<Long, ItemDefinition> tags;
+
+    @BeforeEach
+    public void setUp() {
+        properties = TestUtils.createDefaultConfig();
+        properties.setMaxBackfillWindow(10000L);
+        properties.setBackfillBatchSize(1);
+        properties.setBackfillConcurrency(2);
+        properties.setBackfillValuesPerNode(10);
+        client = createNiceMock(OpcUaClient.class);
+        sender = createStrictMock(MessageSender.class);
+        backfill = new HistoryBackfill(properties, sender);
+        tags = new HashMap<>();
+        tags.put(1L, ItemDefinition.of(node1));
+        tags.put(2L, ItemDefinition.of(node2));
+        expect(client.getSerializationContext()).andReturn(context).anyTimes();
+        expect(client.historyRead(capture(details), anyObject(TimestampsToReturn.class), anyBoolean(), anyObject()))
+                .andAnswer(() -> {
+                    @SuppressWarnings("unchecked")
+                    final List<HistoryReadValueId> ids = (List<HistoryReadValueId>) getCurrentArguments()[3];
+                    return CompletableFuture.completedFuture(respond(ids));
+                }).anyTimes();
+    }
+
+    @Test
+    public void valuesShouldBeSentInTimestampOrder() throws InterruptedException, ExecutionException, TimeoutException {
+        history.put(node1, new DataValue[]{valueAt(1, 1000L), valueAt(3, 3000L)});
+        history.put(node2, new DataValue[]{valueAt(2, 2000L), valueAt(4, 4000L)});
+        expectValues(1L, 1000L, 2L, 2000L, 1L, 3000L, 2L, 4000L);
+        replay(client, sender);
+        assertEquals(4, backfill.backfill(client, tags, 0L, 5000L).get(1, TimeUnit.SECONDS));
+        verify(sender);
+    }
+
+    @Test
+    public void continuationPointsShouldBeFollowed() throws InterruptedException, ExecutionException, TimeoutException {
+        history.put(node1, new DataValue[]{valueAt(1, 1000L)});
+        continuedHistory.put(node1, new DataValue[]{valueAt(2, 2000L)});
+        expectValues(1L, 1000L, 1L, 2000L);
+        replay(client, sender);
+        assertEquals(2, backfill.backfill(client, tags, 0L, 5000L).get(1, TimeUnit.SECONDS));
+        verify(sender);
+    }
+
+    @Test
+    public void nodesWithoutHistoryShouldBeSkipped() throws InterruptedException, ExecutionException, TimeoutException {
+        history.put(node2, new DataValue[]{valueAt(2, 2000L)});
+        expectValues(2L, 2000L);
+        replay(client, sender);
+        assertEquals(1, backfill.backfill(client, tags, 0L, 5000L).get(1, TimeUnit.SECONDS));
+        verify(sender);
+    }
+
+    @Test
+    public void windowShouldBeLimitedToMaxBackfillWindow() throws InterruptedException, ExecutionException, TimeoutException {
+        replay(client, sender);
+        backfill.backfill(client, tags, 0L, 50000L).get(1, TimeUnit.SECONDS);
+        assertTrue(details.hasCaptured());
+        final ReadRawModifiedDetails readDetails = (ReadRawModifiedDetails) details.getValue();
+        assertEquals(40000L, readDetails.getStartTime().getJavaTime());
+        assertEquals(50000L, readDetails.getEndTime().getJavaTime());
+    }
+
+    @Test
+    public void emptyGapShouldNotReadHistory() throws InterruptedException, ExecutionException, TimeoutException {
+        replay(client, sender);
+        assertEquals(0, backfill.backfill(client, tags, 5000L, 5000L).get(1, TimeUnit.SECONDS));
+        assertTrue(details.getValues().isEmpty());
+    }
+
+    private void expectValues(long... tagIdsAndTimestamps) {
+        for (int i = 0; i < tagIdsAndTimestamps.length; i += 2) {
+            final long timestamp = tagIdsAndTimestamps[i + 1];
+            sender.onValueUpdate(eq(tagIdsAndTimestamps[i]), anyObject(), cmp(new ValueUpdate(0), (a, b) -> a.getSourceTimestamp() == timestamp ? 0 : 1, LogicalOperator.EQUAL));
+            expectLastCall().once();
+        }
+    }
+
+    private HistoryReadResponse respond(List<HistoryReadValueId> ids) {
+        final HistoryReadResult[] results = ids.stream().map(id -> {
+            final boolean continued = id.getContinuationPoint() != null && id.getContinuationPoint().isNotNull();
+            final DataValue[] values = (continued ? continuedHistory : history).get(id.getNodeId());
+            if (values == null) {
+                return new HistoryReadResult(new StatusCode(StatusCodes.Bad_HistoryOperationUnsupported), ByteString.NULL_VALUE, null);
+            }
+            final ByteString continuationPoint = !continued && continuedHistory.containsKey(id.getNodeId())
+                    ? ByteString.of(new byte[]{1})
+                    : ByteString.NULL_VALUE;
+            return new HistoryReadResult(StatusCode.GOOD, continuationPoint, ExtensionObject.encode(context, new HistoryData(values)));
+        }).collect(Collectors.toList()).toArray(new HistoryReadResult[0]);
+        return new HistoryReadResponse(null, results, null);
+    }
+
+    private static DataValue valueAt(Object value, long time) {
+        final DateTime dateTime = new DateTime(new Date(time));
+        return new DataValue(new Variant(value), StatusCode.GOOD, dateTime, dateTime);
+    }
+}
@@ -0,0 +1,275 @@
+/*-
+ * #%L
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * %%
+ * Copyright (C) 2010 - 2022 CERN
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package cern.c2mon.daq.opcua.connection;
+
+import cern.c2mon.daq.opcua.MessageSender;
+import cern.c2mon.daq.opcua.config.AppConfig;
+import cern.c2mon.daq.opcua.config.AppConfigProperties;
+import cern.c2mon.daq.opcua.control.NoFailover;
+import cern.c2mon.daq.opcua.mapping.ItemDefinition;
+import cern.c2mon.daq.opcua.mapping.TagSubscriptionMapper;
+import cern.c2mon.daq.opcua.metrics.MetricProxy;
+import cern.c2mon.daq.opcua.taghandling.DataTagHandler;
+import cern.c2mon.daq.opcua.testutils.TestControllerProxy;
+import cern.c2mon.daq.opcua.testutils.TestUtils;
+import cern.c2mon.shared.common.datatag.DataTagAddress;
+import cern.c2mon.shared.common.datatag.ISourceDataTag;
+import cern.c2mon.shared.common.datatag.SourceDataTag;
+import cern.c2mon.shared.common.datatag.address.impl.OPCHardwareAddressImpl;
+import cern.c2mon.shared.common.datatag.util.JmsMessagePriority;
+import cern.c2mon.shared.common.datatag.util.ValueDeadbandType;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.eclipse.milo.opcua.sdk.client.OpcUaClient;
+import org.eclipse.milo.opcua.sdk.core.AccessLevel;
+import org.eclipse.milo.opcua.sdk.server.OpcUaServer;
+import org.eclipse.milo.opcua.sdk.server.api.DataItem;
+import org.eclipse.milo.opcua.sdk.server.api.ManagedNamespace;
+import org.eclipse.milo.opcua.sdk.server.api.MonitoredItem;
+import org.eclipse.milo.opcua.sdk.server.api.config.OpcUaServerConfig;
+import org.eclipse.milo.opcua.sdk.server.identity.AnonymousIdentityValidator;
+import org.eclipse.milo.opcua.sdk.server.nodes.UaVariableNode;
+import org.eclipse.milo.opcua.stack.core.Identifiers;
+import org.eclipse.milo.opcua.stack.core.security.DefaultCertificateManager;
+import org.eclipse.milo.opcua.stack.core.security.DefaultTrustListManager;
+import org.eclipse.milo.opcua.stack.core.security.SecurityPolicy;
+import org.eclipse.milo.opcua.stack.core.transport.TransportProfile;
+import org.eclipse.milo.opcua.stack.core.types.builtin.DataValue;
+import org.eclipse.milo.opcua.stack.core.types.builtin.DateTime;
+import org.eclipse.milo.opcua.stack.core.types.builtin.LocalizedText;
+import org.eclipse.milo.opcua.stack.core.types.builtin.NodeId;
+import org.eclipse.milo.opcua.stack.core.types.builtin.QualifiedName;
+import org.eclipse.milo.opcua.stack.core.types.builtin.Variant;
+import org.eclipse.milo.opcua.stack.core.types.enumerated.MessageSecurityMode;
+import org.eclipse.milo.opcua.stack.core.types.structured.BuildInfo;
+import org.eclipse.milo.opcua.stack.server.EndpointConfiguration;
+import org.eclipse.milo.opcua.stack.server.security.DefaultServerCertificateValidator;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.easymock.EasyMock.niceMock;
+import static org.easymock.EasyMock.replay;
+import static org.eclipse.milo.opcua.stack.core.types.builtin.unsigned.Unsigned.ubyte;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Changes the deadbands of subscribed tags against an in-process server, so that the monitored items are created,
+ * modified and deleted on the server by a {@link MiloEndpoint}.
+ */
+public class MiloEndpointServerTest {
+
+    private static final String NAMESPACE_URI = "urn:c2mon:opcua:test:deadbands";
+    private static final String NODE = "value";
+
+    @TempDir
+    Path pkiDir;
+
+    private final AtomicInteger created = new AtomicInteger();
+    private final AtomicInteger modified = new AtomicInteger();
+    private final AtomicInteger deleted = new AtomicInteger();
+    private OpcUaServer server;
+    private OpcUaClient client;
+    private MiloEndpoint endpoint;
+    private TagSubscriptionMapper mapper;
+    private DataTagHandler handler;
+    private int namespaceIndex;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        final int port = freePort();
+        final EndpointConfiguration endpointConfiguration = EndpointConfiguration.newBuilder()
+                .setBindAddress("localhost")
+                .setHostname("localhost")
+                .setPath("/deadbands")
+                .setBindPort(port)
+                .setTransportProfile(TransportProfile.TCP_UASC_UABINARY)
+                .setSecurityPolicy(SecurityPolicy.None)
+                .setSecurityMode(MessageSecurityMode.None)
+                .addTokenPolicy(OpcUaServerConfig.USER_TOKEN_POLICY_ANONYMOUS)
+                .build();
+        final DefaultTrustListManager trustListManager = new DefaultTrustListManager(pkiDir.toFile());
+        final OpcUaServerConfig config = OpcUaServerConfig.builder()
+                .setApplicationUri("urn:c2mon:opcua:test:server")
+                .setApplicationName(LocalizedText.english("C2MON deadband test server"))
+                .setProductUri("urn:c2mon:opcua:test")
+                .setBuildInfo(new BuildInfo("urn:c2mon:opcua:test", "CERN", "C2MON deadband test server", "0.4.3", "", DateTime.now()))
+                .setEndpoints(Collections.singleton(endpointConfiguration))
+                .setCertificateManager(new DefaultCertificateManager())
+                .setTrustListManager(trustListManager)
+                .setCertificateValidator(new DefaultServerCertificateValidator(trustListManager))
+                .setIdentityValidator(AnonymousIdentityValidator.INSTANCE)
+                .build();
+        server = new OpcUaServer(config);
+        final DeadbandNamespace namespace = new DeadbandNamespace(server);
+        namespace.startup();
+        namespace.addVariable();
+        namespaceIndex = namespace.getNamespaceIndex().intValue();
+        server.startup().get(TestUtils.TIMEOUT, TimeUnit.MILLISECONDS);
+
+        client = OpcUaClient.create("opc.tcp://localhost:" + port + "/deadbands");
+        client.connect().get(TestUtils.TIMEOUT, TimeUnit.MILLISECONDS);
+
+        final AppConfigProperties properties = TestUtils.createDefaultConfig();
+        final MetricProxy metricProxy = new MetricProxy(new SimpleMeterRegistry());
+        final MessageSender sender = niceMock(MessageSender.class);
+        replay(sender);
+        mapper = new TagSubscriptionMapper(metricProxy, properties);
+        endpoint = new MiloEndpoint(null, mapper, sender, properties, new AppConfig(), metricProxy, null, TestUtils.createScheduler());
+        ReflectionTestUtils.setField(endpoint, "client", client);
+        final NoFailover noFailover = new NoFailover();
+        noFailover.initialize(endpoint);
+        final TestControllerProxy controller = new TestControllerProxy(null, properties, sender, endpoint);
+        controller.setController(noFailover);
+        handler = new DataTagHandler(mapper, sender, controller);
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        if (client != null) {
+            client.disconnect().get(TestUtils.TIMEOUT, TimeUnit.MILLISECONDS);
+        }
+        if (server != null) {
+            server.shutdown().get(TestUtils.TIMEOUT, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @Test
+    public void itemOfSingleTagShouldBeModifiedInPlace() {
+        final ISourceDataTag tag = tag(1L, 0f, ValueDeadbandType.NONE, 100);
+        assertTrue(handler.subscribeTags(Collections.singletonList(tag)).get(1L));
+        final ItemDefinition previous = mapper.getDefinition(1L);
+
+        final Map<Long, Boolean> results = handler.updateDeadbands(Collections.singletonList(tag(1L, 5f, ValueDeadbandType.EQUIPMENT_ABSOLUTE, 100)));
+
+        assertTrue(results.get(1L));
+        assertEquals(1, created.get());
+        assertEquals(1, modified.get());
+        assertEquals(0, deleted.get());
+        assertEquals(previous.getClientHandle(), mapper.getDefinition(1L).getClientHandle());
+        assertEquals(5f, mapper.getDefinition(1L).getValueDeadband());
+    }
+
+    @Test
+    public void sharedItemShouldBeReplacedByMove() {
+        final ISourceDataTag owner = tag(1L, 5f, ValueDeadbandType.EQUIPMENT_ABSOLUTE, 100);
+        final ISourceDataTag follower = tag(2L, 10f, ValueDeadbandType.EQUIPMENT_ABSOLUTE, 100);
+        handler.subscribeTags(Arrays.asList(owner, follower));
+        assertEquals(1, created.get());
+        final ItemDefinition previous = mapper.getDefinition(1L);
+
+        final Map<Long, Boolean> results = handler.updateDeadbands(Collections.singletonList(tag(1L, 1f, ValueDeadbandType.EQUIPMENT_ABSOLUTE, 100)));
+
+        // the item keeps serving the follower, and a finer item is created for the owner
+        assertTrue(results.get(1L));
+        assertEquals(2, created.get());
+        assertEquals(0, modified.get());
+        assertEquals(0, deleted.get());
+        assertNotEquals(previous.getClientHandle(), mapper.getDefinition(1L).getClientHandle());
+        assertEquals(1f, mapper.getDefinition(1L).getValueDeadband());
+    }
+
+    @Test
+    public void itemShouldBeMovedAcrossPublishIntervals() {
+        final ISourceDataTag tag = tag(1L, 0f, ValueDeadbandType.NONE, 100);
+        handler.subscribeTags(Collections.singletonList(tag));
+        final ItemDefinition previous = mapper.getDefinition(1L);
+
+        final Map<Long, Boolean> results = handler.updateDeadbands(Collections.singletonList(tag(1L, 5f, ValueDeadbandType.EQUIPMENT_ABSOLUTE, 200)));
+
+        assertTrue(results.get(1L));
+        assertEquals(2, created.get());
+        assertEquals(0, modified.get());
+        assertEquals(1, deleted.get());
+        assertNotEquals(previous.getClientHandle(), mapper.getDefinition(1L).getClientHandle());
+        assertEquals(200, mapper.getDefinition(1L).getTimeDeadband());
+    }
+
+    private ISourceDataTag tag(long id, float valueDeadband, ValueDeadbandType type, int timeDeadband) {
+        final OPCHardwareAddressImpl address = new OPCHardwareAddressImpl(NODE);
+        address.setNamespace(namespaceIndex);
+        final DataTagAddress dataTagAddress = new DataTagAddress(address, 0, type, valueDeadband, timeDeadband, JmsMessagePriority.PRIORITY_LOW, true);
+        return new SourceDataTag(id, NODE + id, false, (short) 0, null, dataTagAddress);
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    /**
+     * A namespace with a single variable which counts the monitored items created, modified and deleted by the test.
+     */
+    private class DeadbandNamespace extends ManagedNamespace {
+
+        DeadbandNamespace(OpcUaServer server) {
+            super(server, NAMESPACE_URI);
+        }
+
+        void addVariable() {
+            final UaVariableNode node = new UaVariableNode.UaVariableNodeBuilder(getNodeContext())
+                    .setNodeId(new NodeId(getNamespaceIndex(), NODE))
+                    .setAccessLevel(ubyte(AccessLevel.getMask(AccessLevel.READ_WRITE)))
+                    .setUserAccessLevel(ubyte(AccessLevel.getMask(AccessLevel.READ_WRITE)))
+                    .setBrowseName(new QualifiedName(getNamespaceIndex(), NODE))
+                    .setDisplayName(LocalizedText.english(NODE))
+                    .setDataType(Identifiers.Double)
+                    .setTypeDefinition(Identifiers.BaseDataVariableType)
+                    .build();
+            node.setValue(new DataValue(new Variant(0.0)));
+            getNodeManager().addNode(node);
+        }
+
+        @Override
+        public void onDataItemsCreated(List<DataItem> dataItems) {
+            created.addAndGet(dataItems.size());
+        }
+
+        @Override
+        public void onDataItemsModified(List<DataItem> dataItems) {
+            modified.addAndGet(dataItems.size());
+        }
+
+        @Override
+        public void onDataItemsDeleted(List<DataItem> dataItems) {
+            deleted.addAndGet(dataItems.size());
+        }
+
+        @Override
+        public void onMonitoringModeChanged(List<MonitoredItem> monitoredItems) {
+        }
+    }
+}
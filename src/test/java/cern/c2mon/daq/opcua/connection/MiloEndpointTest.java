@@ -0,0 +1,74 @@
+/*-
+ * #%L
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * %%
+ * Copyright (C) 2010 - 2022 CERN
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package cern.c2mon.daq.opcua.connection;
+
+import cern.c2mon.daq.opcua.MessageSender;
+import cern.c2mon.daq.opcua.config.AppConfig;
+import cern.c2mon.daq.opcua.config.AppConfigProperties;
+import cern.c2mon.daq.opcua.mapping.TagSubscriptionMapper;
+import cern.c2mon.daq.opcua.metrics.MetricProxy;
+import cern.c2mon.daq.opcua.testutils.TestUtils;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.eclipse.milo.opcua.sdk.client.OpcUaClient;
+import org.eclipse.milo.opcua.sdk.client.subscriptions.OpcUaSubscriptionManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.CompletableFuture;
+
+import static org.easymock.EasyMock.*;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class MiloEndpointTest {
+
+    AppConfigProperties properties;
+    MiloEndpoint endpoint;
+    OpcUaClient client;
+    OpcUaSubscriptionManager subscriptionManager;
+
+    @BeforeEach
+    public void setUp() {
+        properties = TestUtils.createDefaultConfig();
+        properties.setCircuitBreakerFailureThreshold(1);
+        properties.setCircuitBreakerOpenDuration(60000L);
+        final MetricProxy metricProxy = new MetricProxy(new SimpleMeterRegistry());
+        endpoint = new MiloEndpoint(null, new TagSubscriptionMapper(metricProxy, properties), niceMock(MessageSender.class),
+                properties, new AppConfig(), metricProxy, null, TestUtils.createScheduler());
+        client = createMock(OpcUaClient.class);
+        subscriptionManager = niceMock(OpcUaSubscriptionManager.class);
+        ReflectionTestUtils.setField(endpoint, "client", client);
+    }
+
+    @Test
+    public void disconnectShouldCloseSessionWhileCircuitBreakerIsOpen() {
+        expect(client.getSubscriptionManager()).andReturn(subscriptionManager).anyTimes();
+        expect(client.disconnect()).andReturn(CompletableFuture.completedFuture(client)).once();
+        replay(client, subscriptionManager);
+        final CircuitBreaker breaker = (CircuitBreaker) ReflectionTestUtils.getField(endpoint, "circuitBreaker");
+        breaker.recordFailure("opc.tcp://test");
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+
+        endpoint.disconnect();
+        verify(client);
+    }
+}
@@ -149,4 +149,25 @@ public class MiloMapperTest {
         assertEquals(SourceDataTagQualityCode.UNKNOWN, dataTagQuality.getQualityCode());
     }
 
+    @Test
+    public void overflowShouldBeFlaggedOnValidQuality() {
+        final StatusCode overflow = new StatusCode(0x480L);
+        final SourceDataTagQuality dataTagQuality = MiloMapper.getDataTagQuality(overflow);
+        assertTrue(MiloMapper.isOverflow(overflow));
+        assertEquals(SourceDataTagQualityCode.OK, dataTagQuality.getQualityCode());
+        assertTrue(dataTagQuality.getDescription().contains("overflowed"));
+    }
+
+    @Test
+    public void infoBitsShouldNotChangeQualityCode() {
+        final SourceDataTagQuality dataTagQuality = MiloMapper.getDataTagQuality(new StatusCode(Bad_OutOfRange | 0x480L));
+        assertEquals(SourceDataTagQualityCode.OUT_OF_BOUNDS, dataTagQuality.getQualityCode());
+    }
+
+    @Test
+    public void statusCodeWithoutInfoBitsShouldNotBeOverflow() {
+        assertFalse(MiloMapper.isOverflow(StatusCode.GOOD));
+        assertFalse(MiloMapper.isOverflow(null));
+    }
+
 }
@@ -0,0 +1,155 @@
+/*-
+ * #%L
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * %%
+ * Copyright (C) 2010 - 2022 CERN
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package cern.c2mon.daq.opcua.connection;
+
+import cern.c2mon.daq.opcua.exceptions.ConfigurationException;
+import cern.c2mon.daq.opcua.mapping.ItemDefinition;
+import cern.c2mon.daq.opcua.testutils.EdgeTagFactory;
+import cern.c2mon.shared.common.datatag.util.ValueDeadbandType;
+import org.eclipse.milo.opcua.stack.core.types.builtin.DataValue;
+import org.eclipse.milo.opcua.stack.core.types.builtin.Variant;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class MonitoredItemFanOutTest {
+
+    MonitoredItemFanOut fanOut;
+    ItemDefinition fine;
+    ItemDefinition coarse;
+    ItemDefinition none;
+    ItemDefinition other;
+
+    @BeforeEach
+    public void setUp() throws ConfigurationException {
+        fanOut = new MonitoredItemFanOut();
+        fine = definition(EdgeTagFactory.RandomUnsignedInt32, 1f, ValueDeadbandType.EQUIPMENT_ABSOLUTE);
+        coarse = definition(EdgeTagFactory.RandomUnsignedInt32, 5f, ValueDeadbandType.EQUIPMENT_ABSOLUTE);
+        none = definition(EdgeTagFactory.RandomUnsignedInt32, 0f, ValueDeadbandType.NONE);
+        other = definition(EdgeTagFactory.AlternatingBoolean, 0f, ValueDeadbandType.NONE);
+    }
+
+    @Test
+    public void tagsOfSameNodeShouldShareItemWithFinestDeadband() {
+        final MonitoredItemFanOut.Attachment attachment = fanOut.attach(1, Arrays.asList(coarse, fine, none, other));
+        assertEquals(Arrays.asList(none, other), attachment.getCreate());
+        assertEquals(none.getClientHandle(), attachment.getFollowers().get(fine.getClientHandle()));
+        assertEquals(none.getClientHandle(), attachment.getFollowers().get(coarse.getClientHandle()));
+        assertEquals(3, fanOut.tagHandles(none.getClientHandle()).length);
+    }
+
+    @Test
+    public void subscriptionsShouldNotShareItems() {
+        fanOut.attach(1, Collections.singletonList(fine));
+        final MonitoredItemFanOut.Attachment attachment = fanOut.attach(2, Collections.singletonList(coarse));
+        assertEquals(Collections.singletonList(coarse), attachment.getCreate());
+    }
+
+    @Test
+    public void finerDeadbandShouldNotAttachToCoarserItem() {
+        fanOut.attach(1, Collections.singletonList(coarse));
+        final MonitoredItemFanOut.Attachment attachment = fanOut.attach(1, Collections.singletonList(fine));
+        assertEquals(Collections.singletonList(fine), attachment.getCreate());
+    }
+
+    @Test
+    public void percentDeadbandsShouldOnlyShareWithEqualDeadband() throws ConfigurationException {
+        final ItemDefinition percent = definition(EdgeTagFactory.RandomUnsignedInt32, 5f, ValueDeadbandType.EQUIPMENT_RELATIVE);
+        final ItemDefinition samePercent = definition(EdgeTagFactory.RandomUnsignedInt32, 5f, ValueDeadbandType.EQUIPMENT_RELATIVE);
+        final MonitoredItemFanOut.Attachment attachment = fanOut.attach(1, Arrays.asList(none, percent, samePercent));
+        assertEquals(2, attachment.getCreate().size());
+        assertEquals(percent.getClientHandle(), attachment.getFollowers().get(samePercent.getClientHandle()));
+    }
+
+    @Test
+    public void itemShouldOnlyBeDeletedWithLastTag() {
+        fanOut.attach(1, Arrays.asList(none, coarse));
+        assertEquals(-1, fanOut.detach(none.getClientHandle()));
+        assertArrayEquals(new int[]{coarse.getClientHandle()}, fanOut.tagHandles(none.getClientHandle()));
+        assertEquals(none.getClientHandle(), fanOut.detach(coarse.getClientHandle()));
+        assertNull(fanOut.tagHandles(none.getClientHandle()));
+    }
+
+    @Test
+    public void untrackedHandleShouldBeDeletedDirectly() {
+        assertEquals(other.getClientHandle(), fanOut.detach(other.getClientHandle()));
+    }
+
+    @Test
+    public void coarserDeadbandShouldBeFilteredOnClient() {
+        fanOut.attach(1, Arrays.asList(fine, coarse));
+        assertTrue(fanOut.accept(coarse.getClientHandle(), value(10.0)));
+        assertFalse(fanOut.accept(coarse.getClientHandle(), value(12.0)));
+        assertTrue(fanOut.accept(coarse.getClientHandle(), value(15.5)));
+        assertTrue(fanOut.accept(fine.getClientHandle(), value(16.0)));
+    }
+
+    @Test
+    public void clearShouldForgetItemsOfSubscription() {
+        fanOut.attach(1, Collections.singletonList(fine));
+        fanOut.attach(2, Collections.singletonList(other));
+        fanOut.clear(1);
+        assertFalse(fanOut.isTracked(fine.getClientHandle()));
+        assertTrue(fanOut.isTracked(other.getClientHandle()));
+        assertEquals(Collections.singletonList(coarse), fanOut.attach(1, Collections.singletonList(coarse)).getCreate());
+    }
+
+    @Test
+    public void finerDeadbandShouldNotAttachToItemModifiedToCoarserDeadband() {
+        fanOut.attach(1, Collections.singletonList(none));
+        fanOut.update(1, none.withDeadbandsOf(EdgeTagFactory.RandomUnsignedInt32.createDataTag(5f, ValueDeadbandType.EQUIPMENT_ABSOLUTE, 0)));
+        assertEquals(Collections.singletonList(fine), fanOut.attach(1, Collections.singletonList(fine)).getCreate());
+        assertEquals(none.getClientHandle(), fanOut.attach(1, Collections.singletonList(coarse)).getFollowers().get(coarse.getClientHandle()));
+    }
+
+    @Test
+    public void percentDeadbandShouldNotAttachToItemModifiedToAbsoluteDeadband() throws ConfigurationException {
+        final ItemDefinition percent = definition(EdgeTagFactory.RandomUnsignedInt32, 5f, ValueDeadbandType.EQUIPMENT_RELATIVE);
+        final ItemDefinition samePercent = definition(EdgeTagFactory.RandomUnsignedInt32, 5f, ValueDeadbandType.EQUIPMENT_RELATIVE);
+        fanOut.attach(1, Collections.singletonList(percent));
+        fanOut.update(1, percent.withDeadbandsOf(EdgeTagFactory.RandomUnsignedInt32.createDataTag(5f, ValueDeadbandType.EQUIPMENT_ABSOLUTE, 0)));
+        assertEquals(Collections.singletonList(samePercent), fanOut.attach(1, Collections.singletonList(samePercent)).getCreate());
+    }
+
+    @Test
+    public void dropShouldRemoveFollowers() {
+        fanOut.attach(1, Arrays.asList(fine, coarse));
+        fanOut.drop(Collections.singletonList(fine.getClientHandle()));
+        assertFalse(fanOut.isTracked(coarse.getClientHandle()));
+    }
+
+    private static ItemDefinition definition(EdgeTagFactory factory, float deadband, ValueDeadbandType type) throws ConfigurationException {
+        return ItemDefinition.of(factory.createDataTag(deadband, type, 0));
+    }
+
+    private static DataValue value(double v) {
+        return new DataValue(new Variant(v));
+    }
+}
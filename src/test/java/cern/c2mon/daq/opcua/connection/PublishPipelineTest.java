@@ -0,0 +1,134 @@
+/*-
+ * #%L
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * %%
+ * Copyright (C) 2010 - 2022 CERN
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package cern.c2mon.daq.opcua.connection;
+
+import cern.c2mon.daq.opcua.config.AppConfigProperties;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class PublishPipelineTest {
+
+    AppConfigProperties properties;
+    PublishPipeline pipeline;
+
+    @BeforeEach
+    public void setUp() {
+        properties = AppConfigProperties.builder()
+                .adaptivePublishRequests(true)
+                .minPendingPublishRequests(2)
+                .maxPendingPublishRequests(20)
+                .build();
+        pipeline = new PublishPipeline(properties);
+    }
+
+    @Test
+    public void unknownRoundTripShouldUseTwoRequestsPerSubscription() {
+        assertEquals(7, pipeline.computeMaxPendingPublishRequests(Arrays.asList(1, 2, 5), -1));
+    }
+
+    @Test
+    public void slowRoundTripShouldIncreaseRequestsForFastSubscriptions() {
+        assertEquals(5, pipeline.computeMaxPendingPublishRequests(Arrays.asList(1, 10), 2500));
+    }
+
+    @Test
+    public void requestsShouldBeBounded() {
+        assertEquals(2, pipeline.computeMaxPendingPublishRequests(Collections.emptyList(), 10));
+        assertEquals(20, pipeline.computeMaxPendingPublishRequests(Arrays.asList(1, 1, 1), 30000));
+        assertEquals(20, pipeline.getMaxPendingPublishRequests());
+    }
+
+    @Test
+    public void disabledPipelineShouldLeaveChoiceToClientStack() {
+        properties.setAdaptivePublishRequests(false);
+        assertEquals(0, pipeline.computeMaxPendingPublishRequests(Arrays.asList(1, 2), 100));
+    }
+
+    @Test
+    public void lagShouldBeMeasuredFromPublishTime() {
+        assertTrue(pipeline.onPublish(1, 0, System.currentTimeMillis() - 1000));
+        assertFalse(pipeline.onPublish(1, 0, System.currentTimeMillis() - 2000));
+        assertTrue(pipeline.getLag(1, 0) >= 2000);
+        assertEquals(0, pipeline.getLag(2, 0));
+    }
+
+    @Test
+    public void lagShouldBeMeasuredPerPartition() {
+        assertTrue(pipeline.onPublish(1, 0, System.currentTimeMillis() - 1000));
+        assertTrue(pipeline.onPublish(1, 1, System.currentTimeMillis() - 3000));
+        assertTrue(pipeline.getLag(1, 1) >= 3000);
+        assertTrue(pipeline.getLag(1, 0) < 3000);
+    }
+
+    @Test
+    public void sequenceGapsShouldBeCountedPerSubscription() {
+        pipeline.onSequenceGap(1, 0);
+        pipeline.onSequenceGap(1, 0);
+        pipeline.onSequenceGap(1, 1);
+        assertEquals(2, pipeline.getSequenceGaps(1, 0));
+        assertEquals(1, pipeline.getSequenceGaps(1, 1));
+        assertEquals(0, pipeline.getSequenceGaps(2, 0));
+    }
+
+    @Test
+    public void sequenceGapShouldReturnLastPublishTime() {
+        assertEquals(0, pipeline.onSequenceGap(1, 0));
+        pipeline.onPublish(1, 0, 1000);
+        assertEquals(1000, pipeline.onSequenceGap(1, 0));
+    }
+
+    @Test
+    public void notificationsAndOverflowsShouldBeCountedPerSubscription() {
+        pipeline.onNotifications(1, 0, 10, 1);
+        pipeline.onNotifications(1, 0, 5, 0);
+        pipeline.onNotifications(1, 1, 3, 3);
+        assertEquals(2, pipeline.getPublishResponses(1, 0));
+        assertEquals(15, pipeline.getNotifications(1, 0));
+        assertEquals(1, pipeline.getOverflows(1, 0));
+        assertEquals(3, pipeline.getOverflows(1, 1));
+        assertEquals(0, pipeline.getNotifications(2, 0));
+    }
+
+    @Test
+    public void keepAliveIntervalShouldBeMeasuredFromPreviousMessage() {
+        final long now = System.currentTimeMillis();
+        assertTrue(pipeline.onKeepAlive(1, 0, now - 5000));
+        assertEquals(0, pipeline.getKeepAliveInterval(1, 0));
+        pipeline.onPublish(1, 0, now - 4000);
+        assertFalse(pipeline.onKeepAlive(1, 0, now - 1000));
+        assertEquals(3000, pipeline.getKeepAliveInterval(1, 0));
+        assertEquals(2, pipeline.getKeepAlives(1, 0));
+    }
+
+    @Test
+    public void sequenceGapBeforeFirstPublishShouldNotSuppressRegistration() {
+        pipeline.onSequenceGap(1, 0);
+        assertTrue(pipeline.onPublish(1, 0, System.currentTimeMillis()));
+    }
+}
@@ -0,0 +1,96 @@
+/*-
+ * #%L
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * %%
+ * Copyright (C) 2010 - 2022 CERN
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package cern.c2mon.daq.opcua.connection;
+
+import cern.c2mon.daq.opcua.config.AppConfigProperties;
+import cern.c2mon.daq.opcua.mapping.ItemDefinition;
+import cern.c2mon.daq.opcua.mapping.SubscriptionGroup;
+import cern.c2mon.daq.opcua.metrics.MetricProxy;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.eclipse.milo.opcua.stack.core.types.builtin.NodeId;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ResubscriptionSchedulerTest {
+
+    AppConfigProperties properties;
+    ResubscriptionScheduler scheduler;
+    MetricProxy metricProxy;
+
+    @BeforeEach
+    public void setUp() {
+        properties = AppConfigProperties.builder().resubscriptionChunkSize(500).build();
+        scheduler = new ResubscriptionScheduler(properties);
+        metricProxy = new MetricProxy(new SimpleMeterRegistry());
+    }
+
+    @Test
+    public void groupsWithoutPriorityShouldBeOrderedByIncreasingInterval() {
+        final List<ResubscriptionScheduler.Chunk> chunks = scheduler.schedule(Arrays.asList(group(10, 1), group(1, 1), group(5, 1)));
+        assertEquals(Arrays.asList(1, 5, 10), intervals(chunks));
+    }
+
+    @Test
+    public void configuredPriorityShouldPrecedeInterval() {
+        final Map<Integer, Integer> priorities = new HashMap<>();
+        priorities.put(10, 5);
+        properties.setResubscriptionPriority(priorities);
+        final List<ResubscriptionScheduler.Chunk> chunks = scheduler.schedule(Arrays.asList(group(1, 1), group(10, 1), group(5, 1)));
+        assertEquals(Arrays.asList(10, 1, 5), intervals(chunks));
+        assertEquals("priority_5", chunks.get(0).getPriorityClass());
+        assertEquals("interval_1", chunks.get(1).getPriorityClass());
+    }
+
+    @Test
+    public void emptyGroupsShouldBeSkipped() {
+        assertTrue(scheduler.schedule(Collections.singletonList(group(1, 0))).isEmpty());
+    }
+
+    @Test
+    public void largeGroupsShouldBeSplitIntoChunks() {
+        properties.setResubscriptionChunkSize(2);
+        final List<ResubscriptionScheduler.Chunk> chunks = scheduler.schedule(Collections.singletonList(group(1, 5)));
+        assertEquals(Arrays.asList(2, 2, 1), chunks.stream().map(c -> c.getDefinitions().size()).collect(Collectors.toList()));
+    }
+
+    private SubscriptionGroup group(int interval, int size) {
+        final SubscriptionGroup group = new SubscriptionGroup(interval, metricProxy);
+        for (int i = 0; i < size; i++) {
+            group.add(interval * 1000L + i, ItemDefinition.of(new NodeId(1, interval * 1000 + i)));
+        }
+        return group;
+    }
+
+    private static List<Integer> intervals(List<ResubscriptionScheduler.Chunk> chunks) {
+        return chunks.stream().map(c -> c.getGroup().getPublishInterval()).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,88 @@
+/*-
+ * #%L
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * %%
+ * Copyright (C) 2010 - 2022 CERN
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package cern.c2mon.daq.opcua.connection;
+
+import cern.c2mon.daq.opcua.config.AppConfigProperties;
+import cern.c2mon.daq.opcua.exceptions.ConfigurationException;
+import cern.c2mon.daq.opcua.mapping.ItemDefinition;
+import cern.c2mon.daq.opcua.testutils.EdgeTagFactory;
+import cern.c2mon.shared.common.datatag.ISourceDataTag;
+import cern.c2mon.shared.common.datatag.util.ValueDeadbandType;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class SamplingPolicyTest {
+
+    AppConfigProperties properties;
+    SamplingPolicy policy;
+    ItemDefinition definition;
+
+    @BeforeEach
+    public void setUp() throws ConfigurationException {
+        properties = AppConfigProperties.builder()
+                .samplingIntervalFactor(0.5)
+                .build();
+        policy = new SamplingPolicy(properties);
+        definition = ItemDefinition.of(EdgeTagFactory.RandomUnsignedInt32.createDataTag());
+    }
+
+    @Test
+    public void zeroFactorShouldRequestFastestRate() {
+        properties.setSamplingIntervalFactor(0);
+        policy.onRevised(definition.getClientHandle(), 100);
+        assertEquals(0, policy.samplingInterval(definition, 1L, 10));
+    }
+
+    @Test
+    public void samplingIntervalShouldBeDerivedFromPublishIntervalWithoutTimeDeadband() {
+        assertEquals(5000, policy.samplingInterval(definition, 1L, 10));
+    }
+
+    @Test
+    public void samplingIntervalShouldBeDerivedFromTimeDeadband() throws ConfigurationException {
+        final ISourceDataTag tag = EdgeTagFactory.RandomUnsignedInt32.createDataTag(0, ValueDeadbandType.NONE, 4);
+        assertEquals(2000, policy.samplingInterval(ItemDefinition.of(tag), 1L, 10));
+    }
+
+    @Test
+    public void tagOverrideShouldTakePrecedence() {
+        final Map<Long, Double> overrides = new HashMap<>();
+        overrides.put(1L, 250.0);
+        properties.setSamplingIntervals(overrides);
+        policy.onRevised(definition.getClientHandle(), 100);
+        assertEquals(250, policy.samplingInterval(definition, 1L, 10));
+        assertEquals(100, policy.samplingInterval(definition, 2L, 10));
+    }
+
+    @Test
+    public void revisedIntervalShouldBeRequestedUntilForgotten() {
+        policy.onRevised(definition.getClientHandle(), 8000);
+        assertEquals(8000, policy.samplingInterval(definition, null, 10));
+        policy.forget(definition.getClientHandle());
+        assertEquals(5000, policy.samplingInterval(definition, null, 10));
+    }
+}
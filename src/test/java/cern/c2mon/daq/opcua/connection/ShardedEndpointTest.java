@@ -0,0 +1,164 @@
+/*-
+ * #%L
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * %%
+ * Copyright (C) 2010 - 2022 CERN
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package cern.c2mon.daq.opcua.connection;
+
+import cern.c2mon.daq.opcua.MessageSender;
+import cern.c2mon.daq.opcua.config.AppConfigProperties;
+import cern.c2mon.daq.opcua.exceptions.CommunicationException;
+import cern.c2mon.daq.opcua.exceptions.ExceptionContext;
+import cern.c2mon.daq.opcua.exceptions.OPCUAException;
+import cern.c2mon.daq.opcua.mapping.ItemDefinition;
+import cern.c2mon.daq.opcua.mapping.SubscriptionGroup;
+import cern.c2mon.daq.opcua.metrics.MetricProxy;
+import cern.c2mon.shared.common.datatag.SourceDataTagQuality;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.easymock.Capture;
+import org.eclipse.milo.opcua.sdk.client.SessionActivityListener;
+import org.eclipse.milo.opcua.stack.core.types.builtin.NodeId;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static cern.c2mon.daq.opcua.MessageSender.EquipmentState.CONNECTION_LOST;
+import static cern.c2mon.daq.opcua.MessageSender.EquipmentState.OK;
+import static org.easymock.EasyMock.*;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ShardedEndpointTest {
+
+    MiloEndpoint shard0;
+    MiloEndpoint shard1;
+    MessageSender messageSender;
+    ShardedEndpoint endpoint;
+    Capture<SessionActivityListener> listener0 = newCapture();
+    Capture<SessionActivityListener> listener1 = newCapture();
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    public void setUp() throws OPCUAException {
+        shard0 = niceMock(MiloEndpoint.class);
+        shard1 = niceMock(MiloEndpoint.class);
+        messageSender = niceMock(MessageSender.class);
+        final ObjectProvider<MiloEndpoint> provider = niceMock(ObjectProvider.class);
+        expect(provider.getObject()).andReturn(shard0).andReturn(shard1);
+        final AppConfigProperties properties = AppConfigProperties.builder().sessionShards(2).build();
+        endpoint = new ShardedEndpoint(provider, properties, messageSender);
+        shard0.manageSessionActivityListener(eq(true), capture(listener0));
+        shard1.manageSessionActivityListener(eq(true), capture(listener1));
+        replay(provider);
+    }
+
+    @Test
+    public void subscribeShouldSpreadDefinitionsByClientHandle() throws OPCUAException {
+        final SubscriptionGroup group = new SubscriptionGroup(1, new MetricProxy(new SimpleMeterRegistry()));
+        final List<ItemDefinition> definitions = Arrays.asList(ItemDefinition.of(new NodeId(1, "a")),
+                ItemDefinition.of(new NodeId(1, "b")), ItemDefinition.of(new NodeId(1, "c")));
+        final Capture<Collection<ItemDefinition>> even = newCapture();
+        final Capture<Collection<ItemDefinition>> odd = newCapture();
+        expect(shard0.subscribe(eq(group), capture(even))).andReturn(Collections.emptyMap());
+        expect(shard1.subscribe(eq(group), capture(odd))).andReturn(Collections.emptyMap());
+        replay(shard0, shard1, messageSender);
+        endpoint.initialize("test");
+        endpoint.subscribe(group, definitions);
+        verify(shard0, shard1);
+        assertTrue(even.getValue().stream().allMatch(d -> d.getClientHandle() % 2 == 0));
+        assertTrue(odd.getValue().stream().allMatch(d -> d.getClientHandle() % 2 == 1));
+        assertEquals(3, even.getValue().size() + odd.getValue().size());
+    }
+
+    @Test
+    public void subscribeShouldMergeQualitiesOfAllShards() throws OPCUAException {
+        final SubscriptionGroup group = new SubscriptionGroup(1, new MetricProxy(new SimpleMeterRegistry()));
+        final ItemDefinition d1 = ItemDefinition.of(new NodeId(1, "a"));
+        final ItemDefinition d2 = ItemDefinition.of(new NodeId(1, "b"));
+        final SourceDataTagQuality quality = new SourceDataTagQuality();
+        expect(shard0.subscribe(eq(group), anyObject())).andReturn(Collections.singletonMap(d1.getClientHandle() % 2 == 0 ? d1.getClientHandle() : d2.getClientHandle(), quality));
+        expect(shard1.subscribe(eq(group), anyObject())).andReturn(Collections.singletonMap(d1.getClientHandle() % 2 == 1 ? d1.getClientHandle() : d2.getClientHandle(), quality));
+        replay(shard0, shard1, messageSender);
+        endpoint.initialize("test");
+        final Map<Integer, SourceDataTagQuality> result = endpoint.subscribe(group, Arrays.asList(d1, d2));
+        assertEquals(2, result.size());
+    }
+
+    @Test
+    public void recreateAllSubscriptionsShouldFailIfAnySessionFails() throws OPCUAException {
+        shard0.recreateAllSubscriptions();
+        expectLastCall().once();
+        shard1.recreateAllSubscriptions();
+        expectLastCall().andThrow(new CommunicationException(ExceptionContext.NO_REDUNDANT_SERVER));
+        replay(shard0, shard1, messageSender);
+        endpoint.initialize("test");
+        assertThrows(CommunicationException.class, endpoint::recreateAllSubscriptions);
+        verify(shard0, shard1);
+    }
+
+    @Test
+    public void shardsShouldBeTaggedWithTheirSession() throws OPCUAException {
+        shard0.setSession(0);
+        expectLastCall().once();
+        shard1.setSession(1);
+        expectLastCall().once();
+        replay(shard0, shard1, messageSender);
+        endpoint.initialize("test");
+        verify(shard0, shard1);
+    }
+
+    @Test
+    public void equipmentStateShouldBeLostOnceWhenAnySessionDeactivates() throws OPCUAException {
+        messageSender.onEquipmentStateUpdate(CONNECTION_LOST);
+        expectLastCall().once();
+        messageSender.onEquipmentStateUpdate(OK);
+        expectLastCall().times(2);
+        replay(shard0, shard1, messageSender);
+        endpoint.initialize("test");
+        endpoint.setUpdateEquipmentStateOnSessionChanges(true);
+        listener0.getValue().onSessionInactive(null);
+        listener1.getValue().onSessionInactive(null);
+        listener0.getValue().onSessionActive(null);
+        listener1.getValue().onSessionActive(null);
+        verify(messageSender);
+    }
+
+    @Test
+    public void listenersShouldOnlyBeNotifiedOfAggregatedSessionChanges() throws OPCUAException {
+        final SessionActivityListener failoverListener = strictMock(SessionActivityListener.class);
+        failoverListener.onSessionActive(null);
+        failoverListener.onSessionInactive(null);
+        failoverListener.onSessionActive(null);
+        replay(shard0, shard1, messageSender, failoverListener);
+        endpoint.initialize("test");
+        endpoint.manageSessionActivityListener(true, failoverListener);
+        listener0.getValue().onSessionInactive(null);
+        listener1.getValue().onSessionInactive(null);
+        listener1.getValue().onSessionActive(null);
+        listener0.getValue().onSessionActive(null);
+        verify(failoverListener);
+    }
+}
@@ -0,0 +1,161 @@
+/*-
+ * #%L
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * %%
+ * Copyright (C) 2010 - 2022 CERN
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package cern.c2mon.daq.opcua.connection;
+
+import org.eclipse.milo.opcua.sdk.client.api.subscriptions.UaMonitoredItem;
+import org.eclipse.milo.opcua.sdk.client.api.subscriptions.UaSubscription;
+import org.eclipse.milo.opcua.stack.core.types.builtin.unsigned.UInteger;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.easymock.EasyMock.createNiceMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SubscriptionPartitionsTest {
+
+    SubscriptionPartitions partitions;
+    UaSubscription first;
+    UaSubscription second;
+
+    @BeforeEach
+    public void setUp() {
+        partitions = new SubscriptionPartitions();
+        first = createNiceMock(UaSubscription.class);
+        second = createNiceMock(UaSubscription.class);
+    }
+
+    @Test
+    public void unlimitedItemsShouldBeKeptInSinglePartition() {
+        final Map<Integer, Integer> plan = SubscriptionPartitions.distribute(Collections.emptyMap(), 50000, 0);
+        assertEquals(Collections.singletonMap(0, 50000), plan);
+    }
+
+    @Test
+    public void itemsShouldBeSplitIntoPartitionsOfMaximumSize() {
+        final Map<Integer, Integer> plan = SubscriptionPartitions.distribute(Collections.emptyMap(), 25, 10);
+        assertEquals(3, plan.size());
+        assertEquals(10, plan.get(0));
+        assertEquals(10, plan.get(1));
+        assertEquals(5, plan.get(2));
+    }
+
+    @Test
+    public void existingPartitionsShouldBeFilledFirst() {
+        final Map<Integer, Integer> sizes = new HashMap<>();
+        sizes.put(0, 10);
+        sizes.put(2, 7);
+        final Map<Integer, Integer> plan = SubscriptionPartitions.distribute(sizes, 8, 10);
+        assertEquals(3, plan.get(2));
+        assertEquals(5, plan.get(1));
+        assertFalse(plan.containsKey(0));
+    }
+
+    @Test
+    public void noItemsShouldYieldEmptyPlan() {
+        assertTrue(SubscriptionPartitions.distribute(Collections.emptyMap(), 0, 10).isEmpty());
+    }
+
+    @Test
+    public void partitionCountShouldRoundUp() {
+        assertEquals(1, SubscriptionPartitions.partitionCount(0, 10));
+        assertEquals(3, SubscriptionPartitions.partitionCount(21, 10));
+        assertEquals(1, SubscriptionPartitions.partitionCount(21, 0));
+    }
+
+    @Test
+    public void locateShouldReturnIntervalAndPartition() {
+        partitions.put(5, 0, first);
+        partitions.put(5, 1, second);
+        final Map.Entry<Integer, Integer> located = partitions.locate(second);
+        assertEquals(5, located.getKey());
+        assertEquals(1, located.getValue());
+        assertTrue(partitions.contains(first));
+    }
+
+    @Test
+    public void removedSubscriptionShouldNoLongerBeTracked() {
+        partitions.put(5, 0, first);
+        partitions.put(5, 1, second);
+        assertEquals(first, partitions.remove(5, 0));
+        assertNull(partitions.locate(first));
+        assertEquals(1, partitions.get(5).size());
+        assertEquals(1, partitions.getAll().size());
+    }
+
+    @Test
+    public void removingLastPartitionShouldForgetInterval() {
+        partitions.put(5, 0, first);
+        partitions.remove(5, 0);
+        assertTrue(partitions.get(5).isEmpty());
+        assertTrue(partitions.getAll().isEmpty());
+    }
+
+    @Test
+    public void indexedItemsShouldBeFoundInTheirPartitions() {
+        partitions.put(5, 0, first);
+        partitions.put(5, 1, second);
+        final UaMonitoredItem a = itemWithHandle(1);
+        final UaMonitoredItem b = itemWithHandle(2);
+        partitions.index(first, Collections.singletonList(a));
+        partitions.index(second, Collections.singletonList(b));
+        final Map<Integer, List<UaMonitoredItem>> found = partitions.find(5, Arrays.asList(1, 2, 3));
+        assertEquals(Collections.singletonList(a), found.get(0));
+        assertEquals(Collections.singletonList(b), found.get(1));
+        assertTrue(partitions.find(10, Arrays.asList(1, 2)).isEmpty());
+    }
+
+    @Test
+    public void unindexedItemsShouldNotBeFound() {
+        partitions.put(5, 0, first);
+        final UaMonitoredItem a = itemWithHandle(1);
+        partitions.index(first, Collections.singletonList(a));
+        partitions.unindex(first, a);
+        assertTrue(partitions.find(5, Collections.singletonList(1)).isEmpty());
+    }
+
+    @Test
+    public void itemsOfRemovedPartitionShouldNotBeFound() {
+        partitions.put(5, 0, first);
+        partitions.index(first, Collections.singletonList(itemWithHandle(1)));
+        partitions.remove(5, 0);
+        partitions.put(5, 0, second);
+        assertTrue(partitions.find(5, Collections.singletonList(1)).isEmpty());
+    }
+
+    private static UaMonitoredItem itemWithHandle(int handle) {
+        final UaMonitoredItem item = createNiceMock(UaMonitoredItem.class);
+        expect(item.getClientHandle()).andReturn(UInteger.valueOf(handle)).anyTimes();
+        replay(item);
+        return item;
+    }
+}
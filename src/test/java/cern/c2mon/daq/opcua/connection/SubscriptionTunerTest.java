@@ -0,0 +1,144 @@
+/*-
+ * #%L
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * %%
+ * Copyright (C) 2010 - 2022 CERN
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package cern.c2mon.daq.opcua.connection;
+
+import cern.c2mon.daq.opcua.config.AppConfigProperties;
+import cern.c2mon.daq.opcua.config.AppConfigProperties.SubscriptionParameters;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class SubscriptionTunerTest {
+
+    AppConfigProperties properties;
+    SubscriptionTuner tuner;
+
+    @BeforeEach
+    public void setUp() {
+        final Map<Integer, SubscriptionParameters> parameters = new HashMap<>();
+        parameters.put(1, new SubscriptionParameters(0, 0, 1000, 5));
+        parameters.put(2, new SubscriptionParameters(10, 20, 0, 0));
+        properties = AppConfigProperties.builder()
+                .subscriptionParameters(parameters)
+                .subscriptionTuningEnabled(true)
+                .subscriptionTuningWindow(10)
+                .subscriptionTargetPublishLatency(100L)
+                .subscriptionTuningMinNotifications(100)
+                .subscriptionTuningMaxNotifications(4000)
+                .build();
+        tuner = new SubscriptionTuner(properties);
+    }
+
+    @Test
+    public void unconfiguredParametersShouldKeepAliveAboutEveryTenSeconds() {
+        final SubscriptionParameters p = tuner.parameters(3);
+        assertEquals(4, p.getMaxKeepAliveCount());
+        assertEquals(24, p.getLifetimeCount());
+        assertEquals(0, p.getMaxNotificationsPerPublish());
+    }
+
+    @Test
+    public void configuredParametersShouldBeUsed() {
+        final SubscriptionParameters p = tuner.parameters(1);
+        assertEquals(1000, p.getMaxNotificationsPerPublish());
+        assertEquals(5, p.getPriority());
+    }
+
+    @Test
+    public void lifetimeCountShouldBeAtLeastThreeTimesKeepAliveCount() {
+        assertEquals(60, tuner.parameters(2).getLifetimeCount());
+    }
+
+    @Test
+    public void highLatencyShouldHalveLimit() {
+        assertEquals(500, recordWindow(1, 1000, 500));
+        assertEquals(500, tuner.parameters(1).getMaxNotificationsPerPublish());
+    }
+
+    @Test
+    public void limitedResponsesInTimeShouldDoubleLimit() {
+        assertEquals(2000, recordWindow(1, 1000, 10));
+        assertEquals(4000, recordWindow(1, 2000, 10));
+        assertEquals(-1, recordWindow(1, 4000, 10));
+    }
+
+    @Test
+    public void smallResponsesInTimeShouldKeepLimit() {
+        assertEquals(-1, recordWindow(1, 10, 10));
+    }
+
+    @Test
+    public void highLatencyShouldLimitUnlimitedSubscription() {
+        assertEquals(1500, recordWindow(2, 3000, 500));
+    }
+
+    @Test
+    public void limitShouldNotDropBelowMinimum() {
+        properties.getSubscriptionParameters().get(1).setMaxNotificationsPerPublish(150);
+        assertEquals(100, recordWindow(1, 150, 500));
+        assertEquals(-1, recordWindow(1, 100, 500));
+    }
+
+    @Test
+    public void forgetShouldRestoreConfiguredLimit() {
+        recordWindow(1, 1000, 500);
+        tuner.forget(1);
+        assertEquals(1000, tuner.parameters(1).getMaxNotificationsPerPublish());
+    }
+
+    @Test
+    public void clockOffsetShouldNotAffectLatency() {
+        assertEquals(2000, recordWindow(1, 1000, 10, 3600000L));
+        assertEquals(1000, recordWindow(1, 2000, 500, -3600000L));
+    }
+
+    @Test
+    public void constantDelayShouldNotBeMistakenForLatency() {
+        assertEquals(-1, recordWindow(2, 3000, 0, 500L));
+    }
+
+    @Test
+    public void disabledTuningShouldNotChangeLimit() {
+        properties.setSubscriptionTuningEnabled(false);
+        assertEquals(-1, recordWindow(1, 1000, 500));
+    }
+
+    private int recordWindow(int publishInterval, int notifications, long latency) {
+        return recordWindow(publishInterval, notifications, latency, 0L);
+    }
+
+    /**
+     * Records a window in which the first response arrives without latency and the others with the given latency, so
+     * that the average latency is 9/10 of it.
+     */
+    private int recordWindow(int publishInterval, int notifications, long latency, long clockOffset) {
+        int result = tuner.record(publishInterval, notifications, clockOffset);
+        for (int i = 1; i < properties.getSubscriptionTuningWindow(); i++) {
+            result = tuner.record(publishInterval, notifications, clockOffset + latency);
+        }
+        return result;
+    }
+}
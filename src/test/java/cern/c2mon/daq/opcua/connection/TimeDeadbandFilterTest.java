@@ -0,0 +1,122 @@
+/*-
+ * #%L
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * %%
+ * Copyright (C) 2010 - 2022 CERN
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package cern.c2mon.daq.opcua.connection;
+
+import cern.c2mon.daq.opcua.testutils.TestUtils;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TimeDeadbandFilterTest {
+
+    TimeDeadbandFilter filter;
+    List<Integer> forwarded;
+
+    @BeforeEach
+    public void setUp() {
+        filter = new TimeDeadbandFilter(TestUtils.createScheduler());
+        forwarded = new CopyOnWriteArrayList<>();
+    }
+
+    @Test
+    public void firstUpdateShouldBeForwardedImmediately() {
+        offer(1, 1);
+        assertEquals(1, forwarded.size());
+    }
+
+    @Test
+    public void updateWithinDeadbandShouldBeHeldBack() {
+        offer(1, 1);
+        offer(1, 2);
+        assertEquals(1, forwarded.size());
+        assertEquals(1, filter.getPendingUpdates());
+    }
+
+    @Test
+    public void latestHeldBackUpdateShouldBeForwardedAfterDeadband() throws InterruptedException {
+        offer(1, 1);
+        offer(1, 2);
+        offer(1, 3);
+        TimeUnit.MILLISECONDS.sleep(150);
+        assertEquals(2, forwarded.size());
+        assertEquals(3, (int) forwarded.get(1));
+        assertEquals(0, filter.getPendingUpdates());
+    }
+
+    @Test
+    public void updatesOfDifferentTagsShouldNotAffectEachOther() {
+        offer(1, 1);
+        offer(2, 2);
+        assertEquals(2, forwarded.size());
+    }
+
+    @Test
+    public void updatesOfUnthrottledTagShouldBeForwardedImmediately() {
+        filter.offer(1, () -> forwarded.add(1));
+        filter.offer(1, () -> forwarded.add(2));
+        assertEquals(2, forwarded.size());
+        assertFalse(filter.isThrottled(1));
+    }
+
+    @Test
+    public void heldBackUpdateShouldOnlyBeDiscardedIfDeadbandChanges() {
+        offer(1, 1);
+        offer(1, 2);
+        filter.throttle(1, 50L);
+        assertEquals(1, filter.getPendingUpdates());
+        filter.throttle(1, 100L);
+        assertEquals(0, filter.getPendingUpdates());
+    }
+
+    @Test
+    public void forgetShouldDiscardHeldBackUpdate() throws InterruptedException {
+        offer(1, 1);
+        offer(1, 2);
+        filter.forget(1);
+        TimeUnit.MILLISECONDS.sleep(150);
+        assertEquals(1, forwarded.size());
+    }
+
+    @Test
+    public void clearShouldDiscardAllHeldBackUpdates() throws InterruptedException {
+        offer(1, 1);
+        offer(1, 2);
+        offer(2, 3);
+        offer(2, 4);
+        filter.clear();
+        TimeUnit.MILLISECONDS.sleep(150);
+        assertEquals(2, forwarded.size());
+        assertTrue(forwarded.contains(1) && forwarded.contains(3));
+    }
+
+    private void offer(int handle, int value) {
+        filter.throttle(handle, 50L);
+        filter.offer(handle, () -> forwarded.add(value));
+    }
+}
@@ -21,7 +21,6 @@
  */
 package cern.c2mon.daq.opcua.controller;
 
-import cern.c2mon.daq.opcua.config.AppConfig;
 import cern.c2mon.daq.opcua.config.AppConfigProperties;
 import cern.c2mon.daq.opcua.control.ColdFailover;
 import cern.c2mon.daq.opcua.control.FailoverController;
@@ -49,6 +48,7 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import java.util.Arrays;
+import java.util.List;
 import java.util.concurrent.*;
 import java.util.function.Consumer;
 
@@ -76,8 +76,8 @@ public class ColdFailoverTest {
         readLatch = new CountDownLatch(1);
         initLatch = new CountDownLatch(2);
         properties = TestUtils.createDefaultConfig();
-        coldFailover = new ColdFailover(properties, new AppConfig().alwaysRetryTemplate(properties));
-        endpoint = new TestEndpoint(listener, new TagSubscriptionMapper(new MetricProxy(new SimpleMeterRegistry())));
+        coldFailover = new ColdFailover(properties, new MetricProxy(new SimpleMeterRegistry()), TestUtils.createScheduler());
+        endpoint = new TestEndpoint(listener, new TagSubscriptionMapper(new MetricProxy(new SimpleMeterRegistry()), AppConfigProperties.builder().build()));
         endpoint.setReadValue(UByte.valueOf(250));
         endpoint.setThrowExceptions(false);
         endpoint.setInitLatch(initLatch);
@@ -241,6 +241,17 @@ public class ColdFailoverTest {
         verify(endpoint.getMonitoredItem());
     }
 
+    @Test
+    public void prewarmStandbyShouldPrepareNextServer() throws OPCUAException, InterruptedException {
+        properties.setPrewarmStandby(true);
+        properties.setStandbyRefreshInterval(10L);
+        setupConnectionMonitoring("redundant");
+        assertTrue(endpoint.getStandbyLatch().await(TestUtils.TIMEOUT, TimeUnit.MILLISECONDS));
+        assertEquals("redundant", endpoint.getStandbyUri());
+        coldFailover.stop();
+        assertNull(endpoint.getStandbyUri());
+    }
+
     @Test
     public void switchServersShouldSwitchToNextServer() throws OPCUAException {
         setupConnectionMonitoring("redundant");
@@ -271,6 +282,18 @@ public class ColdFailoverTest {
         assertEquals("redundant1", endpoint.getUri());
     }
 
+    @Test
+    public void failoverShouldRecordTimeline() throws OPCUAException, InterruptedException, TimeoutException, ExecutionException {
+        properties.setFailoverTimelineHistory(1);
+        captureConsumers(serviceLevel, serverState, "redundant1", "redundant2");
+        waitForConsumerCapture(serviceLevel);
+        serviceLevel.getValue().accept(new DataValue(new Variant(UByte.valueOf(10))));
+        serviceLevel.getValue().accept(new DataValue(new Variant(UByte.valueOf(10))));
+        final List<String> timelines = coldFailover.recentFailoverTimelines();
+        assertEquals(1, timelines.size());
+        assertTrue(timelines.get(0).contains("detection=") && timelines.get(0).contains("probe="));
+    }
+
     @Test
     public void badNodeIdShouldSetIrrelevantConsumer() throws OPCUAException, InterruptedException, TimeoutException, ExecutionException {
         expect(endpoint.getMonitoredItem().getReadValueId())
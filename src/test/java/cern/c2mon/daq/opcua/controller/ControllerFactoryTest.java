@@ -21,13 +21,15 @@
  */
 package cern.c2mon.daq.opcua.controller;
 
-import cern.c2mon.daq.opcua.config.AppConfig;
 import cern.c2mon.daq.opcua.config.AppConfigProperties;
 import cern.c2mon.daq.opcua.config.TimeRecordMode;
 import cern.c2mon.daq.opcua.control.ColdFailover;
 import cern.c2mon.daq.opcua.control.ConcreteController;
 import cern.c2mon.daq.opcua.control.ControllerFactory;
 import cern.c2mon.daq.opcua.control.NoFailover;
+import cern.c2mon.daq.opcua.metrics.MetricProxy;
+import cern.c2mon.daq.opcua.testutils.TestUtils;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
@@ -41,8 +43,7 @@ public class ControllerFactoryTest {
     @BeforeEach
     public void setUp() {
         AppConfigProperties properties = AppConfigProperties.builder().maxRetryAttempts(3).requestTimeout(300).timeRecordMode(TimeRecordMode.CLOSEST).retryDelay(1000).build();
-        AppConfig config = new AppConfig();
-        factory = new ControllerFactory(properties, config.alwaysRetryTemplate(properties));
+        factory = new ControllerFactory(properties, new MetricProxy(new SimpleMeterRegistry()), TestUtils.createScheduler());
     }
 
     @Test
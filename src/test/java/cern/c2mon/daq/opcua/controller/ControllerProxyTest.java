@@ -21,8 +21,8 @@
  */
 package cern.c2mon.daq.opcua.controller;
 
-import cern.c2mon.daq.opcua.config.AppConfig;
 import cern.c2mon.daq.opcua.config.AppConfigProperties;
+import cern.c2mon.daq.opcua.connection.ShardedEndpoint;
 import cern.c2mon.daq.opcua.control.*;
 import cern.c2mon.daq.opcua.exceptions.CommunicationException;
 import cern.c2mon.daq.opcua.exceptions.ConfigurationException;
@@ -33,6 +33,8 @@ import cern.c2mon.daq.opcua.testutils.TestEndpoint;
 import cern.c2mon.daq.opcua.testutils.TestListeners;
 import cern.c2mon.daq.opcua.testutils.TestUtils;
 import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+
 import lombok.extern.slf4j.Slf4j;
 import org.eclipse.milo.opcua.sdk.client.api.subscriptions.UaMonitoredItem;
 import org.eclipse.milo.opcua.sdk.client.model.nodes.objects.NonTransparentRedundancyTypeNode;
@@ -40,6 +42,7 @@ import org.eclipse.milo.opcua.stack.core.types.builtin.StatusCode;
 import org.eclipse.milo.opcua.stack.core.types.enumerated.RedundancySupport;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.context.ApplicationContext;
 
 import java.net.UnknownHostException;
@@ -65,11 +68,11 @@ public class ControllerProxyTest {
     @BeforeEach
     public void setUp() {
         properties = TestUtils.createDefaultConfig();
-        controllerFactory = new ControllerFactory(properties, new AppConfig().alwaysRetryTemplate(properties));
+        controllerFactory = new ControllerFactory(properties, new MetricProxy(new SimpleMeterRegistry()), TestUtils.createScheduler());
         applicationContext = createMock(ApplicationContext.class);
         controllerFactoryMock = createMock(ControllerFactory.class);
-        testEndpoint = new TestEndpoint(new TestListeners.TestListener(), new TagSubscriptionMapper(new MetricProxy(new SimpleMeterRegistry())));
-        proxy = new ControllerProxy(controllerFactoryMock, properties, testEndpoint);
+        testEndpoint = new TestEndpoint(new TestListeners.TestListener(), new TagSubscriptionMapper(new MetricProxy(new SimpleMeterRegistry()), AppConfigProperties.builder().build()));
+        proxy = new ControllerProxy(controllerFactoryMock, properties, testEndpoint, null);
         final UaMonitoredItem item = testEndpoint.getMonitoredItem();
         reset(item, testEndpoint.getServerRedundancyNode(), applicationContext, controllerFactoryMock);
         expect(item.getStatusCode()).andReturn(StatusCode.GOOD).anyTimes();
@@ -244,6 +247,30 @@ public class ControllerProxyTest {
         verify(coldFailover);
     }
 
+    @Test
+    @SuppressWarnings("unchecked")
+    public void changedSessionShardsShouldReplaceShardedEndpointOnReconnection() throws OPCUAException {
+        final ObjectProvider<ShardedEndpoint> provider = createMock(ObjectProvider.class);
+        final ShardedEndpoint first = createNiceMock(ShardedEndpoint.class);
+        final ShardedEndpoint second = createNiceMock(ShardedEndpoint.class);
+        final ConcreteController controller = createNiceMock(ConcreteController.class);
+        expect(provider.getObject()).andReturn(first).once();
+        expect(provider.getObject()).andReturn(second).once();
+        expect(controllerFactoryMock.getObject(FailoverMode.NONE)).andReturn(controller).anyTimes();
+        replay(provider, first, second, controller, controllerFactoryMock);
+        properties.setRedundancyMode(FailoverMode.NONE);
+        properties.setSessionShards(2);
+        proxy = new ControllerProxy(controllerFactoryMock, properties, testEndpoint, provider);
+
+        proxy.connect(Collections.singleton("test"));
+        proxy.stop();
+        proxy.connect(Collections.singleton("test"));
+        properties.setSessionShards(3);
+        proxy.stop();
+        proxy.connect(Collections.singleton("test"));
+        verify(provider);
+    }
+
     private void mockServerUriCall() {
         expect(((NonTransparentRedundancyTypeNode)testEndpoint.getServerRedundancyNode()).getServerUriArray())
                 .andReturn(CompletableFuture.completedFuture(new String[]{"redUri1"}))
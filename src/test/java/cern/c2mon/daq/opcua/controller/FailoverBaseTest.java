@@ -0,0 +1,86 @@
+/*-
+ * #%L
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * %%
+ * Copyright (C) 2010 - 2022 CERN
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package cern.c2mon.daq.opcua.controller;
+
+import cern.c2mon.daq.opcua.config.AppConfigProperties;
+import cern.c2mon.daq.opcua.mapping.TagSubscriptionMapper;
+import cern.c2mon.daq.opcua.metrics.MetricProxy;
+import cern.c2mon.daq.opcua.testutils.TestController;
+import cern.c2mon.daq.opcua.testutils.TestEndpoint;
+import cern.c2mon.daq.opcua.testutils.TestListeners;
+import cern.c2mon.daq.opcua.testutils.TestUtils;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class FailoverBaseTest {
+
+    AtomicInteger attempts;
+    TestController controller;
+
+    @BeforeEach
+    public void setUp() {
+        attempts = new AtomicInteger();
+        final AppConfigProperties properties = TestUtils.createDefaultConfig();
+        properties.setRetryDelay(1L);
+        properties.setMaxRetryDelay(1L);
+        controller = new TestController(properties) {
+            @Override
+            public void switchServers() {
+                if (attempts.incrementAndGet() == 1) {
+                    throw new IllegalStateException("Unexpected failure");
+                }
+            }
+        };
+        controller.setEndpoint(new TestEndpoint(new TestListeners.TestListener(),
+                new TagSubscriptionMapper(new MetricProxy(new SimpleMeterRegistry()), AppConfigProperties.builder().build())));
+    }
+
+    @AfterEach
+    public void cleanUp() {
+        controller.stop();
+    }
+
+    @Test
+    public void unexpectedFailureShouldBeRetriedAndAllowLaterFailovers() throws InterruptedException {
+        controller.triggerRetryFailover();
+        awaitAttempts(2);
+
+        controller.triggerRetryFailover();
+        awaitAttempts(3);
+        assertEquals(3, attempts.get());
+    }
+
+    private void awaitAttempts(int expected) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + TestUtils.TIMEOUT;
+        while (attempts.get() < expected && System.currentTimeMillis() < deadline) {
+            TimeUnit.MILLISECONDS.sleep(1L);
+        }
+        assertEquals(expected, attempts.get());
+    }
+}
@@ -21,6 +21,7 @@
  */
 package cern.c2mon.daq.opcua.mapping;
 
+import cern.c2mon.daq.opcua.config.AppConfigProperties;
 import cern.c2mon.daq.opcua.metrics.MetricProxy;
 import cern.c2mon.shared.common.datatag.DataTagAddress;
 import cern.c2mon.shared.common.datatag.ISourceDataTag;
@@ -42,7 +43,7 @@ public class MappingBase {
     ISourceDataTag tagWithSameDeadband;
     ISourceDataTag tagWithDifferentDeadband;
 
-    TagSubscriptionMapper mapper = new TagSubscriptionMapper(new MetricProxy(new SimpleMeterRegistry()));
+    TagSubscriptionMapper mapper = new TagSubscriptionMapper(new MetricProxy(new SimpleMeterRegistry()), AppConfigProperties.builder().build());
 
 
     @BeforeEach
@@ -37,10 +37,15 @@
  *****************************************************************************/
 package cern.c2mon.daq.opcua.mapping;
 
+import cern.c2mon.daq.opcua.config.AppConfigProperties;
 import cern.c2mon.daq.opcua.connection.MiloMapper;
 import cern.c2mon.daq.opcua.exceptions.ConfigurationException;
+import cern.c2mon.daq.opcua.metrics.MetricProxy;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.Test;
 
+import java.util.Arrays;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 public class TagSubscriptionManagerTest extends MappingBase {
@@ -190,4 +195,47 @@ public class TagSubscriptionManagerTest extends MappingBase {
         Long actual = mapper.getTagId(definition.getClientHandle());
         assertEquals(tag.getId(), actual);
     }
+
+    @Test
+    public void publishIntervalShouldEqualTimeDeadbandWithoutBuckets() {
+        assertEquals(7, mapper.getPublishInterval(7));
+    }
+
+    @Test
+    public void publishIntervalShouldBeLargestBucketNotExceedingTimeDeadband() {
+        final TagSubscriptionMapper bucketMapper = createBucketMapper();
+        assertEquals(5, bucketMapper.getPublishInterval(7));
+        assertEquals(5, bucketMapper.getPublishInterval(5));
+        assertEquals(60, bucketMapper.getPublishInterval(3600));
+    }
+
+    @Test
+    public void timeDeadbandBelowSmallestBucketShouldUseSmallestBucket() {
+        assertEquals(1, createBucketMapper().getPublishInterval(0));
+    }
+
+    @Test
+    public void tagsWithTimeDeadbandsInSameBucketShouldShareGroup() {
+        final TagSubscriptionMapper bucketMapper = createBucketMapper();
+        final SubscriptionGroup group = bucketMapper.getGroup(7);
+        assertEquals(group, bucketMapper.getGroup(9));
+        assertEquals(5, group.getPublishInterval());
+    }
+
+    @Test
+    public void removeLastTagOfBucketShouldRemoveGroup() throws ConfigurationException {
+        final TagSubscriptionMapper bucketMapper = createBucketMapper();
+        final ItemDefinition definition = bucketMapper.getOrCreateDefinition(makeSourceDataTag(4L, dataTagAddress));
+        bucketMapper.getGroup(definition.getTimeDeadband());
+        bucketMapper.addTagToGroup(4L);
+        assertTrue(bucketMapper.removeTag(4L));
+        assertTrue(bucketMapper.getGroups().isEmpty());
+    }
+
+    private TagSubscriptionMapper createBucketMapper() {
+        final AppConfigProperties properties = AppConfigProperties.builder()
+                .publishIntervalBuckets(Arrays.asList(1, 5, 60))
+                .build();
+        return new TagSubscriptionMapper(new MetricProxy(new SimpleMeterRegistry()), properties);
+    }
 }
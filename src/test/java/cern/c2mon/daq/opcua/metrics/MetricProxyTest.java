@@ -0,0 +1,210 @@
+/*-
+ * #%L
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * %%
+ * Copyright (C) 2010 - 2022 CERN
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package cern.c2mon.daq.opcua.metrics;
+
+import cern.c2mon.daq.opcua.config.AppConfigProperties;
+import cern.c2mon.daq.opcua.connection.CircuitBreaker;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MetricProxyTest {
+
+    MeterRegistry registry;
+    AppConfigProperties properties;
+
+    @BeforeEach
+    public void setUp() {
+        registry = new SimpleMeterRegistry();
+        properties = AppConfigProperties.builder().tagMetricMode(AppConfigProperties.TagMetricMode.AGGREGATE).build();
+    }
+
+    @Test
+    public void equipmentNameShouldBeTakenFromDefaultTags() {
+        final MetricProxy proxy = new MetricProxy(registry, properties);
+        assertNull(proxy.getEquipmentName());
+        proxy.addDefaultTags("equipment_name", "EQ", "process_name", "P");
+        assertEquals("EQ", proxy.getEquipmentName());
+    }
+
+    @Test
+    public void metersOfDifferentSessionsShouldBeRegisteredSeparately() {
+        final MetricProxy proxy = new MetricProxy(registry, properties);
+        proxy.registerCircuitBreaker(new CircuitBreaker(properties), 0);
+        proxy.registerCircuitBreaker(new CircuitBreaker(properties), 1);
+        assertEquals(2, registry.find("c2mon_daq_opcua_circuit_breaker_state").gauges().size());
+        assertNotNull(registry.find("c2mon_daq_opcua_circuit_breaker_state").tag("session", "1").gauge());
+    }
+
+    @Test
+    public void aggregateModeShouldCountPerSubscriptionGroup() {
+        final MetricProxy proxy = new MetricProxy(registry, properties);
+        proxy.addTagToSubscriptionGroup(1L, 5);
+        proxy.addTagToSubscriptionGroup(2L, 5);
+        proxy.addTagToSubscriptionGroup(3L, 10);
+        proxy.incrementTagCounter(true, 1L);
+        proxy.incrementTagCounter(true, 2L);
+        proxy.incrementTagCounter(false, 3L);
+
+        assertEquals(2.0, count("subscription_updates_valid", "time_deadband", "5"));
+        assertEquals(1.0, count("subscription_updates_invalid", "time_deadband", "10"));
+        assertNull(registry.find("c2mon_daq_opcua_tag_updates_valid").counter());
+    }
+
+    @Test
+    public void tagsOutsideOfSubscriptionGroupsShouldBeCountedAsUnassigned() {
+        final MetricProxy proxy = new MetricProxy(registry, properties);
+        proxy.addTagToSubscriptionGroup(1L, 5);
+        proxy.removeTagFromSubscriptionGroup(1L, 5);
+        proxy.incrementTagCounter(false, 1L);
+        proxy.incrementTagCounter(false, 2L);
+
+        assertEquals(2.0, count("subscription_updates_invalid", "time_deadband", "none"));
+    }
+
+    @Test
+    public void removingFromPreviousGroupShouldKeepNewGroup() {
+        final MetricProxy proxy = new MetricProxy(registry, properties);
+        proxy.addTagToSubscriptionGroup(1L, 5);
+        proxy.addTagToSubscriptionGroup(1L, 10);
+        proxy.removeTagFromSubscriptionGroup(1L, 5);
+        proxy.incrementTagCounter(true, 1L);
+
+        assertEquals(1.0, count("subscription_updates_valid", "time_deadband", "10"));
+    }
+
+    @Test
+    public void allowListedTagsShouldAlsoBeCountedIndividually() {
+        properties.setPerTagMetricIds(Collections.singletonList(2L));
+        final MetricProxy proxy = new MetricProxy(registry, properties);
+        proxy.addTagToSubscriptionGroup(1L, 5);
+        proxy.addTagToSubscriptionGroup(2L, 5);
+        proxy.incrementTagCounter(true, 1L);
+        proxy.incrementTagCounter(true, 2L);
+
+        assertEquals(2.0, count("subscription_updates_valid", "time_deadband", "5"));
+        assertEquals(1.0, count("tag_updates_valid", "tag_id", "2"));
+        assertNull(registry.find("c2mon_daq_opcua_tag_updates_valid").tag("tag_id", "1").counter());
+    }
+
+    @Test
+    public void perTagModeShouldCountEveryTag() {
+        properties.setTagMetricMode(AppConfigProperties.TagMetricMode.PER_TAG);
+        final MetricProxy proxy = new MetricProxy(registry, properties);
+        for (long id = 0; id < 100; id++) {
+            proxy.incrementTagCounter(true, id);
+        }
+        proxy.incrementTagCounter(false, 50L);
+
+        assertEquals(100, registry.find("c2mon_daq_opcua_tag_updates_valid").counters().size());
+        assertEquals(1.0, count("tag_updates_invalid", "tag_id", "50"));
+        assertNull(registry.find("c2mon_daq_opcua_subscription_updates_valid").counter());
+    }
+
+    @Test
+    public void topTagsShouldBeGaugedByRank() {
+        properties.setPerTagMetricTopK(2);
+        final MetricProxy proxy = new MetricProxy(registry, properties);
+        for (int i = 0; i < 10_000; i++) {
+            proxy.incrementTagCounter(true, i % 10 == 0 ? 3L : 7L);
+        }
+
+        assertEquals(7.0, registry.find("c2mon_daq_opcua_tag_updates_top_id").tag("rank", "0").gauge().value());
+        assertEquals(3.0, registry.find("c2mon_daq_opcua_tag_updates_top_id").tag("rank", "1").gauge().value());
+    }
+
+    @Test
+    public void changedTagMetricModeShouldBeAppliedOnReset() {
+        final MetricProxy proxy = new MetricProxy(registry, properties);
+        proxy.addTagToSubscriptionGroup(1L, 5);
+        proxy.incrementTagCounter(true, 1L);
+        properties.setTagMetricMode(AppConfigProperties.TagMetricMode.PER_TAG);
+        proxy.incrementTagCounter(true, 1L);
+        assertNull(registry.find("c2mon_daq_opcua_tag_updates_valid").tag("tag_id", "1").counter());
+
+        proxy.resetTagMetricSettings();
+        proxy.incrementTagCounter(true, 1L);
+        assertEquals(1.0, count("tag_updates_valid", "tag_id", "1"));
+    }
+
+    @Test
+    public void resetShouldRemoveGaugesOfPreviousTopTags() {
+        properties.setPerTagMetricTopK(2);
+        final MetricProxy proxy = new MetricProxy(registry, properties);
+        proxy.incrementTagCounter(true, 1L);
+        properties.setPerTagMetricTopK(1);
+
+        proxy.resetTagMetricSettings();
+        proxy.incrementTagCounter(true, 1L);
+        assertEquals(1, registry.find("c2mon_daq_opcua_tag_updates_top_id").gauges().size());
+    }
+
+    @Test
+    public void commfaultShouldBeCountedSeparately() {
+        final MetricProxy proxy = new MetricProxy(registry, properties);
+        proxy.incrementCommfault(false);
+
+        assertEquals(1.0, count("tag_updates_invalid", "tag_id", "commfault"));
+    }
+
+    @Test
+    public void latenciesShouldBeRecordedPerSubscriptionGroup() {
+        final MetricProxy proxy = new MetricProxy(registry, properties);
+        proxy.addTagToSubscriptionGroup(1L, 5);
+        proxy.recordUpdateLatencies(1L, 1000L, 1200L, 1500L, 2_000_000L);
+
+        assertEquals(200.0, timer("latency_source_to_server", "5").totalTime(TimeUnit.MILLISECONDS));
+        assertEquals(300.0, timer("latency_server_to_receipt", "5").totalTime(TimeUnit.MILLISECONDS));
+        assertEquals(2.0, timer("latency_receipt_to_handoff", "5").totalTime(TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void latenciesWithMissingOrSkewedTimestampsShouldNotBeRecorded() {
+        final MetricProxy proxy = new MetricProxy(registry, properties);
+        proxy.addTagToSubscriptionGroup(1L, 5);
+        proxy.recordUpdateLatencies(1L, 0L, 1200L, 1000L, 1L);
+
+        assertEquals(0, timer("latency_source_to_server", "5").count());
+        assertEquals(0, timer("latency_server_to_receipt", "5").count());
+        assertEquals(1, timer("latency_receipt_to_handoff", "5").count());
+    }
+
+    private Timer timer(String name, String timeDeadband) {
+        final Timer timer = registry.find("c2mon_daq_opcua_" + name).tag("time_deadband", timeDeadband).timer();
+        assertNotNull(timer);
+        return timer;
+    }
+
+    private double count(String name, String tagKey, String tagValue) {
+        final Counter counter = registry.find("c2mon_daq_opcua_" + name).tag(tagKey, tagValue).counter();
+        assertNotNull(counter);
+        return counter.count();
+    }
+}
@@ -0,0 +1,81 @@
+/*-
+ * #%L
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * %%
+ * Copyright (C) 2010 - 2022 CERN
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package cern.c2mon.daq.opcua.metrics;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+
+import static cern.c2mon.daq.opcua.metrics.NetworkMetrics.NetworkMetric.BYTES_RECEIVED;
+import static cern.c2mon.daq.opcua.metrics.NetworkMetrics.NetworkMetric.PACKETS_SENT;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class NetworkMetricsTest {
+
+    Queue<long[]> samples;
+    NetworkMetrics metrics;
+
+    @BeforeEach
+    public void setUp() {
+        samples = new ArrayDeque<>();
+        metrics = new NetworkMetrics(null, 1000L, () -> samples.remove());
+    }
+
+    @Test
+    public void firstSampleShouldOnlySetTotals() {
+        samples.add(new long[]{100, 0, 0, 7});
+        metrics.sample(0);
+        assertEquals(100, metrics.getTotal(BYTES_RECEIVED));
+        assertEquals(7, metrics.getTotal(PACKETS_SENT));
+        assertEquals(0, metrics.getRate(BYTES_RECEIVED));
+    }
+
+    @Test
+    public void rateShouldBeComputedPerSecond() {
+        samples.add(new long[]{100, 0, 0, 7});
+        samples.add(new long[]{500, 0, 0, 17});
+        metrics.sample(0);
+        metrics.sample(2_000_000_000L);
+        assertEquals(200, metrics.getRate(BYTES_RECEIVED));
+        assertEquals(5, metrics.getRate(PACKETS_SENT));
+    }
+
+    @Test
+    public void decreasingTotalShouldYieldZeroRate() {
+        samples.add(new long[]{500, 0, 0, 0});
+        samples.add(new long[]{100, 0, 0, 0});
+        metrics.sample(0);
+        metrics.sample(1_000_000_000L);
+        assertEquals(0, metrics.getRate(BYTES_RECEIVED));
+        assertEquals(100, metrics.getTotal(BYTES_RECEIVED));
+    }
+
+    @Test
+    public void failedSampleShouldKeepPreviousValues() {
+        samples.add(new long[]{100, 0, 0, 0});
+        metrics.sample(0);
+        metrics.sample(1_000_000_000L);
+        assertEquals(100, metrics.getTotal(BYTES_RECEIVED));
+    }
+}
@@ -0,0 +1,85 @@
+/*-
+ * #%L
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * %%
+ * Copyright (C) 2010 - 2022 CERN
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package cern.c2mon.daq.opcua.metrics;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TagIndexTest {
+
+    TagIndex index;
+
+    @BeforeEach
+    public void setUp() {
+        index = new TagIndex();
+    }
+
+    @Test
+    public void unknownTagShouldBeAbsent() {
+        assertEquals(TagIndex.ABSENT, index.get(1L));
+    }
+
+    @Test
+    public void putShouldReplacePreviousSlot() {
+        index.put(1L, 2);
+        index.put(1L, 3);
+        assertEquals(3, index.get(1L));
+        assertEquals(1, index.size());
+    }
+
+    @Test
+    public void removeShouldOnlyRemoveMatchingSlot() {
+        index.put(1L, 2);
+        index.remove(1L, 3);
+        assertEquals(2, index.get(1L));
+        index.remove(1L, 2);
+        assertEquals(TagIndex.ABSENT, index.get(1L));
+    }
+
+    @Test
+    public void indexShouldGrowBeyondInitialCapacity() {
+        for (long id = 0; id < 10_000; id++) {
+            index.put(id * 31, (int) id);
+        }
+        for (long id = 0; id < 10_000; id++) {
+            assertEquals((int) id, index.get(id * 31));
+        }
+        assertEquals(10_000, index.size());
+    }
+
+    @Test
+    public void removedSlotsShouldBeReused() {
+        for (int i = 0; i < 10_000; i++) {
+            index.put(i, i);
+            index.remove(i, i);
+        }
+        assertEquals(0, index.size());
+        assertEquals(TagIndex.ABSENT, index.get(9_999));
+    }
+
+    @Test
+    public void reservedTagIdShouldBeRejected() {
+        assertThrows(IllegalArgumentException.class, () -> index.put(Long.MIN_VALUE, 0));
+    }
+}
@@ -23,9 +23,15 @@ package cern.c2mon.daq.opcua.opcuamessagehandler;
 
 import cern.c2mon.daq.opcua.MessageSender;
 import cern.c2mon.daq.opcua.OPCUAMessageHandler;
+import cern.c2mon.daq.opcua.config.AppConfig;
+import cern.c2mon.daq.opcua.connection.MiloEndpoint;
+import cern.c2mon.daq.opcua.control.NoFailover;
 import cern.c2mon.daq.opcua.exceptions.ExceptionContext;
+import cern.c2mon.daq.opcua.metrics.MetricProxy;
 import cern.c2mon.daq.opcua.testutils.MiloMocker;
+import cern.c2mon.daq.opcua.testutils.TestControllerProxy;
 import cern.c2mon.daq.opcua.testutils.TestListeners;
+import cern.c2mon.daq.opcua.testutils.TestUtils;
 import cern.c2mon.daq.test.UseConf;
 import cern.c2mon.daq.test.UseHandler;
 import cern.c2mon.daq.tools.equipmentexceptions.EqCommandTagException;
@@ -34,10 +40,14 @@ import cern.c2mon.shared.common.process.EquipmentConfiguration;
 import cern.c2mon.shared.common.process.IEquipmentConfiguration;
 import cern.c2mon.shared.daq.command.SourceCommandTagValue;
 import cern.c2mon.shared.daq.config.ChangeReport;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.easymock.Capture;
 import org.easymock.CaptureType;
 import org.eclipse.milo.opcua.stack.core.types.builtin.StatusCode;
 import org.junit.Test;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.retry.policy.SimpleRetryPolicy;
+import org.springframework.retry.support.RetryTemplate;
 import org.springframework.test.util.ReflectionTestUtils;
 
 import java.util.Collection;
@@ -85,6 +95,13 @@ public class OPCUAMessageHandlerTest extends OPCUAMessageHandlerTestBase {
         verify(sender);
     }
 
+    @Test
+    @UseConf("mock_test.xml")
+    public void configuredTagsShouldBeKnownWhenConnectingWithoutFailover() {
+        assertTrue(((TestControllerProxy) testController).getController() instanceof NoFailover);
+        assertEquals(handler.getEquipmentConfiguration().getSourceDataTags().size(), testEndpoint.getDefinitionsOnInitialize());
+    }
+
     @Test
     @UseConf("mock_test.xml")
     public void refreshTagShouldTriggerValueUpdate() {
@@ -122,6 +139,57 @@ public class OPCUAMessageHandlerTest extends OPCUAMessageHandlerTestBase {
         assertTrue(changeReport.getInfoMessage().contains("DAQ restarted."));
     }
 
+    @Test
+    @UseConf("mock_test.xml")
+    public void equipmentConfigurationUpdateOfLivePropertyShouldNotRestartDAQ() {
+        EquipmentConfiguration oldConfig = (EquipmentConfiguration) handler.getEquipmentConfiguration();
+        EquipmentConfiguration config = oldConfig.clone();
+        config.setEquipmentAddress(oldConfig.getAddress() + ";deletionChunkSize=5");
+        final ChangeReport changeReport = new ChangeReport();
+
+        handler.onUpdateEquipmentConfiguration(config, oldConfig, changeReport);
+        assertTrue(changeReport.isSuccess());
+        assertFalse(changeReport.getInfoMessage().contains("DAQ restarted."));
+        assertEquals(5, appConfigProperties.getDeletionChunkSize());
+    }
+
+    @Test
+    @UseConf("mock_test.xml")
+    public void equipmentConfigurationUpdateOfConnectionPropertyShouldReconnectDAQ() {
+        EquipmentConfiguration oldConfig = (EquipmentConfiguration) handler.getEquipmentConfiguration();
+        EquipmentConfiguration config = oldConfig.clone();
+        config.setEquipmentAddress(oldConfig.getAddress() + ";requestTimeout=1000");
+        final ChangeReport changeReport = new ChangeReport();
+
+        handler.onUpdateEquipmentConfiguration(config, oldConfig, changeReport);
+        assertTrue(changeReport.isSuccess());
+        assertTrue(changeReport.getInfoMessage().contains("DAQ reconnected."));
+        assertEquals(oldConfig.getSourceDataTags().size(), mapper.getTagIdDefinitionMap().size());
+    }
+
+    @Test
+    @UseConf("mock_test.xml")
+    public void equipmentConfigurationUpdateOfRetryPropertyShouldApplyOnReconnection() {
+        // the templates must also be created anew by the proxy of the configuration which Spring manages
+        final AnnotationConfigApplicationContext ctx = new AnnotationConfigApplicationContext();
+        ctx.getBeanFactory().registerSingleton("appConfigProperties", appConfigProperties);
+        ctx.register(AppConfig.class);
+        ctx.refresh();
+        final MiloEndpoint endpoint = new MiloEndpoint(null, mapper, sender, appConfigProperties, ctx.getBean(AppConfig.class),
+                new MetricProxy(new SimpleMeterRegistry()), null, TestUtils.createScheduler());
+        EquipmentConfiguration oldConfig = (EquipmentConfiguration) handler.getEquipmentConfiguration();
+        EquipmentConfiguration config = oldConfig.clone();
+        config.setEquipmentAddress(oldConfig.getAddress() + ";maxRetryAttempts=7");
+        final ChangeReport changeReport = new ChangeReport();
+
+        handler.onUpdateEquipmentConfiguration(config, oldConfig, changeReport);
+        assertTrue(changeReport.getInfoMessage().contains("DAQ reconnected."));
+        assertNotEquals(7, maxAttemptsOf(endpoint));
+        endpoint.disconnect();
+        assertEquals(7, maxAttemptsOf(endpoint));
+        ctx.close();
+    }
+
     @Test
     @UseConf("mock_test.xml")
     public void equipmentConfigurationShouldFailIfInterrupted() throws InterruptedException {
@@ -285,4 +353,8 @@ public class OPCUAMessageHandlerTest extends OPCUAMessageHandlerTestBase {
         assertNull(handler.runCommand(value));
     }
 
+    private static int maxAttemptsOf(MiloEndpoint endpoint) {
+        final RetryTemplate template = (RetryTemplate) ReflectionTestUtils.getField(endpoint, "retryTemplate");
+        return ((SimpleRetryPolicy) ReflectionTestUtils.getField(template, "retryPolicy")).getMaxAttempts();
+    }
 }
@@ -57,14 +57,14 @@ public abstract class OPCUAMessageHandlerTestBase extends GenericMessageHandlerT
 
     protected void beforeTest(MessageSender sender) {
         context = createMock(ApplicationContext.class);
-        mapper = new TagSubscriptionMapper(new MetricProxy(new SimpleMeterRegistry()));
+        mapper = new TagSubscriptionMapper(new MetricProxy(new SimpleMeterRegistry()), AppConfigProperties.builder().build());
         testEndpoint = new TestEndpoint(sender, mapper);
         appConfigProperties = TestUtils.createDefaultConfig();
         testController = TestUtils.getFailoverProxy(testEndpoint, sender);
         dataTagHandler = new DataTagHandler(mapper, sender, testController);
         commandTagHandler = new CommandTagHandler(testController);
         dataTagChanger = new DataTagChanger(dataTagHandler);
-        writer = new AliveWriter(testController, sender);
+        writer = new AliveWriter(testController, sender, TestUtils.createScheduler());
         appConfig = new AppConfig();
 
         handler = (OPCUAMessageHandler) msgHandler;
@@ -0,0 +1,85 @@
+/*-
+ * #%L
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * %%
+ * Copyright (C) 2010 - 2022 CERN
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package cern.c2mon.daq.opcua.scope;
+
+import cern.c2mon.daq.opcua.testutils.TestUtils;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class EquipmentSchedulerTest {
+
+    EquipmentScheduler scheduler;
+
+    @BeforeEach
+    public void setUp() {
+        scheduler = TestUtils.createScheduler();
+    }
+
+    @Test
+    public void scheduledTaskShouldBeExecutedOnce() throws InterruptedException {
+        final CountDownLatch latch = new CountDownLatch(1);
+        final ScheduledTask task = scheduler.schedule(latch::countDown, 5, TimeUnit.MILLISECONDS);
+        assertTrue(latch.await(TestUtils.TIMEOUT, TimeUnit.MILLISECONDS));
+        TimeUnit.MILLISECONDS.sleep(10);
+        assertTrue(task.isDone());
+        assertFalse(task.isCancelled());
+        assertEquals(0, scheduler.getPendingTasks());
+    }
+
+    @Test
+    public void periodicTaskShouldBeExecutedRepeatedly() throws InterruptedException {
+        final CountDownLatch latch = new CountDownLatch(3);
+        final ScheduledTask task = scheduler.scheduleAtFixedRate(latch::countDown, 0, 2, TimeUnit.MILLISECONDS);
+        assertTrue(latch.await(TestUtils.TIMEOUT, TimeUnit.MILLISECONDS));
+        assertFalse(task.isDone());
+        assertEquals(1, scheduler.getPendingTasks());
+        task.cancel();
+    }
+
+    @Test
+    public void cancelledTaskShouldNotBeExecuted() throws InterruptedException {
+        final AtomicInteger count = new AtomicInteger();
+        final ScheduledTask task = scheduler.schedule(count::incrementAndGet, 50, TimeUnit.MILLISECONDS);
+        assertTrue(task.cancel());
+        TimeUnit.MILLISECONDS.sleep(100);
+        assertEquals(0, count.get());
+        assertTrue(task.isCancelled());
+        assertEquals(0, scheduler.getPendingTasks());
+    }
+
+    @Test
+    public void failingPeriodicTaskShouldBeRescheduled() throws InterruptedException {
+        final CountDownLatch latch = new CountDownLatch(2);
+        final ScheduledTask task = scheduler.scheduleWithFixedDelay(() -> {
+            latch.countDown();
+            throw new IllegalStateException("test");
+        }, 0, 2, TimeUnit.MILLISECONDS);
+        assertTrue(latch.await(TestUtils.TIMEOUT, TimeUnit.MILLISECONDS));
+        task.cancel();
+    }
+}
@@ -54,7 +54,7 @@ class CertificateGeneratorTest {
     @BeforeEach
     public void setUp() {
         config = TestUtils.createDefaultConfig();
-        generator = new CertificateGenerator(config);
+        generator = new CertificateGenerator(config, TestUtils.createCertificateStore());
 
         modes = new ArrayList<>(Arrays.asList(MessageSecurityMode.SignAndEncrypt, MessageSecurityMode.Sign, MessageSecurityMode.None));
         policies = new ArrayList<>(Arrays.asList(SecurityPolicy.Basic256Sha256, SecurityPolicy.Basic128Rsa15, SecurityPolicy.Basic256, SecurityPolicy.None));
@@ -125,7 +125,7 @@ class CertificateGeneratorTest {
 
     @Test
     void canCertifyWithBadConfigurationShouldReturnFalse() {
-        CertificateGenerator badGenerator = new CertificateGenerator(AppConfigProperties.builder().build());
+        CertificateGenerator badGenerator = new CertificateGenerator(AppConfigProperties.builder().build(), TestUtils.createCertificateStore());
         final EndpointDescription e = createEndpointWithSecurityPolicy(SecurityPolicy.Basic256Sha256.getUri());
         assertFalse(badGenerator.canCertify(e));
     }
@@ -166,14 +166,28 @@ class CertificateGeneratorTest {
     }
 
     @Test
-    public void onlyCertificateLoadedShouldReloadBoth() {
+    public void onlyCertificateLoadedShouldReloadBothFromStore() {
         EndpointDescription e = createEndpointWithSecurityPolicy(SecurityPolicy.Basic256Sha256.getUri());
         OpcUaClientConfigBuilder b = new OpcUaClientConfigBuilder();
         generator.certify(b, e);
         final X509Certificate firstCert = generator.certificate;
+        final KeyPair firstKp = generator.keyPair;
         generator.keyPair = null;
         generator.certify(b, e);
-        assertNotEquals(firstCert, generator.certificate);
+        assertEquals(firstCert, generator.certificate);
+        assertEquals(firstKp, generator.keyPair);
+    }
+
+    @Test
+    public void generatorsWithSameSettingsShouldShareCertificate() {
+        final CertificateStore store = TestUtils.createCertificateStore();
+        final CertificateGenerator first = new CertificateGenerator(config, store);
+        final CertificateGenerator second = new CertificateGenerator(TestUtils.createDefaultConfig(), store);
+        EndpointDescription e = createEndpointWithSecurityPolicy(SecurityPolicy.Basic256Sha256.getUri());
+        assertTrue(first.canCertify(e));
+        assertTrue(second.canCertify(e));
+        assertEquals(first.certificate, second.certificate);
+        assertEquals(first.keyPair, second.keyPair);
     }
 
     private boolean supportAlgorithmWithSecurityPolicyUri(String securityPolicyUri) {
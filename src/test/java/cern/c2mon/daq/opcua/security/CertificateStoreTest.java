@@ -0,0 +1,159 @@
+/*-
+ * #%L
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * %%
+ * Copyright (C) 2010 - 2022 CERN
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package cern.c2mon.daq.opcua.security;
+
+import cern.c2mon.daq.opcua.config.AppConfigProperties;
+import cern.c2mon.daq.opcua.exceptions.ConfigurationException;
+import cern.c2mon.daq.opcua.scope.SharedScheduler;
+import cern.c2mon.daq.opcua.testutils.TestUtils;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.security.KeyPair;
+import java.security.cert.X509Certificate;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CertificateStoreTest {
+
+    @TempDir
+    Path pkiBaseDir;
+
+    AppConfigProperties config;
+    CertificateStore store;
+
+    @BeforeEach
+    public void setUp() {
+        config = TestUtils.createDefaultConfig();
+        config.setPkiBaseDir(pkiBaseDir.toString());
+        store = TestUtils.createCertificateStore();
+    }
+
+    @Test
+    public void certificateShouldBeGeneratedOnlyOnce() throws Exception {
+        final X509Certificate first = get(config).getKey();
+        final X509Certificate second = get(TestUtils.createDefaultConfig(), pkiBaseDir).getKey();
+        assertEquals(first, second);
+    }
+
+    @Test
+    public void certificateShouldBePersistedInPkiBaseDir() throws Exception {
+        get(config);
+        assertTrue(CertificateStore.storePath(config).startsWith(pkiBaseDir.resolve(CertificateStore.STORE_DIRECTORY)));
+        assertTrue(CertificateStore.storePath(config).toFile().exists());
+    }
+
+    @Test
+    public void persistedCertificateShouldBeReusedByNewStore() throws Exception {
+        final Map.Entry<X509Certificate, KeyPair> expected = get(config);
+        final Map.Entry<X509Certificate, KeyPair> actual = TestUtils.createCertificateStore().get(config).get(TestUtils.TIMEOUT, TimeUnit.MILLISECONDS);
+        assertEquals(expected.getKey(), actual.getKey());
+        assertEquals(expected.getValue().getPrivate(), actual.getValue().getPrivate());
+    }
+
+    @Test
+    public void persistedCertificateShouldBeProtectedByKeystorePassword() throws Exception {
+        get(config);
+        final String path = CertificateStore.storePath(config).toString();
+        assertThrows(ConfigurationException.class, () -> PkiUtil.loadFromPfx(
+                new AppConfigProperties.KeystoreConfig("PKCS12", path, "other", CertificateStore.ALIAS)));
+        assertNotNull(PkiUtil.loadFromPfx(new AppConfigProperties.KeystoreConfig("PKCS12", path,
+                config.getKeystore().getPassword(), CertificateStore.ALIAS)).getKey());
+    }
+
+    @Test
+    public void certificateShouldNotBePersistedWithoutKeystorePassword() throws Exception {
+        config.getKeystore().setPassword("");
+        assertNotNull(get(config).getKey());
+        assertFalse(CertificateStore.storePath(config).toFile().exists());
+    }
+
+    @Test
+    public void differentApplicationSettingsShouldNotShareCertificate() throws Exception {
+        final AppConfigProperties other = TestUtils.createDefaultConfig();
+        other.setPkiBaseDir(pkiBaseDir.toString());
+        other.setApplicationUri("urn:localhost:UA:other");
+        assertNotEquals(get(config).getKey(), get(other).getKey());
+        assertNotEquals(CertificateStore.storePath(config), CertificateStore.storePath(other));
+    }
+
+    @Test
+    public void certificateShouldBeGeneratedWithoutPkiBaseDir() throws Exception {
+        config.setPkiBaseDir(null);
+        assertNull(CertificateStore.storePath(config));
+        assertNotNull(get(config).getKey());
+    }
+
+    @Test
+    public void certificateShouldBeGeneratedWhileAllSchedulerWorkersWaitForIt() throws Exception {
+        final SharedScheduler scheduler = new SharedScheduler(AppConfigProperties.builder().schedulerParallelism(1).build());
+        final CompletableFuture<X509Certificate> waiting = new CompletableFuture<>();
+        try {
+            scheduler.schedule(() -> {
+                try {
+                    waiting.complete(get(config).getKey());
+                } catch (Exception e) {
+                    waiting.completeExceptionally(e);
+                }
+            }, 0, TimeUnit.MILLISECONDS);
+            assertNotNull(waiting.get(TestUtils.TIMEOUT, TimeUnit.MILLISECONDS));
+        } finally {
+            scheduler.destroy();
+        }
+    }
+
+    @Test
+    public void badConfigurationShouldCompleteExceptionally() {
+        final ExecutionException e = assertThrows(ExecutionException.class,
+                () -> store.get(AppConfigProperties.builder().build()).get(TestUtils.TIMEOUT, TimeUnit.MILLISECONDS));
+        assertTrue(e.getCause() instanceof ConfigurationException);
+    }
+
+    @Test
+    public void certificateExpiringWithinRenewalPeriodShouldBeRenewed() throws Exception {
+        final X509Certificate first = get(config).getKey();
+        config.setCertificateRenewalDays(Integer.MAX_VALUE);
+        assertEquals(first, get(config).getKey());
+        X509Certificate renewed = first;
+        final long deadline = System.currentTimeMillis() + TestUtils.TIMEOUT;
+        while (renewed.equals(first) && System.currentTimeMillis() < deadline) {
+            TimeUnit.MILLISECONDS.sleep(50);
+            renewed = get(config).getKey();
+        }
+        assertNotEquals(first, renewed);
+    }
+
+    private Map.Entry<X509Certificate, KeyPair> get(AppConfigProperties properties, Path baseDir) throws Exception {
+        properties.setPkiBaseDir(baseDir.toString());
+        return get(properties);
+    }
+
+    private Map.Entry<X509Certificate, KeyPair> get(AppConfigProperties properties) throws Exception {
+        return store.get(properties).get(TestUtils.TIMEOUT, TimeUnit.MILLISECONDS);
+    }
+}
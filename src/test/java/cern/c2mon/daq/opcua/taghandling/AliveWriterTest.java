@@ -21,6 +21,7 @@
  */
 package cern.c2mon.daq.opcua.taghandling;
 
+import cern.c2mon.daq.opcua.config.AppConfigProperties;
 import cern.c2mon.daq.opcua.mapping.TagSubscriptionMapper;
 import cern.c2mon.daq.opcua.mapping.TagSubscriptionReader;
 import cern.c2mon.daq.opcua.metrics.MetricProxy;
@@ -44,7 +45,7 @@ import static org.junit.jupiter.api.Assertions.*;
 
 public class AliveWriterTest {
     TestListeners.TestListener listener = new TestListeners.TestListener();
-    TagSubscriptionReader mapper = new TagSubscriptionMapper(new MetricProxy(new SimpleMeterRegistry()));
+    TagSubscriptionReader mapper = new TagSubscriptionMapper(new MetricProxy(new SimpleMeterRegistry()), AppConfigProperties.builder().build());
     AliveWriter aliveWriter;
     SourceDataTag aliveTag;
     SourceDataTag subAliveTag;
@@ -58,7 +59,8 @@ public class AliveWriterTest {
         aliveTag = new SourceDataTag((long) 1, "test", false, (short) 0, null, tagAddress);
         subAliveTag = new SourceDataTag((long) 1, "test", false, (short) 0, null, tagAddress);
         testEndpoint = new TestEndpoint(listener, mapper);
-        aliveWriter =  new AliveWriter(TestUtils.getFailoverProxy(testEndpoint, listener), listener);
+        // the test scheduler ticks every millisecond, so that an execution is delayed by at most 1 ms
+        aliveWriter =  new AliveWriter(TestUtils.getFailoverProxy(testEndpoint, listener), listener, TestUtils.createScheduler());
     }
 
     @AfterEach
@@ -75,7 +77,7 @@ public class AliveWriterTest {
     @Test
     public void writeAliveShouldNotifyListenerWithGoodStatusCodeSeveralTimes() throws InterruptedException {
         listener.setAliveLatch(new CountDownLatch(2));
-        aliveWriter.startAliveWriter(aliveTag, 2L);
+        aliveWriter.startAliveWriter(aliveTag, 1L);
         assertTrue(listener.getAliveLatch().await(4L, TimeUnit.MILLISECONDS));
     }
 
@@ -22,6 +22,7 @@
 package cern.c2mon.daq.opcua.taghandling;
 
 import cern.c2mon.daq.opcua.MessageSender;
+import cern.c2mon.daq.opcua.config.AppConfigProperties;
 import cern.c2mon.daq.opcua.connection.Endpoint;
 import cern.c2mon.daq.opcua.control.Controller;
 import cern.c2mon.daq.opcua.exceptions.CommunicationException;
@@ -73,7 +74,7 @@ public class CommandTagHandlerTest {
 
     @BeforeEach
     public void setUp() {
-        this.endpoint = new TestEndpoint(l, new TagSubscriptionMapper(new MetricProxy(new SimpleMeterRegistry())));
+        this.endpoint = new TestEndpoint(l, new TagSubscriptionMapper(new MetricProxy(new SimpleMeterRegistry()), AppConfigProperties.builder().build()));
         endpoint.setReturnGoodStatusCodes(true);
         tag = new SourceCommandTag(0L, "Power");
 
@@ -24,6 +24,7 @@ package cern.c2mon.daq.opcua.taghandling;
 import cern.c2mon.daq.opcua.exceptions.ConfigurationException;
 import cern.c2mon.daq.opcua.testutils.EdgeTagFactory;
 import cern.c2mon.shared.common.datatag.ISourceDataTag;
+import cern.c2mon.shared.common.datatag.util.ValueDeadbandType;
 import cern.c2mon.shared.daq.config.ChangeReport;
 import org.eclipse.milo.opcua.stack.core.types.builtin.StatusCode;
 import org.junit.jupiter.api.BeforeEach;
@@ -177,6 +178,36 @@ public class DataTagChangerTest extends TagHandlerTestBase {
 
     }
 
+    @Test
+    public void onUpdateValueDeadbandShouldModifyTagInPlace () throws ConfigurationException {
+        subscribeTagsAndMockStatusCode(StatusCode.GOOD, tagInSource1);
+        final int clientHandle = mapper.getDefinition(tagInSource1.getId()).getClientHandle();
+        final ISourceDataTag updated = EdgeTagFactory.RandomUnsignedInt32.createDataTagWithID(tagInSource1.getId(), 5f, ValueDeadbandType.EQUIPMENT_ABSOLUTE, 0);
+        tagChanger.onUpdateDataTag(updated, tagInSource1, changeReport);
+        assertEquals(SUCCESS, changeReport.getState());
+        assertEquals(clientHandle, mapper.getDefinition(tagInSource1.getId()).getClientHandle());
+        assertEquals(5f, mapper.getDefinition(tagInSource1.getId()).getValueDeadband());
+    }
+
+    @Test
+    public void onUpdateTimeDeadbandShouldMoveTagToNewGroup () throws ConfigurationException {
+        subscribeTagsAndMockStatusCode(StatusCode.GOOD, tagInSource1);
+        final ISourceDataTag updated = EdgeTagFactory.RandomUnsignedInt32.createDataTagWithID(tagInSource1.getId(), 0, ValueDeadbandType.NONE, 5);
+        tagChanger.onUpdateDataTag(updated, tagInSource1, changeReport);
+        assertEquals(SUCCESS, changeReport.getState());
+        assertTrue(isSubscribed(updated));
+        assertFalse(isSubscribed(tagInSource1));
+    }
+
+    @Test
+    public void updateEqConfigShouldReportUpdatedDeadbands () throws ConfigurationException {
+        final Collection<ISourceDataTag> oldTags = Collections.singletonList(tagInSource1);
+        setup(StatusCode.GOOD, oldTags);
+        final ISourceDataTag updated = EdgeTagFactory.RandomUnsignedInt32.createDataTagWithID(tagInSource1.getId(), 5f, ValueDeadbandType.EQUIPMENT_ABSOLUTE, 0);
+        tagChanger.onUpdateEquipmentConfiguration(Collections.singletonList(updated), oldTags, changeReport);
+        assertTrue(changeReport.getInfoMessage().contains("Updated deadbands of Tags "));
+    }
+
     @Test
     public void onUpdateSameTagShouldReportSuccess () {
         tagChanger.onUpdateDataTag(tag, tag, changeReport);
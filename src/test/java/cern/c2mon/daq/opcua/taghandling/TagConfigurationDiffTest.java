@@ -0,0 +1,85 @@
+/*-
+ * #%L
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * %%
+ * Copyright (C) 2010 - 2022 CERN
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package cern.c2mon.daq.opcua.taghandling;
+
+import cern.c2mon.daq.opcua.testutils.EdgeTagFactory;
+import cern.c2mon.shared.common.datatag.ISourceDataTag;
+import cern.c2mon.shared.common.datatag.util.ValueDeadbandType;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TagConfigurationDiffTest {
+
+    @Test
+    public void identicalConfigurationsShouldBeEmpty() {
+        final TagConfigurationDiff diff = TagConfigurationDiff.of(
+                Arrays.asList(EdgeTagFactory.StartStepUp.createDataTagWithID(1L), EdgeTagFactory.DipData.createDataTagWithID(2L)),
+                Arrays.asList(EdgeTagFactory.StartStepUp.createDataTagWithID(1L), EdgeTagFactory.DipData.createDataTagWithID(2L)));
+        assertTrue(diff.isEmpty());
+        assertEquals(2, diff.getUnchanged());
+    }
+
+    @Test
+    public void tagsOnlyInOldConfigurationShouldBeRemoved() {
+        final ISourceDataTag removed = EdgeTagFactory.DipData.createDataTagWithID(2L);
+        final TagConfigurationDiff diff = TagConfigurationDiff.of(
+                Collections.singletonList(EdgeTagFactory.StartStepUp.createDataTagWithID(1L)),
+                Arrays.asList(EdgeTagFactory.StartStepUp.createDataTagWithID(1L), removed));
+        assertEquals(Collections.singletonList(removed), diff.getToRemove());
+        assertTrue(diff.getToAdd().isEmpty());
+    }
+
+    @Test
+    public void tagsOnlyInNewConfigurationShouldBeAdded() {
+        final ISourceDataTag added = EdgeTagFactory.DipData.createDataTagWithID(2L);
+        final TagConfigurationDiff diff = TagConfigurationDiff.of(
+                Arrays.asList(EdgeTagFactory.StartStepUp.createDataTagWithID(1L), added),
+                Collections.singletonList(EdgeTagFactory.StartStepUp.createDataTagWithID(1L)));
+        assertEquals(Collections.singletonList(added), diff.getToAdd());
+        assertTrue(diff.getToRemove().isEmpty());
+    }
+
+    @Test
+    public void tagWithNewHardwareAddressShouldBeReplaced() {
+        final ISourceDataTag oldTag = EdgeTagFactory.StartStepUp.createDataTagWithID(1L);
+        final ISourceDataTag newTag = EdgeTagFactory.DipData.createDataTagWithID(1L);
+        final TagConfigurationDiff diff = TagConfigurationDiff.of(Collections.singletonList(newTag), Collections.singletonList(oldTag));
+        assertEquals(Collections.singletonList(oldTag), diff.getToRemove());
+        assertEquals(Collections.singletonList(newTag), diff.getToAdd());
+    }
+
+    @Test
+    public void tagWithNewDeadbandShouldBeUpdated() {
+        final ISourceDataTag oldTag = EdgeTagFactory.StartStepUp.createDataTagWithID(1L);
+        final ISourceDataTag newTag = EdgeTagFactory.StartStepUp.createDataTagWithID(1L, 0.5f, ValueDeadbandType.EQUIPMENT_ABSOLUTE, 100);
+        final TagConfigurationDiff diff = TagConfigurationDiff.of(Collections.singletonList(newTag), Collections.singletonList(oldTag));
+        assertEquals(Collections.singletonList(newTag), diff.getToUpdate());
+        assertTrue(diff.getToRemove().isEmpty());
+        assertTrue(diff.getToAdd().isEmpty());
+        assertEquals(0, diff.getUnchanged());
+    }
+}
@@ -21,6 +21,7 @@
  */
 package cern.c2mon.daq.opcua.taghandling;
 
+import cern.c2mon.daq.opcua.config.AppConfigProperties;
 import cern.c2mon.daq.opcua.exceptions.ConfigurationException;
 import cern.c2mon.daq.opcua.exceptions.OPCUAException;
 import cern.c2mon.daq.opcua.mapping.SubscriptionGroup;
@@ -70,7 +71,7 @@ public abstract class TagHandlerTestBase {
         sourceTags.put(10L, tagInSource1);
         sourceTags.put(20L, tagInSource2);
 
-        mapper = new TagSubscriptionMapper(new MetricProxy(new SimpleMeterRegistry()));
+        mapper = new TagSubscriptionMapper(new MetricProxy(new SimpleMeterRegistry()), AppConfigProperties.builder().build());
         listener = new TestListeners.TestListener();
         endpoint = new TestEndpoint(listener, mapper);
         proxy = TestUtils.getFailoverProxy(endpoint, listener);
@@ -21,11 +21,12 @@
  */
 package cern.c2mon.daq.opcua.testutils;
 
-import cern.c2mon.daq.opcua.config.AppConfig;
 import cern.c2mon.daq.opcua.config.AppConfigProperties;
 import cern.c2mon.daq.opcua.connection.Endpoint;
 import cern.c2mon.daq.opcua.control.FailoverBase;
 import cern.c2mon.daq.opcua.exceptions.OPCUAException;
+import cern.c2mon.daq.opcua.metrics.MetricProxy;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
@@ -48,7 +49,7 @@ public class TestController extends FailoverBase {
     OPCUAException toThrow;
 
     public TestController(AppConfigProperties properties) {
-        super(properties, new AppConfig().alwaysRetryTemplate(properties));
+        super(properties, new MetricProxy(new SimpleMeterRegistry()), TestUtils.createScheduler());
         listening.set(true);
         stopped.set(false);
         toThrow = null;
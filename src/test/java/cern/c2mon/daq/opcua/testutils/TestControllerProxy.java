@@ -26,6 +26,8 @@ import cern.c2mon.daq.opcua.config.AppConfigProperties;
 import cern.c2mon.daq.opcua.connection.Endpoint;
 import cern.c2mon.daq.opcua.control.*;
 import cern.c2mon.daq.opcua.exceptions.OPCUAException;
+import cern.c2mon.daq.opcua.metrics.MetricProxy;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import lombok.Setter;
 import org.eclipse.milo.opcua.stack.core.types.enumerated.RedundancySupport;
 import org.springframework.context.ApplicationContext;
@@ -40,12 +42,16 @@ public class TestControllerProxy extends ControllerProxy {
         this.controller = controller;
     }
 
+    public ConcreteController getController() {
+        return controller;
+    }
+
     public TestControllerProxy(ApplicationContext appContext, AppConfigProperties configProperties, MessageSender messageSender, Endpoint endpoint) {
-        super(new ControllerFactory(configProperties, null), configProperties, endpoint);
+        super(new ControllerFactory(configProperties, new MetricProxy(new SimpleMeterRegistry()), TestUtils.createScheduler()), configProperties, endpoint, null);
     }
 
     public void setFailoverMode(RedundancySupport mode) {
-       controller = new ControllerFactory(config, null).getObject(mode);
+       controller = new ControllerFactory(config, new MetricProxy(new SimpleMeterRegistry()), TestUtils.createScheduler()).getObject(mode);
     }
 
     @Override
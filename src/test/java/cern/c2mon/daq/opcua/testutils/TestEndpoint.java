@@ -22,6 +22,7 @@
 package cern.c2mon.daq.opcua.testutils;
 
 import cern.c2mon.daq.opcua.MessageSender;
+import cern.c2mon.daq.opcua.connection.CircuitBreaker;
 import cern.c2mon.daq.opcua.connection.Endpoint;
 import cern.c2mon.daq.opcua.connection.MiloMapper;
 import cern.c2mon.daq.opcua.exceptions.CommunicationException;
@@ -71,6 +72,7 @@ public class TestEndpoint implements Endpoint {
     private boolean returnGoodStatusCodes = true;
     final ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1);
     String uri;
+    String standbyUri;
     boolean throwExceptions = false;
     OPCUAException toThrow;
     long delay = 0;
@@ -78,6 +80,8 @@ public class TestEndpoint implements Endpoint {
     Object readValue = 0;
     CountDownLatch initLatch = new CountDownLatch(1);
     CountDownLatch readLatch = new CountDownLatch(2);
+    CountDownLatch standbyLatch = new CountDownLatch(1);
+    int definitionsOnInitialize = -1;
 
 
     public TestEndpoint(MessageSender sender, TagSubscriptionReader mapper) {
@@ -88,6 +92,7 @@ public class TestEndpoint implements Endpoint {
     @Override
     public void initialize(String uri) throws OPCUAException {
         this.uri = uri;
+        definitionsOnInitialize = mapper.getTagIdDefinitionMap().size();
         synchronized (initLatch) {
             if (initLatch != null) {
                 initLatch.countDown();
@@ -108,6 +113,11 @@ public class TestEndpoint implements Endpoint {
 
     }
 
+    @Override
+    public void manageCircuitBreakerListener(boolean add, CircuitBreaker.Listener listener) {
+
+    }
+
     @Override
     public void setUpdateEquipmentStateOnSessionChanges(boolean active) {
 
@@ -116,6 +126,17 @@ public class TestEndpoint implements Endpoint {
     @Override
     public void disconnect () {}
 
+    @Override
+    public void prepareStandby(String uri) {
+        standbyUri = uri;
+        standbyLatch.countDown();
+    }
+
+    @Override
+    public void releaseStandby() {
+        standbyUri = null;
+    }
+
     @Override
     public Map<Integer, SourceDataTagQuality> subscribe(SubscriptionGroup group, Collection<ItemDefinition> definitions) throws OPCUAException {
         Consumer<UaMonitoredItem> itemCreationCallback = item -> item.setValueConsumer(value -> {
@@ -154,6 +175,16 @@ public class TestEndpoint implements Endpoint {
         return returnGoodStatusCodes;
     }
 
+    @Override
+    public Map<Integer, Boolean> deleteItemsFromSubscription(Collection<Integer> clientHandles, int publishInterval) {
+        return clientHandles.stream().collect(Collectors.toMap(h -> h, h -> returnGoodStatusCodes));
+    }
+
+    @Override
+    public Map<Integer, Boolean> modifyItemsInSubscription(Collection<ItemDefinition> definitions, int publishInterval) {
+        return definitions.stream().collect(Collectors.toMap(ItemDefinition::getClientHandle, d -> returnGoodStatusCodes));
+    }
+
     @Override
     public void recreateAllSubscriptions() {
 
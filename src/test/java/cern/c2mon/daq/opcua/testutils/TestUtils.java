@@ -27,6 +27,9 @@ import cern.c2mon.daq.opcua.config.AppConfigProperties.CertifierMode;
 import cern.c2mon.daq.opcua.connection.Endpoint;
 import cern.c2mon.daq.opcua.MessageSender;
 import cern.c2mon.daq.opcua.exceptions.OPCUAException;
+import cern.c2mon.daq.opcua.scope.EquipmentScheduler;
+import cern.c2mon.daq.opcua.scope.SharedScheduler;
+import cern.c2mon.daq.opcua.security.CertificateStore;
 import cern.c2mon.shared.common.process.EquipmentConfiguration;
 import com.google.common.collect.ImmutableMap;
 import org.easymock.Capture;
@@ -46,6 +49,7 @@ public abstract class TestUtils {
     public final static int TIMEOUT_IT = 6000;
     public final static int TIMEOUT_TOXI = 25;
     public final static int TIMEOUT_REDUNDANCY = 2;
+    private final static SharedScheduler SCHEDULER = new SharedScheduler(AppConfigProperties.builder().schedulerTickDuration(1L).build());
 
     public static AppConfigProperties createDefaultConfig() {
         final ImmutableMap<CertifierMode, Integer> certifierPriority = ImmutableMap.<CertifierMode, Integer>builder()
@@ -89,6 +93,14 @@ public abstract class TestUtils {
         }
     }
 
+    public static EquipmentScheduler createScheduler() {
+        return new EquipmentScheduler(SCHEDULER);
+    }
+
+    public static CertificateStore createCertificateStore() {
+        return new CertificateStore();
+    }
+
     public static TestControllerProxy getFailoverProxy(Endpoint endpoint, MessageSender messageSender) {
         final AppConfigProperties config = createDefaultConfig();
         final TestControllerProxy proxy = new TestControllerProxy(null, config, messageSender, endpoint);